@@ -0,0 +1,25 @@
+#!/bin/bash
+echo "Compiling Banking Application and Benchmarks..."
+
+# Create bin directory if it doesn't exist
+mkdir -p bin
+
+# Compile the application and the benchmark harnesses (no test libraries needed)
+javac -d bin src/bankingapp/*.java src/benchmarks/*.java
+
+# Run the requested benchmark, or list the available ones
+if [ -z "$1" ]; then
+    echo "Usage: ./run_benchmarks.sh <BenchmarkClass> [args...]"
+    echo "Available benchmarks:"
+    for f in src/benchmarks/*.java; do
+        echo "  $(basename "$f" .java)"
+    done
+    exit 0
+fi
+
+BENCHMARK=$1
+shift
+echo "Running $BENCHMARK..."
+java -cp bin benchmarks.$BENCHMARK "$@"
+
+echo "Done!"
@@ -174,6 +174,32 @@ public class AccountHolder {
 		return info.toString();
 	}
 	
+	// Accessors used by Snapshot to save and restore holders
+	
+	String getBirthday() {
+		return birthday;
+	}
+	
+	int getSsn() {
+		return ssn;
+	}
+	
+	int getBankCode() {
+		return bankCode;
+	}
+	
+	String getPassword() {
+		return password;
+	}
+	
+	boolean isPersonalInfoHidden() {
+		return isPersonalInfoHidden;
+	}
+	
+	ArrayList<Integer> getBankAccountNumbers() {
+		return bankAccounts;
+	}
+	
 	public void addBankAccount(AccountHolder info, int bankAccountNumber) {
 		if(!info.bankAccounts.contains(bankAccountNumber)) {
 			info.bankAccounts.add(bankAccountNumber);
@@ -0,0 +1,171 @@
+package bankingapp;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Dense index from account number to account.
+ *
+ * Accounts live in fixed-size pages addressed by the sequence part of
+ * their number (see AccountNumberAllocator), so a lookup is a bounds check
+ * plus an array load, with no hashing or boxing. Pages are created on
+ * first use and the page table only grows, so readers never lock.
+ */
+class AccountIndex {
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT; // 4096 accounts per page
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final AccountNumberAllocator allocator;
+    private volatile AtomicReferenceArray<BankAccount>[] pages = newPageTable(16);
+
+    AccountIndex(AccountNumberAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static AtomicReferenceArray<BankAccount>[] newPageTable(int length) {
+        return (AtomicReferenceArray<BankAccount>[]) new AtomicReferenceArray[length];
+    }
+
+    /**
+     * Looks up an account by number.
+     *
+     * @param number The account number
+     * @return The account, or null if no account has that number
+     */
+    BankAccount get(int number) {
+        int sequence = allocator.sequenceOf(number);
+        if (sequence < 0) {
+            return null;
+        }
+        AtomicReferenceArray<BankAccount>[] table = pages;
+        int page = sequence >>> PAGE_SHIFT;
+        if (page >= table.length || table[page] == null) {
+            return null;
+        }
+        return table[page].get(sequence & PAGE_MASK);
+    }
+
+    /**
+     * Adds an account under its number unless the slot is taken.
+     *
+     * @param account An account that already has a number
+     * @return true if the account was added
+     * @throws IllegalArgumentException if the account's number is not valid for this index
+     */
+    boolean putIfAbsent(BankAccount account) {
+        int sequence = allocator.sequenceOf(account.getAccountNumber());
+        if (sequence < 0) {
+            throw new IllegalArgumentException("Invalid account number: " + account.getAccountNumber());
+        }
+        return page(sequence).compareAndSet(sequence & PAGE_MASK, null, account);
+    }
+
+    /**
+     * Adds or replaces the account under its number.
+     *
+     * @param account An account that already has a number
+     */
+    void put(BankAccount account) {
+        int sequence = allocator.sequenceOf(account.getAccountNumber());
+        if (sequence < 0) {
+            throw new IllegalArgumentException("Invalid account number: " + account.getAccountNumber());
+        }
+        page(sequence).set(sequence & PAGE_MASK, account);
+    }
+
+    /**
+     * Removes the account with the given number.
+     *
+     * @param number The account number
+     * @return The removed account, or null if there was none
+     */
+    BankAccount remove(int number) {
+        int sequence = allocator.sequenceOf(number);
+        if (sequence < 0) {
+            return null;
+        }
+        AtomicReferenceArray<BankAccount>[] table = pages;
+        int page = sequence >>> PAGE_SHIFT;
+        if (page >= table.length || table[page] == null) {
+            return null;
+        }
+        return table[page].getAndSet(sequence & PAGE_MASK, null);
+    }
+
+    /**
+     * Runs an action for every account, in number order.
+     *
+     * @param action The action to run
+     */
+    void forEach(Consumer<? super BankAccount> action) {
+        for (AtomicReferenceArray<BankAccount> page : pages) {
+            if (page == null) {
+                continue;
+            }
+            for (int slot = 0; slot < PAGE_SIZE; slot++) {
+                BankAccount account = page.get(slot);
+                if (account != null) {
+                    action.accept(account);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of pages, for callers that split a scan by page.
+     * Every account is in a page below this count when it is read.
+     *
+     * @return The page count
+     */
+    int pageCount() {
+        return pages.length;
+    }
+
+    /**
+     * Runs an action for every account in one page, in number order.
+     *
+     * @param page The page, below pageCount()
+     * @param action The action to run
+     */
+    void forEachInPage(int page, Consumer<? super BankAccount> action) {
+        AtomicReferenceArray<BankAccount>[] table = pages;
+        if (page >= table.length || table[page] == null) {
+            return;
+        }
+        AtomicReferenceArray<BankAccount> accounts = table[page];
+        for (int slot = 0; slot < PAGE_SIZE; slot++) {
+            BankAccount account = accounts.get(slot);
+            if (account != null) {
+                action.accept(account);
+            }
+        }
+    }
+
+    /**
+     * Gets the page holding a sequence, creating it (and growing the page
+     * table) if needed.
+     */
+    private AtomicReferenceArray<BankAccount> page(int sequence) {
+        int page = sequence >>> PAGE_SHIFT;
+        AtomicReferenceArray<BankAccount>[] table = pages;
+        if (page < table.length && table[page] != null) {
+            return table[page];
+        }
+        synchronized (this) {
+            table = pages;
+            if (page >= table.length) {
+                AtomicReferenceArray<BankAccount>[] grown = newPageTable(Math.max(table.length * 2, page + 1));
+                System.arraycopy(table, 0, grown, 0, table.length);
+                table = grown;
+            }
+            if (table[page] == null) {
+                table[page] = new AtomicReferenceArray<>(PAGE_SIZE);
+            }
+            pages = table; // Publish the new page (and table) to readers
+            return table[page];
+        }
+    }
+}
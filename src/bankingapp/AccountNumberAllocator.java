@@ -0,0 +1,137 @@
+package bankingapp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out account numbers from a monotonic sequence.
+ *
+ * Sequences start at 1 and never repeat, so two accounts can never share a
+ * number (0 means "no number"). With check digits enabled, a number is the
+ * sequence followed by a Luhn check digit, so a mistyped digit is caught
+ * before any lookup: sequence 1 is account 18, sequence 2 is 26, and so on.
+ * The sequence is what AccountIndex uses as the array slot.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public final class AccountNumberAllocator {
+
+    // Used by the account registries (AllUserAccount, BankAccountLibrary).
+    // Each database has its own allocator unless it is given one.
+    private static final AccountNumberAllocator SHARED = new AccountNumberAllocator(true);
+
+    private final boolean checkDigits;
+    private final int maxSequence;
+    private final AtomicInteger lastSequence = new AtomicInteger();
+
+    /**
+     * Creates an allocator whose first number has sequence 1.
+     *
+     * @param checkDigits Whether to append a Luhn check digit to each number
+     */
+    public AccountNumberAllocator(boolean checkDigits) {
+        this.checkDigits = checkDigits;
+        this.maxSequence = checkDigits ? (Integer.MAX_VALUE - 9) / 10 : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Gets the allocator shared by the account registries.
+     *
+     * @return The shared allocator (check digits enabled)
+     */
+    public static AccountNumberAllocator shared() {
+        return SHARED;
+    }
+
+    /**
+     * Allocates the next account number.
+     *
+     * @return A number never returned before by this allocator
+     * @throws IllegalStateException if the number space is exhausted
+     */
+    public int next() {
+        int sequence = lastSequence.incrementAndGet();
+        if (sequence <= 0 || sequence > maxSequence) {
+            throw new IllegalStateException("Account numbers exhausted");
+        }
+        return toNumber(sequence);
+    }
+
+    /**
+     * Checks whether a number is well formed for this allocator. It does
+     * not check that the number was actually handed out.
+     *
+     * @param number The account number to check
+     * @return true if the number has a valid sequence and check digit
+     */
+    public boolean isValid(int number) {
+        return sequenceOf(number) > 0;
+    }
+
+    /**
+     * Whether numbers from this allocator carry a check digit.
+     *
+     * @return true if check digits are appended
+     */
+    public boolean hasCheckDigits() {
+        return checkDigits;
+    }
+
+    /**
+     * Gets the sequence (array slot) of a number.
+     *
+     * @param number The account number
+     * @return The sequence, or -1 if the number is not well formed
+     */
+    int sequenceOf(int number) {
+        if (number <= 0) {
+            return -1;
+        }
+        if (!checkDigits) {
+            return number;
+        }
+        int sequence = number / 10;
+        return sequence > 0 && number % 10 == checkDigit(sequence) ? sequence : -1;
+    }
+
+    /**
+     * Makes sure later numbers come after the given one. Used when accounts
+     * are restored with numbers that were allocated before a restart.
+     *
+     * @param number A number that is already in use
+     */
+    void advancePast(int number) {
+        int sequence = sequenceOf(number);
+        if (sequence > 0) {
+            lastSequence.accumulateAndGet(sequence, Math::max);
+        }
+    }
+
+    private int toNumber(int sequence) {
+        return checkDigits ? sequence * 10 + checkDigit(sequence) : sequence;
+    }
+
+    /**
+     * Computes the Luhn check digit for a payload.
+     *
+     * @param payload The digits to protect
+     * @return The digit that makes payload * 10 + digit pass the Luhn check
+     */
+    static int checkDigit(int payload) {
+        int sum = 0;
+        boolean doubled = true; // The rightmost payload digit is doubled
+        for (int rest = payload; rest > 0; rest /= 10) {
+            int digit = rest % 10;
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
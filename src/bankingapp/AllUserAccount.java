@@ -12,7 +12,7 @@ import java.util.Collection;
  */
 public class AllUserAccount {
 	private HashMap<Integer, AccountHolder> UserAccounts = new HashMap<>();
-	private HashMap<Integer, BankAccount> BankAccounts = new HashMap<>();
+	private AccountIndex BankAccounts = new AccountIndex(AccountNumberAllocator.shared());
 	
 	public int AccountNumber(AccountHolder info) {
 		int hashcode = info.hashCode();
@@ -20,18 +20,16 @@ public class AllUserAccount {
 	}
 	
 	public int BankAccountNumber(BankAccount account) {
-		return account.hashCode();
+		return account.assignAccountNumber(AccountNumberAllocator.shared());
 	}
 	
 	public void addAccount(BankAccount currentAccount) {
-		int hash = BankAccountNumber(currentAccount);
-		if(!BankAccounts.containsKey(hash)) {
-			BankAccounts.put(hash,currentAccount);
-		}
+		BankAccountNumber(currentAccount);
+		BankAccounts.putIfAbsent(currentAccount);
 	}
 	
 	public boolean findAccount( int hash) {
-		return BankAccounts.containsKey(hash);
+		return BankAccounts.get(hash) != null;
 	}
 	
 	public BankAccount getAccount(int hash) {
@@ -1,11 +1,16 @@
 package bankingapp;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
 import java.util.TimeZone;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * Represents a bank account with basic operations.
@@ -16,34 +21,50 @@ import java.util.TimeZone;
  */
 public class BankAccount {
 
-    private double balance;
-    private AccountType accountType;
+    // Returned by reserve() when the balance cannot cover a withdrawal
+    static final long INSUFFICIENT_FUNDS = Long.MIN_VALUE;
+
+    // Balance in cents (see Money), updated lock-free with compare-and-set
+    private final AtomicLong balance = new AtomicLong();
+    private volatile AccountType accountType;
     
-    // Default maximum values for transactions
-    private static final double DEFAULT_MAX_WITHDRAWAL = 1000.0;
-    private static final double DEFAULT_MAX_DEPOSIT = 10000.0;
+    // Default maximum values for transactions, in cents
+    private static final long DEFAULT_MAX_WITHDRAWAL = 1000_00;
+    private static final long DEFAULT_MAX_DEPOSIT = 10000_00;
     
-    // Instance-specific maximum values
-    private double maxWithdrawalLimit;
-    private double maxDepositLimit;
+    // Instance-specific maximum values, in cents
+    private volatile long maxWithdrawalLimit;
+    private volatile long maxDepositLimit;
 
-    // Transaction history and scheduled transfers
-    private List<Transaction> transactionHistory;
+    // Transaction history and scheduled transfers (the list is also used by the TransferScheduler thread)
+    private final TransactionLog transactionHistory = new TransactionLog();
     private List<ScheduledTransfer> scheduledTransfers;
     
-    // Recurring payments
+    // Recurring payments (also read by the RecurringPaymentScheduler thread)
     private List<RecurringPayment> recurringPayments;
 
+    // Assigned once by AccountNumberAllocator (0 until then)
+    private volatile int accountNumber;
+
+    // Set when the account is added to a database, so mutations can be journaled
+    private volatile BankAccountDatabase database;
+
+    // Frozen status, owned by the database holding the account
+    volatile boolean frozen;
+
+    // End of the last period interest was accrued for (0 if never, see InterestAccrual)
+    private volatile long lastAccrualMillis;
+    private static final AtomicLongFieldUpdater<BankAccount> LAST_ACCRUAL =
+        AtomicLongFieldUpdater.newUpdater(BankAccount.class, "lastAccrualMillis");
+
     /**
      * Constructs a new bank account with an initial balance of 0.
      */
     public BankAccount() {
-        this.balance = 0;
         this.maxWithdrawalLimit = DEFAULT_MAX_WITHDRAWAL;
         this.maxDepositLimit = DEFAULT_MAX_DEPOSIT;
-        this.transactionHistory = new ArrayList<>();
-        this.scheduledTransfers = new ArrayList<>();
-        this.recurringPayments = new ArrayList<>();
+        this.scheduledTransfers = Collections.synchronizedList(new ArrayList<>());
+        this.recurringPayments = Collections.synchronizedList(new ArrayList<>());
         this.accountType = AccountType.CHECKING; // Default to checking account
     }
 
@@ -53,12 +74,10 @@ public class BankAccount {
      * @param accountType The type of account (CHECKING, SAVINGS, etc.)
      */
     public BankAccount(AccountType accountType) {
-        this.balance = 0;
         this.maxWithdrawalLimit = DEFAULT_MAX_WITHDRAWAL;
         this.maxDepositLimit = DEFAULT_MAX_DEPOSIT;
-        this.transactionHistory = new ArrayList<>();
-        this.scheduledTransfers = new ArrayList<>();
-        this.recurringPayments = new ArrayList<>();
+        this.scheduledTransfers = Collections.synchronizedList(new ArrayList<>());
+        this.recurringPayments = Collections.synchronizedList(new ArrayList<>());
         this.accountType = accountType;
     }
     
@@ -68,15 +87,14 @@ public class BankAccount {
      * @param initBalance The initial balance of the account.
      */
     public BankAccount(double initBalance) {
-        this.balance = initBalance;
+        this.balance.set(Money.toCents(initBalance));
         this.maxWithdrawalLimit = DEFAULT_MAX_WITHDRAWAL;
         this.maxDepositLimit = DEFAULT_MAX_DEPOSIT;
-        this.transactionHistory = new ArrayList<>();
-        this.scheduledTransfers = new ArrayList<>();
-        this.recurringPayments = new ArrayList<>();
+        this.scheduledTransfers = Collections.synchronizedList(new ArrayList<>());
+        this.recurringPayments = Collections.synchronizedList(new ArrayList<>());
         // Record initial deposit if balance is positive
         if (initBalance > 0) {
-            recordTransaction(TransactionType.DEPOSIT, initBalance, "Initial deposit");
+            recordTransaction(TransactionType.DEPOSIT, this.balance.get(), DescriptionTemplate.INITIAL_DEPOSIT);
         }
     }
 
@@ -87,17 +105,16 @@ public class BankAccount {
      * @param accountType The type of account (CHECKING, SAVINGS, etc.)
      */
     public BankAccount(double initBalance, AccountType accountType) {
-        this.balance = initBalance;
+        this.balance.set(Money.toCents(initBalance));
         this.maxWithdrawalLimit = DEFAULT_MAX_WITHDRAWAL;
         this.maxDepositLimit = DEFAULT_MAX_DEPOSIT;
-        this.transactionHistory = new ArrayList<>();
-        this.scheduledTransfers = new ArrayList<>();
-        this.recurringPayments = new ArrayList<>();
+        this.scheduledTransfers = Collections.synchronizedList(new ArrayList<>());
+        this.recurringPayments = Collections.synchronizedList(new ArrayList<>());
         this.accountType = accountType;
         
         // Record initial deposit if balance is positive
         if (initBalance > 0) {
-            recordTransaction(TransactionType.DEPOSIT, initBalance, "Initial deposit");
+            recordTransaction(TransactionType.DEPOSIT, this.balance.get(), DescriptionTemplate.INITIAL_DEPOSIT);
         }
     }
     
@@ -109,15 +126,14 @@ public class BankAccount {
      * @param maxDeposit The maximum deposit limit.
      */
     public BankAccount(double initBalance, double maxWithdrawal, double maxDeposit) {
-        this.balance = initBalance;
-        this.maxWithdrawalLimit = maxWithdrawal;
-        this.maxDepositLimit = maxDeposit;
-        this.transactionHistory = new ArrayList<>();
-        this.scheduledTransfers = new ArrayList<>();
-        this.recurringPayments = new ArrayList<>();
+        this.balance.set(Money.toCents(initBalance));
+        this.maxWithdrawalLimit = Money.toCents(maxWithdrawal);
+        this.maxDepositLimit = Money.toCents(maxDeposit);
+        this.scheduledTransfers = Collections.synchronizedList(new ArrayList<>());
+        this.recurringPayments = Collections.synchronizedList(new ArrayList<>());
         // Record initial deposit if balance is positive
         if (initBalance > 0) {
-            recordTransaction(TransactionType.DEPOSIT, initBalance, "Initial deposit");
+            recordTransaction(TransactionType.DEPOSIT, this.balance.get(), DescriptionTemplate.INITIAL_DEPOSIT);
         }
     }
 
@@ -130,17 +146,16 @@ public class BankAccount {
      * @param accountType The type of account (CHECKING or SAVINGS).
      */
     public BankAccount(double initBalance, double maxWithdrawal, double maxDeposit, AccountType accountType) {
-        this.balance = initBalance;
-        this.maxWithdrawalLimit = maxWithdrawal;
-        this.maxDepositLimit = maxDeposit;
-        this.transactionHistory = new ArrayList<>();
-        this.scheduledTransfers = new ArrayList<>();
-        this.recurringPayments = new ArrayList<>();
+        this.balance.set(Money.toCents(initBalance));
+        this.maxWithdrawalLimit = Money.toCents(maxWithdrawal);
+        this.maxDepositLimit = Money.toCents(maxDeposit);
+        this.scheduledTransfers = Collections.synchronizedList(new ArrayList<>());
+        this.recurringPayments = Collections.synchronizedList(new ArrayList<>());
         this.accountType = accountType;
 
         // Record initial deposit if balance is positive
         if (initBalance > 0) {
-            recordTransaction(TransactionType.DEPOSIT, initBalance, "Initial deposit");
+            recordTransaction(TransactionType.DEPOSIT, this.balance.get(), DescriptionTemplate.INITIAL_DEPOSIT);
         }
     }
 
@@ -150,7 +165,18 @@ public class BankAccount {
      * @return The current balance.
      */
     public double getCurrentBalance() {
-        return this.balance;
+        accrueInterest();
+        return Money.toDollars(this.balance.get());
+    }
+
+    /**
+     * Returns the current balance of the account in cents.
+     * 
+     * @return The current balance in cents.
+     */
+    public long getCurrentBalanceCents() {
+        accrueInterest();
+        return this.balance.get();
     }
     
     /**
@@ -159,6 +185,15 @@ public class BankAccount {
      * @return The maximum withdrawal limit.
      */
     public double getMaxWithdrawalLimit() {
+        return Money.toDollars(this.maxWithdrawalLimit);
+    }
+
+    /**
+     * Returns the maximum withdrawal limit for this account in cents.
+     * 
+     * @return The maximum withdrawal limit in cents.
+     */
+    public long getMaxWithdrawalLimitCents() {
         return this.maxWithdrawalLimit;
     }
     
@@ -172,8 +207,12 @@ public class BankAccount {
         if (maxLimit < 0) {
             throw new IllegalArgumentException("Maximum withdrawal limit cannot be negative");
         }
-        this.maxWithdrawalLimit = maxLimit;
-        recordTransaction(TransactionType.LIMIT_CHANGE, maxLimit, "Changed withdrawal limit");
+        this.maxWithdrawalLimit = Money.toCents(maxLimit);
+        recordTransaction(TransactionType.LIMIT_CHANGE, this.maxWithdrawalLimit, DescriptionTemplate.CHANGED_WITHDRAWAL_LIMIT);
+        Journal journal = journal();
+        if (journal != null) {
+            journal.logAmount(Journal.RecordType.WITHDRAWAL_LIMIT, accountNumber, this.maxWithdrawalLimit);
+        }
     }
     
     /**
@@ -182,6 +221,15 @@ public class BankAccount {
      * @return The maximum deposit limit.
      */
     public double getMaxDepositLimit() {
+        return Money.toDollars(this.maxDepositLimit);
+    }
+
+    /**
+     * Returns the maximum deposit limit for this account in cents.
+     * 
+     * @return The maximum deposit limit in cents.
+     */
+    public long getMaxDepositLimitCents() {
         return this.maxDepositLimit;
     }
     
@@ -195,8 +243,12 @@ public class BankAccount {
         if (maxLimit < 0) {
             throw new IllegalArgumentException("Maximum deposit limit cannot be negative");
         }
-        this.maxDepositLimit = maxLimit;
-        recordTransaction(TransactionType.LIMIT_CHANGE, maxLimit, "Changed deposit limit");
+        this.maxDepositLimit = Money.toCents(maxLimit);
+        recordTransaction(TransactionType.LIMIT_CHANGE, this.maxDepositLimit, DescriptionTemplate.CHANGED_DEPOSIT_LIMIT);
+        Journal journal = journal();
+        if (journal != null) {
+            journal.logAmount(Journal.RecordType.DEPOSIT_LIMIT, accountNumber, this.maxDepositLimit);
+        }
     }
 
     /**
@@ -209,17 +261,43 @@ public class BankAccount {
         if (amount < 0) {
             throw new IllegalArgumentException("Deposit amount cannot be negative");
         }
-        
-        if (amount > this.maxDepositLimit) {
-            throw new IllegalArgumentException("Deposit amount exceeds maximum limit of $" + this.maxDepositLimit);
+        depositCents(Money.toCents(amount));
+    }
+
+    /**
+     * Deposits the specified amount of cents into the account.
+     * 
+     * @param amount The amount to deposit, in cents.
+     * @throws IllegalArgumentException if the deposit amount is negative or exceeds the maximum deposit limit.
+     */
+    public void depositCents(long amount) {
+        acceptDeposit(amount);
+        Journal journal = journal();
+        if (journal != null) {
+            journal.logAmount(Journal.RecordType.DEPOSIT, accountNumber, amount);
+        }
+    }
+
+    /**
+     * Validates and credits a deposit and records it in the history, without
+     * journaling it. Transfers use this so they are journaled as one record.
+     * 
+     * @param amount The amount to deposit, in cents.
+     * @throws IllegalArgumentException if the deposit amount is negative or exceeds the maximum deposit limit.
+     */
+    private void acceptDeposit(long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Deposit amount cannot be negative");
         }
         
-        this.balance += amount;
-        if(accountType == AccountType.CHECKING) {
-            recordTransaction(TransactionType.DEPOSIT, amount, "Deposit Checking");
-        } else {
-            recordTransaction(TransactionType.DEPOSIT, amount, "Deposit Savings");
+        long limit = this.maxDepositLimit;
+        if (amount > limit) {
+            throw new IllegalArgumentException("Deposit amount exceeds maximum limit of $" + Money.toDollars(limit));
         }
+        
+        accrueInterest();
+        long newBalance = credit(amount);
+        recordTransaction(TransactionType.DEPOSIT, amount, depositTemplate(), newBalance);
     }
 
     /**
@@ -229,7 +307,7 @@ public class BankAccount {
      * @return true if the withdrawal was successful
      * @throws IllegalArgumentException if the amount is negative or exceeds withdrawal limits
      */
-    public synchronized boolean withdraw(double amount) {
+    public boolean withdraw(double amount) {
         return withdraw(amount, true); // Default to recording the transaction
     }
 
@@ -241,42 +319,213 @@ public class BankAccount {
      * @return true if the withdrawal was successful
      * @throws IllegalArgumentException if the amount is negative or exceeds withdrawal limits.
      */
-    public synchronized boolean withdraw(double amount, boolean recordTransaction) {
+    public boolean withdraw(double amount, boolean recordTransaction) {
         if (amount < 0) {
             throw new IllegalArgumentException("Withdrawal amount cannot be negative");
         }
+        return withdrawCents(Money.toCents(amount), recordTransaction);
+    }
 
-        if (accountType == AccountType.SAVINGS) {
-            throw new IllegalArgumentException("Can not withdraw from Savings Account");
+    /**
+     * Withdraws a specified amount of cents from the account, optionally recording the transaction.
+     * 
+     * @param amount The amount to withdraw, in cents.
+     * @param recordTransaction If true, record a standard withdrawal transaction.
+     * @return true if the withdrawal was successful
+     * @throws IllegalArgumentException if the amount is negative or exceeds withdrawal limits.
+     */
+    public boolean withdrawCents(long amount, boolean recordTransaction) {
+        boolean success = takeWithdrawal(amount, recordTransaction);
+        Journal journal = journal();
+        if (success && journal != null) {
+            journal.logAmount(Journal.RecordType.WITHDRAW, accountNumber, amount);
         }
-        
-        if (amount > this.maxWithdrawalLimit) {
-            throw new IllegalArgumentException("Withdrawal amount exceeds maximum limit of $" + this.maxWithdrawalLimit);
+        return success;
+    }
+
+    /**
+     * Validates and takes a withdrawal, optionally recording it in the
+     * history, without journaling it.
+     * 
+     * @param amount The amount to withdraw, in cents.
+     * @param recordTransaction If true, record a standard withdrawal transaction.
+     * @return true if the withdrawal was successful
+     * @throws IllegalArgumentException if the amount is negative or exceeds withdrawal limits.
+     */
+    private boolean takeWithdrawal(long amount, boolean recordTransaction) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Withdrawal amount cannot be negative");
         }
-        
-        if (amount > this.balance) {
+
+        long newBalance = reserve(amount);
+        if (newBalance == INSUFFICIENT_FUNDS) {
             if (recordTransaction) {
-                recordTransaction(TransactionType.FAILED, amount, "Failed withdrawal - Insufficient funds");
+                recordTransaction(TransactionType.FAILED, amount, DescriptionTemplate.FAILED_WITHDRAWAL);
             }
             return false;
         }
         
-        this.balance -= amount;
         if (recordTransaction) {
-            recordTransaction(TransactionType.WITHDRAWAL, amount, "Withdrawal");
+            recordTransaction(TransactionType.WITHDRAWAL, amount, DescriptionTemplate.WITHDRAWAL, newBalance);
         }
         return true;
     }
 
     /**
-     * Transfers funds from this account to another account
+     * Adds cents to the balance with a CAS retry loop.
+     * 
+     * @param amount The amount to add, in cents.
+     * @return The balance after the credit.
+     */
+    private long credit(long amount) {
+        while (true) {
+            long current = balance.get();
+            long updated = Money.add(current, amount);
+            if (balance.compareAndSet(current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Takes cents out of the balance with a CAS retry loop, enforcing the
+     * SAVINGS no-withdraw rule, the withdrawal limit and sufficient funds.
+     * 
+     * @param amount The amount to take, in cents.
+     * @return The balance after the withdrawal, or INSUFFICIENT_FUNDS if the balance is too low.
+     * @throws IllegalArgumentException if this is a savings account or the amount exceeds the withdrawal limit.
+     */
+    private long reserve(long amount) {
+        return reserve(amount, amount);
+    }
+
+    /**
+     * Takes cents out of the balance for several payments at once. Only the
+     * single payment is checked against the withdrawal limit.
+     * 
+     * @param amount The total amount to take, in cents.
+     * @param payment The amount of each payment in the total, in cents.
+     * @return The balance after the withdrawal, or INSUFFICIENT_FUNDS if the balance is too low.
+     * @throws IllegalArgumentException if this is a savings account or the payment exceeds the withdrawal limit.
+     */
+    private long reserve(long amount, long payment) {
+        if (accountType == AccountType.SAVINGS) {
+            throw new IllegalArgumentException("Can not withdraw from Savings Account");
+        }
+        
+        long limit = this.maxWithdrawalLimit;
+        if (payment > limit) {
+            throw new IllegalArgumentException("Withdrawal amount exceeds maximum limit of $" + Money.toDollars(limit));
+        }
+        
+        while (true) {
+            long current = balance.get();
+            if (amount > current) {
+                return INSUFFICIENT_FUNDS;
+            }
+            long updated = Money.subtract(current, amount);
+            if (balance.compareAndSet(current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Posts the interest earned since the last accrual, if the database
+     * holding this account accrues interest lazily (see InterestAccrual).
+     * Called before the balance is read or credited, so the interest for
+     * the elapsed periods is earned on the balance they elapsed with.
+     * 
+     * The periods are claimed with a CAS on lastAccrualMillis before the
+     * balance they are paid on is used. A racing deposit also accrues first,
+     * so it either claims the periods itself or is credited after the claim
+     * and is not paid interest for them.
+     * 
+     * @return The interest posted, in cents
+     */
+    long accrueInterest() {
+        BankAccountDatabase db = this.database;
+        InterestAccrual accrual = db == null ? null : db.getInterestAccrual();
+        if (accrual == null || accountType != AccountType.SAVINGS || frozen) {
+            return 0;
+        }
+        long now = BankClock.current().millis();
+        long period = accrual.getPeriodMillis();
+        while (true) {
+            long stored = lastAccrualMillis;
+            long from = stored != 0 ? stored : accrual.getStartMillis();
+            long periods = (now - from) / period;
+            if (periods <= 0) {
+                return 0;
+            }
+            long balanceCents = balance.get();
+            long through = from + periods * period;
+            if (LAST_ACCRUAL.compareAndSet(this, stored, through)) {
+                long interest = accrual.interestFor(balanceCents, periods);
+                long newBalance = credit(interest);
+                if (interest > 0) {
+                    recordTransaction(TransactionType.INTEREST, interest, DescriptionTemplate.INTEREST, newBalance);
+                }
+                Journal journal = journal();
+                if (journal != null) {
+                    journal.logInterestAccrual(accountNumber, interest, through);
+                }
+                return interest;
+            }
+        }
+    }
+
+    /**
+     * Starts counting accrual periods again from now, without paying for the
+     * time before. Used when a frozen account is unfrozen, since frozen
+     * accounts earn no interest.
+     */
+    void restartAccrual() {
+        BankAccountDatabase db = this.database;
+        if (db != null && db.getInterestAccrual() != null) {
+            lastAccrualMillis = BankClock.current().millis();
+        }
+    }
+
+    long getLastAccrualMillis() {
+        return lastAccrualMillis;
+    }
+
+    /**
+     * Transfers funds from this account to another account.
+     * 
+     * The transfer is a lock-free two-phase reservation: the amount is first
+     * taken from this account's balance with a CAS, then credited to the
+     * destination. If the destination rejects the deposit the reservation is
+     * refunded; the refund is a plain credit, so this account's own deposit
+     * limit cannot block it. No account monitor is held, so opposing
+     * transfers between the same pair of accounts can never deadlock. The
+     * sum of all balances is conserved once the transfer completes; while it
+     * is in flight the amount is in neither account, so a concurrent audit
+     * that sums balances can see it missing.
      * 
      * @param destinationAccount The account to transfer funds to
      * @param amount The amount to transfer
      * @return true if transfer was successful
      * @throws IllegalArgumentException if amount is negative, destination is null, or exceeds withdrawal limit
      */
-    public synchronized boolean transfer(BankAccount destinationAccount, double amount) {
+    public boolean transfer(BankAccount destinationAccount, double amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Transfer amount cannot be negative");
+        }
+        return transferCents(destinationAccount, Money.toCents(amount));
+    }
+
+    /**
+     * Transfers the given number of cents from this account to another account.
+     * 
+     * @param destinationAccount The account to transfer funds to
+     * @param amount The amount to transfer, in cents
+     * @return true if transfer was successful
+     * @throws IllegalArgumentException if amount is negative, destination is null, or exceeds withdrawal limit
+     * @see #transfer(BankAccount, double)
+     */
+    public boolean transferCents(BankAccount destinationAccount, long amount) {
         if (amount < 0) {
             throw new IllegalArgumentException("Transfer amount cannot be negative");
         }
@@ -288,77 +537,501 @@ public class BankAccount {
         }
 
         // Check withdrawal limit before attempting the withdrawal part of the transfer
-        if (amount > maxWithdrawalLimit) {
-            recordTransaction(TransactionType.FAILED, amount, "Transfer failed: Exceeds withdrawal limit");
-            throw new IllegalArgumentException("Transfer amount " + amount + " exceeds withdrawal limit of " + maxWithdrawalLimit);
+        long limit = maxWithdrawalLimit;
+        if (amount > limit) {
+            recordTransaction(TransactionType.FAILED, amount, DescriptionTemplate.TRANSFER_OVER_LIMIT);
+            throw new IllegalArgumentException("Transfer amount " + Money.toDollars(amount) + " exceeds withdrawal limit of " + Money.toDollars(limit));
         }
 
-        // Withdraw from source (this account)
-        if (!withdraw(amount, false)) {
+        // Phase one: reserve the amount from the source (this account)
+        long newBalance = reserve(amount);
+        if (newBalance == INSUFFICIENT_FUNDS) {
             // If withdrawal fails due to insufficient funds
-            recordTransaction(TransactionType.FAILED, amount, "Transfer failed: Insufficient funds");
+            recordTransaction(TransactionType.FAILED, amount, DescriptionTemplate.TRANSFER_INSUFFICIENT_FUNDS);
             return false;
         }
         
         // Record the withdrawal part of the transfer
-        recordTransaction(TransactionType.WITHDRAWAL, amount, "Withdrawal for transfer");
+        recordTransaction(TransactionType.WITHDRAWAL, amount, DescriptionTemplate.WITHDRAWAL_FOR_TRANSFER, newBalance);
         
-        // Deposit into destination
+        // Phase two: deposit into destination
         try {
-            destinationAccount.deposit(amount); // This will record its own deposit transaction
+            destinationAccount.acceptDeposit(amount); // This will record its own deposit transaction
             // Record successful transfer transaction in this account's history
-            recordTransaction(TransactionType.TRANSFER, amount, "Transfer to account " + destinationAccount.hashCode());
+            recordTransaction(TransactionType.TRANSFER, amount, DescriptionTemplate.TRANSFER_TO, null, destinationAccount.getAccountNumber());
+            journalTransfer(destinationAccount, amount);
             return true;
         } catch (IllegalArgumentException depositError) {
             // If deposit fails (e.g., exceeds destination's deposit limit), we need to refund the source account
             System.err.println("Transfer failed during deposit phase: " + depositError.getMessage() + ". Refunding source account.");
-            try {
-                deposit(amount); // Refund the source account
-                recordTransaction(TransactionType.FAILED, amount, "Transfer failed: Destination rejected deposit. Refunded.");
-            } catch (IllegalArgumentException refundError) {
-                // This should ideally not happen if the deposit limit wasn't violated by the refund
-                System.err.println("CRITICAL ERROR: Failed to refund source account after failed transfer deposit. Amount: " + amount + ". Error: " + refundError.getMessage());
-            }
+            // Refund the source account. The amount left this account a moment
+            // ago, so it is credited back without the deposit limit check.
+            long refunded = credit(amount);
+            recordTransaction(TransactionType.DEPOSIT, amount, depositTemplate(), refunded);
+            recordTransaction(TransactionType.FAILED, amount, DescriptionTemplate.TRANSFER_REFUNDED);
             // Re-throw the original deposit error to indicate the transfer failure
             throw depositError; 
         }
     }
 
+    /**
+     * Journals a completed transfer as a single record. A destination outside
+     * the database cannot be replayed, so the transfer is journaled as a
+     * withdrawal from this account instead.
+     */
+    void journalTransfer(BankAccount destinationAccount, long amount) {
+        Journal journal = journal();
+        if (journal == null) {
+            return;
+        }
+        if (destinationAccount.database == this.database) {
+            journal.logTransfer(accountNumber, destinationAccount.accountNumber, amount);
+        } else {
+            journal.logAmount(Journal.RecordType.WITHDRAW, accountNumber, amount);
+        }
+    }
+
+    /**
+     * Links this account to the database that holds it, and queues any
+     * transfers and recurring payments scheduled before then with the
+     * database's TransferScheduler and RecurringPaymentScheduler.
+     * Called by BankAccountDatabase when the account is added or removed.
+     * 
+     * @param database The database holding this account, or null to detach.
+     */
+    void attach(BankAccountDatabase database) {
+        this.database = database;
+        if (database != null) {
+            transactionHistory.setArchive(database.getTransactionArchive());
+            if (!scheduledTransfers.isEmpty()) { // Most accounts have none; skip the copy
+                for (ScheduledTransfer transfer : getScheduledTransfers()) {
+                    database.getTransferScheduler().schedule(transfer);
+                }
+            }
+            if (!recurringPayments.isEmpty()) {
+                for (RecurringPayment payment : getRecurringPayments()) {
+                    database.getRecurringPaymentScheduler().schedule(payment);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether this account is in a database.
+     */
+    boolean isAttached() {
+        return database != null;
+    }
+
+    /**
+     * Gets the bank-wide scheduler of the database holding this account, if any.
+     */
+    private TransferScheduler transferScheduler() {
+        BankAccountDatabase db = this.database;
+        return db == null ? null : db.getTransferScheduler();
+    }
+
+    /**
+     * Queues a recurring payment with the database holding this account, if any.
+     */
+    private void queueRecurringPayment(RecurringPayment payment) {
+        BankAccountDatabase db = this.database;
+        if (db != null) {
+            db.getRecurringPaymentScheduler().schedule(payment);
+        }
+    }
+
+    /**
+     * Gives this account a number from the allocator unless it already has one.
+     * 
+     * @param allocator The allocator to take a number from.
+     * @return The account's number.
+     */
+    int assignAccountNumber(AccountNumberAllocator allocator) {
+        int number = accountNumber;
+        if (number != 0) {
+            return number;
+        }
+        synchronized (this) {
+            if (accountNumber == 0) {
+                accountNumber = allocator.next();
+            }
+            return accountNumber;
+        }
+    }
+
+    /**
+     * Sets the number of an account restored from a snapshot or the journal.
+     */
+    void restoreAccountNumber(int number) {
+        this.accountNumber = number;
+    }
+
+    /**
+     * Reads the balance without accruing interest first, for snapshots.
+     */
+    long balanceCents() {
+        return balance.get();
+    }
+
+    /**
+     * Overwrites the balance, limits and type with values from a snapshot.
+     * Nothing is recorded in the history or the journal.
+     */
+    void restoreState(long balanceCents, long maxWithdrawalCents, long maxDepositCents, AccountType accountType) {
+        this.balance.set(balanceCents);
+        this.maxWithdrawalLimit = maxWithdrawalCents;
+        this.maxDepositLimit = maxDepositCents;
+        this.accountType = accountType;
+    }
+
+    /**
+     * Adds a scheduled transfer restored from a snapshot or the journal,
+     * skipping the future-date check.
+     */
+    void restoreScheduledTransfer(ScheduledTransfer transfer) {
+        scheduledTransfers.add(transfer);
+        TransferScheduler scheduler = transferScheduler();
+        if (scheduler != null) {
+            scheduler.schedule(transfer);
+        }
+    }
+
+    /**
+     * Replays a SCHEDULED_TRANSFER_DONE record: drops the first pending
+     * transfer with the same destination, amount and due time. Transfers
+     * that match on all three are interchangeable, so any of them will do.
+     */
+    void replayScheduledTransferDone(int destinationNumber, long amount, long scheduledMillis) {
+        synchronized (scheduledTransfers) {
+            for (ScheduledTransfer transfer : scheduledTransfers) {
+                if (transfer.getDestinationAccount().getAccountNumber() == destinationNumber
+                        && transfer.getAmountCents() == amount
+                        && transfer.getScheduledDate().getTime() == scheduledMillis
+                        && transfer.cancel()) {
+                    scheduledTransfers.remove(transfer);
+                    TransferScheduler scheduler = transferScheduler();
+                    if (scheduler != null) {
+                        scheduler.discarded();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an executed transfer from this account and journals it as done.
+     * Called by the TransferScheduler and processScheduledTransfers.
+     */
+    void scheduledTransferCompleted(ScheduledTransfer transfer) {
+        scheduledTransfers.remove(transfer);
+        Journal journal = journal();
+        if (journal != null && transfer.getDestinationAccount().database == this.database) {
+            journal.logScheduledTransferDone(accountNumber, transfer);
+        }
+    }
+
+    /**
+     * Adds a recurring payment restored from a snapshot or the journal.
+     */
+    void restoreRecurringPayment(RecurringPayment payment) {
+        recurringPayments.add(payment);
+        queueRecurringPayment(payment);
+    }
+
+    /*
+     * Journal replay. Records are appended after their CAS lands, so two
+     * concurrent operations can appear in the journal in the opposite order
+     * to the one they were applied in. Replay therefore applies each amount
+     * without re-checking limits or funds: the journal says it succeeded,
+     * and balances are sums, so the final state does not depend on order.
+     * History entries carry the record's timestamp, not the replay time.
+     */
+
+    void replayOpening(long timestamp) {
+        long opening = balance.get();
+        if (opening > 0) {
+            transactionHistory.append(TransactionType.DEPOSIT, opening, DescriptionTemplate.INITIAL_DEPOSIT, null, 0,
+                timestamp, opening);
+        }
+    }
+
+    void replayDeposit(long amount, long timestamp) {
+        transactionHistory.append(TransactionType.DEPOSIT, amount, depositTemplate(), null, 0, timestamp, credit(amount));
+    }
+
+    void replayInterestAccrual(long amount, long throughMillis, long timestamp) {
+        long newBalance = credit(amount);
+        if (amount > 0) {
+            transactionHistory.append(TransactionType.INTEREST, amount, DescriptionTemplate.INTEREST, null, 0, timestamp,
+                newBalance);
+        }
+        lastAccrualMillis = throughMillis;
+    }
+
+    /**
+     * Adds a historical transaction read by BulkImporter to the history and
+     * journals it, without moving the balance.
+     */
+    void importTransaction(TransactionType type, long amount, String description, long timestamp, long balanceAfter) {
+        transactionHistory.append(type, amount, DescriptionTemplate.TEXT, description, 0, timestamp, balanceAfter);
+        Journal journal = journal();
+        if (journal != null) {
+            journal.logImportedTransaction(accountNumber, type, amount, description, timestamp, balanceAfter);
+        }
+    }
+
+    void restoreLastAccrual(long millis) {
+        lastAccrualMillis = millis;
+    }
+
+    void replayWithdrawal(long amount, long timestamp) {
+        transactionHistory.append(TransactionType.WITHDRAWAL, amount, DescriptionTemplate.WITHDRAWAL, null, 0, timestamp,
+            credit(-amount));
+    }
+
+    void replayTransfer(BankAccount destinationAccount, long amount, long timestamp) {
+        transactionHistory.append(TransactionType.WITHDRAWAL, amount, DescriptionTemplate.WITHDRAWAL_FOR_TRANSFER, null, 0,
+            timestamp, credit(-amount));
+        destinationAccount.replayDeposit(amount, timestamp);
+        transactionHistory.append(TransactionType.TRANSFER, amount, DescriptionTemplate.TRANSFER_TO, null,
+            destinationAccount.getAccountNumber(), timestamp, balance.get());
+    }
+
+    void replayRecurringPayment(int index, long amount, long nextPaymentMillis, long timestamp) {
+        RecurringPayment payment = recurringPayments.get(index);
+        transactionHistory.append(TransactionType.RECURRING_PAYMENT, amount, DescriptionTemplate.RECURRING_PAYMENT,
+            payment.getDescription(), 0, timestamp, credit(-amount));
+        payment.setNextPaymentDate(new Date(nextPaymentMillis));
+    }
+
+    void replayRecurringCatchUp(int index, long amount, int occurrences, long nextPaymentMillis, long timestamp) {
+        RecurringPayment payment = recurringPayments.get(index);
+        long newBalance = credit(-Math.multiplyExact(amount, (long) occurrences));
+        transactionHistory.appendDebits(TransactionType.RECURRING_PAYMENT, amount, DescriptionTemplate.RECURRING_PAYMENT,
+            payment.getDescription(), timestamp, newBalance, occurrences);
+        payment.setNextPaymentDate(new Date(nextPaymentMillis));
+    }
+
+    /**
+     * Adds a transaction read from a snapshot to the history, without moving
+     * the balance or journaling it.
+     */
+    void restoreTransaction(TransactionType type, long amount, DescriptionTemplate template, String text, int number,
+            long timestamp, long balanceAfter) {
+        transactionHistory.append(type, amount, template, text, number, timestamp, balanceAfter);
+    }
+
+    /*
+     * Netted settlement (see TransferNetting). A batch of transfers moves
+     * each account's balance once, by its net position, and then records
+     * the individual transfers in its history.
+     */
+
+    /**
+     * Moves the balance by a net position. A negative position is taken
+     * only if the funds are there; limits were checked per transfer.
+     * 
+     * @return The new balance, or INSUFFICIENT_FUNDS
+     */
+    long applyNetPosition(long net) {
+        if (net < 0) {
+            return reserve(-net, 0);
+        }
+        accrueInterest();
+        return credit(net);
+    }
+
+    void revertNetPosition(long net) {
+        credit(-net);
+    }
+
+    void recordNettedTransactions(TransactionType[] types, long[] amounts, DescriptionTemplate[] templates, int[] numbers,
+            long[] balances, int count) {
+        transactionHistory.appendBatch(types, amounts, templates, numbers, balances, BankClock.current().millis(), count);
+    }
+
+    DescriptionTemplate depositTemplate() {
+        return accountType == AccountType.CHECKING ? DescriptionTemplate.DEPOSIT_CHECKING : DescriptionTemplate.DEPOSIT_SAVINGS;
+    }
+
+    void replayLimits(long maxWithdrawalCents, long maxDepositCents) {
+        this.maxWithdrawalLimit = maxWithdrawalCents;
+        this.maxDepositLimit = maxDepositCents;
+    }
+
+    /**
+     * Gets this account's number. An account gets its number when it is
+     * first added to a database or registry, and keeps it for life.
+     * 
+     * @return The account number, or 0 if none has been assigned yet.
+     */
+    public int getAccountNumber() {
+        return accountNumber;
+    }
+
+    /**
+     * Gets the journal of the database holding this account, if any.
+     * 
+     * @return The journal, or null if mutations are not journaled.
+     */
+    private Journal journal() {
+        BankAccountDatabase db = this.database;
+        return db == null ? null : db.getJournal();
+    }
+
     /**
      * Gets the transaction history for this account.
      * 
      * @return A list of all transactions for this account.
      */
     public List<Transaction> getTransactionHistory() {
-        return new ArrayList<>(transactionHistory); // Return a copy to prevent modification
+        return transactionHistory.toList(); // Return a copy to prevent modification
+    }
+
+    /**
+     * Gets one page of the transaction history.
+     * 
+     * Pass TransactionPage.FIRST_PAGE to start, then the page's next cursor
+     * to continue. Cursors stay valid while new transactions are recorded.
+     * 
+     * @param cursor Where to resume, or TransactionPage.FIRST_PAGE.
+     * @param pageSize The maximum number of transactions on the page.
+     * @param order NEWEST_FIRST or OLDEST_FIRST.
+     * @return The requested page and the cursor for the next one.
+     * @throws IllegalArgumentException if the page size is not positive.
+     */
+    public TransactionPage getTransactionPage(long cursor, int pageSize, TransactionPage.Order order) {
+        return transactionHistory.page(cursor, pageSize, order);
+    }
+
+    /**
+     * Gets the number of transactions currently in the history.
+     * 
+     * @return The number of recorded transactions.
+     */
+    public int getTransactionCount() {
+        return transactionHistory.size();
+    }
+
+    /**
+     * Runs an action for every transaction, oldest first, without copying
+     * the history. Transactions recorded while the walk runs are not visited.
+     * 
+     * @param action The action to run for each transaction.
+     */
+    public void forEachTransaction(Consumer<? super Transaction> action) {
+        transactionHistory.forEach(action);
+    }
+
+    /**
+     * Gets a spliterator over the history as it is when the call is made,
+     * oldest first. It can be split for parallel streams and is not affected
+     * by transactions recorded afterwards.
+     * 
+     * @return A spliterator over the transaction history.
+     */
+    public Spliterator<Transaction> transactionSpliterator() {
+        return transactionHistory.spliterator();
+    }
+
+    /**
+     * Writes the transaction history in TransactionCodec's format, from the
+     * given position on, until the history ends or the buffer is too full for
+     * another transaction. Call again with the returned position to continue.
+     * 
+     * @param out The buffer to write to.
+     * @param from The position of the first transaction to write, 0 being the oldest.
+     * @param dictionary Where description ids come from.
+     * @return The position of the first transaction that was not written.
+     */
+    public int encodeTransactionHistory(ByteBuffer out, int from, DescriptionDictionary dictionary) {
+        return transactionHistory.encode(out, from, dictionary);
+    }
+
+    /**
+     * Appends transactions written by encodeTransactionHistory to the
+     * history, for snapshots. The balance does not move.
+     */
+    long decodeTransactionHistory(ByteBuffer in, DescriptionDictionary dictionary, long previousTimestamp) {
+        return transactionHistory.decode(in, dictionary, previousTimestamp);
+    }
+
+    /**
+     * Moves older history entries to an archive, keeping only its hot
+     * entries on the heap, or back onto the heap when given null.
+     */
+    void setTransactionArchive(TransactionArchive archive) {
+        transactionHistory.setArchive(archive);
+    }
+
+    /**
+     * Walks the history entry by entry without creating Transactions, for
+     * exports. Transactions recorded while the walk runs are not visited.
+     */
+    void forEachTransactionEntry(TransactionLog.EntryVisitor visitor) {
+        transactionHistory.forEachEntry(visitor);
     }
 
     /**
      * Gets the transaction history for this account filtered by type.
+     * Uses a per-type index, so the cost depends only on the number of matches.
      * 
      * @param type The type of transactions to filter by.
      * @return A list of transactions of the specified type.
      */
     public List<Transaction> getTransactionHistoryByType(TransactionType type) {
-        List<Transaction> filteredTransactions = new ArrayList<>();
-        for (Transaction transaction : transactionHistory) {
-            if (transaction.getType() == type) {
-                filteredTransactions.add(transaction);
-            }
-        }
-        return filteredTransactions;
+        return transactionHistory.filter(type);
+    }
+
+    /**
+     * Gets the number of transactions of the given type.
+     * 
+     * @param type The type of transactions to count.
+     * @return The number of transactions of that type.
+     */
+    public int getTransactionCountByType(TransactionType type) {
+        return transactionHistory.count(type);
     }
 
     /**
      * Records a transaction in the transaction history.
      * 
      * @param type The type of transaction.
-     * @param amount The amount involved in the transaction.
-     * @param description A description of the transaction.
+     * @param amount The amount involved in the transaction, in cents.
+     * @param template The description template, one without arguments.
+     */
+    private void recordTransaction(TransactionType type, long amount, DescriptionTemplate template) {
+        recordTransaction(type, amount, template, null, 0, this.balance.get());
+    }
+
+    private void recordTransaction(TransactionType type, long amount, DescriptionTemplate template, long balanceAfter) {
+        recordTransaction(type, amount, template, null, 0, balanceAfter);
+    }
+
+    private void recordTransaction(TransactionType type, long amount, DescriptionTemplate template, String text, int number) {
+        recordTransaction(type, amount, template, text, number, this.balance.get());
+    }
+
+    /**
+     * Records a transaction in the transaction history with the balance it produced.
+     * 
+     * The history log has its own small lock, so concurrent balance updates
+     * only serialize on the append, never on the balance itself. The
+     * description is kept as its template and arguments and only rendered
+     * when the transaction is read.
+     * 
+     * @param type The type of transaction.
+     * @param amount The amount involved in the transaction, in cents.
+     * @param template The description template.
+     * @param text The template's text argument, or null.
+     * @param number The template's number argument, or 0.
+     * @param balanceAfter The balance right after this transaction, in cents.
      */
-    private void recordTransaction(TransactionType type, double amount, String description) {
-        Transaction transaction = new Transaction(type, amount, description, new Date(), this.balance);
-        transactionHistory.add(transaction);
+    private void recordTransaction(TransactionType type, long amount, DescriptionTemplate template, String text, int number,
+            long balanceAfter) {
+        transactionHistory.append(type, amount, template, text, number, BankClock.current().millis(), balanceAfter);
     }
 
     /**
@@ -366,7 +1039,7 @@ public class BankAccount {
      */
     public void clearTransactionHistory() {
         transactionHistory.clear();
-        recordTransaction(TransactionType.ADMIN, 0, "Transaction history cleared");
+        recordTransaction(TransactionType.ADMIN, 0L, DescriptionTemplate.HISTORY_CLEARED);
     }
 
     /**
@@ -388,13 +1061,23 @@ public class BankAccount {
         if (scheduledDate == null) {
             throw new IllegalArgumentException("Scheduled date cannot be null");
         }
-        if (scheduledDate.before(new Date())) {
+        if (scheduledDate.getTime() < BankClock.current().millis()) {
             throw new IllegalArgumentException("Scheduled date must be in the future");
         }
 
         ScheduledTransfer scheduledTransfer = new ScheduledTransfer(this, destination, amount, scheduledDate, description);
         scheduledTransfers.add(scheduledTransfer);
-        recordTransaction(TransactionType.SCHEDULED, amount, "Scheduled transfer: " + description);
+        TransferScheduler scheduler = transferScheduler();
+        if (scheduler != null) {
+            scheduler.schedule(scheduledTransfer);
+        }
+        recordTransaction(TransactionType.SCHEDULED, scheduledTransfer.getAmountCents(), DescriptionTemplate.SCHEDULED_TRANSFER,
+            description, 0);
+        Journal journal = journal();
+        if (journal != null && destination.database == this.database) {
+            journal.logScheduleTransfer(accountNumber, destination.accountNumber, scheduledTransfer.getAmountCents(),
+                scheduledDate.getTime(), description);
+        }
         return scheduledTransfer;
     }
 
@@ -406,14 +1089,15 @@ public class BankAccount {
      */
     public int processScheduledTransfers(Date currentDate) {
         int processed = 0;
-        Iterator<ScheduledTransfer> iterator = scheduledTransfers.iterator();
-        
-        while (iterator.hasNext()) {
-            ScheduledTransfer transfer = iterator.next();
+        TransferScheduler scheduler = transferScheduler();
+        for (ScheduledTransfer transfer : getScheduledTransfers()) {
             if (transfer.isReadyToExecute(currentDate)) {
                 if (transfer.execute()) {
                     processed++;
-                    iterator.remove();
+                    scheduledTransferCompleted(transfer);
+                    if (scheduler != null) {
+                        scheduler.discarded(); // Still in the bank-wide queue
+                    }
                 }
             }
         }
@@ -421,13 +1105,37 @@ public class BankAccount {
         return processed;
     }
 
+    /**
+     * Cancels a pending scheduled transfer.
+     * 
+     * @param transfer The transfer to cancel
+     * @return true if the transfer was pending and is now cancelled
+     */
+    public boolean cancelScheduledTransfer(ScheduledTransfer transfer) {
+        if (transfer.getSourceAccount() != this || !transfer.cancel()) {
+            return false;
+        }
+        scheduledTransfers.remove(transfer);
+        Journal journal = journal();
+        if (journal != null && transfer.getDestinationAccount().database == this.database) {
+            journal.logScheduledTransferDone(accountNumber, transfer);
+        }
+        TransferScheduler scheduler = transferScheduler();
+        if (scheduler != null) {
+            scheduler.discarded();
+        }
+        return true;
+    }
+
     /**
      * Gets all scheduled transfers for this account.
      * 
      * @return List of scheduled transfers
      */
     public List<ScheduledTransfer> getScheduledTransfers() {
-        return new ArrayList<>(scheduledTransfers);
+        synchronized (scheduledTransfers) {
+            return new ArrayList<>(scheduledTransfers);
+        }
     }
 
     /**
@@ -446,52 +1154,76 @@ public class BankAccount {
         if (amount <= 0) {
             throw new IllegalArgumentException("Payment amount must be positive");
         }
-        if (amount > maxWithdrawalLimit) {
+        if (Money.toCents(amount) > maxWithdrawalLimit) {
             throw new IllegalArgumentException("Payment amount exceeds withdrawal limit");
         }
         
         RecurringPayment payment = new RecurringPayment(amount, description, startDate, 
                                                        frequency, recipientAccountId, this);
         recurringPayments.add(payment);
+        Journal journal = journal();
+        if (journal != null) {
+            journal.logScheduleRecurring(accountNumber, payment);
+        }
+        queueRecurringPayment(payment);
         return payment;
     }
 
     /**
-     * Utility method to get the current Calendar instance for tests or real time.
+     * Utility method to get today's date from the current BankClock as a Calendar.
      * Public access to allow testing from other packages.
      * 
-     * @return A Calendar instance set to the current time or test time if specified
+     * @return A Calendar instance set to midnight today in GMT-5
      */
     public Calendar getCurrentCalendar() {
         Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT-5")); // Use GMT-5
-        String testTime = System.getProperty("test.current.time");
-        if (testTime != null && !testTime.trim().isEmpty()) {
-            try {
-                cal.setTimeInMillis(Long.parseLong(testTime));
-            } catch (NumberFormatException e) {
-                System.err.println("[BankAccount] WARN: Could not parse test time property '" + testTime + "'. Using real time.");
-                // Fall through to use real time
-            }
-        } // Otherwise, use real time by default
-
-        // Set to midnight for consistent date comparisons
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
+        cal.setTimeInMillis(RecurringPayment.toMillis(getCurrentEpochDay())); // Midnight, for consistent date comparisons
         return cal;
     }
 
+    /**
+     * Gets today's date as an epoch day in GMT-5 (see RecurringPayment.ZONE),
+     * read from the current BankClock.
+     * 
+     * @return Days since 1970-01-01 in GMT-5
+     */
+    public long getCurrentEpochDay() {
+        return BankClock.current().epochDay();
+    }
+
     public void cancelRecurringPayment(RecurringPayment payment) {
-        if (recurringPayments.contains(payment)) {
+        int index = recurringPayments.indexOf(payment);
+        if (index >= 0) {
             payment.setActive(false);
+            Journal journal = journal();
+            if (journal != null) {
+                journal.logIndex(Journal.RecordType.CANCEL_RECURRING, accountNumber, index);
+            }
         } else {
             System.out.println("Payment not found in scheduled list.");
         }
     }
 
+    /**
+     * Journals a change to the catch-up policy of one of this account's
+     * recurring payments. Payments not scheduled on this account (for
+     * example while they are being restored) are not journaled.
+     */
+    void journalCatchUpPolicy(RecurringPayment payment) {
+        Journal journal = journal();
+        if (journal == null) {
+            return;
+        }
+        int index = recurringPayments.indexOf(payment);
+        if (index >= 0) {
+            journal.logCatchUpPolicy(accountNumber, index, payment.getCatchUpPolicy());
+        }
+    }
+
     public List<RecurringPayment> getRecurringPayments() {
-        return new ArrayList<>(recurringPayments); // Return a copy
+        synchronized (recurringPayments) {
+            return new ArrayList<>(recurringPayments); // Return a copy
+        }
     }
 
     /**
@@ -516,42 +1248,166 @@ public class BankAccount {
     public int processRecurringPayments() {
         int paymentsProcessed = 0;
         // Get the current time (respecting test property) ONCE for this processing run
-        Calendar now = getCurrentCalendar(); 
-        System.out.println("[ProcessRecurringPayments] Processing with 'now' = " + now.getTime()); // Optional: Debugging
+        long today = getCurrentEpochDay();
+        System.out.println("[ProcessRecurringPayments] Processing with 'now' = " + new Date(RecurringPayment.toMillis(today))); // Optional: Debugging
 
-        // Iterate using an iterator to allow removal during iteration if needed (though not strictly necessary here as we only deactivate)
-        Iterator<RecurringPayment> iterator = recurringPayments.iterator();
-        while (iterator.hasNext()) {
-            RecurringPayment payment = iterator.next();
+        // Recipients in this account's database are credited once the payments are taken
+        BankAccountDatabase db = this.database;
+        RecurringPaymentSettlement settlement = db == null ? null : new RecurringPaymentSettlement(db);
+
+        // Iterate over a copy, the RecurringPaymentScheduler may add to the list concurrently
+        for (RecurringPayment payment : getRecurringPayments()) {
             System.out.println("[ProcessRecurringPayments] Checking payment: " + payment.getDescription() + ", Active: " + payment.isActive()); // Optional: Debugging
 
-            // Pass 'now' to isPaymentDue
-            if (payment.isActive() && payment.isPaymentDue(now)) { 
+            // Pass 'today' to isPaymentDue
+            if (payment.isPaymentDue(today)) {
                 System.out.println("[ProcessRecurringPayments] Payment DUE: " + payment.getDescription() + ", Amount: " + payment.getAmount()); // Optional: Debugging
-                try {
-                    // Withdraw without recording a 'Withdrawal' transaction here
-                    boolean withdrawalSuccess = withdraw(payment.getAmount(), false);
-                    if (withdrawalSuccess) {
-                        // Explicitly record as a RECURRING_PAYMENT
-                        recordTransaction(TransactionType.RECURRING_PAYMENT, payment.getAmount(), "Recurring payment: " + payment.getDescription());
-                        System.out.println("[ProcessRecurringPayments] Payment SUCCESS: " + payment.getDescription()); // Optional: Debugging
-                        // Pass 'now' to updateNextPaymentDate
-                        payment.updateNextPaymentDate(now); 
-                        System.out.println("[ProcessRecurringPayments] Updated next payment date for " + payment.getDescription() + " to: " + payment.getNextPaymentDate()); // Optional: Debugging
-                        paymentsProcessed++;
-                    } else {
-                        // Log the error but continue processing others
-                        // Record failed payment transaction
-                        recordTransaction(TransactionType.FAILED, payment.getAmount(), "Failed recurring payment '" + payment.getDescription() + "': Insufficient funds");
-                        System.err.println("Insufficient funds for recurring payment '" + payment.getDescription() + "'");
+                long paid = runRecurringPayment(payment, today);
+                if (paid > 0) {
+                    if (settlement != null) {
+                        settlement.add(this, payment, paid);
                     }
-                } catch (Exception e) { // Catch other potential exceptions during withdrawal
-                    // Record failed payment transaction
-                    recordTransaction(TransactionType.FAILED, payment.getAmount(), "Failed recurring payment '" + payment.getDescription() + "': " + e.getMessage());
-                    System.err.println("Error processing recurring payment '" + payment.getDescription() + "': " + e.getMessage());
+                    System.out.println("[ProcessRecurringPayments] Payment SUCCESS: " + payment.getDescription()); // Optional: Debugging
+                    System.out.println("[ProcessRecurringPayments] Updated next payment date for " + payment.getDescription() + " to: " + payment.getNextPaymentDate()); // Optional: Debugging
+                    paymentsProcessed++;
                 }
             }
         }
+        if (settlement != null) {
+            settlement.settle();
+        }
         return paymentsProcessed;
     }
+
+    /**
+     * Makes one recurring payment if it is still due, and advances its next
+     * payment date past 'today'. Used by processRecurringPayments and the
+     * RecurringPaymentScheduler; the payment is locked while it runs so the
+     * two can never both take the same installment.
+     * 
+     * A payment that has missed several periods and uses
+     * CatchUpPolicy.POST_MISSED pays all of them with one withdrawal and
+     * records one transaction per missed period.
+     * 
+     * @param payment The payment to make
+     * @param today The current day, as an epoch day in GMT-5
+     * @return The amount taken in cents, or 0 if the payment was not made
+     */
+    long runRecurringPayment(RecurringPayment payment, long today) {
+        synchronized (payment) {
+            if (!payment.isPaymentDue(today)) {
+                return 0;
+            }
+            long occurrences = payment.getCatchUpPolicy() == RecurringPayment.CatchUpPolicy.POST_MISSED
+                ? payment.getDueOccurrences(today) : 1;
+            if (occurrences > 1) {
+                return runMissedRecurringPayments(payment, today, occurrences);
+            }
+            try {
+                // Withdraw without recording a 'Withdrawal' transaction here
+                long newBalance = reserve(payment.getAmountCents());
+                if (newBalance != INSUFFICIENT_FUNDS) {
+                    // Explicitly record as a RECURRING_PAYMENT, with the balance this withdrawal left
+                    recordTransaction(TransactionType.RECURRING_PAYMENT, payment.getAmountCents(), DescriptionTemplate.RECURRING_PAYMENT,
+                        payment.getDescription(), 0, newBalance);
+                    payment.updateNextPaymentDate(today);
+                    Journal journal = journal();
+                    if (journal != null) {
+                        journal.logRecurringPayment(accountNumber, recurringPayments.indexOf(payment),
+                            payment.getAmountCents(), RecurringPayment.toMillis(payment.getNextPaymentDay()));
+                    }
+                    return payment.getAmountCents();
+                }
+                // Record failed payment transaction
+                recordTransaction(TransactionType.FAILED, payment.getAmountCents(), DescriptionTemplate.RECURRING_PAYMENT_INSUFFICIENT_FUNDS,
+                    payment.getDescription(), 0);
+                System.err.println("Insufficient funds for recurring payment '" + payment.getDescription() + "'");
+            } catch (Exception e) { // Catch other potential exceptions during withdrawal
+                // Record failed payment transaction
+                recordTransaction(TransactionType.FAILED, payment.getAmountCents(), DescriptionTemplate.TEXT,
+                    "Failed recurring payment '" + payment.getDescription() + "': " + e.getMessage(), 0);
+                System.err.println("Error processing recurring payment '" + payment.getDescription() + "': " + e.getMessage());
+            }
+            return 0;
+        }
+    }
+
+    private long runMissedRecurringPayments(RecurringPayment payment, long today, long occurrences) {
+        long amount = payment.getAmountCents();
+        try {
+            if (occurrences > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many missed payments");
+            }
+            long total = Math.multiplyExact(amount, occurrences);
+            long newBalance = reserve(total, amount);
+            if (newBalance != INSUFFICIENT_FUNDS) {
+                transactionHistory.appendDebits(TransactionType.RECURRING_PAYMENT, amount, DescriptionTemplate.RECURRING_PAYMENT,
+                    payment.getDescription(), BankClock.current().millis(), newBalance, (int) occurrences);
+                payment.updateNextPaymentDate(today);
+                Journal journal = journal();
+                if (journal != null) {
+                    journal.logRecurringCatchUp(accountNumber, recurringPayments.indexOf(payment), amount,
+                        (int) occurrences, RecurringPayment.toMillis(payment.getNextPaymentDay()));
+                }
+                return total;
+            }
+            recordTransaction(TransactionType.FAILED, total, DescriptionTemplate.MISSED_PAYMENTS_INSUFFICIENT_FUNDS,
+                payment.getDescription(), (int) occurrences);
+            System.err.println("Insufficient funds for " + occurrences + " missed payments of '" + payment.getDescription() + "'");
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            recordTransaction(TransactionType.FAILED, amount, DescriptionTemplate.TEXT,
+                "Failed recurring payment '" + payment.getDescription() + "': " + e.getMessage(), 0);
+            System.err.println("Error processing recurring payment '" + payment.getDescription() + "': " + e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Credits a recipient with a batch of recurring payments settled in one
+     * run: one balance update, one history append with an entry per payment,
+     * and one journal record listing each payer, payment and amount. Called
+     * by RecurringPaymentSettlement.
+     * 
+     * @param amounts The payments, in cents
+     * @param payers The account each payment came from
+     * @param paymentIndexes The index of each payment in its payer's recurring payments
+     * @param descriptions The description of each payment
+     * @param count The number of payments to credit
+     */
+    void receiveSettlement(long[] amounts, int[] payers, int[] paymentIndexes, String[] descriptions, int count) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total = Money.add(total, amounts[i]);
+        }
+        accrueInterest();
+        long newBalance = credit(total);
+        transactionHistory.appendCredits(TransactionType.DEPOSIT, amounts, DescriptionTemplate.RECURRING_PAYMENT_FROM,
+            descriptions, payers, BankClock.current().millis(), newBalance, count);
+        Journal journal = journal();
+        if (journal != null) {
+            journal.logRecurringSettlement(accountNumber, amounts, payers, paymentIndexes, count);
+        }
+    }
+
+    /**
+     * Replays a RECURRING_SETTLEMENT record. Descriptions come from the
+     * payers' payments; a payer that is no longer present leaves its entry
+     * without one.
+     */
+    void replaySettlement(long[] amounts, int[] payers, String[] descriptions, int count, long timestamp) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total = Money.add(total, amounts[i]);
+        }
+        transactionHistory.appendCredits(TransactionType.DEPOSIT, amounts, DescriptionTemplate.RECURRING_PAYMENT_FROM,
+            descriptions, payers, timestamp, credit(total), count);
+    }
+
+    /**
+     * Gets the index of one of this account's recurring payments, as the
+     * journal records it.
+     */
+    int recurringPaymentIndex(RecurringPayment payment) {
+        return recurringPayments.indexOf(payment);
+    }
 }
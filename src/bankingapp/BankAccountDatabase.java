@@ -2,30 +2,266 @@ package bankingapp;
 
 import java.util.HashMap;
 import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
+/**
+ * Stores account holders, bank accounts and their active/frozen status.
+ * 
+ * Bank accounts get sequential numbers from an AccountNumberAllocator and
+ * live in a dense AccountIndex, so getBankAccount is a bounds check plus an
+ * array load. Holders and their statuses are kept in concurrent maps.
+ * Lookups never block, and the database can be shared between
+ * request-handling threads and the CompoundInterest thread without any
+ * external locking.
+ * 
+ * A database constructed with a Journal writes every account and ledger
+ * mutation to it before the call returns (see Journal.FsyncPolicy for when
+ * the record is durable).
+ */
 public class BankAccountDatabase {
-    private HashMap<Integer, AccountHolder> userAccounts = new HashMap<>();
-    private HashMap<Integer, BankAccount> bankAccounts = new HashMap<>();
-    private HashMap<Integer, Boolean> accountStatus = new HashMap<>(); // Track account status (active/frozen)
+    private ConcurrentHashMap<Integer, AccountHolder> userAccounts = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<Integer, Boolean> accountStatus = new ConcurrentHashMap<>(); // Track holder status (active/frozen)
+    private final AccountNumberAllocator allocator;
+    private final AccountIndex bankAccounts;
+    private final TransferScheduler transferScheduler = new TransferScheduler();
+    private final RecurringPaymentScheduler recurringPaymentScheduler = new RecurringPaymentScheduler(this);
+    private final SuspenseQueue suspenseQueue = new SuspenseQueue();
+    private volatile Journal journal; // Null when mutations are not journaled
+    private volatile InterestAccrual interestAccrual; // Null when interest is swept by CompoundInterest
+    private volatile TransactionArchive transactionArchive; // Null when histories stay on the heap
+
+    /**
+     * Creates an in-memory database whose mutations are not journaled.
+     */
+    public BankAccountDatabase() {
+        this(null);
+    }
+
+    /**
+     * Creates a database that journals every mutation. It numbers accounts
+     * with its own allocator (check digits enabled), so separate databases
+     * do not take numbers from each other.
+     * 
+     * @param journal The journal to write to, or null for none
+     */
+    public BankAccountDatabase(Journal journal) {
+        this(journal, new AccountNumberAllocator(true));
+    }
+
+    /**
+     * Creates a database that numbers accounts with the given allocator.
+     * 
+     * @param journal The journal to write to, or null for none
+     * @param allocator Where new bank account numbers come from
+     */
+    public BankAccountDatabase(Journal journal, AccountNumberAllocator allocator) {
+        this.journal = journal;
+        this.allocator = allocator;
+        this.bankAccounts = new AccountIndex(allocator);
+    }
+
+    /**
+     * Gets the journal mutations are written to.
+     * 
+     * @return The journal, or null if mutations are not journaled
+     */
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Gets the bank-wide queue of pending scheduled transfers. Transfers
+     * scheduled on any account in this database are queued there.
+     * 
+     * @return The transfer scheduler
+     */
+    public TransferScheduler getTransferScheduler() {
+        return transferScheduler;
+    }
+
+    /**
+     * Gets the service that runs recurring payments when they fall due.
+     * Payments set up on any account in this database are indexed there;
+     * call start() on it to run them in the background.
+     * 
+     * @return The recurring payment scheduler
+     */
+    public RecurringPaymentScheduler getRecurringPaymentScheduler() {
+        return recurringPaymentScheduler;
+    }
+
+    /**
+     * Gets the settings savings accounts accrue interest with.
+     * 
+     * @return The accrual settings, or null if interest is not accrued lazily
+     */
+    public InterestAccrual getInterestAccrual() {
+        return interestAccrual;
+    }
+
+    /**
+     * Switches savings accounts to lazy interest accrual (see InterestAccrual),
+     * or back to sweeps by CompoundInterest when given null. Accounts that
+     * have never accrued count their periods from the settings' start.
+     * 
+     * @param accrual The accrual settings, or null
+     */
+    public void setInterestAccrual(InterestAccrual accrual) {
+        this.interestAccrual = accrual;
+    }
+
+    /**
+     * Gets the archive older transaction history is moved to.
+     * 
+     * @return The archive, or null if histories stay on the heap
+     */
+    public TransactionArchive getTransactionArchive() {
+        return transactionArchive;
+    }
+
+    /**
+     * Tiers the transaction histories of every account in the database, now
+     * and added later: each keeps the archive's hot entries on the heap and
+     * moves older ones to the archive. Given null, histories are read back
+     * onto the heap. History reads work the same either way.
+     * 
+     * @param archive The archive, or null
+     */
+    public void setTransactionArchive(TransactionArchive archive) {
+        this.transactionArchive = archive;
+        bankAccounts.forEach(account -> account.setTransactionArchive(archive));
+    }
+
+    /**
+     * Gets the queue of recurring payment credits whose recipient could not
+     * be credited.
+     * 
+     * @return The suspense queue
+     */
+    public SuspenseQueue getSuspenseQueue() {
+        return suspenseQueue;
+    }
+
+    /**
+     * Parks a settlement credit in the suspense queue and journals it.
+     */
+    void suspend(SuspenseQueue.Entry entry) {
+        suspenseQueue.add(entry);
+        Journal journal = this.journal;
+        if (journal != null) {
+            journal.logSuspense(entry);
+        }
+    }
+
+    /**
+     * Resolves a recipient id, as stored on a RecurringPayment, to an account
+     * in this database. The id must be the account's number.
+     * 
+     * @param accountId The recipient id
+     * @return The account, or null if the id does not name one
+     */
+    public BankAccount resolveBankAccount(String accountId) {
+        if (accountId == null) {
+            return null;
+        }
+        try {
+            return getBankAccount(Integer.parseInt(accountId.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts journaling to the given journal. Used after recovery, once the
+     * journal tail has been replayed without being written again.
+     */
+    void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Puts a bank account restored from a snapshot or the journal under its
+     * saved number, without journaling it.
+     */
+    void restoreBankAccount(int accountNumber, BankAccount account, boolean active) {
+        account.restoreAccountNumber(accountNumber);
+        allocator.advancePast(accountNumber);
+        account.frozen = !active;
+        bankAccounts.put(account);
+        account.attach(this);
+    }
+
+    /**
+     * Puts an account holder restored from a snapshot under its saved number.
+     */
+    void restoreAccountHolder(int accountNumber, AccountHolder holder, boolean active) {
+        userAccounts.put(accountNumber, holder);
+        accountStatus.put(accountNumber, active);
+    }
+
+    // Live views used by Snapshot
+    void forEachBankAccount(Consumer<? super BankAccount> action) {
+        bankAccounts.forEach(action);
+    }
+
+    Map<Integer, AccountHolder> accountHolderMap() {
+        return userAccounts;
+    }
+
+    // Page-wise views for scans split across threads (see AccountIndex)
+    int bankAccountPageCount() {
+        return bankAccounts.pageCount();
+    }
+
+    void forEachBankAccountInPage(int page, Consumer<? super BankAccount> action) {
+        bankAccounts.forEachInPage(page, action);
+    }
 
     public int generateAccountNumber(AccountHolder info) {
         return info.hashCode();
     }
 
+    /**
+     * Gets the account's number, allocating the next one if it has none yet.
+     * Calling this before addBankAccount returns the number the account will be stored under.
+     * 
+     * @param account The account to number
+     * @return The account number
+     */
     public int generateBankAccountNumber(BankAccount account) {
-        return account.hashCode();
+        return account.assignAccountNumber(allocator);
     }
 
+    /**
+     * Adds a bank account, numbering it first if it has no number yet. An
+     * account numbered elsewhere keeps its number, and this database's
+     * allocator moves past it so it is never handed out again here.
+     * 
+     * @param account The account to add
+     * @throws IllegalArgumentException if the account's existing number is
+     *     not valid for this database's allocator (for example, a number
+     *     without a check digit added to a database that uses them)
+     */
     public void addBankAccount(BankAccount account) {
-        int hash = generateBankAccountNumber(account);
-        if (!bankAccounts.containsKey(hash)) {
-            bankAccounts.put(hash, account);
-            accountStatus.put(hash, true); // Set account as active by default
+        int number = generateBankAccountNumber(account);
+        allocator.advancePast(number);
+        if (bankAccounts.putIfAbsent(account)) {
+            account.frozen = false; // Set account as active by default
+            account.attach(this);
+            if (account.getLastAccrualMillis() == 0) {
+                account.restartAccrual(); // Interest accrues from when the account joined
+            }
+            Journal journal = this.journal;
+            if (journal != null) {
+                journal.logCreateAccount(number, account);
+            }
         }
     }
 
     public boolean hasBankAccount(int accountNumber) {
-        return bankAccounts.containsKey(accountNumber);
+        return bankAccounts.get(accountNumber) != null;
     }
 
     public BankAccount getBankAccount(int accountNumber) {
@@ -33,21 +269,27 @@ public class BankAccountDatabase {
     }
 
     public void removeBankAccount(int accountNumber) {
-        bankAccounts.remove(accountNumber);
-        accountStatus.remove(accountNumber);
+        BankAccount removed = bankAccounts.remove(accountNumber);
+        if (removed != null) {
+            removed.attach(null);
+            Journal journal = this.journal;
+            if (journal != null) {
+                journal.logAccount(Journal.RecordType.REMOVE_ACCOUNT, accountNumber);
+            }
+        }
     }
 
     public double getAccountBalance(int accountNumber) {
-        if (bankAccounts.containsKey(accountNumber)) {
-            return bankAccounts.get(accountNumber).getCurrentBalance();
+        BankAccount account = bankAccounts.get(accountNumber);
+        if (account != null) {
+            return account.getCurrentBalance();
         }
         return -1; // Return -1 if account not found
     }
 
     public void addAccountHolder(AccountHolder holder) {
         int hash = generateAccountNumber(holder);
-        if (!userAccounts.containsKey(hash)) {
-            userAccounts.put(hash, holder);
+        if (userAccounts.putIfAbsent(hash, holder) == null) {
             accountStatus.put(hash, true); // Set account as active by default
         }
     }
@@ -96,7 +338,13 @@ public class BankAccountDatabase {
                 count++;
             }
         }
-        return count;
+        int[] activeBankAccounts = new int[1];
+        bankAccounts.forEach(account -> {
+            if (!account.frozen) {
+                activeBankAccounts[0]++;
+            }
+        });
+        return count + activeBankAccounts[0];
     }
 
     /**
@@ -105,7 +353,9 @@ public class BankAccountDatabase {
      * @return The number of frozen accounts
      */
     public int getFrozenAccountCount() {
-        return accountStatus.size() - getActiveAccountCount();
+        int[] statuses = new int[1];
+        bankAccounts.forEach(account -> statuses[0]++);
+        return accountStatus.size() + statuses[0] - getActiveAccountCount();
     }
 
     /**
@@ -115,6 +365,10 @@ public class BankAccountDatabase {
      * @return true if the account is active, false if inactive or not found
      */
     public boolean isAccountActive(int accountNumber) {
+        BankAccount account = bankAccounts.get(accountNumber);
+        if (account != null) {
+            return !account.frozen;
+        }
         return accountStatus.getOrDefault(accountNumber, false);
     }
 
@@ -145,11 +399,12 @@ public class BankAccountDatabase {
      * @return true if the account was found and deactivated, false otherwise
      */
     public boolean deactivateAccount(int accountNumber) {
-        if (accountStatus.containsKey(accountNumber)) {
-            accountStatus.put(accountNumber, false);
-            return true;
+        boolean found = setStatus(accountNumber, false);
+        Journal journal = this.journal;
+        if (found && journal != null) {
+            journal.logAccount(Journal.RecordType.FREEZE, accountNumber);
         }
-        return false;
+        return found;
     }
 
     /**
@@ -159,14 +414,34 @@ public class BankAccountDatabase {
      * @return true if the account was found and activated, false otherwise
      */
     public boolean activateAccount(int accountNumber) {
-        if (accountStatus.containsKey(accountNumber)) {
-            accountStatus.put(accountNumber, true);
+        boolean found = setStatus(accountNumber, true);
+        Journal journal = this.journal;
+        if (found && journal != null) {
+            journal.logAccount(Journal.RecordType.UNFREEZE, accountNumber);
+        }
+        return found;
+    }
+
+    /**
+     * Sets the status of a bank account, or of a holder if no bank account has that number.
+     */
+    private boolean setStatus(int accountNumber, boolean active) {
+        BankAccount account = bankAccounts.get(accountNumber);
+        if (account != null) {
+            if (!active) {
+                account.accrueInterest(); // Pay up to the freeze; frozen accounts earn nothing
+            } else if (account.frozen) {
+                account.restartAccrual();
+            }
+            account.frozen = !active;
             return true;
         }
-        return false;
+        return accountStatus.replace(accountNumber, active) != null;
     }
 
     public HashMap<Integer, BankAccount> getBankAccounts() {
-        return new HashMap<>(bankAccounts); // Return a copy to prevent direct modification
+        HashMap<Integer, BankAccount> copy = new HashMap<>(); // A copy to prevent direct modification
+        bankAccounts.forEach(account -> copy.put(account.getAccountNumber(), account));
+        return copy;
     }
 }
\ No newline at end of file
@@ -1,5 +1,4 @@
 package bankingapp;
-import java.util.HashMap;
 
 /**
  * Manages a library of bank accounts.
@@ -10,33 +9,29 @@ import java.util.HashMap;
  */
 public class BankAccountLibrary {
 	
-	private HashMap<Integer, BankAccount> BankAccountLibrary = new HashMap<>();
+	private AccountIndex BankAccountLibrary = new AccountIndex(AccountNumberAllocator.shared());
 	
 	public int BankAccountNumber(BankAccount info) {
-		int hashcode = info.hashCode();
-		return hashcode;
+		return info.assignAccountNumber(AccountNumberAllocator.shared());
 	}
 	
 	public void addAccount(BankAccount info) {
-		int hash = BankAccountNumber(info);
-		if(!BankAccountLibrary.containsKey(hash)) {
-			BankAccountLibrary.put(hash, info);
-		}
+		BankAccountNumber(info);
+		BankAccountLibrary.putIfAbsent(info);
 	}
 	
 	public boolean findAccount(int hash) {
-		return BankAccountLibrary.containsKey(hash);
+		return BankAccountLibrary.get(hash) != null;
 	}
 	
 	public void deleteAccount(BankAccount info, int hash) {
-		if(BankAccountLibrary.containsKey(hash)) {
-			BankAccountLibrary.remove(hash);
-		}
+		BankAccountLibrary.remove(hash);
 	}
 	
 	public double getAccountBalance(int hash) {
-		if (BankAccountLibrary.containsKey(hash)) {
-			return BankAccountLibrary.get(hash).getCurrentBalance();
+		BankAccount account = BankAccountLibrary.get(hash);
+		if (account != null) {
+			return account.getCurrentBalance();
 		}
 		return -1; // Return -1 if account not found
 	}
@@ -0,0 +1,227 @@
+package bankingapp;
+
+import java.util.Date;
+
+/**
+ * Source of the current time for the banking code.
+ *
+ * Transaction timestamps, scheduling checks, recurring payment due dates
+ * and the interest loop all read the time through the current clock, so
+ * tests and simulations can swap in a VirtualClock instead of setting
+ * system properties. Three clocks are provided:
+ *
+ *   system()   System.currentTimeMillis(), the default
+ *   coarse()   a cached value refreshed by a daemon thread, for hot paths
+ *              that only need millisecond-ish precision (close it to stop
+ *              the thread)
+ *   virtual()  a clock that only moves when told to
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public abstract class BankClock {
+
+    private static final BankClock SYSTEM = new BankClock() {
+        @Override
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static volatile BankClock current = SYSTEM;
+
+    /**
+     * Gets the current time.
+     *
+     * @return Milliseconds since the epoch
+     */
+    public abstract long millis();
+
+    /**
+     * Gets the current time as a Date.
+     *
+     * @return A new Date for the current time
+     */
+    public Date now() {
+        return new Date(millis());
+    }
+
+    /**
+     * Gets today's date in the bank's zone (see RecurringPayment.ZONE).
+     *
+     * @return Days since 1970-01-01 in GMT-5
+     */
+    public long epochDay() {
+        return RecurringPayment.toEpochDay(millis());
+    }
+
+    /**
+     * Waits until this clock has moved forward by the given time.
+     *
+     * @param millis How long to wait, in this clock's milliseconds
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    /**
+     * Gets the clock the banking code currently reads.
+     *
+     * @return The current clock
+     */
+    public static BankClock current() {
+        return current;
+    }
+
+    /**
+     * Replaces the clock the banking code reads.
+     *
+     * @param clock The new clock
+     * @throws IllegalArgumentException if the clock is null
+     */
+    public static void setCurrent(BankClock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock cannot be null");
+        }
+        current = clock;
+    }
+
+    /**
+     * Gets the system clock.
+     *
+     * @return A clock reading System.currentTimeMillis()
+     */
+    public static BankClock system() {
+        return SYSTEM;
+    }
+
+    /**
+     * Creates a clock that caches the system time and refreshes it from a
+     * daemon thread, so reading it is a volatile load. Close the clock when
+     * it is no longer needed to stop the thread.
+     *
+     * @param resolutionMillis How often the cached time is refreshed
+     * @return The coarse clock
+     * @throws IllegalArgumentException if the resolution is not positive
+     */
+    public static CoarseClock coarse(long resolutionMillis) {
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive");
+        }
+        return new CoarseClock(resolutionMillis);
+    }
+
+    /**
+     * Creates a clock that starts at the given time and only moves when
+     * set() or advance() is called.
+     *
+     * @param startMillis The starting time, in milliseconds since the epoch
+     * @return The virtual clock
+     */
+    public static VirtualClock virtual(long startMillis) {
+        return new VirtualClock(startMillis);
+    }
+
+    /**
+     * A clock that caches the system time, refreshed by its own daemon
+     * thread. Closing it stops the thread; a closed clock reads the system
+     * time directly, so it stays correct if it is still installed.
+     */
+    public static final class CoarseClock extends BankClock implements AutoCloseable {
+        private final Thread ticker;
+        private volatile long millis = System.currentTimeMillis();
+        private volatile boolean closed;
+
+        private CoarseClock(long resolutionMillis) {
+            ticker = new Thread(() -> {
+                while (!closed) {
+                    millis = System.currentTimeMillis();
+                    try {
+                        Thread.sleep(resolutionMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "bank-clock");
+            ticker.setDaemon(true);
+            ticker.start();
+        }
+
+        @Override
+        public long millis() {
+            return closed ? System.currentTimeMillis() : millis;
+        }
+
+        /**
+         * Stops the refresh thread and waits for it to exit.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            ticker.interrupt();
+            boolean interrupted = false;
+            while (ticker.isAlive()) {
+                try {
+                    ticker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A clock for tests and simulations. Time stands still until set() or
+     * advance() moves it; threads in sleep() wake when it passes their
+     * deadline.
+     */
+    public static final class VirtualClock extends BankClock {
+        private long millis; // Guarded by this
+
+        private VirtualClock(long startMillis) {
+            this.millis = startMillis;
+        }
+
+        @Override
+        public synchronized long millis() {
+            return millis;
+        }
+
+        /**
+         * Moves the clock to the given time (forwards or backwards).
+         *
+         * @param millis The new time, in milliseconds since the epoch
+         */
+        public synchronized void set(long millis) {
+            this.millis = millis;
+            notifyAll();
+        }
+
+        /**
+         * Moves the clock forward.
+         *
+         * @param millis How far to move, in milliseconds
+         * @throws IllegalArgumentException if millis is negative
+         */
+        public synchronized void advance(long millis) {
+            if (millis < 0) {
+                throw new IllegalArgumentException("Cannot advance by a negative time");
+            }
+            this.millis += millis;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void sleep(long millis) throws InterruptedException {
+            long wakeAt = this.millis + millis;
+            while (this.millis < wakeAt) {
+                wait();
+            }
+        }
+    }
+}
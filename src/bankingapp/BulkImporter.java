@@ -0,0 +1,973 @@
+package bankingapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Loads accounts, their holders and their historical transactions from CSV
+ * files, for migrating another bank's books in.
+ *
+ * Accounts file, one account per row after the header:
+ *
+ *   ref,kind,type,balance,max_withdrawal,max_deposit,lastname,birthday,ssn,bank_code
+ *
+ *   ref             The account's id in the source system (a number); transactions refer to it
+ *   kind            PERSONAL or BUSINESS
+ *   type            CHECKING or SAVINGS
+ *   balance         The opening balance in dollars, e.g. 1250.75
+ *   max_withdrawal,
+ *   max_deposit     Limits in dollars, or empty for the defaults of the account kind
+ *   lastname, ...   The holder; rows with the same non-zero ssn share one AccountHolder.
+ *                   Leave lastname empty for an account without a holder.
+ *
+ * Transactions file, one history entry per row after the header, oldest first
+ * for each account:
+ *
+ *   ref,timestamp,type,amount,balance_after,description
+ *
+ *   timestamp       Epoch milliseconds
+ *   type            A TransactionType name, e.g. DEPOSIT
+ *   description     Free text; quote it ("...", with "" for a quote) if it holds a comma
+ *
+ * Accounts get numbers from the database's allocator; getAccount(ref) maps a
+ * source ref to the account created for it. The opening balance is set as
+ * is, and imported transactions only fill in the history, so they do not
+ * move the balance; on a journaled database each one is journaled as an
+ * IMPORTED_TRANSACTION record, so it survives snapshots and recovery. Rows that
+ * break the rules BankAccount enforces (negative balances or limits, amounts
+ * with more than two decimals, deposits above the account's deposit limit,
+ * withdrawals and transfers above its withdrawal limit), that do not parse,
+ * or that name an unknown or already imported ref are rejected and reported;
+ * the rest of the file is still imported.
+ *
+ * Files are read through a FileChannel, memory-mapped a window at a time,
+ * and fields are parsed straight from the mapped bytes: numbers and enum
+ * names never become strings, and repeated text (descriptions, names) is
+ * decoded once per parser and shared. Each window is split into batches that
+ * are parsed in parallel on a fork-join pool; the parsed rows are then
+ * applied in parallel lanes, each lane owning the refs that hash to it and
+ * applying its rows in file order, so every account's history keeps the
+ * file's order without locking across lanes.
+ *
+ * An importer is used by one thread at a time.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public final class BulkImporter {
+
+    public static final String ACCOUNTS_HEADER = "ref,kind,type,balance,max_withdrawal,max_deposit,lastname,birthday,ssn,bank_code";
+    public static final String TRANSACTIONS_HEADER = "ref,timestamp,type,amount,balance_after,description";
+
+    /** The most rejected rows an ImportReport lists (all of them are counted) */
+    public static final int MAX_LISTED_REJECTIONS = 100;
+
+    private static final int WINDOW_BYTES = 32 << 20;
+    private static final int BATCH_BYTES = 256 << 10;
+    private static final int LANE_BITS = 6;
+    private static final int LANES = 1 << LANE_BITS;
+
+    private static final byte[][] KINDS = { ascii("PERSONAL"), ascii("BUSINESS") };
+    private static final AccountType[] ACCOUNT_TYPES = AccountType.values();
+    private static final byte[][] ACCOUNT_TYPE_NAMES = names(ACCOUNT_TYPES);
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+    private static final byte[][] TRANSACTION_TYPE_NAMES = names(TRANSACTION_TYPES);
+
+    /**
+     * One rejected row.
+     */
+    public static final class Rejection {
+        private final long line;
+        private final String reason;
+
+        Rejection(long line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+
+        /** The row's line number in the file, the header being line 1 */
+        public long getLine() {
+            return line;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + reason;
+        }
+    }
+
+    /**
+     * What importing one file did.
+     */
+    public static final class ImportReport {
+        private final Path file;
+        private final long bytes;
+        private final long rows;
+        private final long rejected;
+        private final List<Rejection> rejections;
+        private final long elapsedNanos;
+
+        ImportReport(Path file, long bytes, long rows, long rejected, List<Rejection> rejections, long elapsedNanos) {
+            this.file = file;
+            this.bytes = bytes;
+            this.rows = rows;
+            this.rejected = rejected;
+            this.rejections = rejections;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /** Data rows read, not counting the header or blank lines */
+        public long getRows() {
+            return rows;
+        }
+
+        public long getAccepted() {
+            return rows - rejected;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Gets the first rejected rows, in file order.
+         *
+         * @return Up to MAX_LISTED_REJECTIONS rejections
+         */
+        public List<Rejection> getRejections() {
+            return rejections;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getRowsPerSecond() {
+            return rows / Math.max(elapsedNanos / 1e9, 1e-9);
+        }
+
+        public double getMegabytesPerSecond() {
+            return bytes / (1024.0 * 1024.0) / Math.max(elapsedNanos / 1e9, 1e-9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %,d of %,d rows from %s in %.1f ms (%,.0f rows/s, %.1f MB/s), %,d rejected",
+                getAccepted(), rows, file.getFileName(), elapsedNanos / 1e6, getRowsPerSecond(), getMegabytesPerSecond(), rejected);
+        }
+    }
+
+    private final BankAccountDatabase database;
+    private final ForkJoinPool pool;
+    private final RefMap[] lanes = new RefMap[LANES];
+    private final ConcurrentHashMap<Integer, AccountHolder> holdersBySsn = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an importer into a database, running on the common pool.
+     *
+     * @param database The database accounts are added to
+     */
+    public BulkImporter(BankAccountDatabase database) {
+        this(database, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an importer into a database, running on the given pool.
+     *
+     * @param database The database accounts are added to
+     * @param pool The pool batches are parsed and applied on
+     * @throws IllegalArgumentException if an argument is null
+     */
+    public BulkImporter(BankAccountDatabase database, ForkJoinPool pool) {
+        if (database == null || pool == null) {
+            throw new IllegalArgumentException("Database and pool cannot be null");
+        }
+        this.database = database;
+        this.pool = pool;
+        for (int lane = 0; lane < LANES; lane++) {
+            lanes[lane] = new RefMap();
+        }
+    }
+
+    /**
+     * Gets the account created for a source ref by importAccounts.
+     *
+     * @param ref The ref from the accounts file
+     * @return The account, or null if no row with that ref was imported
+     */
+    public synchronized BankAccount getAccount(long ref) {
+        long hash = hash(ref);
+        return lanes[lane(hash)].get(ref, hash);
+    }
+
+    /**
+     * Imports an accounts file (see the class comment for the columns).
+     *
+     * @param file The CSV file
+     * @return What was imported and rejected
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the header does not match ACCOUNTS_HEADER
+     */
+    public synchronized ImportReport importAccounts(Path file) throws IOException {
+        return run(file, ACCOUNTS_HEADER, AccountRows::new);
+    }
+
+    /**
+     * Imports a transactions file (see the class comment for the columns).
+     * The accounts must have been imported first, by this importer.
+     *
+     * @param file The CSV file
+     * @return What was imported and rejected
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the header does not match TRANSACTIONS_HEADER
+     */
+    public synchronized ImportReport importTransactions(Path file) throws IOException {
+        return run(file, TRANSACTIONS_HEADER, TransactionRows::new);
+    }
+
+    // ---- The pipeline ----
+
+    // Makes the per-lane rows of one batch for one kind of file
+    private interface RowsFactory {
+        Rows create();
+    }
+
+    private ImportReport run(Path file, String header, RowsFactory factory) throws IOException {
+        long start = System.nanoTime();
+        List<Rejection> rejections = new ArrayList<>();
+        long rows = 0;
+        long rejected = 0;
+        long size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            long position = 0;
+            long firstLine = 1;
+            boolean first = true;
+            while (position < size) {
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, size - position));
+                int end = window.limit();
+                if (position + end < size) {
+                    end = lastLineEnd(window);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Line longer than " + WINDOW_BYTES + " bytes at byte " + position);
+                    }
+                }
+                int from = 0;
+                if (first) {
+                    from = checkHeader(window, end, header);
+                    firstLine = 2;
+                    first = false;
+                }
+
+                Batch[] batches = split(window, from, end, factory);
+                pool.invoke(new Each(0, batches.length, index -> batches[index].parse()));
+                for (Batch batch : batches) {
+                    batch.firstLine = firstLine;
+                    firstLine += batch.lines;
+                    rows += batch.rows;
+                }
+                List<Rejection>[] applied = newLists(LANES);
+                pool.invoke(new Each(0, LANES, lane -> {
+                    for (Batch batch : batches) {
+                        Rows laneRows = batch.lanes[lane];
+                        if (laneRows != null) {
+                            laneRows.apply(this, lanes[lane], batch.firstLine, applied[lane]);
+                        }
+                    }
+                }));
+                for (Batch batch : batches) {
+                    rejected += collect(batch.rejections, batch.firstLine, rejections);
+                }
+                for (List<Rejection> laneRejections : applied) {
+                    rejected += collect(laneRejections, 0, rejections);
+                }
+                position += end;
+            }
+        }
+        rejections.sort(Comparator.comparingLong(Rejection::getLine));
+        List<Rejection> listed = rejections.size() > MAX_LISTED_REJECTIONS
+            ? new ArrayList<>(rejections.subList(0, MAX_LISTED_REJECTIONS)) : rejections;
+        return new ImportReport(file, size, rows, rejected, Collections.unmodifiableList(listed), System.nanoTime() - start);
+    }
+
+    // Adds rejections with line numbers offset by base, keeping only as many as can still be listed
+    private static long collect(List<Rejection> from, long base, List<Rejection> into) {
+        for (Rejection rejection : from) {
+            into.add(base == 0 ? rejection : new Rejection(base + rejection.line, rejection.reason));
+        }
+        if (into.size() > 4 * MAX_LISTED_REJECTIONS) {
+            into.sort(Comparator.comparingLong(Rejection::getLine));
+            into.subList(MAX_LISTED_REJECTIONS, into.size()).clear();
+        }
+        return from.size();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static List<Rejection>[] newLists(int count) {
+        List<Rejection>[] lists = new List[count];
+        for (int i = 0; i < count; i++) {
+            lists[i] = new ArrayList<>();
+        }
+        return lists;
+    }
+
+    private static int lastLineEnd(ByteBuffer window) {
+        for (int i = window.limit() - 1; i >= 0; i--) {
+            if (window.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int checkHeader(ByteBuffer window, int end, String header) {
+        int lineEnd = 0;
+        while (lineEnd < end && window.get(lineEnd) != '\n') {
+            lineEnd++;
+        }
+        int textEnd = lineEnd > 0 && window.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+        byte[] bytes = new byte[textEnd];
+        window.get(0, bytes);
+        String found = new String(bytes, StandardCharsets.UTF_8);
+        if (found.startsWith("\uFEFF")) {
+            found = found.substring(1); // Byte order mark
+        }
+        if (!found.trim().equals(header)) {
+            throw new IllegalArgumentException("Expected header '" + header + "' but found '" + found + "'");
+        }
+        return Math.min(lineEnd + 1, end);
+    }
+
+    // Splits [from, end) into batches of about BATCH_BYTES that end at line ends
+    private static Batch[] split(ByteBuffer window, int from, int end, RowsFactory factory) {
+        List<Batch> batches = new ArrayList<>();
+        int start = from;
+        while (start < end) {
+            int stop = Math.min(start + BATCH_BYTES, end);
+            while (stop < end && window.get(stop - 1) != '\n') {
+                stop++;
+            }
+            batches.add(new Batch(window, start, stop, factory));
+            start = stop;
+        }
+        return batches.toArray(new Batch[0]);
+    }
+
+    // Runs an action for every index in [from, to), splitting the range across the pool
+    private static final class Each extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final IntConsumer action;
+
+        Each(int from, int to, IntConsumer action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int index = from; index < to; index++) {
+                    action.accept(index);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Each(from, middle, action), new Each(middle, to, action));
+        }
+    }
+
+    /**
+     * A run of whole lines of one window. Parsing sorts its rows into lanes
+     * by ref; line numbers are relative to the batch until firstLine is set.
+     */
+    private static final class Batch {
+        final ByteBuffer window;
+        final int start;
+        final int end;
+        final RowsFactory factory;
+        final Rows[] lanes = new Rows[LANES];
+        final List<Rejection> rejections = new ArrayList<>();
+        int lines;
+        int rows;
+        long firstLine;
+
+        Batch(ByteBuffer window, int start, int end, RowsFactory factory) {
+            this.window = window;
+            this.start = start;
+            this.end = end;
+            this.factory = factory;
+        }
+
+        void parse() {
+            LineParser parser = new LineParser(window);
+            Rows scratch = factory.create();
+            int lineStart = start;
+            while (lineStart < end) {
+                int lineEnd = lineStart;
+                while (lineEnd < end && window.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int next = lineEnd + 1;
+                if (lineEnd > lineStart && window.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                int line = lines++;
+                if (lineEnd > lineStart) {
+                    rows++;
+                    parser.startLine(lineStart, lineEnd);
+                    long ref = scratch.parse(parser);
+                    if (parser.error != null) {
+                        rejections.add(new Rejection(line, parser.error));
+                    } else {
+                        int lane = lane(hash(ref));
+                        Rows laneRows = lanes[lane];
+                        if (laneRows == null) {
+                            laneRows = factory.create();
+                            lanes[lane] = laneRows;
+                        }
+                        laneRows.copyRow(scratch, line);
+                    }
+                }
+                lineStart = next;
+            }
+        }
+    }
+
+    /**
+     * Parsed rows of one batch for one lane, column by column. A Rows
+     * instance is also used as a one-row scratch area while parsing.
+     */
+    private abstract static class Rows {
+        int size;
+        long[] refs = new long[16];
+        int[] lines = new int[16];
+
+        /** Parses one line into row 0, returning its ref; sets parser.error on failure */
+        abstract long parse(LineParser parser);
+
+        /** Appends row 0 of a scratch Rows */
+        final void copyRow(Rows scratch, int line) {
+            if (size == refs.length) {
+                refs = Arrays.copyOf(refs, size * 2);
+                lines = Arrays.copyOf(lines, size * 2);
+                grow(size * 2);
+            }
+            refs[size] = scratch.refs[0];
+            lines[size] = line;
+            copy(scratch, size);
+            size++;
+        }
+
+        abstract void grow(int capacity);
+
+        abstract void copy(Rows scratch, int row);
+
+        abstract void apply(BulkImporter importer, RefMap lane, long firstLine, List<Rejection> rejections);
+    }
+
+    private static final class AccountRows extends Rows {
+        boolean[] business = new boolean[16];
+        byte[] types = new byte[16];
+        long[] balances = new long[16];
+        long[] maxWithdrawals = new long[16]; // -1 for the default
+        long[] maxDeposits = new long[16];
+        String[] lastnames = new String[16];
+        String[] birthdays = new String[16];
+        int[] ssns = new int[16];
+        int[] bankCodes = new int[16];
+
+        @Override
+        long parse(LineParser parser) {
+            long ref = parser.nextLong("ref");
+            business[0] = parser.nextEnum("kind", KINDS) == 1;
+            types[0] = (byte) parser.nextEnum("type", ACCOUNT_TYPE_NAMES);
+            balances[0] = parser.nextCents("balance", false);
+            maxWithdrawals[0] = parser.nextCents("max_withdrawal", true);
+            maxDeposits[0] = parser.nextCents("max_deposit", true);
+            lastnames[0] = parser.nextText();
+            birthdays[0] = parser.nextText();
+            ssns[0] = (int) parser.nextOptionalLong("ssn", Integer.MAX_VALUE);
+            bankCodes[0] = (int) parser.nextOptionalLong("bank_code", Integer.MAX_VALUE);
+            parser.endOfLine();
+            refs[0] = ref;
+            return ref;
+        }
+
+        @Override
+        void grow(int capacity) {
+            business = Arrays.copyOf(business, capacity);
+            types = Arrays.copyOf(types, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            maxWithdrawals = Arrays.copyOf(maxWithdrawals, capacity);
+            maxDeposits = Arrays.copyOf(maxDeposits, capacity);
+            lastnames = Arrays.copyOf(lastnames, capacity);
+            birthdays = Arrays.copyOf(birthdays, capacity);
+            ssns = Arrays.copyOf(ssns, capacity);
+            bankCodes = Arrays.copyOf(bankCodes, capacity);
+        }
+
+        @Override
+        void copy(Rows scratch, int row) {
+            AccountRows from = (AccountRows) scratch;
+            business[row] = from.business[0];
+            types[row] = from.types[0];
+            balances[row] = from.balances[0];
+            maxWithdrawals[row] = from.maxWithdrawals[0];
+            maxDeposits[row] = from.maxDeposits[0];
+            lastnames[row] = from.lastnames[0];
+            birthdays[row] = from.birthdays[0];
+            ssns[row] = from.ssns[0];
+            bankCodes[row] = from.bankCodes[0];
+        }
+
+        @Override
+        void apply(BulkImporter importer, RefMap lane, long firstLine, List<Rejection> rejections) {
+            for (int row = 0; row < size; row++) {
+                long ref = refs[row];
+                long hash = hash(ref);
+                if (lane.get(ref, hash) != null) {
+                    rejections.add(new Rejection(firstLine + lines[row], "Duplicate ref " + ref));
+                    continue;
+                }
+                AccountType type = ACCOUNT_TYPES[types[row]];
+                BankAccount account = business[row] ? new BusinessAccount(type) : new BankAccount(type);
+                account.restoreState(balances[row],
+                    maxWithdrawals[row] < 0 ? account.getMaxWithdrawalLimitCents() : maxWithdrawals[row],
+                    maxDeposits[row] < 0 ? account.getMaxDepositLimitCents() : maxDeposits[row], type);
+                importer.database.addBankAccount(account);
+                lane.put(ref, hash, account);
+                if (lastnames[row] != null) {
+                    importer.addToHolder(account, lastnames[row], birthdays[row], ssns[row], bankCodes[row]);
+                }
+            }
+        }
+    }
+
+    private static final class TransactionRows extends Rows {
+        long[] timestamps = new long[16];
+        byte[] types = new byte[16];
+        long[] amounts = new long[16];
+        long[] balances = new long[16];
+        String[] descriptions = new String[16];
+
+        @Override
+        long parse(LineParser parser) {
+            long ref = parser.nextLong("ref");
+            timestamps[0] = parser.nextLong("timestamp");
+            types[0] = (byte) parser.nextEnum("type", TRANSACTION_TYPE_NAMES);
+            amounts[0] = parser.nextCents("amount", false);
+            balances[0] = parser.nextCents("balance_after", false);
+            descriptions[0] = parser.nextText();
+            parser.endOfLine();
+            refs[0] = ref;
+            return ref;
+        }
+
+        @Override
+        void grow(int capacity) {
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            types = Arrays.copyOf(types, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+        }
+
+        @Override
+        void copy(Rows scratch, int row) {
+            TransactionRows from = (TransactionRows) scratch;
+            timestamps[row] = from.timestamps[0];
+            types[row] = from.types[0];
+            amounts[row] = from.amounts[0];
+            balances[row] = from.balances[0];
+            descriptions[row] = from.descriptions[0];
+        }
+
+        @Override
+        void apply(BulkImporter importer, RefMap lane, long firstLine, List<Rejection> rejections) {
+            for (int row = 0; row < size; row++) {
+                long ref = refs[row];
+                BankAccount account = lane.get(ref, hash(ref));
+                TransactionType type = TRANSACTION_TYPES[types[row]];
+                long amount = amounts[row];
+                String reason = null;
+                if (account == null) {
+                    reason = "Unknown account ref " + ref;
+                } else if (type == TransactionType.DEPOSIT && amount > account.getMaxDepositLimitCents()) {
+                    reason = "Deposit exceeds the account's deposit limit";
+                } else if ((type == TransactionType.WITHDRAWAL || type == TransactionType.TRANSFER)
+                        && amount > account.getMaxWithdrawalLimitCents()) {
+                    reason = "Amount exceeds the account's withdrawal limit";
+                }
+                if (reason != null) {
+                    rejections.add(new Rejection(firstLine + lines[row], reason));
+                } else {
+                    account.importTransaction(type, amount, descriptions[row], timestamps[row], balances[row]);
+                }
+            }
+        }
+    }
+
+    // Links an account to its holder, sharing one holder between rows with the same ssn
+    private void addToHolder(BankAccount account, String lastname, String birthday, int ssn, int bankCode) {
+        AccountHolder holder;
+        if (ssn == 0) {
+            holder = new AccountHolder(lastname, birthday, ssn, bankCode);
+            database.addAccountHolder(holder);
+        } else {
+            holder = holdersBySsn.computeIfAbsent(ssn, key -> {
+                AccountHolder created = new AccountHolder(lastname, birthday, ssn, bankCode);
+                database.addAccountHolder(created);
+                return created;
+            });
+        }
+        synchronized (holder) {
+            holder.addBankAccount(holder, account.getAccountNumber());
+        }
+    }
+
+    // ---- Refs ----
+
+    private static long hash(long ref) {
+        long hash = ref * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static int lane(long hash) {
+        return (int) (hash >>> (64 - LANE_BITS));
+    }
+
+    /**
+     * Open-addressing map from ref to account for one lane. Only the lane's
+     * own task touches it during an import.
+     */
+    private static final class RefMap {
+        private long[] refs = new long[64];
+        private BankAccount[] accounts = new BankAccount[64];
+        private int size;
+
+        BankAccount get(long ref, long hash) {
+            int mask = refs.length - 1;
+            for (int slot = (int) hash & mask; accounts[slot] != null; slot = (slot + 1) & mask) {
+                if (refs[slot] == ref) {
+                    return accounts[slot];
+                }
+            }
+            return null;
+        }
+
+        void put(long ref, long hash, BankAccount account) {
+            if (2 * (size + 1) > refs.length) {
+                long[] oldRefs = refs;
+                BankAccount[] oldAccounts = accounts;
+                refs = new long[oldRefs.length * 2];
+                accounts = new BankAccount[oldRefs.length * 2];
+                for (int slot = 0; slot < oldRefs.length; slot++) {
+                    if (oldAccounts[slot] != null) {
+                        insert(oldRefs[slot], hash(oldRefs[slot]), oldAccounts[slot]);
+                    }
+                }
+            }
+            insert(ref, hash, account);
+            size++;
+        }
+
+        private void insert(long ref, long hash, BankAccount account) {
+            int mask = refs.length - 1;
+            int slot = (int) hash & mask;
+            while (accounts[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            refs[slot] = ref;
+            accounts[slot] = account;
+        }
+    }
+
+    // ---- Parsing ----
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[][] names(Enum<?>[] constants) {
+        byte[][] names = new byte[constants.length][];
+        for (Enum<?> constant : constants) {
+            names[constant.ordinal()] = ascii(constant.name());
+        }
+        return names;
+    }
+
+    /**
+     * Reads the fields of one line directly from the mapped window. The
+     * first problem found is kept in error; later reads on the line then
+     * return placeholders.
+     */
+    private static final class LineParser {
+        private static final int CACHE_SIZE = 1024; // Recently decoded texts, by hash of their bytes
+
+        private final ByteBuffer buffer;
+        private final byte[][] cachedBytes = new byte[CACHE_SIZE][];
+        private final String[] cachedTexts = new String[CACHE_SIZE];
+        private byte[] scratch = new byte[64];
+        private int lineEnd;
+        private int next; // Start of the next field, or past lineEnd when the line is used up
+        private int fieldStart;
+        private int fieldEnd;
+        private boolean escapedQuotes;
+        String error;
+
+        LineParser(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void startLine(int start, int end) {
+            lineEnd = end;
+            next = start;
+            error = null;
+        }
+
+        // Moves to the next field; false (with error set) if the line has no more
+        private boolean field(String column) {
+            if (error != null) {
+                return false;
+            }
+            if (next > lineEnd) {
+                error = "Missing column " + column;
+                return false;
+            }
+            escapedQuotes = false;
+            int position = next;
+            if (position < lineEnd && buffer.get(position) == '"') {
+                fieldStart = position + 1;
+                int i = fieldStart;
+                while (true) {
+                    if (i >= lineEnd) {
+                        error = "Unterminated quote in column " + column;
+                        return false;
+                    }
+                    if (buffer.get(i) == '"') {
+                        if (i + 1 < lineEnd && buffer.get(i + 1) == '"') {
+                            escapedQuotes = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                fieldEnd = i;
+                i++;
+                if (i < lineEnd && buffer.get(i) != ',') {
+                    error = "Unexpected text after the quotes in column " + column;
+                    return false;
+                }
+                next = i + 1;
+                return true;
+            }
+            fieldStart = position;
+            while (position < lineEnd && buffer.get(position) != ',') {
+                position++;
+            }
+            fieldEnd = position;
+            next = position + 1;
+            return true;
+        }
+
+        void endOfLine() {
+            if (error == null && next <= lineEnd) {
+                error = "Too many columns";
+            }
+        }
+
+        long nextLong(String column) {
+            if (!field(column)) {
+                return 0;
+            }
+            if (fieldStart == fieldEnd) {
+                error = "Missing " + column;
+                return 0;
+            }
+            return parseLong(column, Long.MAX_VALUE);
+        }
+
+        // An empty field is 0
+        long nextOptionalLong(String column, long max) {
+            if (!field(column) || fieldStart == fieldEnd) {
+                return 0;
+            }
+            if (buffer.get(fieldStart) == '-') {
+                error = "Negative number in column " + column;
+                return 0;
+            }
+            return parseLong(column, max);
+        }
+
+        private long parseLong(String column, long max) {
+            int i = fieldStart;
+            boolean negative = buffer.get(i) == '-';
+            if (negative) {
+                i++;
+            }
+            if (i == fieldEnd || fieldEnd - i > 18) {
+                error = "Bad number in column " + column;
+                return 0;
+            }
+            long value = 0;
+            for (; i < fieldEnd; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    error = "Bad number in column " + column;
+                    return 0;
+                }
+                value = value * 10 + digit;
+            }
+            if (value > max) {
+                error = "Number too large in column " + column;
+                return 0;
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * Reads a non-negative dollar amount with up to two decimals as cents.
+         * An empty optional field is -1.
+         */
+        long nextCents(String column, boolean optional) {
+            if (!field(column)) {
+                return 0;
+            }
+            if (fieldStart == fieldEnd) {
+                if (optional) {
+                    return -1;
+                }
+                error = "Missing " + column;
+                return 0;
+            }
+            if (buffer.get(fieldStart) == '-') {
+                error = "Negative amount in column " + column;
+                return 0;
+            }
+            long cents = 0;
+            int decimals = -1; // Digits seen after the point, -1 before it
+            int digits = 0; // Whole digits
+            for (int i = fieldStart; i < fieldEnd; i++) {
+                byte b = buffer.get(i);
+                if (b == '.' && decimals < 0) {
+                    decimals = 0;
+                    continue;
+                }
+                int digit = b - '0';
+                if (digit < 0 || digit > 9) {
+                    error = "Bad amount in column " + column;
+                    return 0;
+                }
+                if (decimals >= 0) {
+                    if (++decimals > 2) {
+                        error = "More than two decimals in column " + column;
+                        return 0;
+                    }
+                } else if (++digits > 16) { // 16 whole digits and 2 decimals always fit in a long
+                    error = "Amount too large in column " + column;
+                    return 0;
+                }
+                cents = cents * 10 + digit;
+            }
+            if (digits == 0 && decimals <= 0) {
+                error = "Bad amount in column " + column;
+                return 0;
+            }
+            for (int shift = Math.max(decimals, 0); shift < 2; shift++) {
+                cents *= 10;
+            }
+            return cents;
+        }
+
+        int nextEnum(String column, byte[][] names) {
+            if (!field(column)) {
+                return 0;
+            }
+            int length = fieldEnd - fieldStart;
+            for (int value = 0; value < names.length; value++) {
+                byte[] name = names[value];
+                if (name.length == length && matches(name)) {
+                    return value;
+                }
+            }
+            error = "Unknown " + column + " '" + decode() + "'";
+            return 0;
+        }
+
+        private boolean matches(byte[] name) {
+            for (int i = 0; i < name.length; i++) {
+                if (buffer.get(fieldStart + i) != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // An empty field is null; repeated texts share one String
+        String nextText() {
+            if (!field("text") || fieldStart == fieldEnd) {
+                return null;
+            }
+            int length = fieldEnd - fieldStart;
+            int hash = length;
+            for (int i = fieldStart; i < fieldEnd; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+            byte[] cached = cachedBytes[slot];
+            if (cached != null && cached.length == length && !escapedQuotes && matches(cached)) {
+                return cachedTexts[slot];
+            }
+            String text = decode();
+            if (!escapedQuotes) {
+                byte[] key = new byte[length];
+                buffer.get(fieldStart, key);
+                cachedBytes[slot] = key;
+                cachedTexts[slot] = text;
+            }
+            return text;
+        }
+
+        private String decode() {
+            int length = fieldEnd - fieldStart;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(fieldStart, scratch, 0, length);
+            String text = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            return escapedQuotes ? text.replace("\"\"", "\"") : text;
+        }
+    }
+}
@@ -1,33 +1,136 @@
 package bankingapp;
 
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 
 /**
  * Applies compound interest to savings accounts at regular intervals.
+ *
+ * A run walks the database's account pages directly (no copy of the account
+ * map) and splits them across a fork-join pool, one task per range of
+ * pages, so it scales with the pool's parallelism. Each run prints a single
+ * summary line instead of one line per account.
+ *
+ * Rates come from an InterestRateTable, by default 20% per run for savings
+ * accounts. setRateTable swaps in a new table without stopping the task; a
+ * run reads the table once and uses its precomputed per-period factors.
+ *
+ * If the database accrues interest lazily (see InterestAccrual), a run does
+ * not apply this class's rate. It flushes the interest each savings account
+ * has accrued under the database's settings but not yet posted, so the task
+ * only needs to run at the end of a period, if at all.
  */
 public class CompoundInterest implements Runnable {
     private final BankAccountDatabase bankAccounts;
     private final long intervalMillis;
+    private final BankClock clock;
+    private final ForkJoinPool pool;
+    private final boolean testMode; // Read once, see run()
+    private volatile InterestRateTable rateTable = DEFAULT_RATES;
+    private long lastRunMillis; // For day counts, 0 before the first run
     private static final double INTEREST_RATE = 0.20; // 20% interest rate
     private static boolean interestAppliedForTest = false;
 
+    /**
+     * The rates used unless setRateTable is called: 20% per run for personal
+     * and business savings accounts.
+     */
+    public static final InterestRateTable DEFAULT_RATES = new InterestRateTable(InterestRateTable.DayCount.PER_PERIOD)
+        .withRate(AccountType.SAVINGS, InterestRateTable.AccountClass.PERSONAL, 0, INTEREST_RATE)
+        .withRate(AccountType.SAVINGS, InterestRateTable.AccountClass.BUSINESS, 0, INTEREST_RATE);
+
+    /**
+     * Result of one interest run.
+     */
+    public static final class RunSummary {
+        private final int accountsTouched;
+        private final long totalInterestCents;
+        private final long elapsedNanos;
+
+        RunSummary(int accountsTouched, long totalInterestCents, long elapsedNanos) {
+            this.accountsTouched = accountsTouched;
+            this.totalInterestCents = totalInterestCents;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getAccountsTouched() {
+            return accountsTouched;
+        }
+
+        public long getTotalInterestCents() {
+            return totalInterestCents;
+        }
+
+        public double getTotalInterest() {
+            return Money.toDollars(totalInterestCents);
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getElapsedMillis() {
+            return elapsedNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Applied $%.2f interest to %d accounts in %.1f ms",
+                getTotalInterest(), accountsTouched, getElapsedMillis());
+        }
+    }
+
     public CompoundInterest(BankAccountDatabase bankAccounts, long intervalMillis) {
+        this(bankAccounts, intervalMillis, BankClock.current());
+    }
+
+    /**
+     * Creates an interest task that waits between applications on the given
+     * clock, so a VirtualClock can drive it in simulations.
+     *
+     * @param bankAccounts The accounts to apply interest to
+     * @param intervalMillis Time between applications, in the clock's milliseconds
+     * @param clock The clock to wait on
+     */
+    public CompoundInterest(BankAccountDatabase bankAccounts, long intervalMillis, BankClock clock) {
+        this(bankAccounts, intervalMillis, clock, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an interest task that applies interest on the given pool.
+     *
+     * @param bankAccounts The accounts to apply interest to
+     * @param intervalMillis Time between applications, in the clock's milliseconds
+     * @param clock The clock to wait on
+     * @param pool The pool the account pages are processed on
+     */
+    public CompoundInterest(BankAccountDatabase bankAccounts, long intervalMillis, BankClock clock, ForkJoinPool pool) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock cannot be null");
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("Pool cannot be null");
+        }
         this.bankAccounts = bankAccounts;
         this.intervalMillis = intervalMillis;
+        this.clock = clock;
+        this.pool = pool;
+        this.testMode = System.getProperty("test.mode") != null;
     }
 
     @Override
     public void run() {
         while (!Thread.currentThread().isInterrupted()) {
             try {
-                if (System.getProperty("test.mode") != null && !interestAppliedForTest) {
-                    applyInterestToSavingsAccounts();
+                if (testMode && !interestAppliedForTest) {
+                    System.out.println(applyInterestToSavingsAccounts());
                     interestAppliedForTest = true;
                     break; // Exit after first application in test mode
-                } else if (System.getProperty("test.mode") == null) {
-                    applyInterestToSavingsAccounts();
+                } else if (!testMode) {
+                    System.out.println(applyInterestToSavingsAccounts());
                 }
-                Thread.sleep(intervalMillis);
+                clock.sleep(intervalMillis);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
@@ -36,21 +139,111 @@ public class CompoundInterest implements Runnable {
     }
 
     /**
-     * Applies compound interest to all active savings accounts.
+     * Gets the rates runs apply.
+     *
+     * @return The rate table
+     */
+    public InterestRateTable getRateTable() {
+        return rateTable;
+    }
+
+    /**
+     * Replaces the rates runs apply. The next run uses the new table.
+     *
+     * @param rateTable The new rate table
+     * @throws IllegalArgumentException if the table is null
+     */
+    public void setRateTable(InterestRateTable rateTable) {
+        if (rateTable == null) {
+            throw new IllegalArgumentException("Rate table cannot be null");
+        }
+        this.rateTable = rateTable;
+    }
+
+    /**
+     * Applies compound interest to all active accounts the rate table gives a rate.
+     *
+     * @return What the run did
      */
-    private void applyInterestToSavingsAccounts() {
-        Map<Integer, BankAccount> accounts = bankAccounts.getBankAccounts();
-        for (Map.Entry<Integer, BankAccount> entry : accounts.entrySet()) {
-            Integer accountNumber = entry.getKey();
-            BankAccount account = entry.getValue();
-            if (account != null && account.getAccountType() == AccountType.SAVINGS 
-                && bankAccounts.isAccountActive(accountNumber)) {
-                double balance = account.getCurrentBalance();
-                double interest = balance * INTEREST_RATE;
-                account.deposit(interest);
-                System.out.printf("Applied %.2f%% interest ($%.2f) to account %d. New balance: $%.2f%n",
-                    INTEREST_RATE * 100, interest, accountNumber, account.getCurrentBalance());
+    public synchronized RunSummary applyInterestToSavingsAccounts() {
+        long start = System.nanoTime();
+        InterestRateTable.Factors factors = null;
+        if (bankAccounts.getInterestAccrual() == null) {
+            // The period since the last run, or one interval for the first
+            long now = clock.millis();
+            long from = lastRunMillis != 0 ? lastRunMillis : now - Math.min(intervalMillis, now);
+            lastRunMillis = now;
+            InterestRateTable table = rateTable;
+            factors = table.factorsFor(table.getDayCount().yearFraction(from, now));
+        }
+        Tally tally = pool.invoke(new PageRange(bankAccounts, factors, 0, bankAccounts.bankAccountPageCount()));
+        return new RunSummary(tally.accounts, tally.interest, System.nanoTime() - start);
+    }
+
+    // Accounts credited and interest paid by one task
+    private static final class Tally implements Consumer<BankAccount> {
+        final InterestRateTable.Factors factors; // Null to flush lazily accrued interest
+        int accounts;
+        long interest;
+
+        Tally(InterestRateTable.Factors factors) {
+            this.factors = factors;
+        }
+
+        @Override
+        public void accept(BankAccount account) {
+            if (factors == null) {
+                long amount = account.accrueInterest();
+                if (amount > 0) {
+                    accounts++;
+                    interest += amount;
+                }
+            } else if (!account.frozen) {
+                long balance = account.getCurrentBalanceCents();
+                double factor = factors.factorFor(account, balance);
+                if (factor > 0) {
+                    long amount = factors.interestFor(factor, balance);
+                    account.depositCents(amount);
+                    accounts++;
+                    interest += amount;
+                }
+            }
+        }
+    }
+
+    // Applies interest to the pages [from, to), splitting the range in half until it is one page
+    private static final class PageRange extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+
+        private final BankAccountDatabase database;
+        private final InterestRateTable.Factors factors;
+        private final int from;
+        private final int to;
+
+        PageRange(BankAccountDatabase database, InterestRateTable.Factors factors, int from, int to) {
+            this.database = database;
+            this.factors = factors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (to - from <= 1) {
+                Tally tally = new Tally(factors);
+                for (int page = from; page < to; page++) {
+                    database.forEachBankAccountInPage(page, tally);
+                }
+                return tally;
             }
+            int middle = (from + to) >>> 1;
+            PageRange left = new PageRange(database, factors, from, middle);
+            left.fork();
+            Tally tally = new PageRange(database, factors, middle, to).compute();
+            Tally other = left.join();
+            tally.accounts += other.accounts;
+            tally.interest += other.interest;
+            return tally;
         }
     }
 
@@ -0,0 +1,127 @@
+package bankingapp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Numbers the distinct description strings written by TransactionCodec, so
+ * a record carries a small id instead of the text. Id 0 stands for null.
+ *
+ * Ids are handed out in first-seen order and never change, so a dictionary
+ * can be written incrementally (writeTo from the last id written) next to
+ * the records that use it. Lookups by string go through a concurrent map;
+ * adding a string takes the dictionary's monitor.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public final class DescriptionDictionary {
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] strings = new String[16];
+    private volatile int size = 1; // Id 0 is null
+
+    /**
+     * Gets the id of a string, adding it if it is new.
+     *
+     * @param description The string, or null
+     * @return Its id (0 for null)
+     */
+    public int idOf(String description) {
+        if (description == null) {
+            return 0;
+        }
+        Integer id = ids.get(description);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(description);
+            if (id == null) {
+                id = size;
+                put(id, description);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Gets the string with an id.
+     *
+     * @param id The id
+     * @return The string, or null for id 0
+     * @throws IllegalArgumentException if no string has that id
+     */
+    public String get(int id) {
+        String[] current = strings;
+        if (id < 0 || id >= size || id >= current.length) {
+            throw new IllegalArgumentException("Unknown description id: " + id);
+        }
+        return current[id];
+    }
+
+    /**
+     * Gets the number of ids in use, including 0 for null.
+     *
+     * @return The next id to be handed out
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes the strings with ids from fromId on, as many as fit.
+     *
+     * @param out The buffer to write to
+     * @param fromId The first id to write (1 for the whole dictionary)
+     * @return The first id that was not written
+     */
+    public int writeTo(ByteBuffer out, int fromId) {
+        int id = Math.max(fromId, 1);
+        int end = size;
+        String[] current = strings;
+        for (; id < end; id++) {
+            byte[] bytes = current[id].getBytes(StandardCharsets.UTF_8);
+            if (out.remaining() < 2 * TransactionCodec.MAX_VARINT_BYTES + bytes.length) {
+                break;
+            }
+            TransactionCodec.writeVarLong(out, id);
+            TransactionCodec.writeVarLong(out, bytes.length);
+            out.put(bytes);
+        }
+        return id;
+    }
+
+    /**
+     * Reads strings written by writeTo until the buffer is empty.
+     *
+     * @param in The buffer to read from
+     */
+    public synchronized void readFrom(ByteBuffer in) {
+        while (in.hasRemaining()) {
+            int id = (int) TransactionCodec.readVarLong(in);
+            int length = (int) TransactionCodec.readVarLong(in);
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            if (id != size) {
+                throw new IllegalArgumentException("Dictionary id " + id + " out of order, expected " + size);
+            }
+            put(id, new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    // Called with the monitor held
+    private void put(int id, String description) {
+        String[] current = strings;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = description;
+        strings = current;
+        ids.put(description, id);
+        size = id + 1; // Publish after the string is stored
+    }
+}
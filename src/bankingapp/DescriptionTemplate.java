@@ -0,0 +1,121 @@
+package bankingapp;
+
+/**
+ * The descriptions BankAccount records in transaction histories, as shared
+ * templates. A history entry stores its template, plus a text and a number
+ * argument for the templates that take them, and the description is only
+ * built when Transaction.getDescription() or toString() asks for it. The
+ * text argument is a string the caller already holds (such as a recurring
+ * payment's description), so recording an entry does not create a string.
+ *
+ * Ordinals are written by TransactionCodec, so new templates go last.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+enum DescriptionTemplate {
+    /** The text argument, as is */
+    TEXT(true, false) {
+        @Override
+        String render(String text, int number) {
+            return text;
+        }
+    },
+    INITIAL_DEPOSIT("Initial deposit"),
+    CHANGED_WITHDRAWAL_LIMIT("Changed withdrawal limit"),
+    CHANGED_DEPOSIT_LIMIT("Changed deposit limit"),
+    DEPOSIT_CHECKING("Deposit Checking"),
+    DEPOSIT_SAVINGS("Deposit Savings"),
+    WITHDRAWAL("Withdrawal"),
+    FAILED_WITHDRAWAL("Failed withdrawal - Insufficient funds"),
+    INTEREST("Interest"),
+    WITHDRAWAL_FOR_TRANSFER("Withdrawal for transfer"),
+    TRANSFER_OVER_LIMIT("Transfer failed: Exceeds withdrawal limit"),
+    TRANSFER_INSUFFICIENT_FUNDS("Transfer failed: Insufficient funds"),
+    TRANSFER_REFUNDED("Transfer failed: Destination rejected deposit. Refunded."),
+    HISTORY_CLEARED("Transaction history cleared"),
+    /** Number: the destination account */
+    TRANSFER_TO(false, true) {
+        @Override
+        String render(String text, int number) {
+            return "Transfer to account " + number;
+        }
+    },
+    /** Text: the transfer's description */
+    SCHEDULED_TRANSFER(true, false) {
+        @Override
+        String render(String text, int number) {
+            return "Scheduled transfer: " + text;
+        }
+    },
+    /** Text: the payment's description */
+    RECURRING_PAYMENT(true, false) {
+        @Override
+        String render(String text, int number) {
+            return "Recurring payment: " + text;
+        }
+    },
+    /** Text: the payment's description; number: the paying account */
+    RECURRING_PAYMENT_FROM(true, true) {
+        @Override
+        String render(String text, int number) {
+            return "Recurring payment from account " + number + ": " + text;
+        }
+    },
+    /** Text: the payment's description */
+    RECURRING_PAYMENT_INSUFFICIENT_FUNDS(true, false) {
+        @Override
+        String render(String text, int number) {
+            return "Failed recurring payment '" + text + "': Insufficient funds";
+        }
+    },
+    /** Text: the payment's description; number: the missed payments */
+    MISSED_PAYMENTS_INSUFFICIENT_FUNDS(true, true) {
+        @Override
+        String render(String text, int number) {
+            return "Failed recurring payment '" + text + "': Insufficient funds for " + number + " missed payments";
+        }
+    };
+
+    private static final DescriptionTemplate[] TEMPLATES = values();
+
+    private final String fixedText;
+    private final boolean takesText;
+    private final boolean takesNumber;
+
+    DescriptionTemplate(String fixedText) {
+        this.fixedText = fixedText;
+        this.takesText = false;
+        this.takesNumber = false;
+    }
+
+    DescriptionTemplate(boolean takesText, boolean takesNumber) {
+        this.fixedText = null;
+        this.takesText = takesText;
+        this.takesNumber = takesNumber;
+    }
+
+    static DescriptionTemplate of(int ordinal) {
+        return TEMPLATES[ordinal];
+    }
+
+    boolean takesText() {
+        return takesText;
+    }
+
+    boolean takesNumber() {
+        return takesNumber;
+    }
+
+    /**
+     * Builds the description.
+     *
+     * @param text The text argument (ignored by templates without one)
+     * @param number The number argument (ignored by templates without one)
+     * @return The description
+     */
+    String render(String text, int number) {
+        return fixedText;
+    }
+}
@@ -0,0 +1,80 @@
+package bankingapp;
+
+import java.math.RoundingMode;
+
+/**
+ * Settings for lazy interest accrual on savings accounts.
+ *
+ * When a database has an InterestAccrual (see
+ * BankAccountDatabase.setInterestAccrual), a savings account is not swept
+ * on a timer. Instead it remembers when interest was last accrued, and the
+ * next time its balance is read or credited it posts the interest for all
+ * whole periods since then as one INTEREST transaction, compounded in
+ * closed form: balance * ((1 + rate)^periods - 1), rounded once to whole
+ * cents. An account nobody touches costs nothing until it is touched.
+ * CompoundInterest then only flushes the accounts that were not touched
+ * during a period.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public final class InterestAccrual {
+
+    private static final RoundingMode INTEREST_ROUNDING = RoundingMode.HALF_EVEN; // Banker's rounding, as CompoundInterest
+
+    private final double ratePerPeriod;
+    private final long periodMillis;
+    private final long startMillis;
+
+    /**
+     * Creates accrual settings that start counting periods now.
+     *
+     * @param ratePerPeriod The interest rate per period (e.g. 0.20 for 20%)
+     * @param periodMillis The length of a period, in milliseconds
+     * @throws IllegalArgumentException if the rate is negative or the period is not positive
+     */
+    public InterestAccrual(double ratePerPeriod, long periodMillis) {
+        if (!(ratePerPeriod >= 0)) {
+            throw new IllegalArgumentException("Interest rate cannot be negative");
+        }
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Accrual period must be positive");
+        }
+        this.ratePerPeriod = ratePerPeriod;
+        this.periodMillis = periodMillis;
+        this.startMillis = BankClock.current().millis();
+    }
+
+    public double getRatePerPeriod() {
+        return ratePerPeriod;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    /**
+     * Gets when these settings took effect. Accounts that have never accrued
+     * count their periods from here.
+     *
+     * @return Milliseconds since the epoch
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Computes the interest a balance earns over whole periods, compounded.
+     *
+     * @param balanceCents The balance at the start of the periods, in cents
+     * @param periods The number of whole periods
+     * @return The interest, in cents
+     */
+    public long interestFor(long balanceCents, long periods) {
+        if (periods <= 0 || balanceCents <= 0) {
+            return 0;
+        }
+        return Money.multiply(balanceCents, Math.pow(1 + ratePerPeriod, periods) - 1, INTEREST_ROUNDING);
+    }
+}
@@ -0,0 +1,281 @@
+package bankingapp;
+
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Interest rates keyed by account type, account class (personal or
+ * BusinessAccount) and balance tier, with the day-count convention that
+ * turns an annual rate into a rate for one interest period.
+ *
+ * A table is immutable and carries a version; changing a rate creates a new
+ * table (see withRate), which CompoundInterest.setRateTable swaps in while
+ * running. For a sweep, factorsFor() turns the rates into per-period factors
+ * once per table and period length, so the per-account work is picking the
+ * tier and one multiplication.
+ *
+ * A tier's rate applies to the whole balance of an account whose balance is
+ * at least the tier's floor and below the next tier's. Balances below the
+ * lowest floor, and account types or classes without rates, earn nothing.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public final class InterestRateTable {
+
+    private static final RoundingMode INTEREST_ROUNDING = RoundingMode.HALF_EVEN; // Banker's rounding to whole cents
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    private static final AccountType[] TYPES = AccountType.values();
+    private static final int SLOTS = TYPES.length * 2; // Personal and business for each type
+
+    /**
+     * How the length of an interest period is counted as a fraction of a year.
+     */
+    public enum DayCount {
+        /** The rate is the rate for one period, whatever its length */
+        PER_PERIOD,
+        /** Actual days / 365, counting the midnights crossed */
+        ACTUAL_365,
+        /** Actual days / 360, counting the midnights crossed */
+        ACTUAL_360,
+        /** 30/360 (US): every month counts as 30 days */
+        THIRTY_360;
+
+        /**
+         * Gets the fraction of a year between two times, as counted by this
+         * convention. Dates are taken in RecurringPayment.ZONE, and every
+         * convention counts whole days, so periods of the same number of
+         * days give exactly the same fraction (and reuse the same factors)
+         * whatever the time of day they start and end. Consecutive periods
+         * still add up to the days between the first start and last end.
+         *
+         * @param fromMillis The start of the period
+         * @param toMillis The end of the period
+         * @return The year fraction (1 for PER_PERIOD)
+         */
+        public double yearFraction(long fromMillis, long toMillis) {
+            switch (this) {
+                case ACTUAL_365:
+                    return (RecurringPayment.toEpochDay(toMillis) - RecurringPayment.toEpochDay(fromMillis)) / 365.0;
+                case ACTUAL_360:
+                    return (RecurringPayment.toEpochDay(toMillis) - RecurringPayment.toEpochDay(fromMillis)) / 360.0;
+                case THIRTY_360: {
+                    LocalDate from = LocalDate.ofEpochDay(RecurringPayment.toEpochDay(fromMillis));
+                    LocalDate to = LocalDate.ofEpochDay(RecurringPayment.toEpochDay(toMillis));
+                    int fromDay = Math.min(from.getDayOfMonth(), 30);
+                    int toDay = to.getDayOfMonth() == 31 && fromDay == 30 ? 30 : to.getDayOfMonth();
+                    return ((to.getYear() - from.getYear()) * 360
+                        + (to.getMonthValue() - from.getMonthValue()) * 30 + (toDay - fromDay)) / 360.0;
+                }
+                default:
+                    return 1;
+            }
+        }
+    }
+
+    /**
+     * Whether an account is a personal account or a BusinessAccount.
+     */
+    public enum AccountClass {
+        PERSONAL,
+        BUSINESS;
+
+        public static AccountClass of(BankAccount account) {
+            return account instanceof BusinessAccount ? BUSINESS : PERSONAL;
+        }
+    }
+
+    /**
+     * Per-period interest factors for one table and one period length.
+     */
+    public static final class Factors {
+        private final long[][] floors;
+        private final double[][] factors;
+        private final double yearFraction;
+
+        private Factors(long[][] floors, double[][] rates, double yearFraction) {
+            this.floors = floors;
+            this.factors = new double[SLOTS][];
+            for (int slot = 0; slot < SLOTS; slot++) {
+                factors[slot] = new double[rates[slot].length];
+                for (int tier = 0; tier < rates[slot].length; tier++) {
+                    factors[slot][tier] = rates[slot][tier] * yearFraction;
+                }
+            }
+            this.yearFraction = yearFraction;
+        }
+
+        /**
+         * Gets the factor an account's balance earns for one period.
+         *
+         * @param account The account
+         * @param balanceCents Its balance, in cents
+         * @return The factor, or 0 if no rate applies
+         */
+        public double factorFor(BankAccount account, long balanceCents) {
+            AccountType type = account.getAccountType();
+            if (type == null) {
+                return 0;
+            }
+            int slot = slot(type, account instanceof BusinessAccount);
+            long[] tierFloors = floors[slot];
+            for (int tier = tierFloors.length - 1; tier >= 0; tier--) {
+                if (balanceCents >= tierFloors[tier]) {
+                    return factors[slot][tier];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Computes the interest for one period, rounded to whole cents.
+         *
+         * @param factor A factor from factorFor
+         * @param balanceCents The balance, in cents
+         * @return The interest, in cents
+         */
+        public long interestFor(double factor, long balanceCents) {
+            return Money.multiply(balanceCents, factor, INTEREST_ROUNDING);
+        }
+    }
+
+    private final long version;
+    private final DayCount dayCount;
+    private final long[][] floors; // Per slot, ascending
+    private final double[][] rates; // Annual (or per-period) rate of each floor
+    private volatile Factors cachedFactors; // For the last year fraction asked for
+
+    /**
+     * Creates an empty table. Nothing earns interest until rates are added.
+     *
+     * @param dayCount The day-count convention for the rates
+     * @throws IllegalArgumentException if dayCount is null
+     */
+    public InterestRateTable(DayCount dayCount) {
+        this(dayCount, emptyFloors(), emptyRates());
+    }
+
+    private InterestRateTable(DayCount dayCount, long[][] floors, double[][] rates) {
+        if (dayCount == null) {
+            throw new IllegalArgumentException("Day count cannot be null");
+        }
+        this.version = VERSIONS.incrementAndGet();
+        this.dayCount = dayCount;
+        this.floors = floors;
+        this.rates = rates;
+    }
+
+    private static long[][] emptyFloors() {
+        long[][] floors = new long[SLOTS][];
+        Arrays.fill(floors, new long[0]);
+        return floors;
+    }
+
+    private static double[][] emptyRates() {
+        double[][] rates = new double[SLOTS][];
+        Arrays.fill(rates, new double[0]);
+        return rates;
+    }
+
+    private static int slot(AccountType type, boolean business) {
+        return type.ordinal() * 2 + (business ? 1 : 0);
+    }
+
+    /**
+     * Creates a copy of this table with a rate set for one tier, replacing the
+     * tier's rate if the floor is already present.
+     *
+     * @param type The account type
+     * @param accountClass Personal or business
+     * @param floorCents The smallest balance the tier applies to, in cents
+     * @param rate The rate (annual, or per period for PER_PERIOD), e.g. 0.05 for 5%
+     * @return The new table, with a new version
+     * @throws IllegalArgumentException if an argument is null or negative
+     */
+    public InterestRateTable withRate(AccountType type, AccountClass accountClass, long floorCents, double rate) {
+        if (type == null || accountClass == null) {
+            throw new IllegalArgumentException("Account type and class cannot be null");
+        }
+        if (floorCents < 0) {
+            throw new IllegalArgumentException("Tier floor cannot be negative");
+        }
+        if (!(rate >= 0)) {
+            throw new IllegalArgumentException("Interest rate cannot be negative");
+        }
+        int slot = slot(type, accountClass == AccountClass.BUSINESS);
+        long[][] newFloors = floors.clone();
+        double[][] newRates = rates.clone();
+        long[] tierFloors = floors[slot];
+        int tier = Arrays.binarySearch(tierFloors, floorCents);
+        if (tier >= 0) {
+            newRates[slot] = rates[slot].clone();
+        } else {
+            tier = -tier - 1;
+            newFloors[slot] = new long[tierFloors.length + 1];
+            newRates[slot] = new double[tierFloors.length + 1];
+            System.arraycopy(tierFloors, 0, newFloors[slot], 0, tier);
+            System.arraycopy(rates[slot], 0, newRates[slot], 0, tier);
+            System.arraycopy(tierFloors, tier, newFloors[slot], tier + 1, tierFloors.length - tier);
+            System.arraycopy(rates[slot], tier, newRates[slot], tier + 1, tierFloors.length - tier);
+            newFloors[slot][tier] = floorCents;
+        }
+        newRates[slot][tier] = rate;
+        return new InterestRateTable(dayCount, newFloors, newRates);
+    }
+
+    /**
+     * Creates a copy of this table with another day-count convention.
+     *
+     * @param dayCount The new convention
+     * @return The new table, with a new version
+     */
+    public InterestRateTable withDayCount(DayCount dayCount) {
+        return new InterestRateTable(dayCount, floors, rates);
+    }
+
+    /**
+     * Gets the rate a balance earns.
+     *
+     * @param type The account type
+     * @param accountClass Personal or business
+     * @param balanceCents The balance, in cents
+     * @return The rate, or 0 if none applies
+     */
+    public double getRate(AccountType type, AccountClass accountClass, long balanceCents) {
+        int slot = slot(type, accountClass == AccountClass.BUSINESS);
+        for (int tier = floors[slot].length - 1; tier >= 0; tier--) {
+            if (balanceCents >= floors[slot][tier]) {
+                return rates[slot][tier];
+            }
+        }
+        return 0;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public DayCount getDayCount() {
+        return dayCount;
+    }
+
+    /**
+     * Gets the per-period factors for a period of the given length. The
+     * factors are computed once and reused while the length stays the same.
+     *
+     * @param yearFraction The period as a fraction of a year (see DayCount)
+     * @return The factors
+     */
+    public Factors factorsFor(double yearFraction) {
+        Factors factors = cachedFactors;
+        if (factors == null || factors.yearFraction != yearFraction) {
+            factors = new Factors(floors, rates, yearFraction);
+            cachedFactors = factors;
+        }
+        return factors;
+    }
+}
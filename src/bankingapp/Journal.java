@@ -0,0 +1,714 @@
+package bankingapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal for account and ledger mutations.
+ *
+ * Records are appended to fixed-size segment files that are memory-mapped,
+ * so an append is a handful of writes into mapped memory. Each record is
+ * laid out as:
+ *
+ * <pre>
+ * int  length     length of the body, written last (0 marks the end of a segment)
+ * int  crc        CRC32 of the body
+ * body:
+ *   byte type     RecordType code
+ *   long sequence increases by one per record, across segments
+ *   long timestamp epoch milliseconds
+ *   ...           record-specific payload (ints, longs, length-prefixed UTF-8)
+ * </pre>
+ *
+ * When a record is durable depends on the FsyncPolicy: after every append,
+ * after a shared group commit, or on a fixed interval in the background.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public class Journal implements AutoCloseable {
+
+    /**
+     * When appended records are forced to disk.
+     */
+    public enum FsyncPolicy {
+        /** Force the segment after every append before returning. */
+        PER_OP,
+        /** Appenders wait for a force, and one force covers everyone waiting. */
+        GROUP_COMMIT,
+        /** Appends return immediately and a background thread forces on an interval. */
+        INTERVAL
+    }
+
+    /**
+     * The kinds of mutation recorded in the journal. A type's ordinal is its
+     * code on disk, so new types must be added at the end.
+     */
+    public enum RecordType {
+        CREATE_ACCOUNT,
+        REMOVE_ACCOUNT,
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER,
+        FREEZE,
+        UNFREEZE,
+        WITHDRAWAL_LIMIT,
+        DEPOSIT_LIMIT,
+        SCHEDULE_TRANSFER,
+        SCHEDULE_RECURRING,
+        CANCEL_RECURRING,
+        RECURRING_PAYMENT,
+        SCHEDULED_TRANSFER_DONE,
+        RECURRING_CATCH_UP,
+        SUSPENSE,
+        INTEREST_ACCRUAL,
+        CATCH_UP_POLICY,
+        IMPORTED_TRANSACTION,
+        RECURRING_SETTLEMENT;
+
+        private static final RecordType[] VALUES = values();
+
+        static RecordType fromCode(byte code) {
+            return VALUES[code];
+        }
+    }
+
+    /**
+     * Receives records during replay. The payload buffer is positioned at the
+     * start of the record's payload and is only valid during the call.
+     */
+    public interface RecordVisitor {
+        void visit(RecordType type, long sequence, long timestamp, ByteBuffer payload);
+    }
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20; // 64 MB
+    public static final long DEFAULT_INTERVAL_MILLIS = 100;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int RECORD_HEADER = 8; // length + crc
+    private static final int BODY_HEADER = 1 + 8 + 8; // type + sequence + timestamp
+
+    private final Path directory;
+    private final FsyncPolicy policy;
+    private final long segmentSize;
+    private final CRC32 crc = new CRC32();
+    private final Object syncLock = new Object();
+    private ScheduledExecutorService flusher;
+
+    // Guarded by this
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long segmentIndex;
+    private long nextSequence;
+    private int recordStart;
+    private boolean closed;
+
+    // Guarded by syncLock
+    private long durableSequence;
+    private boolean syncing;
+
+    /**
+     * Opens a journal with the default segment size and flush interval.
+     *
+     * @param directory Directory holding the segment files (created if missing)
+     * @param policy When appended records are forced to disk
+     * @throws IOException if the directory or segments cannot be opened
+     */
+    public Journal(Path directory, FsyncPolicy policy) throws IOException {
+        this(directory, policy, DEFAULT_SEGMENT_SIZE, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens a journal, continuing after the last complete record if segment
+     * files already exist.
+     *
+     * @param directory Directory holding the segment files (created if missing)
+     * @param policy When appended records are forced to disk
+     * @param segmentSize Size of each mapped segment file in bytes
+     * @param intervalMillis Flush interval for the INTERVAL policy
+     * @throws IOException if the directory or segments cannot be opened
+     */
+    public Journal(Path directory, FsyncPolicy policy, long segmentSize, long intervalMillis) throws IOException {
+        if (segmentSize < 1024 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be between 1 KB and 2 GB");
+        }
+        this.directory = directory;
+        this.policy = policy;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+
+        List<Path> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            openSegment(0, 0);
+            nextSequence = 1;
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            long[] end = scanSegment(last); // {position, last sequence}
+            long lastSequence = end[1];
+            if (lastSequence == 0 && segments.size() > 1) {
+                lastSequence = scanSegment(segments.get(segments.size() - 2))[1];
+            }
+            openSegment(segmentIndexOf(last), (int) end[0]);
+            nextSequence = lastSequence + 1;
+        }
+        durableSequence = nextSequence - 1;
+
+        if (policy == FsyncPolicy.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleAtFixedRate(this::sync, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Gets the directory holding this journal's segments.
+     *
+     * @return The journal directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the sequence number of the last appended record.
+     *
+     * @return The last sequence number, or 0 if the journal is empty
+     */
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    // ---- Typed appends, called by BankAccountDatabase and BankAccount ----
+
+    void logCreateAccount(int accountNumber, BankAccount account) {
+        long sequence;
+        synchronized (this) {
+            ByteBuffer out = begin(RecordType.CREATE_ACCOUNT, 4 + 1 + 1 + 8 + 8 + 8 + 1);
+            out.putInt(accountNumber);
+            out.put((byte) (account instanceof BusinessAccount ? 1 : 0));
+            AccountType accountType = account.getAccountType();
+            out.put((byte) (accountType == null ? -1 : accountType.ordinal())); // -1 when no type was set
+            out.putLong(account.balanceCents());
+            out.putLong(account.getMaxWithdrawalLimitCents());
+            out.putLong(account.getMaxDepositLimitCents());
+            out.put((byte) (account.getTransactionCount() > 0 ? 1 : 0)); // 1 when the opening balance has a history entry
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logAccount(RecordType type, int accountNumber) {
+        long sequence;
+        synchronized (this) {
+            begin(type, 4).putInt(accountNumber);
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logAmount(RecordType type, int accountNumber, long cents) {
+        long sequence;
+        synchronized (this) {
+            begin(type, 4 + 8).putInt(accountNumber).putLong(cents);
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logTransfer(int sourceNumber, int destinationNumber, long cents) {
+        long sequence;
+        synchronized (this) {
+            begin(RecordType.TRANSFER, 4 + 4 + 8).putInt(sourceNumber).putInt(destinationNumber).putLong(cents);
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logScheduleTransfer(int sourceNumber, int destinationNumber, long cents, long scheduledMillis, String description) {
+        byte[] text = utf8(description);
+        long sequence;
+        synchronized (this) {
+            ByteBuffer out = begin(RecordType.SCHEDULE_TRANSFER, 4 + 4 + 8 + 8 + 4 + text.length);
+            out.putInt(sourceNumber).putInt(destinationNumber).putLong(cents).putLong(scheduledMillis);
+            out.putInt(text.length).put(text);
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logScheduleRecurring(int accountNumber, RecurringPayment payment) {
+        byte[] description = utf8(payment.getDescription());
+        byte[] recipient = utf8(payment.getRecipientAccountId());
+        long sequence;
+        synchronized (this) {
+            ByteBuffer out = begin(RecordType.SCHEDULE_RECURRING,
+                4 + 8 + 8 + 1 + 4 + description.length + 4 + recipient.length + 1);
+            out.putInt(accountNumber).putLong(payment.getAmountCents()).putLong(payment.getStartDate().getTime());
+            out.put((byte) payment.getFrequency().ordinal());
+            out.putInt(description.length).put(description);
+            out.putInt(recipient.length).put(recipient);
+            out.put((byte) payment.getCatchUpPolicy().ordinal()); // Absent from records written before it was added
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logIndex(RecordType type, int accountNumber, int index) {
+        long sequence;
+        synchronized (this) {
+            begin(type, 4 + 4).putInt(accountNumber).putInt(index);
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logCatchUpPolicy(int accountNumber, int paymentIndex, RecurringPayment.CatchUpPolicy policy) {
+        long sequence;
+        synchronized (this) {
+            begin(RecordType.CATCH_UP_POLICY, 4 + 4 + 1).putInt(accountNumber).putInt(paymentIndex).put((byte) policy.ordinal());
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logImportedTransaction(int accountNumber, TransactionType type, long amount, String description,
+            long timestamp, long balanceAfter) {
+        byte[] text = utf8(description);
+        long sequence;
+        synchronized (this) {
+            ByteBuffer out = begin(RecordType.IMPORTED_TRANSACTION, 4 + 1 + 8 + 8 + 8 + 4 + text.length);
+            out.putInt(accountNumber).put((byte) type.ordinal()).putLong(amount).putLong(timestamp).putLong(balanceAfter);
+            out.putInt(description == null ? -1 : text.length).put(text); // -1 for no description
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logScheduledTransferDone(int accountNumber, ScheduledTransfer transfer) {
+        long sequence;
+        synchronized (this) {
+            begin(RecordType.SCHEDULED_TRANSFER_DONE, 4 + 4 + 8 + 8).putInt(accountNumber)
+                .putInt(transfer.getDestinationAccount().getAccountNumber())
+                .putLong(transfer.getAmountCents()).putLong(transfer.getScheduledDate().getTime());
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logRecurringPayment(int accountNumber, int paymentIndex, long cents, long nextPaymentMillis) {
+        long sequence;
+        synchronized (this) {
+            begin(RecordType.RECURRING_PAYMENT, 4 + 4 + 8 + 8)
+                .putInt(accountNumber).putInt(paymentIndex).putLong(cents).putLong(nextPaymentMillis);
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logRecurringCatchUp(int accountNumber, int paymentIndex, long cents, int occurrences, long nextPaymentMillis) {
+        long sequence;
+        synchronized (this) {
+            begin(RecordType.RECURRING_CATCH_UP, 4 + 4 + 8 + 4 + 8).putInt(accountNumber).putInt(paymentIndex)
+                .putLong(cents).putInt(occurrences).putLong(nextPaymentMillis);
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logRecurringSettlement(int accountNumber, long[] amounts, int[] payers, int[] paymentIndexes, int count) {
+        long sequence;
+        synchronized (this) {
+            ByteBuffer out = begin(RecordType.RECURRING_SETTLEMENT, 4 + 4 + count * (4 + 4 + 8));
+            out.putInt(accountNumber).putInt(count);
+            for (int i = 0; i < count; i++) {
+                out.putInt(payers[i]).putInt(paymentIndexes[i]).putLong(amounts[i]);
+            }
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logInterestAccrual(int accountNumber, long cents, long throughMillis) {
+        long sequence;
+        synchronized (this) {
+            begin(RecordType.INTEREST_ACCRUAL, 4 + 8 + 8).putInt(accountNumber).putLong(cents).putLong(throughMillis);
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    void logSuspense(SuspenseQueue.Entry entry) {
+        byte[] recipient = utf8(entry.getRecipientAccountId());
+        byte[] description = utf8(entry.getDescription());
+        long sequence;
+        synchronized (this) {
+            ByteBuffer out = begin(RecordType.SUSPENSE, 4 + 8 + 4 + recipient.length + 4 + description.length);
+            out.putInt(entry.getPayerAccountNumber()).putLong(entry.getAmountCents());
+            out.putInt(recipient.length).put(recipient);
+            out.putInt(description.length).put(description);
+            sequence = finish();
+        }
+        afterAppend(sequence);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from a record payload.
+     *
+     * @param payload The payload buffer passed to a RecordVisitor
+     * @return The decoded string
+     */
+    public static String readString(ByteBuffer payload) {
+        int length = payload.getInt();
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String text) {
+        return text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ---- Append machinery ----
+
+    /**
+     * Starts a record and returns the mapped buffer positioned at its payload.
+     * Must be called with this journal's monitor held, followed by finish().
+     */
+    private ByteBuffer begin(RecordType type, int payloadLength) {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        int bodyLength = BODY_HEADER + payloadLength;
+        int needed = RECORD_HEADER + bodyLength + 4; // Leave room for the end marker
+        if (needed > segmentSize) {
+            throw new IllegalArgumentException("Record of " + bodyLength + " bytes does not fit in a segment");
+        }
+        if (buffer.position() + needed > segmentSize) {
+            rollSegment();
+        }
+        recordStart = buffer.position();
+        buffer.position(recordStart + RECORD_HEADER);
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(nextSequence);
+        buffer.putLong(BankClock.current().millis());
+        return buffer;
+    }
+
+    /**
+     * Completes the record started by begin(): checksums the body, then
+     * publishes it by writing its length.
+     */
+    private long finish() {
+        int end = buffer.position();
+        int bodyStart = recordStart + RECORD_HEADER;
+        crc.reset();
+        buffer.position(bodyStart).limit(end);
+        crc.update(buffer);
+        buffer.limit(buffer.capacity());
+        buffer.putInt(recordStart + 4, (int) crc.getValue());
+        buffer.putInt(recordStart, end - bodyStart); // A non-zero length makes the record visible
+        buffer.position(end);
+        return nextSequence++;
+    }
+
+    private void afterAppend(long sequence) {
+        switch (policy) {
+            case PER_OP:
+                forceAppended(false);
+                break;
+            case GROUP_COMMIT:
+                awaitDurable(sequence);
+                break;
+            case INTERVAL:
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Group commit: the first thread to arrive forces the segment for
+     * everyone appended so far, the others wait on syncLock for a force that
+     * covers them. The force runs without this journal's monitor, so other
+     * threads keep appending (and queue up for the next force) meanwhile.
+     * An interrupt does not cut the wait short: the flag is restored once the
+     * record is durable.
+     */
+    private void awaitDurable(long sequence) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                synchronized (syncLock) {
+                    while (syncing && durableSequence < sequence) {
+                        try {
+                            syncLock.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (durableSequence >= sequence) {
+                        return;
+                    }
+                    syncing = true; // This thread leads the next force
+                }
+                forceAppended(true);
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Forces every record appended so far. The target sequence and its
+     * segment are read under the append lock, which is released before the
+     * force; earlier segments were forced when they were rolled.
+     *
+     * @param leader Whether the caller set syncing and must clear it
+     */
+    private void forceAppended(boolean leader) {
+        long target;
+        MappedByteBuffer segment;
+        synchronized (this) {
+            target = nextSequence - 1;
+            segment = buffer;
+        }
+        boolean forced = false;
+        try {
+            forceSegment(segment);
+            forced = true;
+        } finally {
+            synchronized (syncLock) {
+                if (forced) {
+                    durableSequence = Math.max(durableSequence, target);
+                }
+                if (leader) {
+                    syncing = false;
+                }
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Forces a mapped segment to disk. Called without the append lock held.
+     *
+     * @param segment The segment to force
+     */
+    protected void forceSegment(MappedByteBuffer segment) {
+        segment.force();
+    }
+
+    /**
+     * Forces every appended record to disk. If another thread is already
+     * forcing, this waits for it and forces again only if records it did
+     * not cover remain.
+     */
+    public void sync() {
+        long target;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            target = nextSequence - 1;
+        }
+        awaitDurable(target);
+    }
+
+    /**
+     * Gets the sequence number of the last record known to be on disk.
+     *
+     * @return The last durable sequence number, or 0 if none
+     */
+    public long getDurableSequence() {
+        synchronized (syncLock) {
+            return durableSequence;
+        }
+    }
+
+    private void rollSegment() {
+        try {
+            buffer.putInt(buffer.position(), 0); // End marker
+            buffer.force();
+            channel.close();
+            openSegment(segmentIndex + 1, 0);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not roll journal segment", e);
+        }
+    }
+
+    private void openSegment(long index, int position) throws IOException {
+        Path path = directory.resolve(segmentName(index));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buffer.position(position);
+        segmentIndex = index;
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            buffer.force();
+            closed = true;
+            synchronized (syncLock) {
+                durableSequence = Math.max(durableSequence, nextSequence - 1);
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("[Journal] WARN: Could not close segment: " + e.getMessage());
+            }
+        }
+    }
+
+    // ---- Reading ----
+
+    /**
+     * Replays every complete record with a sequence number greater than
+     * afterSequence, in order. Reading stops at the first torn or corrupt
+     * record, which can only be the tail of the last write before a crash.
+     *
+     * @param directory The journal directory
+     * @param afterSequence Only records after this sequence are visited (0 for all)
+     * @param visitor Receives each record
+     * @return The sequence number of the last record read, or afterSequence if none
+     * @throws IOException if a segment cannot be read
+     */
+    public static long replay(Path directory, long afterSequence, RecordVisitor visitor) throws IOException {
+        return replay(directory, afterSequence, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Replays the complete records with sequence numbers in
+     * (afterSequence, throughSequence], in order. The journal may still be
+     * open for appends: records up to its last sequence are always whole.
+     *
+     * @param directory The journal directory
+     * @param afterSequence Only records after this sequence are visited (0 for all)
+     * @param throughSequence Reading stops after the record with this sequence
+     * @param visitor Receives each record
+     * @return The sequence number of the last record read, or afterSequence if none
+     * @throws IOException if a segment cannot be read
+     */
+    public static long replay(Path directory, long afterSequence, long throughSequence, RecordVisitor visitor)
+            throws IOException {
+        long last = afterSequence;
+        if (!Files.isDirectory(directory)) {
+            return last;
+        }
+        CRC32 checksum = new CRC32();
+        for (Path segment : listSegments(directory)) {
+            try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                ByteBuffer payload = data.duplicate();
+                while (data.remaining() >= RECORD_HEADER) {
+                    int start = data.position();
+                    int length = data.getInt();
+                    if (length == 0) {
+                        break; // End of this segment
+                    }
+                    int expectedCrc = data.getInt();
+                    int bodyStart = start + RECORD_HEADER;
+                    if (length < BODY_HEADER || bodyStart + length > data.limit()
+                            || !checksumMatches(checksum, data, bodyStart, length, expectedCrc)) {
+                        return last; // Torn tail
+                    }
+                    RecordType type = RecordType.fromCode(data.get(bodyStart));
+                    long sequence = data.getLong(bodyStart + 1);
+                    long timestamp = data.getLong(bodyStart + 9);
+                    if (sequence > throughSequence) {
+                        return last;
+                    }
+                    if (sequence > afterSequence) {
+                        payload.limit(bodyStart + length).position(bodyStart + BODY_HEADER);
+                        visitor.visit(type, sequence, timestamp, payload);
+                        payload.limit(payload.capacity());
+                        last = sequence;
+                    }
+                    data.position(bodyStart + length);
+                }
+            }
+        }
+        return last;
+    }
+
+    private static boolean checksumMatches(CRC32 checksum, ByteBuffer data, int bodyStart, int length, int expected) {
+        ByteBuffer body = data.duplicate();
+        body.position(bodyStart).limit(bodyStart + length);
+        checksum.reset();
+        checksum.update(body);
+        return (int) checksum.getValue() == expected;
+    }
+
+    /**
+     * Finds the end of the complete records in a segment.
+     *
+     * @return {write position, last sequence in the segment or 0}
+     */
+    private long[] scanSegment(Path segment) throws IOException {
+        long[] end = {0, 0};
+        CRC32 checksum = new CRC32();
+        try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            while (data.remaining() >= RECORD_HEADER) {
+                int start = data.position();
+                int length = data.getInt();
+                int expectedCrc = data.getInt();
+                int bodyStart = start + RECORD_HEADER;
+                if (length < BODY_HEADER || bodyStart + length > data.limit()
+                        || !checksumMatches(checksum, data, bodyStart, length, expectedCrc)) {
+                    break;
+                }
+                end[1] = data.getLong(bodyStart + 1);
+                data.position(bodyStart + length);
+                end[0] = data.position();
+            }
+        }
+        return end;
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        Collections.sort(segments); // Zero-padded names sort by index
+        return segments;
+    }
+
+    private static String segmentName(long index) {
+        return String.format("%s%016d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    private static long segmentIndexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,869 @@
+package bankingapp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Streams every account and every account's transaction history to CSV or
+ * JSON Lines files, for audits.
+ *
+ * Accounts files, one account per row after the header (CSV) or one object
+ * per line (JSON Lines, same names as keys):
+ *
+ *   account,kind,type,balance,max_withdrawal,max_deposit,frozen
+ *
+ *   kind            PERSONAL or BUSINESS
+ *   type            CHECKING or SAVINGS; empty (null in JSON) for an account without a type
+ *   balance, ...    Dollars with two decimals (numbers, not strings, in JSON)
+ *
+ * Transactions files, one history entry per row, oldest first for each
+ * account:
+ *
+ *   account,timestamp,type,amount,balance_after,description
+ *
+ *   timestamp       Epoch milliseconds
+ *   description     Quoted ("...", with "" for a quote) when it holds a comma,
+ *                   a quote or a line break; empty (null in JSON) if there is none
+ *
+ * The accounts are split into shards by AccountIndex page, and each shard is
+ * written by its own task on a fork-join pool to its own pair of files
+ * (accounts-N and transactions-N, .csv or .jsonl). Within a shard, accounts
+ * come in increasing account number order. Rows are formatted straight into
+ * a direct buffer that is written to a FileChannel whenever it fills up, and
+ * histories are walked column by column, so no list of transactions is
+ * built and memory use depends on the number of shards, not on the size of
+ * the bank.
+ *
+ * After every few megabytes a shard writes (always after a whole account),
+ * it forces its files to disk and the checkpoint file is rewritten with, for
+ * every shard, the last account written and the length of its files. If an
+ * export is interrupted, calling export() again on the same directory with
+ * the same format and shard count truncates the files to the checkpoint and
+ * carries on after the accounts it records. Once an export has completed,
+ * the next one into the directory starts over.
+ *
+ * Like Snapshot, an export reads balances and histories without locking, so
+ * take it while request handling is paused for an exact picture. Balances
+ * are exported as stored, without accruing pending interest first.
+ *
+ * An exporter is used by one thread at a time.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public final class LedgerExporter {
+
+    public static final String ACCOUNTS_HEADER = "account,kind,type,balance,max_withdrawal,max_deposit,frozen";
+    public static final String TRANSACTIONS_HEADER = "account,timestamp,type,amount,balance_after,description";
+    public static final String CHECKPOINT = "checkpoint.bin";
+    public static final int DEFAULT_SHARDS = 16;
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 8 << 20;
+
+    /**
+     * The file format of an export.
+     */
+    public enum Format {
+        CSV(".csv"),
+        JSON_LINES(".jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final int MAGIC = 0x4C444752; // "LDGR"
+    private static final int VERSION = 1;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 256 << 10;
+    private static final int SHARD_CHECKPOINT_BYTES = 4 + 8 * 4;
+
+    private static final byte[][] TYPE_NAMES = names(TransactionType.values());
+    private static final byte[][] ACCOUNT_TYPE_NAMES = names(AccountType.values());
+    private static final byte[] PERSONAL = ascii("PERSONAL");
+    private static final byte[] BUSINESS = ascii("BUSINESS");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] JSON_ACCOUNT = ascii("{\"account\":");
+    private static final byte[] JSON_KIND = ascii(",\"kind\":\"");
+    private static final byte[] JSON_TYPE = ascii("\",\"type\":\"");
+    private static final byte[] JSON_BALANCE = ascii("\",\"balance\":");
+    private static final byte[] JSON_NO_TYPE_BALANCE = ascii("\",\"type\":null,\"balance\":");
+    private static final byte[] JSON_MAX_WITHDRAWAL = ascii(",\"max_withdrawal\":");
+    private static final byte[] JSON_MAX_DEPOSIT = ascii(",\"max_deposit\":");
+    private static final byte[] JSON_FROZEN = ascii(",\"frozen\":");
+    private static final byte[] JSON_TIMESTAMP = ascii(",\"timestamp\":");
+    private static final byte[] JSON_TRANSACTION_TYPE = ascii(",\"type\":\"");
+    private static final byte[] JSON_AMOUNT = ascii("\",\"amount\":");
+    private static final byte[] JSON_BALANCE_AFTER = ascii(",\"balance_after\":");
+    private static final byte[] JSON_DESCRIPTION = ascii(",\"description\":");
+
+    /**
+     * What an export wrote, counting rows written by earlier, interrupted
+     * runs it resumed.
+     */
+    public static final class ExportReport {
+        private final Path directory;
+        private final long accounts;
+        private final long transactions;
+        private final long bytes;
+        private final long resumedRows;
+        private final long resumedBytes;
+        private final long elapsedNanos;
+        private final boolean complete;
+
+        ExportReport(Path directory, long accounts, long transactions, long bytes, long resumedRows, long resumedBytes,
+                long elapsedNanos, boolean complete) {
+            this.directory = directory;
+            this.accounts = accounts;
+            this.transactions = transactions;
+            this.bytes = bytes;
+            this.resumedRows = resumedRows;
+            this.resumedBytes = resumedBytes;
+            this.elapsedNanos = elapsedNanos;
+            this.complete = complete;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public long getAccounts() {
+            return accounts;
+        }
+
+        public long getTransactions() {
+            return transactions;
+        }
+
+        /** The bytes in the export's files */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /** Whether this run carried on from the checkpoint of an interrupted one */
+        public boolean isResumed() {
+            return resumedBytes > 0;
+        }
+
+        /** Whether every shard has been written (false in checkpoint reports) */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /** Rows (accounts and transactions) written per second by this run */
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : (accounts + transactions - resumedRows) * 1e9 / elapsedNanos;
+        }
+
+        /** Megabytes written per second by this run */
+        public double getMegabytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : (bytes - resumedBytes) * 1e9 / elapsedNanos / (1 << 20);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Exported %,d accounts and %,d transactions (%,d bytes) to %s in %.1f ms (%,.0f rows/s, %.1f MB/s)%s",
+                accounts, transactions, bytes, directory.getFileName(), elapsedNanos / 1e6, getRowsPerSecond(),
+                getMegabytesPerSecond(), isResumed() ? ", resumed" : "");
+        }
+    }
+
+    private final BankAccountDatabase database;
+    private final Format format;
+    private final int shards;
+    private final ForkJoinPool pool;
+    private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private Consumer<ExportReport> checkpointListener;
+
+    /**
+     * Creates an exporter writing the default number of shards on the common pool.
+     *
+     * @param database The database to export
+     * @param format The file format
+     */
+    public LedgerExporter(BankAccountDatabase database, Format format) {
+        this(database, format, DEFAULT_SHARDS, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an exporter.
+     *
+     * @param database The database to export
+     * @param format The file format
+     * @param shards The number of shards (pairs of files) to write in parallel
+     * @param pool The pool the shards are written on
+     * @throws IllegalArgumentException if an argument is null or shards is not positive
+     */
+    public LedgerExporter(BankAccountDatabase database, Format format, int shards, ForkJoinPool pool) {
+        if (database == null || format == null || pool == null) {
+            throw new IllegalArgumentException("Database, format and pool cannot be null");
+        }
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        this.database = database;
+        this.format = format;
+        this.shards = shards;
+        this.pool = pool;
+    }
+
+    /**
+     * Sets how many bytes a shard writes between checkpoints. Smaller
+     * intervals lose less work to an interruption but force the files to
+     * disk more often.
+     *
+     * @param bytes The interval in bytes
+     * @throws IllegalArgumentException if bytes is not positive
+     */
+    public void setCheckpointInterval(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.checkpointInterval = bytes;
+    }
+
+    /**
+     * Sets an action run after every checkpoint, with the progress so far.
+     * It runs on the shard's thread; an exception it throws aborts the export,
+     * which can then be resumed from that checkpoint.
+     *
+     * @param listener The action, or null for none
+     */
+    public void setCheckpointListener(Consumer<ExportReport> listener) {
+        this.checkpointListener = listener;
+    }
+
+    /**
+     * Gets the accounts file of a shard.
+     *
+     * @param directory The export directory
+     * @param shard The shard
+     * @return The file's path
+     */
+    public Path accountsFile(Path directory, int shard) {
+        return directory.resolve("accounts-" + shard + format.getExtension());
+    }
+
+    /**
+     * Gets the transactions file of a shard.
+     *
+     * @param directory The export directory
+     * @param shard The shard
+     * @return The file's path
+     */
+    public Path transactionsFile(Path directory, int shard) {
+        return directory.resolve("transactions-" + shard + format.getExtension());
+    }
+
+    /**
+     * Exports the database into a directory, or finishes an interrupted
+     * export into it.
+     *
+     * @param directory The directory for the shard files and the checkpoint (created if missing)
+     * @return What was exported
+     * @throws IOException if a file cannot be read or written
+     * @throws IllegalArgumentException if the directory holds an unfinished
+     *     export with another format or shard count
+     */
+    public synchronized ExportReport export(Path directory) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        Path checkpointFile = directory.resolve(CHECKPOINT);
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+        if (checkpoint == null || checkpoint.complete) {
+            checkpoint = new Checkpoint(format, shards);
+        } else if (checkpoint.format != format || checkpoint.shards != shards) {
+            throw new IllegalArgumentException("Directory holds an unfinished " + checkpoint.format + " export in "
+                + checkpoint.shards + " shards");
+        }
+        Run run = new Run(directory, checkpointFile, checkpoint, start, database.bankAccountPageCount());
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            int s = shard;
+            tasks.add(pool.submit(() -> {
+                try {
+                    exportShard(run, s);
+                } catch (IOException | RuntimeException | Error e) {
+                    run.fail(e);
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.quietlyJoin(); // Wait for every shard, so none still writes after a failure
+        }
+        Throwable failure = run.failure.get();
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw (Error) failure;
+        }
+
+        checkpoint.complete = true;
+        checkpoint.write(checkpointFile);
+        return run.report();
+    }
+
+    /**
+     * The state shared by the shards of one export() call.
+     */
+    private static final class Run {
+        final Path directory;
+        final Path checkpointFile;
+        final Checkpoint checkpoint;
+        final long start;
+        final int pageCount;
+        final long resumedRows;
+        final long resumedBytes;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        volatile boolean aborted;
+
+        Run(Path directory, Path checkpointFile, Checkpoint checkpoint, long start, int pageCount) {
+            this.directory = directory;
+            this.checkpointFile = checkpointFile;
+            this.checkpoint = checkpoint;
+            this.start = start;
+            this.pageCount = pageCount;
+            this.resumedRows = checkpoint.rows();
+            this.resumedBytes = checkpoint.bytes();
+        }
+
+        /**
+         * Records the first failure of a shard and stops the others.
+         */
+        void fail(Throwable e) {
+            failure.compareAndSet(null, e);
+            aborted = true;
+        }
+
+        ExportReport report() {
+            synchronized (checkpoint) {
+                return new ExportReport(directory, checkpoint.accounts(), checkpoint.transactions(), checkpoint.bytes(),
+                    resumedRows, resumedBytes, System.nanoTime() - start, checkpoint.complete);
+            }
+        }
+    }
+
+    private void exportShard(Run run, int shard) throws IOException {
+        Checkpoint checkpoint = run.checkpoint;
+        try (Output accounts = new Output(accountsFile(run.directory, shard), checkpoint.accountsBytes[shard], header(ACCOUNTS_HEADER));
+             Output transactions = new Output(transactionsFile(run.directory, shard), checkpoint.transactionsBytes[shard],
+                 header(TRANSACTIONS_HEADER))) {
+            ShardWriter writer = new ShardWriter(run, shard, accounts, transactions);
+            try {
+                for (int page = shard; page < run.pageCount && !run.aborted; page += shards) {
+                    database.forEachBankAccountInPage(page, writer);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (!run.aborted) {
+                writer.checkpoint();
+            }
+        }
+    }
+
+    private byte[] header(String header) {
+        return format == Format.CSV ? ascii(header + "\n") : new byte[0];
+    }
+
+    /**
+     * Writes one shard's accounts, in the order forEachBankAccountInPage
+     * visits them, and checkpoints between accounts.
+     */
+    private final class ShardWriter implements Consumer<BankAccount>, TransactionLog.EntryVisitor {
+        private final Run run;
+        private final int shard;
+        private final Output accounts;
+        private final Output transactions;
+        private final int resumeAfter;
+        private int accountNumber;
+        private int lastAccount;
+        private long accountCount;
+        private long transactionCount;
+        private long checkpointedBytes;
+
+        ShardWriter(Run run, int shard, Output accounts, Output transactions) {
+            this.run = run;
+            this.shard = shard;
+            this.accounts = accounts;
+            this.transactions = transactions;
+            this.resumeAfter = run.checkpoint.lastAccounts[shard];
+            this.lastAccount = resumeAfter;
+            this.accountCount = run.checkpoint.accountCounts[shard];
+            this.transactionCount = run.checkpoint.transactionCounts[shard];
+            this.checkpointedBytes = accounts.size() + transactions.size();
+        }
+
+        @Override
+        public void accept(BankAccount account) {
+            int number = account.getAccountNumber();
+            if (run.aborted || number <= resumeAfter) {
+                return; // Account numbers grow with the page slot, so this one was exported before the checkpoint
+            }
+            try {
+                writeAccount(account, number);
+                accountNumber = number;
+                account.forEachTransactionEntry(this);
+                lastAccount = number;
+                accountCount++;
+                if (accounts.size() + transactions.size() - checkpointedBytes >= checkpointInterval) {
+                    checkpoint();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeAccount(BankAccount account, int number) throws IOException {
+            Output out = accounts;
+            byte[] kind = account instanceof BusinessAccount ? BUSINESS : PERSONAL;
+            AccountType accountType = account.getAccountType();
+            byte[] type = accountType == null ? null : ACCOUNT_TYPE_NAMES[accountType.ordinal()];
+            if (format == Format.CSV) {
+                out.putLong(number);
+                out.put((byte) ',');
+                out.put(kind);
+                out.put((byte) ',');
+                if (type != null) {
+                    out.put(type);
+                }
+                out.put((byte) ',');
+                out.putCents(account.balanceCents());
+                out.put((byte) ',');
+                out.putCents(account.getMaxWithdrawalLimitCents());
+                out.put((byte) ',');
+                out.putCents(account.getMaxDepositLimitCents());
+                out.put((byte) ',');
+                out.put(account.frozen ? TRUE : FALSE);
+            } else {
+                out.put(JSON_ACCOUNT);
+                out.putLong(number);
+                out.put(JSON_KIND);
+                out.put(kind);
+                if (type != null) {
+                    out.put(JSON_TYPE);
+                    out.put(type);
+                    out.put(JSON_BALANCE);
+                } else {
+                    out.put(JSON_NO_TYPE_BALANCE);
+                }
+                out.putCents(account.balanceCents());
+                out.put(JSON_MAX_WITHDRAWAL);
+                out.putCents(account.getMaxWithdrawalLimitCents());
+                out.put(JSON_MAX_DEPOSIT);
+                out.putCents(account.getMaxDepositLimitCents());
+                out.put(JSON_FROZEN);
+                out.put(account.frozen ? TRUE : FALSE);
+                out.put((byte) '}');
+            }
+            out.put((byte) '\n');
+        }
+
+        @Override
+        public void visit(TransactionType type, long amount, DescriptionTemplate template, String text, int number,
+                long timestamp, long balanceAfter) {
+            Output out = transactions;
+            String description = template.render(text, number);
+            try {
+                if (format == Format.CSV) {
+                    out.putLong(accountNumber);
+                    out.put((byte) ',');
+                    out.putLong(timestamp);
+                    out.put((byte) ',');
+                    out.put(TYPE_NAMES[type.ordinal()]);
+                    out.put((byte) ',');
+                    out.putCents(amount);
+                    out.put((byte) ',');
+                    out.putCents(balanceAfter);
+                    out.put((byte) ',');
+                    if (description != null) {
+                        out.putCsv(description);
+                    }
+                } else {
+                    out.put(JSON_ACCOUNT);
+                    out.putLong(accountNumber);
+                    out.put(JSON_TIMESTAMP);
+                    out.putLong(timestamp);
+                    out.put(JSON_TRANSACTION_TYPE);
+                    out.put(TYPE_NAMES[type.ordinal()]);
+                    out.put(JSON_AMOUNT);
+                    out.putCents(amount);
+                    out.put(JSON_BALANCE_AFTER);
+                    out.putCents(balanceAfter);
+                    out.put(JSON_DESCRIPTION);
+                    if (description == null) {
+                        out.put(NULL);
+                    } else {
+                        out.putJson(description);
+                    }
+                    out.put((byte) '}');
+                }
+                out.put((byte) '\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            transactionCount++;
+        }
+
+        /**
+         * Forces the shard's files to disk, then records them in the checkpoint.
+         */
+        void checkpoint() throws IOException {
+            accounts.force();
+            transactions.force();
+            checkpointedBytes = accounts.size() + transactions.size();
+            Checkpoint checkpoint = run.checkpoint;
+            synchronized (checkpoint) {
+                checkpoint.lastAccounts[shard] = lastAccount;
+                checkpoint.accountsBytes[shard] = accounts.size();
+                checkpoint.transactionsBytes[shard] = transactions.size();
+                checkpoint.accountCounts[shard] = accountCount;
+                checkpoint.transactionCounts[shard] = transactionCount;
+                checkpoint.write(run.checkpointFile);
+            }
+            Consumer<ExportReport> listener = checkpointListener;
+            if (listener != null) {
+                listener.accept(run.report());
+            }
+        }
+    }
+
+    /**
+     * One shard file: a FileChannel and the direct buffer rows are formatted into.
+     */
+    private static final class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final byte[] digits = new byte[20];
+        private long flushed; // Bytes already handed to the channel
+
+        /**
+         * Opens the file at a checkpointed length, or empty with the header
+         * if the length is 0.
+         */
+        Output(Path file, long length, byte[] header) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                if (length == 0) {
+                    channel.truncate(0);
+                    buffer.put(header);
+                } else {
+                    if (channel.size() < length) {
+                        throw new IOException(file + " is shorter than its checkpoint");
+                    }
+                    channel.truncate(length); // Drop what was written after the checkpoint
+                    channel.position(length);
+                    flushed = length;
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /** The bytes written so far, including those still in the buffer */
+        long size() {
+            return flushed + buffer.position();
+        }
+
+        void put(byte b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put(b);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            if (buffer.remaining() < bytes.length) {
+                flush();
+            }
+            buffer.put(bytes);
+        }
+
+        void putLong(long value) throws IOException {
+            if (buffer.remaining() < 20) {
+                flush();
+            }
+            if (value < 0) {
+                if (value == Long.MIN_VALUE) {
+                    buffer.put(ascii(Long.toString(value)));
+                    return;
+                }
+                buffer.put((byte) '-');
+                value = -value;
+            }
+            int start = digits.length;
+            do {
+                digits[--start] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            buffer.put(digits, start, digits.length - start);
+        }
+
+        void putCents(long cents) throws IOException {
+            if (cents < 0) {
+                put((byte) '-');
+                cents = -cents;
+            }
+            putLong(cents / Money.CENTS_PER_DOLLAR);
+            if (buffer.remaining() < 3) {
+                flush();
+            }
+            long fraction = cents % Money.CENTS_PER_DOLLAR;
+            buffer.put((byte) '.').put((byte) ('0' + fraction / 10)).put((byte) ('0' + fraction % 10));
+        }
+
+        void putCsv(String text) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < text.length() && !quote; i++) {
+                char c = text.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                putUtf8(text);
+                return;
+            }
+            put((byte) '"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    put((byte) '"');
+                }
+                i = putChar(text, i);
+            }
+            put((byte) '"');
+        }
+
+        void putJson(String text) throws IOException {
+            put((byte) '"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"' || c == '\\') {
+                    put((byte) '\\');
+                    put((byte) c);
+                } else if (c == '\n') {
+                    put((byte) '\\');
+                    put((byte) 'n');
+                } else if (c == '\r') {
+                    put((byte) '\\');
+                    put((byte) 'r');
+                } else if (c == '\t') {
+                    put((byte) '\\');
+                    put((byte) 't');
+                } else if (c < 0x20) {
+                    put(ascii(String.format("\\u%04x", (int) c)));
+                } else {
+                    i = putChar(text, i);
+                }
+            }
+            put((byte) '"');
+        }
+
+        private void putUtf8(String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                i = putChar(text, i);
+            }
+        }
+
+        /**
+         * Writes the character at index i as UTF-8, with the next one if
+         * they form a surrogate pair.
+         *
+         * @return The index of the last character written
+         */
+        private int putChar(String text, int i) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(i + 1));
+                buffer.put((byte) (0xF0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                    .put((byte) (0x80 | codePoint >> 6 & 0x3F)).put((byte) (0x80 | codePoint & 0x3F));
+                return i + 1;
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?'); // Unpaired surrogate, as String.getBytes would write it
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            }
+            return i;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            flushed += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void force() throws IOException {
+            flush();
+            channel.force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * How far each shard of an export has got.
+     */
+    private static final class Checkpoint {
+        final Format format;
+        final int shards;
+        final int[] lastAccounts;
+        final long[] accountsBytes;
+        final long[] transactionsBytes;
+        final long[] accountCounts;
+        final long[] transactionCounts;
+        boolean complete;
+
+        Checkpoint(Format format, int shards) {
+            this.format = format;
+            this.shards = shards;
+            this.lastAccounts = new int[shards];
+            this.accountsBytes = new long[shards];
+            this.transactionsBytes = new long[shards];
+            this.accountCounts = new long[shards];
+            this.transactionCounts = new long[shards];
+        }
+
+        long accounts() {
+            long total = 0;
+            for (long count : accountCounts) {
+                total += count;
+            }
+            return total;
+        }
+
+        long transactions() {
+            long total = 0;
+            for (long count : transactionCounts) {
+                total += count;
+            }
+            return total;
+        }
+
+        long rows() {
+            return accounts() + transactions();
+        }
+
+        long bytes() {
+            long total = 0;
+            for (int shard = 0; shard < shards; shard++) {
+                total += accountsBytes[shard] + transactionsBytes[shard];
+            }
+            return total;
+        }
+
+        /**
+         * Reads a checkpoint file.
+         *
+         * @return The checkpoint, or null if there is none
+         */
+        static Checkpoint read(Path file) throws IOException {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (in.remaining() < 4 + 4 + 1 + 4 + 1 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Not an export checkpoint: " + file);
+            }
+            int ordinal = in.get();
+            int shards = in.getInt();
+            boolean complete = in.get() != 0;
+            if (ordinal < 0 || ordinal >= Format.values().length) {
+                throw new IOException("Unknown export format in " + file);
+            }
+            Format format = Format.values()[ordinal];
+            if (shards <= 0 || in.remaining() != shards * SHARD_CHECKPOINT_BYTES) {
+                throw new IOException("Truncated export checkpoint: " + file);
+            }
+            Checkpoint checkpoint = new Checkpoint(format, shards);
+            checkpoint.complete = complete;
+            for (int shard = 0; shard < shards; shard++) {
+                checkpoint.lastAccounts[shard] = in.getInt();
+                checkpoint.accountsBytes[shard] = in.getLong();
+                checkpoint.transactionsBytes[shard] = in.getLong();
+                checkpoint.accountCounts[shard] = in.getLong();
+                checkpoint.transactionCounts[shard] = in.getLong();
+            }
+            return checkpoint;
+        }
+
+        /**
+         * Replaces the checkpoint file: the new one is written and forced
+         * beside it, then renamed over it.
+         */
+        void write(Path file) throws IOException {
+            ByteBuffer out = ByteBuffer.allocate(4 + 4 + 1 + 4 + 1 + shards * SHARD_CHECKPOINT_BYTES);
+            out.putInt(MAGIC).putInt(VERSION).put((byte) format.ordinal()).putInt(shards).put((byte) (complete ? 1 : 0));
+            for (int shard = 0; shard < shards; shard++) {
+                out.putInt(lastAccounts[shard]).putLong(accountsBytes[shard]).putLong(transactionsBytes[shard])
+                    .putLong(accountCounts[shard]).putLong(transactionCounts[shard]);
+            }
+            out.flip();
+            Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[][] names(Enum<?>[] constants) {
+        byte[][] names = new byte[constants.length][];
+        for (Enum<?> constant : constants) {
+            names[constant.ordinal()] = ascii(constant.name());
+        }
+        return names;
+    }
+}
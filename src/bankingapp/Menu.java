@@ -18,11 +18,12 @@ public class Menu {
     private BankAccountDatabase accountDatabase;
     private AccountHolder currentAccountHolder;
     
-    // Inner class to store transaction statistics
+    // Inner class to store transaction statistics (totals are in cents, see Money)
     private static class TransactionStatistics {
-        double totalDeposits = 0;
-        double totalWithdrawals = 0;
-        double totalTransfers = 0;
+        int totalCount = 0;
+        long totalDeposits = 0;
+        long totalWithdrawals = 0;
+        long totalTransfers = 0;
         int depositCount = 0;
         int withdrawalCount = 0;
         int transferCount = 0;
@@ -42,6 +43,9 @@ public class Menu {
         
         // Add default account to database
         accountDatabase.addBankAccount(currentAccount);
+
+        // Run every account's recurring payments in the background
+        accountDatabase.getRecurringPaymentScheduler().start();
     }
     
     /**
@@ -123,6 +127,7 @@ public class Menu {
                     break;
                 case 12:
                     exit = true;
+                    accountDatabase.getRecurringPaymentScheduler().stop();
                     System.out.println("Thank you for using the Banking Application. Goodbye!");
                     break;
                 default:
@@ -224,7 +229,7 @@ public class Menu {
             }
 
             accountDatabase.addBankAccount(currentAccount);
-            System.out.println("Account number: " + currentAccount.hashCode());
+            System.out.println("Account number: " + currentAccount.getAccountNumber());
             System.out.println(accountType + " account created.");
             System.out.printf("Current balance: $%.2f%n", currentAccount.getCurrentBalance());
             
@@ -232,7 +237,7 @@ public class Menu {
             System.out.printf("Maximum withdrawal limit: $%.2f%n", currentAccount.getMaxWithdrawalLimit());
             System.out.printf("Maximum deposit limit: $%.2f%n", currentAccount.getMaxDepositLimit());
             
-            currentAccountHolder.addBankAccount(currentAccountHolder, currentAccount.hashCode());
+            currentAccountHolder.addBankAccount(currentAccountHolder, currentAccount.getAccountNumber());
 
             System.out.println("\nYour personal information has been saved.");
             System.out.println("Default password is: default123");
@@ -356,21 +361,19 @@ public class Menu {
      * Displays the transaction history for the given account.
      */
     private void viewTransactionHistory(BankAccount account) {
-        List<Transaction> history = account.getTransactionHistory();
-        if (history.isEmpty()) {
+        if (account.getTransactionCount() == 0) {
             System.out.println("No transactions found.");
             return;
         }
         
         System.out.println("\nTransaction History:");
         System.out.println("-------------------");
-        for (Transaction transaction : history) {
+        account.forEachTransaction(transaction ->
             System.out.printf("%s - %s: $%.2f (Balance: $%.2f)%n",
                 transaction.getDate(),
                 transaction.getType(),
                 transaction.getAmount(),
-                transaction.getFinalBalance());
-        }
+                transaction.getFinalBalance()));
     }
     
     /**
@@ -495,14 +498,13 @@ public class Menu {
      * Generates and displays a comprehensive transaction analysis report.
      */
     private void generateTransactionAnalysisReport() {
-        List<Transaction> history = currentAccount.getTransactionHistory();
-        if (history.isEmpty()) {
+        TransactionStatistics stats = calculateTransactionStatistics(currentAccount);
+        if (stats.totalCount == 0) {
             System.out.println("No transactions available for analysis.");
             return;
         }
         
-        TransactionStatistics stats = calculateTransactionStatistics(history);
-        int totalTransactions = history.size();
+        int totalTransactions = stats.totalCount;
         
         System.out.println("\nTransaction Analysis Report");
         System.out.println("==========================");
@@ -519,53 +521,62 @@ public class Menu {
     }
     
     /**
-     * Calculates statistics from transaction history.
+     * Calculates statistics from an account's transaction history in a
+     * single pass, without copying the history.
      * 
-     * @param history List of transactions to analyze
+     * @param account The account whose transactions to analyze
      * @return TransactionStatistics object containing the analysis results
      */
-    private TransactionStatistics calculateTransactionStatistics(List<Transaction> history) {
+    private TransactionStatistics calculateTransactionStatistics(BankAccount account) {
         TransactionStatistics stats = new TransactionStatistics();
-        
-        for (Transaction transaction : history) {
-            switch (transaction.getType()) {
-                case DEPOSIT:
-                    stats.totalDeposits += transaction.getAmount();
-                    stats.depositCount++;
-                    if (stats.largestDeposit == null || transaction.getAmount() > stats.largestDeposit.getAmount()) {
-                        stats.largestDeposit = transaction;
-                    }
-                    break;
-                    
-                case WITHDRAWAL:
-                    stats.totalWithdrawals += transaction.getAmount();
-                    stats.withdrawalCount++;
-                    if (stats.largestWithdrawal == null || transaction.getAmount() > stats.largestWithdrawal.getAmount()) {
-                        stats.largestWithdrawal = transaction;
-                    }
-                    break;
-                    
-                case TRANSFER:
-                    stats.totalTransfers += transaction.getAmount();
-                    stats.transferCount++;
-                    break;
-                    
-                case FAILED:
-                    stats.failedCount++;
-                    break;
-                    
-                case SCHEDULED:
-                case ADMIN:
-                case LIMIT_CHANGE:
-                case RECURRING_PAYMENT:
-                    // These transaction types are not included in statistics
-                    break;
-            }
-        }
-        
+        account.forEachTransaction(transaction -> addToStatistics(stats, transaction));
         return stats;
     }
     
+    /**
+     * Adds one transaction to the running statistics.
+     * 
+     * @param stats The statistics to update
+     * @param transaction The transaction to count
+     */
+    private void addToStatistics(TransactionStatistics stats, Transaction transaction) {
+        stats.totalCount++;
+        switch (transaction.getType()) {
+            case DEPOSIT:
+                stats.totalDeposits += transaction.getAmountCents();
+                stats.depositCount++;
+                if (stats.largestDeposit == null || transaction.getAmountCents() > stats.largestDeposit.getAmountCents()) {
+                    stats.largestDeposit = transaction;
+                }
+                break;
+                
+            case WITHDRAWAL:
+                stats.totalWithdrawals += transaction.getAmountCents();
+                stats.withdrawalCount++;
+                if (stats.largestWithdrawal == null || transaction.getAmountCents() > stats.largestWithdrawal.getAmountCents()) {
+                    stats.largestWithdrawal = transaction;
+                }
+                break;
+                
+            case TRANSFER:
+                stats.totalTransfers += transaction.getAmountCents();
+                stats.transferCount++;
+                break;
+                
+            case FAILED:
+                stats.failedCount++;
+                break;
+                
+            case SCHEDULED:
+            case ADMIN:
+            case LIMIT_CHANGE:
+            case RECURRING_PAYMENT:
+            case INTEREST:
+                // These transaction types are not included in statistics
+                break;
+        }
+    }
+    
     /**
      * Displays the transaction count summary section of the report.
      * 
@@ -590,10 +601,10 @@ public class Menu {
     private void displayFinancialSummary(TransactionStatistics stats) {
         System.out.println("Financial Summary:");
         System.out.println("-----------------");
-        System.out.printf("Total Deposits: $%.2f%n", stats.totalDeposits);
-        System.out.printf("Total Withdrawals: $%.2f%n", stats.totalWithdrawals);
-        System.out.printf("Total Transfers: $%.2f%n", stats.totalTransfers);
-        System.out.printf("Net Flow: $%.2f%n", stats.totalDeposits - stats.totalWithdrawals - stats.totalTransfers);
+        System.out.printf("Total Deposits: $%.2f%n", Money.toDollars(stats.totalDeposits));
+        System.out.printf("Total Withdrawals: $%.2f%n", Money.toDollars(stats.totalWithdrawals));
+        System.out.printf("Total Transfers: $%.2f%n", Money.toDollars(stats.totalTransfers));
+        System.out.printf("Net Flow: $%.2f%n", Money.toDollars(stats.totalDeposits - stats.totalWithdrawals - stats.totalTransfers));
     }
     
     /**
@@ -605,13 +616,13 @@ public class Menu {
         System.out.println("Transaction Averages:");
         System.out.println("--------------------");
         if (stats.depositCount > 0) {
-            System.out.printf("Average Deposit: $%.2f%n", stats.totalDeposits / stats.depositCount);
+            System.out.printf("Average Deposit: $%.2f%n", Money.toDollars(stats.totalDeposits) / stats.depositCount);
         }
         if (stats.withdrawalCount > 0) {
-            System.out.printf("Average Withdrawal: $%.2f%n", stats.totalWithdrawals / stats.withdrawalCount);
+            System.out.printf("Average Withdrawal: $%.2f%n", Money.toDollars(stats.totalWithdrawals) / stats.withdrawalCount);
         }
         if (stats.transferCount > 0) {
-            System.out.printf("Average Transfer: $%.2f%n", stats.totalTransfers / stats.transferCount);
+            System.out.printf("Average Transfer: $%.2f%n", Money.toDollars(stats.totalTransfers) / stats.transferCount);
         }
     }
     
@@ -651,7 +662,7 @@ public class Menu {
         }
         
         // Check for frequent small transactions
-        double avgWithdrawal = stats.withdrawalCount > 0 ? stats.totalWithdrawals / stats.withdrawalCount : 0;
+        double avgWithdrawal = stats.withdrawalCount > 0 ? Money.toDollars(stats.totalWithdrawals) / stats.withdrawalCount : 0;
         if (stats.withdrawalCount > 10 && avgWithdrawal < 50) { // Many small withdrawals
             System.out.println("- Consider consolidating smaller withdrawals to reduce transaction frequency");
         }
@@ -790,7 +801,7 @@ public class Menu {
         String recipientId = scanner.nextLine();
         
         try {
-            Date startDate = new Date(); // Start from today
+            Date startDate = BankClock.current().now(); // Start from today
             RecurringPayment payment = currentAccount.scheduleRecurringPayment(
                 amount, description, startDate, frequency, recipientId);
             
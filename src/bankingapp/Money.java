@@ -0,0 +1,134 @@
+package bankingapp;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point helpers for money held as a long number of cents.
+ * 
+ * Balances, limits and transaction amounts are stored in cents so that
+ * sums are exact. Adding and subtracting are plain long arithmetic with an
+ * overflow check and never allocate. Multiplying by a rate (interest) is the
+ * only operation that can produce fractions of a cent, so it always takes an
+ * explicit RoundingMode.
+ * 
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public final class Money {
+
+    public static final long CENTS_PER_DOLLAR = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Converts a dollar amount to cents, rounding to the nearest cent.
+     * 
+     * @param dollars The amount in dollars
+     * @return The amount in cents
+     * @throws ArithmeticException if the amount does not fit in a long
+     */
+    public static long toCents(double dollars) {
+        double cents = dollars * CENTS_PER_DOLLAR;
+        if (Double.isNaN(cents) || cents >= Long.MAX_VALUE || cents <= Long.MIN_VALUE) {
+            throw new ArithmeticException("Amount out of range: " + dollars);
+        }
+        return cents >= 0 ? Math.round(cents) : -Math.round(-cents);
+    }
+
+    /**
+     * Converts cents to dollars for display and for the double-based API.
+     * 
+     * @param cents The amount in cents
+     * @return The amount in dollars
+     */
+    public static double toDollars(long cents) {
+        return cents / (double) CENTS_PER_DOLLAR;
+    }
+
+    /**
+     * Adds two amounts exactly.
+     * 
+     * @throws ArithmeticException if the result overflows
+     */
+    public static long add(long cents, long otherCents) {
+        return Math.addExact(cents, otherCents);
+    }
+
+    /**
+     * Subtracts one amount from another exactly.
+     * 
+     * @throws ArithmeticException if the result overflows
+     */
+    public static long subtract(long cents, long otherCents) {
+        return Math.subtractExact(cents, otherCents);
+    }
+
+    /**
+     * Multiplies an amount by a factor (for example an interest rate) and
+     * rounds the result to whole cents using the given rounding mode.
+     * 
+     * The factor is taken as the decimal it prints as (0.07 is exactly
+     * seven hundredths, not the nearest double), so ties such as 150 cents
+     * times 0.07 round as the mode says. Products that are clearly not near
+     * a rounding boundary are rounded in double arithmetic without
+     * allocating; the rest, and any product of 2^52 cents or more, are
+     * computed exactly with BigDecimal.
+     * 
+     * @param cents The amount in cents
+     * @param factor The factor to multiply by
+     * @param mode How to round fractions of a cent
+     * @return The rounded product in cents
+     * @throws ArithmeticException if mode is UNNECESSARY and rounding is needed,
+     *     the factor is not finite, or the result overflows
+     */
+    public static long multiply(long cents, double factor, RoundingMode mode) {
+        if (!Double.isFinite(factor)) {
+            throw new ArithmeticException("Factor out of range: " + factor);
+        }
+        double product = cents * factor;
+        double magnitude = Math.abs(product);
+        if (magnitude < 0x1p52 && mode != RoundingMode.UNNECESSARY) {
+            // The double product is within a few ulps of the exact one, so
+            // it rounds the same way unless it is that close to a boundary
+            double margin = magnitude * 0x1p-48;
+            double fraction = product - Math.floor(product);
+            switch (mode) {
+                case HALF_EVEN:
+                case HALF_UP:
+                case HALF_DOWN:
+                    if (Math.abs(fraction - 0.5) > margin) {
+                        return (long) Math.rint(product);
+                    }
+                    break;
+                default:
+                    if (fraction > margin && 1 - fraction > margin) {
+                        return (long) roundDirected(product, mode);
+                    }
+                    break;
+            }
+        }
+        try {
+            return BigDecimal.valueOf(cents).multiply(BigDecimal.valueOf(factor)).setScale(0, mode).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Cannot round " + cents + " cents * " + factor + ": " + e.getMessage());
+        }
+    }
+
+    // Rounds a product that is not close to an integer in a directed mode
+    private static double roundDirected(double product, RoundingMode mode) {
+        switch (mode) {
+            case FLOOR:
+                return Math.floor(product);
+            case CEILING:
+                return Math.ceil(product);
+            case DOWN:
+                return product >= 0 ? Math.floor(product) : Math.ceil(product);
+            case UP:
+            default:
+                return product >= 0 ? Math.ceil(product) : Math.floor(product);
+        }
+    }
+}
@@ -1,21 +1,33 @@
 package bankingapp;
 
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.ZoneOffset;
 import java.util.Date;
 import java.util.Calendar;
-import java.util.TimeZone;
 
 /**
  * Represents a recurring payment schedule.
+ *
+ * Payment dates are whole days in the bank's GMT-5 zone, stored as epoch-day
+ * longs (days since 1970-01-01), so checking whether a payment is due is a
+ * single comparison with no Calendar or Date allocated.
  */
 public class RecurringPayment {
-    private double amount;
+    public static final ZoneOffset ZONE = ZoneOffset.ofHours(-5);
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long ZONE_OFFSET_MILLIS = ZONE.getTotalSeconds() * 1000L;
+
+    private long amount; // In cents, see Money
     private String description;
-    private Date startDate;
-    private Date nextPaymentDate;
+    private long startDay; // Epoch days, see ZONE
+    private volatile long nextPaymentDay;
     private PaymentFrequency frequency;
     private String recipientAccountId;
     private boolean isActive;
     private BankAccount bankAccount;
+    private volatile long lastLagMillis = -1; // Set by RecurringPaymentScheduler
+    private volatile CatchUpPolicy catchUpPolicy = CatchUpPolicy.SKIP_MISSED;
 
     public enum PaymentFrequency {
         DAILY,
@@ -24,6 +36,15 @@ public class RecurringPayment {
         YEARLY
     }
 
+    /**
+     * What a payment that has fallen behind by several periods (for example
+     * on an account nobody processed for a while) does when it next runs.
+     */
+    public enum CatchUpPolicy {
+        SKIP_MISSED, // Pay once and move past the missed periods
+        POST_MISSED  // Pay every missed period as one batch
+    }
+
     public RecurringPayment(double amount, String description, Date startDate, 
                            PaymentFrequency frequency, String recipientAccountId, BankAccount bankAccount) {
         if (amount <= 0) {
@@ -39,84 +60,177 @@ public class RecurringPayment {
             throw new IllegalArgumentException("Recipient account ID cannot be empty");
         }
         
-        this.amount = amount;
+        this.amount = Money.toCents(amount);
         this.description = description;
         this.frequency = frequency;
         this.recipientAccountId = recipientAccountId;
         this.bankAccount = bankAccount;
         this.isActive = true;
         
-        // Set start and next payment dates to midnight
-        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT-5"));
-        cal.setTime(startDate);
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
-        this.startDate = cal.getTime();
-        this.nextPaymentDate = cal.getTime();
+        // Start and next payment dates are the start date's day
+        this.startDay = toEpochDay(startDate.getTime());
+        this.nextPaymentDay = startDay;
+    }
+
+    // Restores a payment read back by TransactionCodec; the fields were validated when it was created
+    RecurringPayment(long amountCents, String description, long startDay, long nextPaymentDay,
+                     PaymentFrequency frequency, String recipientAccountId, BankAccount bankAccount) {
+        this.amount = amountCents;
+        this.description = description;
+        this.startDay = startDay;
+        this.nextPaymentDay = nextPaymentDay;
+        this.frequency = frequency;
+        this.recipientAccountId = recipientAccountId;
+        this.bankAccount = bankAccount;
+        this.isActive = true;
+    }
+
+    /**
+     * Gets the day containing the given instant, in the bank's zone.
+     *
+     * @param millis Milliseconds since the epoch
+     * @return Days since 1970-01-01 in GMT-5
+     */
+    public static long toEpochDay(long millis) {
+        return Math.floorDiv(millis + ZONE_OFFSET_MILLIS, DAY_MILLIS);
+    }
+
+    /**
+     * Gets the instant at which the given day starts, in the bank's zone.
+     *
+     * @param epochDay Days since 1970-01-01 in GMT-5
+     * @return Midnight GMT-5 of that day, in milliseconds since the epoch
+     */
+    public static long toMillis(long epochDay) {
+        return epochDay * DAY_MILLIS - ZONE_OFFSET_MILLIS;
+    }
+
+    // Checks if the payment is due on the given day (epoch days, see ZONE)
+    public boolean isPaymentDue(long today) {
+        return isActive && today >= nextPaymentDay;
+    }
+
+    // Checks if the payment is due today according to the current BankClock
+    public boolean isPaymentDue() {
+        return isPaymentDue(BankClock.current().epochDay());
     }
 
     // Checks if the payment is due based on the provided current time
     public boolean isPaymentDue(Calendar currentTime) { 
-        if (!isActive) return false;
-        Calendar next = Calendar.getInstance(TimeZone.getTimeZone("GMT-5"));
-        next.setTime(nextPaymentDate);
-        // Ensure 'next' is also set to midnight for comparison
-        next.set(Calendar.HOUR_OF_DAY, 0);
-        next.set(Calendar.MINUTE, 0);
-        next.set(Calendar.SECOND, 0);
-        next.set(Calendar.MILLISECOND, 0);
-
-        // Compare provided currentTime (already at midnight) with next payment date (at midnight)
-        return currentTime.getTimeInMillis() >= next.getTimeInMillis();
+        return isPaymentDue(toEpochDay(currentTime.getTimeInMillis()));
+    }
+
+    // Advances the next payment date by the frequency until it is strictly after 'today' (epoch days).
+    // A payment due exactly today is still advanced. Computed directly, however many periods were missed.
+    public void updateNextPaymentDate(long today) {
+        nextPaymentDay = occurrenceDay(Math.max(1, getDueOccurrences(today)));
+    }
+
+    /**
+     * Counts the occurrences of this schedule that fall on or before the
+     * given day, starting with the next payment date, without stepping
+     * through them one period at a time.
+     *
+     * @param today The current day, in epoch days (see ZONE)
+     * @return The number of occurrences due, 0 if the next payment is in the future
+     */
+    public long getDueOccurrences(long today) {
+        long next = nextPaymentDay;
+        if (today < next) {
+            return 0;
+        }
+        long periods;
+        switch (frequency) {
+            case DAILY:
+                return today - next + 1;
+            case WEEKLY:
+                return (today - next) / 7 + 1;
+            case MONTHLY: {
+                LocalDate from = LocalDate.ofEpochDay(next);
+                LocalDate to = LocalDate.ofEpochDay(today);
+                periods = (to.getYear() * 12L + to.getMonthValue()) - (from.getYear() * 12L + from.getMonthValue());
+                break;
+            }
+            default:
+                periods = LocalDate.ofEpochDay(today).getYear() - LocalDate.ofEpochDay(next).getYear();
+        }
+        // The occurrence 'periods' steps on lies in today's month (or year)
+        return occurrenceDay(periods) <= today ? periods + 1 : periods;
+    }
+
+    // Gets the day of the occurrence k periods after the next payment date. Month-end
+    // days clamp like repeated Calendar.add: once clamped, a day stays clamped, so
+    // the day is the smallest month length passed on the way.
+    private long occurrenceDay(long k) {
+        long next = nextPaymentDay;
+        switch (frequency) {
+            case DAILY:
+                return next + k;
+            case WEEKLY:
+                return next + 7 * k;
+            case MONTHLY: {
+                LocalDate date = LocalDate.ofEpochDay(next);
+                LocalDate first = date.withDayOfMonth(1);
+                int day = date.getDayOfMonth();
+                // Any 48 months include a 28-day February, so the scan is bounded
+                for (long i = 1; i <= Math.min(k, 48) && day > 28; i++) {
+                    day = Math.min(day, first.plusMonths(i).lengthOfMonth());
+                }
+                return first.plusMonths(k).withDayOfMonth(day).toEpochDay();
+            }
+            default: {
+                LocalDate date = LocalDate.ofEpochDay(next);
+                int day = date.getDayOfMonth();
+                if (date.getMonthValue() == 2 && day == 29) {
+                    // Any 4 years include a non-leap year
+                    for (long i = 1; i <= Math.min(k, 4); i++) {
+                        if (!Year.isLeap(date.getYear() + i)) {
+                            day = 28;
+                            break;
+                        }
+                    }
+                }
+                return date.withDayOfMonth(1).plusYears(k).withDayOfMonth(day).toEpochDay();
+            }
+        }
     }
 
     // Updates the next payment date based on the frequency, relative to the provided current time 'now'
     public void updateNextPaymentDate(Calendar now) { 
-        // Start with current next payment date
-        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT-5"));
-        cal.setTime(nextPaymentDate);
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
-
-        // Keep adding the frequency until we find a date strictly *after* 'now'
-        // Use <= to ensure if payment is due exactly today, we still advance it
-        do {
-            // Add appropriate time interval
-            switch (frequency) {
-                case DAILY:
-                    cal.add(Calendar.DATE, 1);
-                    break;
-                case WEEKLY:
-                    cal.add(Calendar.WEEK_OF_YEAR, 1);
-                    break;
-                case MONTHLY:
-                    cal.add(Calendar.MONTH, 1);
-                    break;
-                case YEARLY:
-                    cal.add(Calendar.YEAR, 1);
-                    break;
-            }
-        } while (cal.getTimeInMillis() <= now.getTimeInMillis()); 
-        
-        nextPaymentDate = cal.getTime();
+        updateNextPaymentDate(toEpochDay(now.getTimeInMillis()));
     }
 
     // Getters
-    public double getAmount() { return amount; }
+    public double getAmount() { return Money.toDollars(amount); }
+    public long getAmountCents() { return amount; }
     public String getDescription() { return description; }
-    public Date getStartDate() { return startDate; }
-    public Date getNextPaymentDate() { return nextPaymentDate; }
+    public Date getStartDate() { return new Date(toMillis(startDay)); }
+    public long getStartDay() { return startDay; } // Epoch days, see ZONE
+    public Date getNextPaymentDate() { return new Date(toMillis(nextPaymentDay)); }
+    public long getNextPaymentDay() { return nextPaymentDay; } // Epoch days, see ZONE
     public PaymentFrequency getFrequency() { return frequency; }
     public String getRecipientAccountId() { return recipientAccountId; }
     public boolean isActive() { return isActive; }
     public BankAccount getBankAccount() { return bankAccount; }
+    // How late the RecurringPaymentScheduler last made this payment, or -1 if it never has
+    public long getLastLagMillis() { return lastLagMillis; }
+    public CatchUpPolicy getCatchUpPolicy() { return catchUpPolicy; }
 
     // Setters
-    public void setAmount(double amount) { this.amount = amount; }
+    public void setAmount(double amount) { this.amount = Money.toCents(amount); }
     public void setActive(boolean active) { this.isActive = active; }
-    public void setNextPaymentDate(Date nextPaymentDate) { this.nextPaymentDate = nextPaymentDate; }
+    // Journaled by the account when the payment is one of its scheduled payments
+    public void setCatchUpPolicy(CatchUpPolicy catchUpPolicy) {
+        if (catchUpPolicy == null) {
+            throw new IllegalArgumentException("Catch-up policy cannot be null");
+        }
+        this.catchUpPolicy = catchUpPolicy;
+        if (bankAccount != null) {
+            bankAccount.journalCatchUpPolicy(this);
+        }
+    }
+    // Sets the policy of a payment restored from a snapshot, the codec or the journal, without journaling it
+    void restoreCatchUpPolicy(CatchUpPolicy catchUpPolicy) { this.catchUpPolicy = catchUpPolicy; }
+    public void setNextPaymentDate(Date nextPaymentDate) { this.nextPaymentDay = toEpochDay(nextPaymentDate.getTime()); }
+    void setLastLagMillis(long lastLagMillis) { this.lastLagMillis = lastLagMillis; }
 }
@@ -0,0 +1,343 @@
+package bankingapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Background service that runs every account's recurring payments when they
+ * fall due.
+ *
+ * Every active recurring payment on an account in a BankAccountDatabase is
+ * indexed here by its next payment date. Once started, the service sleeps on
+ * a single-thread ScheduledExecutorService until the earliest payment is due,
+ * runs everything due, and re-arms for the next one; it never scans accounts
+ * that have nothing due. Payments that fail (for example for insufficient
+ * funds) are retried after getRetryDelayMillis(). Cancelled payments are
+ * dropped when they reach the head of the queue.
+ *
+ * Recipients are credited once the run's withdrawals are done, one batched
+ * credit per recipient (see RecurringPaymentSettlement).
+ *
+ * The service records how late each payment ran relative to its due time
+ * (see RecurringPayment.getLastLagMillis() and the aggregate getters here).
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public class RecurringPaymentScheduler {
+
+    private static final long DEFAULT_RETRY_DELAY = 60L * 60 * 1000; // One hour
+
+    // A payment's place in the queue. dueAt is the payment's next payment
+    // date, or the retry time after a failed attempt.
+    private static final class Entry {
+        final RecurringPayment payment;
+        final long dueAt;
+        final long order;
+
+        Entry(RecurringPayment payment, long dueAt, long order) {
+            this.payment = payment;
+            this.dueAt = dueAt;
+            this.order = order;
+        }
+    }
+
+    private static final Comparator<Entry> DUE_ORDER =
+        Comparator.<Entry>comparingLong(entry -> entry.dueAt).thenComparingLong(entry -> entry.order);
+
+    // Guarded by this
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(DUE_ORDER);
+    private final Set<RecurringPayment> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long nextOrder;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> wakeUp;
+    private long wakeUpAt = Long.MAX_VALUE;
+
+    private volatile long retryDelayMillis = DEFAULT_RETRY_DELAY;
+
+    private final BankAccountDatabase database;
+
+    // Lag metrics
+    private final LongAdder paymentsRun = new LongAdder();
+    private final LongAdder totalLag = new LongAdder();
+    private final AtomicLong maxLag = new AtomicLong();
+    private volatile long lastLag;
+
+    /**
+     * Creates a scheduler for the payments of accounts in the given database.
+     *
+     * @param database The database whose accounts' payments are run and whose
+     *                 accounts receive them
+     */
+    RecurringPaymentScheduler(BankAccountDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Indexes an active recurring payment by its next payment date. Adding a
+     * payment that is already queued has no effect.
+     *
+     * @param payment The payment to index
+     */
+    public void schedule(RecurringPayment payment) {
+        schedule(payment, RecurringPayment.toMillis(payment.getNextPaymentDay()));
+    }
+
+    private synchronized void schedule(RecurringPayment payment, long dueAt) {
+        if (!payment.isActive() || !queued.add(payment)) {
+            return;
+        }
+        queue.add(new Entry(payment, dueAt, nextOrder++));
+        if (executor != null && dueAt < wakeUpAt) {
+            arm();
+        }
+    }
+
+    /**
+     * Starts running due payments in the background. Does nothing if the
+     * service is already running.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "recurring-payments");
+            thread.setDaemon(true);
+            return thread;
+        });
+        arm();
+    }
+
+    /**
+     * Stops the background service, waiting for a run in progress to finish.
+     * Payments stay indexed, so the service can be started again.
+     */
+    public void stop() {
+        ScheduledExecutorService stopping;
+        synchronized (this) {
+            stopping = executor;
+            if (stopping == null) {
+                return;
+            }
+            if (wakeUp != null) {
+                wakeUp.cancel(false);
+            }
+            executor = null;
+            wakeUp = null;
+            wakeUpAt = Long.MAX_VALUE;
+        }
+        // Not shutdownNow: interrupting a run could close the journal's channel
+        stopping.shutdown();
+        try {
+            stopping.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks whether the background service is running.
+     *
+     * @return true between start() and stop()
+     */
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    // Schedules the executor to wake when the head of the queue is due
+    private synchronized void arm() {
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+            wakeUp = null;
+        }
+        Entry head = queue.peek();
+        wakeUpAt = head == null ? Long.MAX_VALUE : head.dueAt;
+        if (head != null) {
+            long delay = Math.max(0, head.dueAt - BankClock.current().millis());
+            wakeUp = executor.schedule(this::tick, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void tick() {
+        try {
+            processDue(BankClock.current().now());
+        } catch (RuntimeException e) {
+            System.err.println("Recurring payment run failed: " + e.getMessage());
+        }
+        synchronized (this) {
+            if (executor != null) {
+                arm();
+            }
+        }
+    }
+
+    /**
+     * Runs every payment due at or before the given time and re-indexes it
+     * by its new next payment date. The background service calls this with
+     * the current time; it can also be called directly.
+     *
+     * @param now The current time
+     * @return The number of payments made
+     */
+    public int processDue(Date now) {
+        long nowMillis = now.getTime();
+        List<Entry> due = pollDue(nowMillis);
+        if (due.isEmpty()) {
+            return 0;
+        }
+        long today = RecurringPayment.toEpochDay(nowMillis);
+
+        RecurringPaymentSettlement settlement = new RecurringPaymentSettlement(database);
+        int processed = 0;
+        for (Entry entry : due) {
+            RecurringPayment payment = entry.payment;
+            if (!payment.isActive()) {
+                continue;
+            }
+            BankAccount account = payment.getBankAccount();
+            if (account == null || database.getBankAccount(account.getAccountNumber()) != account) {
+                continue; // Removed from the database; queued again if it is added back
+            }
+            long dueAt = RecurringPayment.toMillis(payment.getNextPaymentDay());
+            if (!payment.isPaymentDue(today)) {
+                schedule(payment); // Already paid through processRecurringPayments
+                continue;
+            }
+            long paid = account.runRecurringPayment(payment, today);
+            if (paid > 0) {
+                settlement.add(account, payment, paid);
+                recordLag(payment, nowMillis - dueAt);
+                processed++;
+                schedule(payment);
+            } else if (payment.isActive()) {
+                schedule(payment, nowMillis + retryDelayMillis);
+            }
+        }
+        settlement.settle();
+        return processed;
+    }
+
+    private synchronized List<Entry> pollDue(long nowMillis) {
+        List<Entry> due = new ArrayList<>();
+        Entry head;
+        while ((head = queue.peek()) != null && head.dueAt <= nowMillis) {
+            queue.poll();
+            queued.remove(head.payment);
+            if (head.payment.isActive()) {
+                due.add(head);
+            }
+        }
+        return due;
+    }
+
+    private void recordLag(RecurringPayment payment, long lag) {
+        lag = Math.max(0, lag);
+        payment.setLastLagMillis(lag);
+        paymentsRun.increment();
+        totalLag.add(lag);
+        lastLag = lag;
+        maxLag.accumulateAndGet(lag, Math::max);
+    }
+
+    /**
+     * Gets the number of active payments indexed.
+     *
+     * @return The number of queued payments
+     */
+    public synchronized int getPendingCount() {
+        int pending = 0;
+        for (Entry entry : queue) {
+            if (entry.payment.isActive()) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Gets when the service will next run a payment.
+     *
+     * @return The earliest due time, or null if nothing is queued
+     */
+    public synchronized Date getNextDueDate() {
+        Entry head;
+        while ((head = queue.peek()) != null && !head.payment.isActive()) {
+            queue.poll();
+            queued.remove(head.payment);
+        }
+        return head == null ? null : new Date(head.dueAt);
+    }
+
+    /**
+     * Gets how long the service waits before retrying a failed payment.
+     *
+     * @return The retry delay in milliseconds
+     */
+    public long getRetryDelayMillis() {
+        return retryDelayMillis;
+    }
+
+    /**
+     * Sets how long the service waits before retrying a failed payment.
+     *
+     * @param retryDelayMillis The retry delay in milliseconds
+     * @throws IllegalArgumentException if the delay is not positive
+     */
+    public void setRetryDelayMillis(long retryDelayMillis) {
+        if (retryDelayMillis <= 0) {
+            throw new IllegalArgumentException("Retry delay must be positive");
+        }
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * Gets the number of payments the scheduler has made.
+     *
+     * @return The number of payments made
+     */
+    public long getPaymentsRun() {
+        return paymentsRun.sum();
+    }
+
+    /**
+     * Gets how late the most recent payment ran after its due time.
+     *
+     * @return The lag in milliseconds
+     */
+    public long getLastLagMillis() {
+        return lastLag;
+    }
+
+    /**
+     * Gets the largest lag of any payment the scheduler has made.
+     *
+     * @return The maximum lag in milliseconds
+     */
+    public long getMaxLagMillis() {
+        return maxLag.get();
+    }
+
+    /**
+     * Gets the mean lag of the payments the scheduler has made.
+     *
+     * @return The average lag in milliseconds, or 0 if none have run
+     */
+    public double getAverageLagMillis() {
+        long count = paymentsRun.sum();
+        return count == 0 ? 0.0 : (double) totalLag.sum() / count;
+    }
+}
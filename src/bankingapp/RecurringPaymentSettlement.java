@@ -0,0 +1,101 @@
+package bankingapp;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settlement stage of a recurring payment run: credits the recipients of
+ * the payments taken from payers.
+ *
+ * Payments are collected while a run withdraws from the payers, grouped by
+ * recipient id. settle() then resolves each recipient id once through the
+ * BankAccountDatabase and credits all of that recipient's payments with a
+ * single balance update, history append and journal record. Payments whose
+ * recipient id does not name an account, or that exceed the recipient's
+ * deposit limit, go to the database's SuspenseQueue.
+ *
+ * A settlement is used by one thread for one run.
+ */
+final class RecurringPaymentSettlement {
+
+    // The credits owed to one recipient id
+    private static final class Credits {
+        int[] payers = new int[4];
+        int[] paymentIndexes = new int[4];
+        long[] amounts = new long[4];
+        String[] descriptions = new String[4];
+        int size;
+
+        void add(int payer, int paymentIndex, long amount, String description) {
+            if (size == amounts.length) {
+                payers = Arrays.copyOf(payers, size * 2);
+                paymentIndexes = Arrays.copyOf(paymentIndexes, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+                descriptions = Arrays.copyOf(descriptions, size * 2);
+            }
+            payers[size] = payer;
+            paymentIndexes[size] = paymentIndex;
+            amounts[size] = amount;
+            descriptions[size] = description;
+            size++;
+        }
+    }
+
+    private final BankAccountDatabase database;
+    private final Map<String, Credits> byRecipient = new LinkedHashMap<>();
+
+    RecurringPaymentSettlement(BankAccountDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Records that a payment was taken from its payer and is owed to its recipient.
+     *
+     * @param payer The account the payment was taken from
+     * @param payment The payment
+     * @param amount The amount taken, in cents (several periods when catching up)
+     */
+    void add(BankAccount payer, RecurringPayment payment, long amount) {
+        byRecipient.computeIfAbsent(payment.getRecipientAccountId().trim(), id -> new Credits())
+            .add(payer.getAccountNumber(), payer.recurringPaymentIndex(payment), amount, payment.getDescription());
+    }
+
+    /**
+     * Credits every collected payment to its recipient, or to suspense.
+     *
+     * @return The number of recipients credited
+     */
+    int settle() {
+        int credited = 0;
+        long now = BankClock.current().millis();
+        for (Map.Entry<String, Credits> group : byRecipient.entrySet()) {
+            String recipientId = group.getKey();
+            Credits credits = group.getValue();
+            BankAccount recipient = database.resolveBankAccount(recipientId);
+            long limit = recipient == null ? -1 : recipient.getMaxDepositLimitCents();
+
+            // Keep the credits the recipient can take, suspend the rest
+            int kept = 0;
+            for (int i = 0; i < credits.size; i++) {
+                if (credits.amounts[i] <= limit) {
+                    credits.payers[kept] = credits.payers[i];
+                    credits.paymentIndexes[kept] = credits.paymentIndexes[i];
+                    credits.amounts[kept] = credits.amounts[i];
+                    credits.descriptions[kept] = credits.descriptions[i];
+                    kept++;
+                } else {
+                    database.suspend(new SuspenseQueue.Entry(credits.payers[i], credits.amounts[i], recipientId,
+                        credits.descriptions[i], now));
+                }
+            }
+            if (kept > 0) {
+                recipient.receiveSettlement(credits.amounts, credits.payers, credits.paymentIndexes, credits.descriptions,
+                    kept);
+                credited++;
+            }
+        }
+        byRecipient.clear();
+        return credited;
+    }
+}
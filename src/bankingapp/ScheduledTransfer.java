@@ -1,37 +1,96 @@
 package bankingapp;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ScheduledTransfer {
+    // Lifecycle states. A transfer is claimed (RUNNING) with a CAS before it
+    // runs, so the TransferScheduler and BankAccount.processScheduledTransfers
+    // can never both execute it.
+    private static final int PENDING = 0;
+    private static final int RUNNING = 1;
+    private static final int EXECUTED = 2;
+    private static final int CANCELLED = 3;
+
     private final BankAccount sourceAccount;
     private final BankAccount destinationAccount;
-    private final double amount;
+    private final long amount; // In cents, see Money
     private final Date scheduledDate;
-    private boolean executed;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
     private String description;
+    long queueOrder; // Tie-breaker for equal due times, set by TransferScheduler
 
     public ScheduledTransfer(BankAccount source, BankAccount destination, double amount, Date scheduledDate, String description) {
         this.sourceAccount = source;
         this.destinationAccount = destination;
-        this.amount = amount;
+        this.amount = Money.toCents(amount);
+        this.scheduledDate = scheduledDate;
+        this.description = description;
+    }
+
+    // Restores a pending transfer from a snapshot or the journal
+    ScheduledTransfer(BankAccount source, BankAccount destination, long amountCents, Date scheduledDate, String description) {
+        this.sourceAccount = source;
+        this.destinationAccount = destination;
+        this.amount = amountCents;
         this.scheduledDate = scheduledDate;
         this.description = description;
-        this.executed = false;
+    }
+
+    public boolean isReadyToExecute() {
+        return state.get() == PENDING && BankClock.current().millis() >= scheduledDate.getTime();
     }
 
     public boolean isReadyToExecute(Date currentDate) {
-        return !executed && !currentDate.before(scheduledDate);
+        return state.get() == PENDING && !currentDate.before(scheduledDate);
     }
 
     public boolean execute() {
-        if (!executed) {
-            boolean success = sourceAccount.transfer(destinationAccount, amount);
-            if (success) {
-                executed = true;
-            }
-            return success;
+        if (!claim()) {
+            return false;
         }
-        return false;
+        boolean success = false;
+        try {
+            success = sourceAccount.transferCents(destinationAccount, amount);
+        } finally {
+            finish(success); // A failed transfer is retried later
+        }
+        return success;
+    }
+
+    /**
+     * Claims a pending transfer for running (see TransferNetting).
+     *
+     * @return true if the transfer was pending and is now running
+     */
+    boolean claim() {
+        return state.compareAndSet(PENDING, RUNNING);
+    }
+
+    /**
+     * Ends the run of a claimed transfer.
+     *
+     * @param executed true if the transfer was applied, false to leave it pending
+     */
+    void finish(boolean executed) {
+        state.set(executed ? EXECUTED : PENDING);
+    }
+
+    /**
+     * Cancels the transfer if it has not run yet.
+     *
+     * @return true if the transfer was pending and is now cancelled
+     */
+    boolean cancel() {
+        return state.compareAndSet(PENDING, CANCELLED);
+    }
+
+    BankAccount getSourceAccount() {
+        return sourceAccount;
+    }
+
+    BankAccount getDestinationAccount() {
+        return destinationAccount;
     }
 
     public Date getScheduledDate() {
@@ -39,6 +98,10 @@ public class ScheduledTransfer {
     }
 
     public double getAmount() {
+        return Money.toDollars(amount);
+    }
+
+    public long getAmountCents() {
         return amount;
     }
 
@@ -47,6 +110,10 @@ public class ScheduledTransfer {
     }
 
     public boolean isExecuted() {
-        return executed;
+        return state.get() == EXECUTED;
+    }
+
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
     }
 }
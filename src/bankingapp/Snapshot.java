@@ -0,0 +1,714 @@
+package bankingapp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Binary snapshots of a BankAccountDatabase, and fast startup from the
+ * latest snapshot plus the journal tail written after it.
+ *
+ * A snapshot is a directory named after the last journal sequence it
+ * contains. Accounts and holders are split by number into shard files that
+ * are written and loaded in parallel. The manifest is written last and the
+ * directory is renamed into place, so a half-written snapshot is never
+ * picked up.
+ *
+ * A snapshot holds accounts (balance, limits, type, status, last interest
+ * accrual, pending scheduled transfers, recurring payments and transaction
+ * history), holders and the suspense queue.
+ *
+ * The live state of a journaled database may already include operations
+ * whose records are not yet appended, and replaying those after recovery
+ * would count them twice. So a journaled database's snapshot is not read
+ * from the live accounts: the journal's last sequence is taken first, then
+ * the previous snapshot is loaded and the journal replayed up to that
+ * sequence, and the result is written. Snapshots can therefore be taken
+ * while requests are being handled; the history they carry is the one the
+ * journal records. Holders are not journaled and are copied from the live
+ * database.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public final class Snapshot {
+
+    public static final int DEFAULT_SHARDS = 16;
+
+    private static final int MAGIC = 0x42414E4B; // "BANK"
+    private static final int VERSION = 5; // 2: recurring payments carry their catch-up policy, 3: accounts carry their last accrual, 4: accounts carry their history, 5: history in TransactionCodec blocks
+    private static final int OLDEST_VERSION = 3;
+    private static final String PREFIX = "snapshot-";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String MANIFEST = "manifest.bin";
+    private static final String SUSPENSE = "suspense.bin";
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final TransactionType[] TRANSACTION_TYPES = TransactionType.values();
+
+    private Snapshot() {
+        // Static utility
+    }
+
+    /**
+     * Writes a snapshot of the database with the default number of shards.
+     *
+     * @param database The database to save
+     * @param directory Directory holding snapshots (created if missing)
+     * @return The directory of the new snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static Path write(BankAccountDatabase database, Path directory) throws IOException {
+        return write(database, directory, DEFAULT_SHARDS);
+    }
+
+    /**
+     * Writes a snapshot of the database, covering every journal record
+     * appended before the call.
+     *
+     * @param database The database to save
+     * @param directory Directory holding snapshots (created if missing)
+     * @param shards Number of shard files to split the accounts into
+     * @return The directory of the new snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static Path write(BankAccountDatabase database, Path directory, int shards) throws IOException {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        Journal journal = database.getJournal();
+        long sequence = journal == null ? 0 : journal.getLastSequence();
+        BankAccountDatabase state = journal == null ? database : rebuild(directory, journal.getDirectory(), sequence);
+
+        Path target = directory.resolve(snapshotName(sequence));
+        Path temp = directory.resolve(snapshotName(sequence) + TEMP_SUFFIX);
+        deleteRecursively(temp);
+        Files.createDirectories(temp);
+
+        List<List<BankAccount>> accountShards = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            accountShards.add(new ArrayList<>());
+        }
+        state.forEachBankAccount(account -> accountShards.get(Math.floorMod(account.getAccountNumber(), shards)).add(account));
+        List<List<Map.Entry<Integer, AccountHolder>>> holderShards = split(database.accountHolderMap(), shards);
+        try {
+            IntStream.range(0, shards).parallel().forEach(shard -> {
+                try {
+                    writeShard(state, database, temp.resolve(shardName(shard)), accountShards.get(shard), holderShards.get(shard));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        writeSuspense(state.getSuspenseQueue(), temp.resolve(SUSPENSE));
+
+        try (FileChannel out = FileChannel.open(temp.resolve(MANIFEST), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer manifest = ByteBuffer.allocate(4 + 4 + 8 + 4);
+            manifest.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(shards).flip();
+            out.write(manifest);
+            out.force(true);
+        }
+
+        deleteRecursively(target); // Nothing was journaled since the last snapshot
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    /**
+     * Loads a snapshot into a new database that is not journaled.
+     *
+     * @param snapshotDirectory A directory returned by write() or latest()
+     * @return The restored database
+     * @throws IOException if the snapshot cannot be read or is not valid
+     */
+    public static BankAccountDatabase load(Path snapshotDirectory) throws IOException {
+        int shards;
+        int version;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshotDirectory.resolve(MANIFEST)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot: " + snapshotDirectory);
+            }
+            version = in.readInt();
+            if (version < OLDEST_VERSION || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + snapshotDirectory);
+            }
+            in.readLong(); // Sequence, also encoded in the directory name
+            shards = in.readInt();
+        }
+
+        BankAccountDatabase database = new BankAccountDatabase();
+        List<List<PendingTransfer>> pending = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            pending.add(new ArrayList<>());
+        }
+        try {
+            IntStream.range(0, shards).parallel().forEach(shard -> {
+                try {
+                    readShard(database, snapshotDirectory.resolve(shardName(shard)), version, pending.get(shard));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        readSuspense(database.getSuspenseQueue(), snapshotDirectory.resolve(SUSPENSE));
+
+        // Scheduled transfers can point into any shard, so link them once every account is loaded
+        for (List<PendingTransfer> transfers : pending) {
+            for (PendingTransfer transfer : transfers) {
+                BankAccount destination = database.getBankAccount(transfer.destinationNumber);
+                if (destination != null) {
+                    transfer.source.restoreScheduledTransfer(new ScheduledTransfer(transfer.source, destination,
+                        transfer.amount, new Date(transfer.scheduledMillis), transfer.description));
+                }
+            }
+        }
+        return database;
+    }
+
+    /**
+     * Rebuilds the database at startup: loads the latest complete snapshot,
+     * replays only the journal records written after it, then reopens the
+     * journal so new mutations are appended to it.
+     *
+     * @param snapshotDirectory Directory holding snapshots
+     * @param journalDirectory Directory holding the journal segments
+     * @param policy Fsync policy for the reopened journal
+     * @return The recovered database, journaling to the reopened journal
+     * @throws IOException if the snapshot or journal cannot be read
+     */
+    public static BankAccountDatabase recover(Path snapshotDirectory, Path journalDirectory,
+            Journal.FsyncPolicy policy) throws IOException {
+        BankAccountDatabase database = rebuild(snapshotDirectory, journalDirectory, Long.MAX_VALUE);
+        database.setJournal(new Journal(journalDirectory, policy));
+        return database;
+    }
+
+    /**
+     * Loads the latest snapshot covering no more than throughSequence and
+     * replays the journal from there up to throughSequence.
+     */
+    private static BankAccountDatabase rebuild(Path snapshotDirectory, Path journalDirectory, long throughSequence)
+            throws IOException {
+        Path latest = latest(snapshotDirectory);
+        if (latest != null && sequenceOf(latest) > throughSequence) {
+            latest = null; // Written by a concurrent snapshot; replay everything instead
+        }
+        BankAccountDatabase database = latest == null ? new BankAccountDatabase() : load(latest);
+        long after = latest == null ? 0 : sequenceOf(latest);
+        Journal.replay(journalDirectory, after, throughSequence, new Replayer(database));
+        return database;
+    }
+
+    /**
+     * Finds the most recent complete snapshot.
+     *
+     * @param directory Directory holding snapshots
+     * @return The newest snapshot directory, or null if there is none
+     * @throws IOException if the directory cannot be listed
+     */
+    public static Path latest(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        Path latest = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX) || !Files.exists(path.resolve(MANIFEST))) {
+                    continue;
+                }
+                if (latest == null || sequenceOf(path) > sequenceOf(latest)) {
+                    latest = path;
+                }
+            }
+        }
+        return latest;
+    }
+
+    private static long sequenceOf(Path snapshot) {
+        return Long.parseLong(snapshot.getFileName().toString().substring(PREFIX.length()));
+    }
+
+    private static String snapshotName(long sequence) {
+        return String.format("%s%016d", PREFIX, sequence);
+    }
+
+    private static String shardName(int shard) {
+        return String.format("shard-%04d.bin", shard);
+    }
+
+    private static <T> List<List<Map.Entry<Integer, T>>> split(Map<Integer, T> map, int shards) {
+        List<List<Map.Entry<Integer, T>>> split = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            split.add(new ArrayList<>());
+        }
+        for (Map.Entry<Integer, T> entry : map.entrySet()) {
+            split.get(Math.floorMod(entry.getKey(), shards)).add(entry);
+        }
+        return split;
+    }
+
+    // ---- Shard format ----
+
+    private static void writeShard(BankAccountDatabase state, BankAccountDatabase database, Path file,
+            List<BankAccount> accounts, List<Map.Entry<Integer, AccountHolder>> holders) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            ByteBuffer scratch = ByteBuffer.allocate(BUFFER_SIZE);
+            DescriptionDictionary dictionary = new DescriptionDictionary();
+            out.writeInt(accounts.size());
+            for (BankAccount account : accounts) {
+                writeAccount(out, account.getAccountNumber(), state.isAccountActive(account.getAccountNumber()), account);
+                writeHistory(out, account, dictionary, scratch);
+            }
+            out.writeInt(holders.size());
+            for (Map.Entry<Integer, AccountHolder> entry : holders) {
+                writeHolder(out, entry.getKey(), database.isAccountActive(entry.getKey()), entry.getValue());
+            }
+
+            // The history's descriptions, then where they start
+            long dictionaryStart = out.size();
+            for (int id = 1; id < dictionary.size(); ) {
+                scratch.clear();
+                id = dictionary.writeTo(scratch, id);
+                out.write(scratch.array(), 0, scratch.position());
+            }
+            out.writeLong(dictionaryStart);
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    private static void writeAccount(DataOutputStream out, int number, boolean active, BankAccount account) throws IOException {
+        AccountType type = account.getAccountType();
+        out.writeInt(number);
+        out.writeBoolean(active);
+        out.writeBoolean(account instanceof BusinessAccount);
+        out.writeByte(type == null ? -1 : type.ordinal());
+        out.writeLong(account.balanceCents());
+        out.writeLong(account.getMaxWithdrawalLimitCents());
+        out.writeLong(account.getMaxDepositLimitCents());
+        out.writeLong(account.getLastAccrualMillis());
+
+        List<ScheduledTransfer> transfers = new ArrayList<>();
+        for (ScheduledTransfer transfer : account.getScheduledTransfers()) {
+            if (!transfer.isExecuted() && transfer.getDestinationAccount().getAccountNumber() != 0) {
+                transfers.add(transfer);
+            }
+        }
+        out.writeInt(transfers.size());
+        for (ScheduledTransfer transfer : transfers) {
+            out.writeInt(transfer.getDestinationAccount().getAccountNumber());
+            out.writeLong(transfer.getAmountCents());
+            out.writeLong(transfer.getScheduledDate().getTime());
+            writeString(out, transfer.getDescription());
+        }
+
+        List<RecurringPayment> payments = account.getRecurringPayments();
+        out.writeInt(payments.size());
+        for (RecurringPayment payment : payments) {
+            out.writeLong(payment.getAmountCents());
+            writeString(out, payment.getDescription());
+            out.writeLong(payment.getStartDate().getTime());
+            out.writeLong(payment.getNextPaymentDate().getTime());
+            out.writeByte(payment.getFrequency().ordinal());
+            writeString(out, payment.getRecipientAccountId());
+            out.writeBoolean(payment.isActive());
+            out.writeByte(payment.getCatchUpPolicy().ordinal());
+        }
+    }
+
+    // The history as length-prefixed blocks in TransactionCodec's format, ending with an empty block
+    private static void writeHistory(DataOutputStream out, BankAccount account, DescriptionDictionary dictionary,
+            ByteBuffer scratch) throws IOException {
+        int from = 0;
+        while (true) {
+            scratch.clear();
+            int next = account.encodeTransactionHistory(scratch, from, dictionary);
+            if (next == from) {
+                break;
+            }
+            out.writeInt(scratch.position());
+            out.write(scratch.array(), 0, scratch.position());
+            from = next;
+        }
+        out.writeInt(0);
+    }
+
+    private static void writeHolder(DataOutputStream out, int number, boolean active, AccountHolder holder) throws IOException {
+        out.writeInt(number);
+        out.writeBoolean(active);
+        writeString(out, holder.getLastname());
+        writeString(out, holder.getBirthday());
+        out.writeInt(holder.getSsn());
+        out.writeInt(holder.getBankCode());
+        writeString(out, holder.getPassword());
+        out.writeBoolean(holder.isPersonalInfoHidden());
+        List<Integer> accounts = holder.getBankAccountNumbers();
+        out.writeInt(accounts.size());
+        for (int accountNumber : accounts) {
+            out.writeInt(accountNumber);
+        }
+    }
+
+    private static void readShard(BankAccountDatabase database, Path file, int version, List<PendingTransfer> pending)
+            throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // Stays valid once the channel is closed
+        }
+        DescriptionDictionary dictionary = null;
+        if (version >= 5) {
+            int end = in.limit() - 8;
+            int dictionaryStart = (int) in.getLong(end);
+            dictionary = new DescriptionDictionary();
+            dictionary.readFrom(in.duplicate().limit(end).position(dictionaryStart));
+            in.limit(dictionaryStart);
+        }
+        int accounts = in.getInt();
+        for (int i = 0; i < accounts; i++) {
+            readAccount(in, database, version, dictionary, pending);
+        }
+        int holders = in.getInt();
+        for (int i = 0; i < holders; i++) {
+            readHolder(in, database);
+        }
+    }
+
+    private static void readAccount(ByteBuffer in, BankAccountDatabase database, int version,
+            DescriptionDictionary dictionary, List<PendingTransfer> pending) throws IOException {
+        int number = in.getInt();
+        boolean active = in.get() != 0;
+        BankAccount account = in.get() != 0 ? new BusinessAccount() : new BankAccount();
+        byte type = in.get();
+        account.restoreState(in.getLong(), in.getLong(), in.getLong(), type < 0 ? null : AccountType.values()[type]);
+        account.restoreLastAccrual(in.getLong());
+
+        int transfers = in.getInt();
+        for (int i = 0; i < transfers; i++) {
+            pending.add(new PendingTransfer(account, in.getInt(), in.getLong(), in.getLong(), readString(in)));
+        }
+
+        int payments = in.getInt();
+        for (int i = 0; i < payments; i++) {
+            long amount = in.getLong();
+            String description = readString(in);
+            Date start = new Date(in.getLong());
+            Date next = new Date(in.getLong());
+            RecurringPayment.PaymentFrequency frequency = RecurringPayment.PaymentFrequency.values()[in.get()];
+            String recipient = readString(in);
+            RecurringPayment payment = new RecurringPayment(Money.toDollars(amount), description, start, frequency, recipient, account);
+            payment.setNextPaymentDate(next);
+            payment.setActive(in.get() != 0);
+            payment.restoreCatchUpPolicy(RecurringPayment.CatchUpPolicy.values()[in.get()]);
+            account.restoreRecurringPayment(payment);
+        }
+
+        if (version >= 5) {
+            long previous = 0;
+            for (int length = in.getInt(); length > 0; length = in.getInt()) {
+                int blockEnd = in.position() + length;
+                previous = account.decodeTransactionHistory(in.duplicate().limit(blockEnd), dictionary, previous);
+                in.position(blockEnd);
+            }
+        } else if (version == 4) {
+            for (byte entryType = in.get(); entryType >= 0; entryType = in.get()) {
+                DescriptionTemplate template = DescriptionTemplate.of(in.get());
+                long amount = in.getLong();
+                String text = readString(in);
+                int entryNumber = in.getInt();
+                account.restoreTransaction(TRANSACTION_TYPES[entryType], amount, template, text, entryNumber, in.getLong(),
+                    in.getLong());
+            }
+        }
+        database.restoreBankAccount(number, account, active);
+    }
+
+    private static void readHolder(ByteBuffer in, BankAccountDatabase database) throws IOException {
+        int number = in.getInt();
+        boolean active = in.get() != 0;
+        AccountHolder holder = new AccountHolder(readString(in), readString(in), in.getInt(), in.getInt());
+        holder.setPassword(readString(in));
+        if (in.get() != 0) {
+            holder.hidePersonalInfo();
+        }
+        int accounts = in.getInt();
+        for (int i = 0; i < accounts; i++) {
+            holder.addBankAccount(holder, in.getInt());
+        }
+        database.restoreAccountHolder(number, holder, active);
+    }
+
+    private static void writeSuspense(SuspenseQueue queue, Path file) throws IOException {
+        List<SuspenseQueue.Entry> entries = queue.getEntries();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            out.writeInt(entries.size());
+            for (SuspenseQueue.Entry entry : entries) {
+                out.writeInt(entry.getPayerAccountNumber());
+                out.writeLong(entry.getAmountCents());
+                writeString(out, entry.getRecipientAccountId());
+                writeString(out, entry.getDescription());
+                out.writeLong(entry.getTimestamp());
+            }
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    private static void readSuspense(SuspenseQueue queue, Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return; // Written before the suspense queue existed
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int payer = in.readInt();
+                long amount = in.readLong();
+                String recipient = readString(in);
+                String description = readString(in);
+                queue.add(new SuspenseQueue.Entry(payer, amount, recipient, description, in.readLong()));
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // Reads what writeString wrote, from a mapped shard
+    private static String readString(ByteBuffer in) throws IOException {
+        if (in.get() == 0) {
+            return null;
+        }
+        int length = in.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        for (byte b : bytes) {
+            if (b < 0) { // Not ASCII: decode writeUTF's modified UTF-8
+                ByteBuffer utf = ByteBuffer.allocate(2 + length).putShort((short) length).put(bytes);
+                return new DataInputStream(new ByteArrayInputStream(utf.array())).readUTF();
+            }
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * A scheduled transfer read from a shard, linked to its destination
+     * once every shard is loaded.
+     */
+    private static final class PendingTransfer {
+        final BankAccount source;
+        final int destinationNumber;
+        final long amount;
+        final long scheduledMillis;
+        final String description;
+
+        PendingTransfer(BankAccount source, int destinationNumber, long amount, long scheduledMillis, String description) {
+            this.source = source;
+            this.destinationNumber = destinationNumber;
+            this.amount = amount;
+            this.scheduledMillis = scheduledMillis;
+            this.description = description;
+        }
+    }
+
+    /**
+     * Applies journal records to a database that is not journaled.
+     */
+    private static final class Replayer implements Journal.RecordVisitor {
+        private final BankAccountDatabase database;
+
+        Replayer(BankAccountDatabase database) {
+            this.database = database;
+        }
+
+        @Override
+        public void visit(Journal.RecordType type, long sequence, long timestamp, ByteBuffer payload) {
+            int number = payload.getInt();
+            BankAccount account = database.getBankAccount(number);
+            switch (type) {
+                case CREATE_ACCOUNT: {
+                    BankAccount created = payload.get() == 1 ? new BusinessAccount() : new BankAccount();
+                    byte accountType = payload.get();
+                    created.restoreState(payload.getLong(), payload.getLong(), payload.getLong(),
+                        accountType < 0 ? null : AccountType.values()[accountType]);
+                    if (!payload.hasRemaining() || payload.get() == 1) {
+                        created.replayOpening(timestamp);
+                    }
+                    database.restoreBankAccount(number, created, true);
+                    return;
+                }
+                case REMOVE_ACCOUNT:
+                    database.removeBankAccount(number);
+                    return;
+                case FREEZE:
+                    database.freezeAccount(number);
+                    return;
+                case SUSPENSE: {
+                    long amount = payload.getLong();
+                    String recipient = Journal.readString(payload);
+                    database.getSuspenseQueue().add(new SuspenseQueue.Entry(number, amount, recipient,
+                        Journal.readString(payload), timestamp));
+                    return;
+                }
+                case UNFREEZE:
+                    database.unfreezeAccount(number);
+                    return;
+                default:
+                    break;
+            }
+            if (account == null) {
+                return; // Removed later in the journal than this record's account was last seen
+            }
+            switch (type) {
+                case DEPOSIT:
+                    account.replayDeposit(payload.getLong(), timestamp);
+                    break;
+                case WITHDRAW:
+                    account.replayWithdrawal(payload.getLong(), timestamp);
+                    break;
+                case TRANSFER: {
+                    BankAccount destination = database.getBankAccount(payload.getInt());
+                    long amount = payload.getLong();
+                    if (destination != null) {
+                        account.replayTransfer(destination, amount, timestamp);
+                    } else {
+                        account.replayWithdrawal(amount, timestamp);
+                    }
+                    break;
+                }
+                case WITHDRAWAL_LIMIT:
+                    account.replayLimits(payload.getLong(), account.getMaxDepositLimitCents());
+                    break;
+                case DEPOSIT_LIMIT:
+                    account.replayLimits(account.getMaxWithdrawalLimitCents(), payload.getLong());
+                    break;
+                case SCHEDULE_TRANSFER: {
+                    BankAccount destination = database.getBankAccount(payload.getInt());
+                    long amount = payload.getLong();
+                    long scheduledMillis = payload.getLong();
+                    String description = Journal.readString(payload);
+                    if (destination != null) {
+                        account.restoreScheduledTransfer(new ScheduledTransfer(account, destination, amount,
+                            new Date(scheduledMillis), description));
+                    }
+                    break;
+                }
+                case SCHEDULED_TRANSFER_DONE:
+                    account.replayScheduledTransferDone(payload.getInt(), payload.getLong(), payload.getLong());
+                    break;
+                case SCHEDULE_RECURRING: {
+                    long amount = payload.getLong();
+                    Date start = new Date(payload.getLong());
+                    RecurringPayment.PaymentFrequency frequency = RecurringPayment.PaymentFrequency.values()[payload.get()];
+                    String description = Journal.readString(payload);
+                    String recipient = Journal.readString(payload);
+                    RecurringPayment payment = new RecurringPayment(Money.toDollars(amount), description, start,
+                        frequency, recipient, account);
+                    if (payload.hasRemaining()) {
+                        payment.restoreCatchUpPolicy(RecurringPayment.CatchUpPolicy.values()[payload.get()]);
+                    }
+                    account.restoreRecurringPayment(payment);
+                    break;
+                }
+                case CANCEL_RECURRING:
+                    account.getRecurringPayments().get(payload.getInt()).setActive(false);
+                    break;
+                case RECURRING_PAYMENT:
+                    account.replayRecurringPayment(payload.getInt(), payload.getLong(), payload.getLong(), timestamp);
+                    break;
+                case RECURRING_CATCH_UP:
+                    account.replayRecurringCatchUp(payload.getInt(), payload.getLong(), payload.getInt(), payload.getLong(),
+                        timestamp);
+                    break;
+                case INTEREST_ACCRUAL:
+                    account.replayInterestAccrual(payload.getLong(), payload.getLong(), timestamp);
+                    break;
+                case CATCH_UP_POLICY:
+                    account.getRecurringPayments().get(payload.getInt())
+                        .restoreCatchUpPolicy(RecurringPayment.CatchUpPolicy.values()[payload.get()]);
+                    break;
+                case RECURRING_SETTLEMENT: {
+                    int count = payload.getInt();
+                    long[] amounts = new long[count];
+                    int[] payers = new int[count];
+                    String[] descriptions = new String[count];
+                    for (int i = 0; i < count; i++) {
+                        payers[i] = payload.getInt();
+                        int paymentIndex = payload.getInt();
+                        amounts[i] = payload.getLong();
+                        BankAccount payer = database.getBankAccount(payers[i]);
+                        List<RecurringPayment> payments = payer == null ? null : payer.getRecurringPayments();
+                        if (payments != null && paymentIndex >= 0 && paymentIndex < payments.size()) {
+                            descriptions[i] = payments.get(paymentIndex).getDescription();
+                        }
+                    }
+                    account.replaySettlement(amounts, payers, descriptions, count, timestamp);
+                    break;
+                }
+                case IMPORTED_TRANSACTION: {
+                    TransactionType entryType = TRANSACTION_TYPES[payload.get()];
+                    long amount = payload.getLong();
+                    long entryTimestamp = payload.getLong();
+                    long balanceAfter = payload.getLong();
+                    String description = null;
+                    int length = payload.getInt();
+                    if (length >= 0) {
+                        byte[] text = new byte[length];
+                        payload.get(text);
+                        description = new String(text, StandardCharsets.UTF_8);
+                    }
+                    account.importTransaction(entryType, amount, description, entryTimestamp, balanceAfter);
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package bankingapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bank-wide holding queue for settlement credits that could not be applied.
+ *
+ * When a recurring payment has been taken from the payer but its recipient
+ * id does not name an account in the database, or the recipient cannot
+ * accept the amount, the money is parked here instead of disappearing.
+ * Entries are journaled and included in snapshots, so the queue survives a
+ * restart.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public class SuspenseQueue {
+
+    /**
+     * One credit waiting in suspense.
+     */
+    public static final class Entry {
+        private final int payerAccountNumber;
+        private final long amount; // In cents, see Money
+        private final String recipientAccountId;
+        private final String description;
+        private final long timestamp;
+
+        Entry(int payerAccountNumber, long amount, String recipientAccountId, String description, long timestamp) {
+            this.payerAccountNumber = payerAccountNumber;
+            this.amount = amount;
+            this.recipientAccountId = recipientAccountId;
+            this.description = description;
+            this.timestamp = timestamp;
+        }
+
+        public int getPayerAccountNumber() { return payerAccountNumber; }
+        public long getAmountCents() { return amount; }
+        public double getAmount() { return Money.toDollars(amount); }
+        public String getRecipientAccountId() { return recipientAccountId; }
+        public String getDescription() { return description; }
+        public long getTimestamp() { return timestamp; }
+    }
+
+    // Guarded by this
+    private final List<Entry> entries = new ArrayList<>();
+    private long total;
+
+    /**
+     * Adds an entry. Journaling is up to the caller.
+     */
+    synchronized void add(Entry entry) {
+        entries.add(entry);
+        total = Money.add(total, entry.amount);
+    }
+
+    /**
+     * Gets the number of credits in suspense.
+     *
+     * @return The number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the total held in suspense.
+     *
+     * @return The total in cents
+     */
+    public synchronized long getTotalCents() {
+        return total;
+    }
+
+    /**
+     * Gets every credit in suspense, oldest first.
+     *
+     * @return A new list of the entries
+     */
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries);
+    }
+}
@@ -11,10 +11,12 @@ import java.util.Date;
  */
 public class Transaction {
     private TransactionType type;
-    private double amount;
-    private String description;
-    private Date date;
-    private double balanceAfterTransaction;
+    private long amount; // In cents, see Money
+    private DescriptionTemplate template; // The description is rendered on demand
+    private String text;
+    private int number;
+    private long timestamp; // Epoch milliseconds
+    private long balanceAfterTransaction; // In cents
 
     /**
      * Creates a new transaction.
@@ -26,11 +28,54 @@ public class Transaction {
      * @param balanceAfterTransaction The account balance after the transaction.
      */
     public Transaction(TransactionType type, double amount, String description, Date date, double balanceAfterTransaction) {
+        this(type, Money.toCents(amount), description, date.getTime(), Money.toCents(balanceAfterTransaction));
+    }
+
+    /**
+     * Creates a new transaction stamped with the current BankClock time.
+     * 
+     * @param type The type of transaction.
+     * @param amount The amount involved in the transaction.
+     * @param description A description of the transaction.
+     * @param balanceAfterTransaction The account balance after the transaction.
+     */
+    public Transaction(TransactionType type, double amount, String description, double balanceAfterTransaction) {
+        this(type, Money.toCents(amount), description, BankClock.current().millis(), Money.toCents(balanceAfterTransaction));
+    }
+
+    /**
+     * Creates a new transaction from amounts in cents.
+     * 
+     * @param type The type of transaction.
+     * @param amountCents The amount involved in the transaction, in cents.
+     * @param description A description of the transaction.
+     * @param timestamp The time of the transaction in epoch milliseconds.
+     * @param balanceAfterCents The account balance after the transaction, in cents.
+     */
+    Transaction(TransactionType type, long amountCents, String description, long timestamp, long balanceAfterCents) {
+        this(type, amountCents, DescriptionTemplate.TEXT, description, 0, timestamp, balanceAfterCents);
+    }
+
+    /**
+     * Creates a transaction whose description is a template and its arguments.
+     * 
+     * @param type The type of transaction.
+     * @param amountCents The amount involved in the transaction, in cents.
+     * @param template The description template.
+     * @param text The template's text argument, or null.
+     * @param number The template's number argument, or 0.
+     * @param timestamp The time of the transaction in epoch milliseconds.
+     * @param balanceAfterCents The account balance after the transaction, in cents.
+     */
+    Transaction(TransactionType type, long amountCents, DescriptionTemplate template, String text, int number,
+            long timestamp, long balanceAfterCents) {
         this.type = type;
-        this.amount = amount;
-        this.description = description;
-        this.date = date;
-        this.balanceAfterTransaction = balanceAfterTransaction;
+        this.amount = amountCents;
+        this.template = template;
+        this.text = text;
+        this.number = number;
+        this.timestamp = timestamp;
+        this.balanceAfterTransaction = balanceAfterCents;
     }
 
     public TransactionType getType() {
@@ -38,18 +83,42 @@ public class Transaction {
     }
 
     public double getAmount() {
+        return Money.toDollars(amount);
+    }
+
+    public long getAmountCents() {
         return amount;
     }
 
     public String getDescription() {
-        return description;
+        return template.render(text, number);
+    }
+
+    DescriptionTemplate getTemplate() {
+        return template;
+    }
+
+    String getTemplateText() {
+        return text;
+    }
+
+    int getTemplateNumber() {
+        return number;
     }
 
     public Date getDate() {
-        return date;
+        return new Date(timestamp);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
     }
 
     public double getBalanceAfterTransaction() {
+        return Money.toDollars(balanceAfterTransaction);
+    }
+
+    public long getBalanceAfterTransactionCents() {
         return balanceAfterTransaction;
     }
 
@@ -59,11 +128,11 @@ public class Transaction {
      * @return The balance after the transaction
      */
     public double getFinalBalance() {
-        return balanceAfterTransaction;
+        return Money.toDollars(balanceAfterTransaction);
     }
 
     @Override
     public String toString() {
-        return String.format("[%s] %s: $%.2f - %s (Balance $%.2f)", date, type, amount, description, balanceAfterTransaction);
+        return String.format("[%s] %s: $%.2f - %s (Balance $%.2f)", getDate(), type, getAmount(), getDescription(), getFinalBalance());
     }
 }
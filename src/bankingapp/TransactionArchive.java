@@ -0,0 +1,251 @@
+package bankingapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Cold storage for transaction histories. An account whose database has an
+ * archive (see BankAccountDatabase.setTransactionArchive) keeps only its
+ * most recent entries on the heap; older ones are moved here, a block of
+ * entries at a time, and read back through the same history APIs.
+ *
+ * Blocks are appended to fixed-size segment files that are memory-mapped,
+ * as the journal's are, and never rewritten. Each block is laid out as:
+ *
+ * <pre>
+ * int  length     length of the entries
+ * ...             the entries, in TransactionCodec's format, oldest first
+ * </pre>
+ *
+ * Description texts are stored once, in a dictionary shared by every
+ * account in the archive. The dictionary stays on the heap and only grows,
+ * so the archive bounds the heap for histories whose texts repeat (the
+ * templates' own text is never stored, and recurring payment descriptions
+ * recur) but not for ones where most entries carry a distinct text, such
+ * as imported statements.
+ *
+ * If a block cannot be appended (the archive is closed or full, or a
+ * segment cannot be created), its entries stay on the heap and the failure
+ * is counted; see getFailedBlocks().
+ *
+ * The archive only extends the heap: history is still rebuilt from the
+ * snapshot and journal after a restart, so opening an archive deletes the segments a
+ * previous process left in its directory, and blocks of cleared histories
+ * are not reclaimed until then.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public final class TransactionArchive implements AutoCloseable {
+
+    public static final int DEFAULT_HOT_ENTRIES = 64;
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20; // 64 MB
+
+    /** The largest block: a full TransactionLog chunk and its length */
+    static final int MAX_BLOCK_BYTES = 4 + TransactionLog.CHUNK_SIZE * TransactionCodec.MAX_TRANSACTION_BYTES;
+    /** Block addresses are the segment in the high bits and the offset in the low 32 */
+    static final int MAX_SEGMENTS = 1 << 16;
+
+    private static final String SEGMENT_PREFIX = "archive-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * Writes the entries of one block.
+     */
+    interface BlockWriter {
+        void write(ByteBuffer out, DescriptionDictionary dictionary);
+    }
+
+    private final Path directory;
+    private final int hotEntries;
+    private final long segmentSize;
+    private final DescriptionDictionary dictionary = new DescriptionDictionary();
+
+    // Segments 0 to segmentCount - 1, mapped for their whole size. Readers
+    // get a block's segment from the array without locking.
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[4];
+
+    // Guarded by this
+    private int segmentCount;
+    private int position; // Write position in the last segment
+    private long archivedBytes;
+    private long failedBlocks;
+    private boolean closed;
+
+    /**
+     * Opens an archive that keeps the default number of recent entries per
+     * account on the heap, with the default segment size.
+     *
+     * @param directory Directory for the segment files (created if missing)
+     * @throws IOException if the directory or first segment cannot be created
+     */
+    public TransactionArchive(Path directory) throws IOException {
+        this(directory, DEFAULT_HOT_ENTRIES, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens an archive.
+     *
+     * @param directory Directory for the segment files (created if missing)
+     * @param hotEntries How many of its most recent entries each account keeps on the heap
+     * @param segmentSize Size of each mapped segment file in bytes
+     * @throws IOException if the directory or first segment cannot be created
+     * @throws IllegalArgumentException if hotEntries is not positive or the
+     *     segment size is not between one block and 2 GB
+     */
+    public TransactionArchive(Path directory, int hotEntries, long segmentSize) throws IOException {
+        if (hotEntries <= 0) {
+            throw new IllegalArgumentException("Hot entries must be positive");
+        }
+        if (segmentSize < MAX_BLOCK_BYTES || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be between " + MAX_BLOCK_BYTES + " bytes and 2 GB");
+        }
+        this.directory = directory;
+        this.hotEntries = hotEntries;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stale) {
+                Files.delete(segment);
+            }
+        }
+        openSegment();
+    }
+
+    /**
+     * Gets how many of its most recent entries each account keeps on the heap.
+     *
+     * @return The number of hot entries
+     */
+    public int getHotEntries() {
+        return hotEntries;
+    }
+
+    /**
+     * Gets the directory holding the segment files.
+     *
+     * @return The directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets the number of segment files written so far.
+     *
+     * @return The number of segments
+     */
+    public synchronized int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Gets the bytes of every block written so far.
+     *
+     * @return The archived bytes
+     */
+    public synchronized long getArchivedBytes() {
+        return archivedBytes;
+    }
+
+    /**
+     * Gets the number of blocks that could not be appended, whose entries
+     * were kept on the heap instead. Anything above zero means the archive
+     * is no longer bounding the heap.
+     *
+     * @return The failed appends
+     */
+    public synchronized long getFailedBlocks() {
+        return failedBlocks;
+    }
+
+    DescriptionDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Appends a block. The writer encodes the entries straight into the
+     * mapped segment.
+     *
+     * @param writer Writes the entries (at most MAX_BLOCK_BYTES - 4 bytes)
+     * @return The block's address, below 2^48
+     * @throws IOException if the archive is closed, or a new segment is
+     *     needed and cannot be created
+     */
+    synchronized long append(BlockWriter writer) throws IOException {
+        try {
+            if (closed) {
+                throw new IOException("Transaction archive is closed");
+            }
+            if ((long) position + MAX_BLOCK_BYTES > segmentSize) {
+                openSegment();
+            }
+        } catch (IOException e) {
+            failedBlocks++;
+            throw e;
+        }
+        int offset = position;
+        ByteBuffer out = segments[segmentCount - 1].duplicate();
+        out.position(offset + 4);
+        writer.write(out, dictionary);
+        int length = out.position() - offset - 4;
+        out.putInt(offset, length);
+        position = out.position();
+        archivedBytes += 4 + length;
+        return (long) (segmentCount - 1) << 32 | offset;
+    }
+
+    /**
+     * Reads a block written by append(). The address must have been
+     * published to the calling thread after append() returned it.
+     *
+     * @param address The block's address
+     * @return A buffer over the block's entries
+     */
+    ByteBuffer read(long address) {
+        ByteBuffer segment = segments[(int) (address >>> 32)].duplicate();
+        int offset = (int) address;
+        int length = segment.getInt(offset);
+        segment.limit(offset + 4 + length).position(offset + 4);
+        return segment;
+    }
+
+    // Called with the monitor held
+    private void openSegment() throws IOException {
+        if (segmentCount == MAX_SEGMENTS) {
+            throw new IOException("Transaction archive is full");
+        }
+        Path path = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, segmentCount, SEGMENT_SUFFIX));
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize); // Stays valid once the channel is closed
+        }
+        MappedByteBuffer[] current = segments;
+        if (segmentCount == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[segmentCount] = segment;
+        segments = current; // Publish the new segment (and array) to readers
+        segmentCount++;
+        position = 0;
+    }
+
+    /**
+     * Stops appending. Histories already moved here stay readable while the
+     * segments are mapped; the files are deleted when the next archive is
+     * opened in the directory.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+    }
+}
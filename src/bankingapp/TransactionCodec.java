@@ -0,0 +1,284 @@
+package bankingapp;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.function.IntFunction;
+
+/**
+ * Compact binary form of Transaction, ScheduledTransfer and RecurringPayment
+ * records, read and written directly against ByteBuffers.
+ *
+ * Numbers are varints (7 bits per byte, high bit set on all but the last),
+ * zigzag-encoded where they can be negative, so typical amounts take two or
+ * three bytes instead of eight. Strings are ids in a DescriptionDictionary,
+ * which is written once beside the records. A transaction's description is
+ * written as its DescriptionTemplate and the template's arguments, so the
+ * text of a description is never built to encode it. Record layouts:
+ *
+ *   Transaction        type (1 byte), template (1 byte), timestamp delta, amount,
+ *                      balance after, text id (if the template takes text),
+ *                      number (if the template takes a number)
+ *   ScheduledTransfer  source number, destination number, amount, scheduled time, description id
+ *   RecurringPayment   amount, description id, start day, next payment day,
+ *                      frequency (1 byte), recipient id, flags (1 byte: active, catch-up policy)
+ *
+ * A transaction's timestamp is stored as the difference from the previous
+ * transaction in the same stream (0 before the first), so a run of
+ * transactions written close together costs a byte or two per timestamp.
+ * Encoders return the timestamp to pass as 'previous' for the next record,
+ * and decoders expect the same sequence.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public final class TransactionCodec {
+
+    /** The most bytes a varint takes */
+    public static final int MAX_VARINT_BYTES = 10;
+
+    /** The most bytes one encoded transaction takes */
+    public static final int MAX_TRANSACTION_BYTES = 2 + 5 * MAX_VARINT_BYTES;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final RecurringPayment.PaymentFrequency[] FREQUENCIES = RecurringPayment.PaymentFrequency.values();
+    private static final RecurringPayment.CatchUpPolicy[] POLICIES = RecurringPayment.CatchUpPolicy.values();
+
+    private TransactionCodec() {
+        // Static utility
+    }
+
+    // ---- Varints ----
+
+    /**
+     * Writes a non-negative value as a varint, or any value in ten bytes.
+     *
+     * @param out The buffer to write to
+     * @param value The value
+     */
+    public static void writeVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads a varint written by writeVarLong.
+     *
+     * @param in The buffer to read from
+     * @return The value
+     * @throws IllegalArgumentException if the varint is longer than ten bytes
+     */
+    public static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Writes a value that may be negative as a zigzag varint, so small
+     * magnitudes of either sign stay short.
+     *
+     * @param out The buffer to write to
+     * @param value The value
+     */
+    public static void writeSignedVarLong(ByteBuffer out, long value) {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Reads a value written by writeSignedVarLong.
+     *
+     * @param in The buffer to read from
+     * @return The value
+     */
+    public static long readSignedVarLong(ByteBuffer in) {
+        long zigzag = readVarLong(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    // ---- Transactions ----
+
+    /**
+     * Writes a transaction from its fields, without a Transaction object.
+     *
+     * @param out The buffer to write to (at least MAX_TRANSACTION_BYTES remaining)
+     * @param type The type
+     * @param amount The amount, in cents
+     * @param template The description template
+     * @param text The template's text argument, or null
+     * @param number The template's number argument, or 0
+     * @param timestamp The time, in epoch milliseconds
+     * @param balanceAfter The balance after the transaction, in cents
+     * @param previousTimestamp The timestamp of the previous transaction in the stream, or 0
+     * @param dictionary Where the text's id comes from
+     * @return The timestamp, to pass as previousTimestamp for the next transaction
+     */
+    static long encodeTransaction(ByteBuffer out, TransactionType type, long amount, DescriptionTemplate template,
+            String text, int number, long timestamp, long balanceAfter, long previousTimestamp,
+            DescriptionDictionary dictionary) {
+        out.put((byte) type.ordinal());
+        out.put((byte) template.ordinal());
+        writeSignedVarLong(out, timestamp - previousTimestamp);
+        writeSignedVarLong(out, amount);
+        writeSignedVarLong(out, balanceAfter);
+        if (template.takesText()) {
+            writeVarLong(out, dictionary.idOf(text));
+        }
+        if (template.takesNumber()) {
+            writeSignedVarLong(out, number);
+        }
+        return timestamp;
+    }
+
+    /**
+     * Writes a transaction.
+     *
+     * @param out The buffer to write to (at least MAX_TRANSACTION_BYTES remaining)
+     * @param transaction The transaction
+     * @param dictionary Where the description's text id comes from
+     * @param previousTimestamp The timestamp of the previous transaction in the stream, or 0
+     * @return The transaction's timestamp, to pass as previousTimestamp for the next one
+     */
+    public static long encode(ByteBuffer out, Transaction transaction, DescriptionDictionary dictionary,
+            long previousTimestamp) {
+        return encodeTransaction(out, transaction.getType(), transaction.getAmountCents(), transaction.getTemplate(),
+            transaction.getTemplateText(), transaction.getTemplateNumber(), transaction.getTimestamp(),
+            transaction.getBalanceAfterTransactionCents(), previousTimestamp, dictionary);
+    }
+
+    /**
+     * Reads a transaction.
+     *
+     * @param in The buffer to read from
+     * @param dictionary Where the description comes from
+     * @param previousTimestamp The timestamp of the previous transaction in the stream, or 0
+     * @return The transaction; its getTimestamp() is the next previousTimestamp
+     */
+    public static Transaction decodeTransaction(ByteBuffer in, DescriptionDictionary dictionary, long previousTimestamp) {
+        TransactionType type = TYPES[in.get()];
+        DescriptionTemplate template = DescriptionTemplate.of(in.get());
+        long timestamp = previousTimestamp + readSignedVarLong(in);
+        long amount = readSignedVarLong(in);
+        long balanceAfter = readSignedVarLong(in);
+        String text = template.takesText() ? dictionary.get((int) readVarLong(in)) : null;
+        int number = template.takesNumber() ? (int) readSignedVarLong(in) : 0;
+        return new Transaction(type, amount, template, text, number, timestamp, balanceAfter);
+    }
+
+    /**
+     * Reads a transaction and passes its fields to a visitor, without a
+     * Transaction object.
+     *
+     * @param in The buffer to read from
+     * @param dictionary Where the description comes from
+     * @param previousTimestamp The timestamp of the previous transaction in the stream, or 0
+     * @param visitor Receives the fields
+     * @return The transaction's timestamp, to pass as previousTimestamp for the next one
+     */
+    static long decodeTransaction(ByteBuffer in, DescriptionDictionary dictionary, long previousTimestamp,
+            TransactionLog.EntryVisitor visitor) {
+        TransactionType type = TYPES[in.get()];
+        DescriptionTemplate template = DescriptionTemplate.of(in.get());
+        long timestamp = previousTimestamp + readSignedVarLong(in);
+        long amount = readSignedVarLong(in);
+        long balanceAfter = readSignedVarLong(in);
+        String text = template.takesText() ? dictionary.get((int) readVarLong(in)) : null;
+        int number = template.takesNumber() ? (int) readSignedVarLong(in) : 0;
+        visitor.visit(type, amount, template, text, number, timestamp, balanceAfter);
+        return timestamp;
+    }
+
+    // ---- Scheduled transfers ----
+
+    /**
+     * Writes a scheduled transfer. Both accounts must have numbers.
+     *
+     * @param out The buffer to write to
+     * @param transfer The transfer
+     * @param dictionary Where the description's id comes from
+     */
+    public static void encode(ByteBuffer out, ScheduledTransfer transfer, DescriptionDictionary dictionary) {
+        writeVarLong(out, transfer.getSourceAccount().getAccountNumber() & 0xFFFFFFFFL);
+        writeVarLong(out, transfer.getDestinationAccount().getAccountNumber() & 0xFFFFFFFFL);
+        writeSignedVarLong(out, transfer.getAmountCents());
+        writeSignedVarLong(out, transfer.getScheduledDate().getTime());
+        writeVarLong(out, dictionary.idOf(transfer.getDescription()));
+    }
+
+    /**
+     * Reads a scheduled transfer as a pending transfer.
+     *
+     * @param in The buffer to read from
+     * @param dictionary Where the description comes from
+     * @param accounts Looks up an account by number
+     * @return The transfer
+     * @throws IllegalArgumentException if an account cannot be found
+     */
+    public static ScheduledTransfer decodeScheduledTransfer(ByteBuffer in, DescriptionDictionary dictionary,
+            IntFunction<BankAccount> accounts) {
+        BankAccount source = account(accounts, (int) readVarLong(in));
+        BankAccount destination = account(accounts, (int) readVarLong(in));
+        long amount = readSignedVarLong(in);
+        Date scheduledDate = new Date(readSignedVarLong(in));
+        return new ScheduledTransfer(source, destination, amount, scheduledDate, dictionary.get((int) readVarLong(in)));
+    }
+
+    private static BankAccount account(IntFunction<BankAccount> accounts, int number) {
+        BankAccount account = accounts.apply(number);
+        if (account == null) {
+            throw new IllegalArgumentException("Unknown account: " + number);
+        }
+        return account;
+    }
+
+    // ---- Recurring payments ----
+
+    /**
+     * Writes a recurring payment.
+     *
+     * @param out The buffer to write to
+     * @param payment The payment
+     * @param dictionary Where the description's and recipient's ids come from
+     */
+    public static void encode(ByteBuffer out, RecurringPayment payment, DescriptionDictionary dictionary) {
+        writeSignedVarLong(out, payment.getAmountCents());
+        writeVarLong(out, dictionary.idOf(payment.getDescription()));
+        writeSignedVarLong(out, payment.getStartDay());
+        writeSignedVarLong(out, payment.getNextPaymentDay());
+        out.put((byte) payment.getFrequency().ordinal());
+        writeVarLong(out, dictionary.idOf(payment.getRecipientAccountId()));
+        out.put((byte) ((payment.isActive() ? 1 : 0) | payment.getCatchUpPolicy().ordinal() << 1));
+    }
+
+    /**
+     * Reads a recurring payment.
+     *
+     * @param in The buffer to read from
+     * @param dictionary Where the description and recipient come from
+     * @param account The account the payment belongs to
+     * @return The payment
+     */
+    public static RecurringPayment decodeRecurringPayment(ByteBuffer in, DescriptionDictionary dictionary, BankAccount account) {
+        long amount = readSignedVarLong(in);
+        String description = dictionary.get((int) readVarLong(in));
+        long startDay = readSignedVarLong(in);
+        long nextPaymentDay = readSignedVarLong(in);
+        RecurringPayment.PaymentFrequency frequency = FREQUENCIES[in.get()];
+        String recipient = dictionary.get((int) readVarLong(in));
+        byte flags = in.get();
+        RecurringPayment payment = new RecurringPayment(amount, description, startDay, nextPaymentDay, frequency,
+            recipient, account);
+        payment.setActive((flags & 1) != 0);
+        payment.restoreCatchUpPolicy(POLICIES[flags >>> 1]);
+        return payment;
+    }
+}
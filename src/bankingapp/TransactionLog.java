@@ -0,0 +1,794 @@
+package bankingapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+/**
+ * Append-only transaction store for one account, laid out as fixed-size
+ * chunks of primitive columns instead of a list of Transaction objects.
+ *
+ * Each entry costs a timestamp long, a type byte, an amount long, a
+ * balance-after long and a DescriptionTemplate byte. Templates that take
+ * arguments also use a text reference and a number int, in columns a chunk
+ * only allocates once an entry needs them. Descriptions are rendered when
+ * a Transaction is read, not stored as strings. Appending never
+ * allocates per entry and never copies existing entries: when a chunk is
+ * full a new one is added, and only the small array of chunk references
+ * grows. Transaction objects are created only when a caller reads them.
+ *
+ * Appends are serialized by the log's own monitor. Reads do not lock: an
+ * entry's columns are written before the size is published, so a reader
+ * that sees the new size also sees the entry.
+ *
+ * Every entry also has an absolute sequence number that keeps counting
+ * across clear(). Page cursors are sequence numbers, so they stay valid
+ * while the log grows.
+ *
+ * The log also keeps, for each TransactionType, the positions of the
+ * entries of that type. Type-filtered reads and counts therefore cost
+ * O(matches) instead of a scan of the whole log.
+ *
+ * With a TransactionArchive, the log is tiered instead: chunks are sized to
+ * the archive's hot entries and kept in a small ring, and starting a chunk
+ * when the ring is full moves the oldest one to the archive as a block.
+ * The heap then holds at least the hot entries, the newest chunks and one
+ * long per archived chunk (its block address and the types it holds), no
+ * matter how long the history is. Reads find an entry in the ring or decode
+ * its chunk from the archive, so every read below spans both tiers.
+ * Type-filtered reads skip the chunks whose type mask lacks the type
+ * instead of keeping positions.
+ */
+class TransactionLog {
+
+    static final int CHUNK_SHIFT = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; // 1024 entries per chunk
+
+    // Smallest chunk of a tiered log, so a block is worth its address
+    private static final int MIN_TIERED_CHUNK_SIZE = 16;
+
+    private static final TransactionType[] TYPES = TransactionType.values(); // At most 16: type masks are 16 bits
+
+    /**
+     * Receives the columns of one entry, for readers that do not need a
+     * Transaction object.
+     */
+    interface EntryVisitor {
+        void visit(TransactionType type, long amount, DescriptionTemplate template, String text, int number,
+                long timestamp, long balanceAfter);
+    }
+
+    /**
+     * One block of entries, stored column by column. Chunks are filled in
+     * order, so visit() stores an entry in the next free slot.
+     */
+    private static final class Chunk implements EntryVisitor {
+        final int number; // Entries number << shift onwards are in this chunk
+        final long[] timestamps;
+        final byte[] types;
+        final long[] amounts;
+        final long[] balances;
+        final byte[] templates;
+        String[] texts; // Allocated by the first entry with a text argument
+        int[] numbers; // Allocated by the first entry with a number argument
+        int typeMask; // One bit per TransactionType stored
+        int filled;
+
+        Chunk(int number, int capacity) {
+            this.number = number;
+            this.timestamps = new long[capacity];
+            this.types = new byte[capacity];
+            this.amounts = new long[capacity];
+            this.balances = new long[capacity];
+            this.templates = new byte[capacity];
+        }
+
+        @Override
+        public void visit(TransactionType type, long amount, DescriptionTemplate template, String text, int number,
+                long timestamp, long balanceAfter) {
+            int slot = filled++;
+            timestamps[slot] = timestamp;
+            types[slot] = (byte) type.ordinal();
+            amounts[slot] = amount;
+            balances[slot] = balanceAfter;
+            templates[slot] = (byte) template.ordinal();
+            if (text != null || texts != null) {
+                if (texts == null) {
+                    texts = new String[timestamps.length];
+                }
+                texts[slot] = text;
+            }
+            if (number != 0 || numbers != null) {
+                if (numbers == null) {
+                    numbers = new int[timestamps.length];
+                }
+                numbers[slot] = number;
+            }
+            typeMask |= 1 << type.ordinal();
+        }
+    }
+
+    /**
+     * The chunks and entry count of one generation of the log. Clearing the
+     * log installs a fresh Storage, so a reader that grabbed the old one
+     * keeps a consistent view of it.
+     */
+    private static final class Storage {
+        final long baseSequence; // Sequence number of the entry at index 0
+        final TransactionArchive archive; // Null when every entry stays on the heap
+        final int shift;
+        final int mask;
+
+        // On the heap, every chunk by number. Tiered, a ring of the newest
+        // chunks, each at its number modulo the ring's length.
+        volatile Chunk[] chunks;
+        volatile int size;
+
+        // Per-type secondary index: positions of each type's entries, in order
+        // (null when tiered). A type's count is published after its position is written.
+        final int[][] typePositions;
+        final AtomicIntegerArray typeCounts = new AtomicIntegerArray(TYPES.length);
+
+        // Tiered: for each archived chunk, its block address << 16 | its type mask.
+        // The count is published after the block.
+        volatile long[] blocks;
+        volatile int archivedChunks;
+
+        Storage(long baseSequence, TransactionArchive archive) {
+            this.baseSequence = baseSequence;
+            this.archive = archive;
+            if (archive == null) {
+                this.shift = CHUNK_SHIFT;
+                this.chunks = new Chunk[4];
+                this.typePositions = new int[TYPES.length][];
+            } else {
+                int hot = archive.getHotEntries();
+                int capacity = Math.max(MIN_TIERED_CHUNK_SIZE, Integer.highestOneBit(Math.min(hot, CHUNK_SIZE) - 1) << 1);
+                this.shift = Integer.numberOfTrailingZeros(capacity);
+                this.chunks = new Chunk[(hot - 1) / capacity + 2]; // The hot entries fill all but the newest
+                this.typePositions = null;
+                this.blocks = new long[8];
+            }
+            this.mask = (1 << shift) - 1;
+        }
+    }
+
+    // Shared by every log that has never been appended to, so an account
+    // restored without history costs no chunk or index arrays
+    private static final Storage EMPTY = new Storage(0, null);
+
+    private volatile Storage storage = EMPTY;
+    private TransactionArchive archive; // Guarded by this
+
+    /**
+     * Moves the log to an archive: from now on it keeps only the archive's
+     * hot entries on the heap. Existing entries are copied into the new
+     * tiers before they replace the old ones, so readers see either.
+     *
+     * @param archive The archive, or null to keep every entry on the heap.
+     */
+    synchronized void setArchive(TransactionArchive archive) {
+        if (archive == this.archive) {
+            return;
+        }
+        this.archive = archive;
+        Storage current = storage;
+        if (current == EMPTY) {
+            return;
+        }
+        Storage moved = new Storage(current.baseSequence, archive);
+        int size = current.size;
+        Cursor cursor = new Cursor(current);
+        for (int index = 0; index < size; index++) {
+            Chunk chunk = cursor.chunkOf(index);
+            int slot = index & current.mask;
+            appendEntry(moved, TYPES[chunk.types[slot]], chunk.amounts[slot], DescriptionTemplate.of(chunk.templates[slot]),
+                    text(chunk, slot), number(chunk, slot), chunk.timestamps[slot], chunk.balances[slot]);
+        }
+        storage = moved;
+    }
+
+    /**
+     * Appends an entry to the log.
+     *
+     * @param type The type of transaction.
+     * @param amount The amount, in cents.
+     * @param template The description template.
+     * @param text The template's text argument, or null.
+     * @param number The template's number argument, or 0.
+     * @param timestamp The time of the transaction in epoch milliseconds.
+     * @param balanceAfter The balance after the transaction, in cents.
+     */
+    synchronized void append(TransactionType type, long amount, DescriptionTemplate template, String text, int number,
+            long timestamp, long balanceAfter) {
+        appendEntry(writable(), type, amount, template, text, number, timestamp, balanceAfter);
+    }
+
+    /**
+     * Appends a run of identical debits, such as the missed occurrences of a
+     * recurring payment posted as one batch, under a single lock acquisition.
+     * The balance after each entry steps down by the amount, ending at
+     * balanceAfter.
+     *
+     * @param type The type of transaction.
+     * @param amount The amount of each entry, in cents.
+     * @param template The description template.
+     * @param text The template's text argument, or null.
+     * @param timestamp The time of the transactions in epoch milliseconds.
+     * @param balanceAfter The balance after the last entry, in cents.
+     * @param count The number of entries.
+     */
+    synchronized void appendDebits(TransactionType type, long amount, DescriptionTemplate template, String text,
+            long timestamp, long balanceAfter, int count) {
+        Storage current = writable();
+        for (int i = count - 1; i >= 0; i--) {
+            appendEntry(current, type, amount, template, text, 0, timestamp, balanceAfter + i * amount);
+        }
+    }
+
+    /**
+     * Appends a batch of credits, such as the recurring payments settled to
+     * one recipient in a run, under a single lock acquisition. The balance
+     * after each entry steps up by its amount, ending at balanceAfter.
+     *
+     * @param type The type of transaction.
+     * @param amounts The amount of each entry, in cents.
+     * @param template The description template of every entry.
+     * @param texts The text argument of each entry.
+     * @param numbers The number argument of each entry.
+     * @param timestamp The time of the transactions in epoch milliseconds.
+     * @param balanceAfter The balance after the last entry, in cents.
+     * @param count The number of entries.
+     */
+    synchronized void appendCredits(TransactionType type, long[] amounts, DescriptionTemplate template, String[] texts,
+            int[] numbers, long timestamp, long balanceAfter, int count) {
+        Storage current = writable();
+        long balance = balanceAfter;
+        for (int i = 0; i < count; i++) {
+            balance -= amounts[i];
+        }
+        for (int i = 0; i < count; i++) {
+            balance += amounts[i];
+            appendEntry(current, type, amounts[i], template, texts[i], numbers[i], timestamp, balance);
+        }
+    }
+
+    /**
+     * Appends a batch of entries with precomputed balances under a single
+     * lock acquisition.
+     *
+     * @param types The type of each entry.
+     * @param amounts The amount of each entry, in cents.
+     * @param templates The description template of each entry.
+     * @param numbers The number argument of each entry (batches carry no text arguments).
+     * @param balances The balance after each entry, in cents.
+     * @param timestamp The time of the transactions in epoch milliseconds.
+     * @param count The number of entries.
+     */
+    synchronized void appendBatch(TransactionType[] types, long[] amounts, DescriptionTemplate[] templates, int[] numbers,
+            long[] balances, long timestamp, int count) {
+        Storage current = writable();
+        for (int i = 0; i < count; i++) {
+            appendEntry(current, types[i], amounts[i], templates[i], null, numbers[i], timestamp, balances[i]);
+        }
+    }
+
+    /**
+     * Gets the storage to append to, replacing the shared empty one. Called
+     * with the log's monitor held.
+     */
+    private Storage writable() {
+        Storage current = storage;
+        if (current == EMPTY) {
+            current = new Storage(0, archive);
+            storage = current;
+        }
+        return current;
+    }
+
+    private void appendEntry(Storage current, TransactionType type, long amount, DescriptionTemplate template, String text,
+            int number, long timestamp, long balanceAfter) {
+        int index = current.size;
+        Chunk chunk = current.archive == null ? heapChunk(current, index) : ringChunk(current, index);
+        chunk.visit(type, amount, template, text, number, timestamp, balanceAfter);
+        int ordinal = type.ordinal();
+        if (current.typePositions != null) {
+            indexType(current, ordinal, index);
+        } else {
+            current.typeCounts.lazySet(ordinal, current.typeCounts.get(ordinal) + 1);
+        }
+        current.size = index + 1; // Publish the entry
+    }
+
+    /**
+     * Gets the chunk an entry goes in, adding it if needed. Called with the
+     * log's monitor held.
+     */
+    private static Chunk heapChunk(Storage current, int index) {
+        int number = index >>> CHUNK_SHIFT;
+        Chunk[] chunks = current.chunks;
+        if (number == chunks.length) {
+            Chunk[] grown = new Chunk[chunks.length * 2];
+            System.arraycopy(chunks, 0, grown, 0, chunks.length);
+            chunks = grown;
+            current.chunks = grown;
+        }
+        Chunk chunk = chunks[number];
+        if (chunk == null) {
+            chunk = new Chunk(number, CHUNK_SIZE);
+            chunks[number] = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Gets the ring chunk an entry goes in. Starting a chunk archives the
+     * oldest chunk in the ring first; if the archive cannot take it, the
+     * ring grows and the chunk stays on the heap. Called with the log's
+     * monitor held.
+     */
+    private static Chunk ringChunk(Storage current, int index) {
+        int number = index >>> current.shift;
+        Chunk[] ring = current.chunks;
+        Chunk chunk = ring[number % ring.length];
+        if (chunk != null && chunk.number == number) {
+            return chunk;
+        }
+        if (chunk != null && !archive(current, chunk)) {
+            Chunk[] grown = new Chunk[ring.length * 2];
+            for (Chunk kept : ring) {
+                if (kept != null) {
+                    grown[kept.number % grown.length] = kept;
+                }
+            }
+            ring = grown;
+            current.chunks = grown;
+        }
+        chunk = new Chunk(number, 1 << current.shift);
+        ring[number % ring.length] = chunk; // Readers that find another chunk here look in the archive
+        return chunk;
+    }
+
+    /**
+     * Writes a full chunk to the archive and publishes its block, before its
+     * slot in the ring is reused. Called with the log's monitor held.
+     *
+     * @return Whether the chunk was archived.
+     */
+    private static boolean archive(Storage current, Chunk chunk) {
+        long address;
+        try {
+            address = current.archive.append((out, dictionary) -> {
+                long previous = 0;
+                for (int slot = 0; slot < chunk.filled; slot++) {
+                    previous = TransactionCodec.encodeTransaction(out, TYPES[chunk.types[slot]], chunk.amounts[slot],
+                            DescriptionTemplate.of(chunk.templates[slot]), text(chunk, slot), number(chunk, slot),
+                            chunk.timestamps[slot], chunk.balances[slot], previous, dictionary);
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("[TransactionLog] WARN: Keeping history on the heap: " + e.getMessage());
+            return false;
+        }
+        int number = chunk.number; // Chunks leave the ring oldest first, so this is archivedChunks
+        long[] blocks = current.blocks;
+        if (number == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blocks.length * 2);
+            current.blocks = blocks;
+        }
+        blocks[number] = address << 16 | chunk.typeMask;
+        current.archivedChunks = number + 1; // Publish after the block
+        return true;
+    }
+
+    /**
+     * Adds a position to the per-type index. Called with the log's monitor held.
+     */
+    private static void indexType(Storage current, int ordinal, int index) {
+        int count = current.typeCounts.get(ordinal);
+        int[] positions = current.typePositions[ordinal];
+        if (positions == null) {
+            positions = new int[16];
+            current.typePositions[ordinal] = positions;
+        } else if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count * 2);
+            current.typePositions[ordinal] = positions;
+        }
+        positions[count] = index;
+        current.typeCounts.lazySet(ordinal, count + 1); // Publish after the position is written
+    }
+
+    /**
+     * Finds a chunk of a storage, in memory or in the archive. The caller
+     * has read the storage's size, so the chunk exists.
+     */
+    private Chunk chunk(Storage current, int number) {
+        Chunk[] chunks = current.chunks;
+        if (current.archive == null) {
+            return chunks[number];
+        }
+        Chunk chunk = chunks[number % chunks.length];
+        if (chunk != null && chunk.number == number) {
+            return chunk;
+        }
+        if (number >= current.archivedChunks) {
+            synchronized (this) {
+                // The ring moved on while this read looked at it; now the chunk
+                // is either published as archived or in the current ring
+                if (number >= current.archivedChunks) {
+                    chunks = current.chunks;
+                    return chunks[number % chunks.length];
+                }
+            }
+        }
+        return load(current, number);
+    }
+
+    /**
+     * Decodes an archived chunk.
+     */
+    private static Chunk load(Storage current, int number) {
+        long block = current.blocks[number];
+        ByteBuffer in = current.archive.read(block >>> 16);
+        DescriptionDictionary dictionary = current.archive.dictionary();
+        Chunk chunk = new Chunk(number, 1 << current.shift);
+        long previous = 0;
+        while (in.hasRemaining()) {
+            previous = TransactionCodec.decodeTransaction(in, dictionary, previous, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Gets the types present in a chunk without decoding it if it is archived.
+     */
+    private int typeMask(Storage current, int number) {
+        if (number < current.archivedChunks) {
+            return (int) current.blocks[number] & 0xFFFF;
+        }
+        return chunk(current, number).typeMask;
+    }
+
+    /**
+     * Resolves positions to chunks for one read of a storage, decoding each
+     * archived chunk it touches once.
+     */
+    private final class Cursor {
+        final Storage storage;
+        private int number = -1;
+        private Chunk chunk;
+
+        Cursor(Storage storage) {
+            this.storage = storage;
+        }
+
+        Chunk chunkOf(int index) {
+            int wanted = index >>> storage.shift;
+            if (wanted != number) {
+                chunk = chunk(storage, wanted);
+                number = wanted;
+            }
+            return chunk;
+        }
+
+        Transaction get(int index) {
+            return materialize(chunkOf(index), index & storage.mask);
+        }
+    }
+
+    /**
+     * Removes every entry from the log.
+     */
+    synchronized void clear() {
+        Storage current = storage;
+        if (current != EMPTY) {
+            storage = new Storage(current.baseSequence + current.size, archive);
+        }
+    }
+
+    /**
+     * Returns the number of entries in the log.
+     */
+    int size() {
+        return storage.size;
+    }
+
+    /**
+     * Creates a Transaction for the entry at the given position.
+     *
+     * @param index The position of the entry, 0 being the oldest.
+     * @return The transaction at that position.
+     * @throws IndexOutOfBoundsException if there is no entry at that position.
+     */
+    Transaction get(int index) {
+        Storage current = storage;
+        if (index < 0 || index >= current.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.size);
+        }
+        return materialize(chunk(current, index >>> current.shift), index & current.mask);
+    }
+
+    /**
+     * Returns the type of the entry at the given position without creating a Transaction.
+     *
+     * @param index The position of the entry, 0 being the oldest.
+     * @return The type of that entry.
+     */
+    TransactionType typeAt(int index) {
+        Storage current = storage;
+        if (index < 0 || index >= current.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.size);
+        }
+        return TYPES[chunk(current, index >>> current.shift).types[index & current.mask]];
+    }
+
+    /**
+     * Creates Transactions for every entry, oldest first.
+     *
+     * @return A new list holding every entry in the log.
+     */
+    List<Transaction> toList() {
+        Storage current = storage;
+        int size = current.size;
+        Cursor cursor = new Cursor(current);
+        List<Transaction> transactions = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            transactions.add(cursor.get(index));
+        }
+        return transactions;
+    }
+
+    /**
+     * Creates Transactions for every entry of the given type, oldest first,
+     * using the per-type index, or the chunks' type masks when tiered.
+     *
+     * @param type The type to keep.
+     * @return A new list holding the matching entries.
+     */
+    List<Transaction> filter(TransactionType type) {
+        Storage current = storage;
+        int size = current.size;
+        int ordinal = type.ordinal();
+        int count = current.typeCounts.get(ordinal);
+        List<Transaction> transactions = new ArrayList<>(count);
+        if (current.typePositions == null) {
+            int chunkCount = (size + current.mask) >>> current.shift;
+            for (int number = 0; number < chunkCount; number++) {
+                if ((typeMask(current, number) & 1 << ordinal) == 0) {
+                    continue;
+                }
+                Chunk chunk = chunk(current, number);
+                int end = Math.min(size - (number << current.shift), chunk.types.length);
+                for (int slot = 0; slot < end; slot++) {
+                    if (chunk.types[slot] == ordinal) {
+                        transactions.add(materialize(chunk, slot));
+                    }
+                }
+            }
+            return transactions;
+        }
+        int[] positions = current.typePositions[ordinal];
+        Chunk[] chunks = current.chunks;
+        for (int i = 0; i < count; i++) {
+            int index = positions[i];
+            if (index >= size) {
+                break; // Appended after this read started
+            }
+            transactions.add(materialize(chunks[index >>> CHUNK_SHIFT], index & current.mask));
+        }
+        return transactions;
+    }
+
+    /**
+     * Returns the number of entries of the given type.
+     *
+     * @param type The type to count.
+     * @return The number of entries of that type.
+     */
+    int count(TransactionType type) {
+        return storage.typeCounts.get(type.ordinal());
+    }
+
+    /**
+     * Reads one page of entries starting at a cursor.
+     *
+     * @param cursor The sequence number to start from, or TransactionPage.FIRST_PAGE.
+     * @param pageSize The maximum number of entries on the page.
+     * @param order Whether to walk towards older or newer entries.
+     * @return The page, with the cursor for the next one.
+     */
+    TransactionPage page(long cursor, int pageSize, TransactionPage.Order order) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        Storage current = storage;
+        int size = current.size;
+        Cursor chunks = new Cursor(current);
+        long first = current.baseSequence;
+        long end = first + size; // Exclusive
+        List<Transaction> transactions = new ArrayList<>(Math.min(pageSize, size));
+
+        if (order == TransactionPage.Order.OLDEST_FIRST) {
+            long start = cursor == TransactionPage.FIRST_PAGE ? first : Math.max(cursor, first);
+            long stop = Math.min(end, start + pageSize);
+            for (long sequence = start; sequence < stop; sequence++) {
+                transactions.add(chunks.get((int) (sequence - first)));
+            }
+            long next = Math.max(start, stop);
+            return new TransactionPage(transactions, next, next < end);
+        }
+
+        long start = cursor == TransactionPage.FIRST_PAGE ? end - 1 : Math.min(cursor, end - 1);
+        long stop = Math.max(first - 1, start - pageSize); // Exclusive
+        for (long sequence = start; sequence > stop; sequence--) {
+            transactions.add(chunks.get((int) (sequence - first)));
+        }
+        long next = Math.min(start, stop);
+        return new TransactionPage(transactions, next, next >= first);
+    }
+
+    /**
+     * Passes every entry present when the call starts to the action, oldest
+     * first, without copying the log. Entries appended during the walk are
+     * not visited.
+     *
+     * @param action The action to run for each transaction.
+     */
+    void forEach(Consumer<? super Transaction> action) {
+        Storage current = storage;
+        int size = current.size;
+        Cursor cursor = new Cursor(current);
+        for (int index = 0; index < size; index++) {
+            action.accept(cursor.get(index));
+        }
+    }
+
+    /**
+     * Passes the columns of every entry present when the call starts to the
+     * visitor, oldest first, without creating Transactions.
+     *
+     * @param visitor The visitor to run for each entry.
+     */
+    void forEachEntry(EntryVisitor visitor) {
+        Storage current = storage;
+        int size = current.size;
+        Cursor cursor = new Cursor(current);
+        for (int index = 0; index < size; index++) {
+            Chunk chunk = cursor.chunkOf(index);
+            int slot = index & current.mask;
+            visitor.visit(TYPES[chunk.types[slot]], chunk.amounts[slot], DescriptionTemplate.of(chunk.templates[slot]),
+                    text(chunk, slot), number(chunk, slot), chunk.timestamps[slot], chunk.balances[slot]);
+        }
+    }
+
+    /**
+     * Writes entries with TransactionCodec straight from the columns, from the
+     * given position on, for as long as a whole entry still fits.
+     *
+     * @param out The buffer to write to.
+     * @param from The position of the first entry to write.
+     * @param dictionary Where description ids come from.
+     * @return The position of the first entry that was not written.
+     */
+    int encode(ByteBuffer out, int from, DescriptionDictionary dictionary) {
+        Storage current = storage;
+        int size = current.size;
+        Cursor cursor = new Cursor(current);
+        int index = Math.max(from, 0);
+        long previous = index == 0 || index > size ? 0 : cursor.chunkOf(index - 1).timestamps[(index - 1) & current.mask];
+        for (; index < size && out.remaining() >= TransactionCodec.MAX_TRANSACTION_BYTES; index++) {
+            Chunk chunk = cursor.chunkOf(index);
+            int slot = index & current.mask;
+            previous = TransactionCodec.encodeTransaction(out, TYPES[chunk.types[slot]], chunk.amounts[slot],
+                    DescriptionTemplate.of(chunk.templates[slot]), text(chunk, slot), number(chunk, slot),
+                    chunk.timestamps[slot], chunk.balances[slot], previous, dictionary);
+        }
+        return index;
+    }
+
+    /**
+     * Appends entries written by encode() until the buffer is empty, under
+     * a single lock acquisition.
+     *
+     * @param in The buffer to read from.
+     * @param dictionary Where descriptions come from.
+     * @param previousTimestamp The timestamp of the entry before the first one in the buffer, or 0.
+     * @return The timestamp of the last entry read, to pass for the next buffer.
+     */
+    synchronized long decode(ByteBuffer in, DescriptionDictionary dictionary, long previousTimestamp) {
+        Storage current = writable();
+        EntryVisitor append = (type, amount, template, text, number, timestamp, balanceAfter) ->
+            appendEntry(current, type, amount, template, text, number, timestamp, balanceAfter);
+        long previous = previousTimestamp;
+        while (in.hasRemaining()) {
+            previous = TransactionCodec.decodeTransaction(in, dictionary, previous, append);
+        }
+        return previous;
+    }
+
+    /**
+     * Creates a spliterator over the entries present when the call is made.
+     *
+     * @return A sized, splittable spliterator, oldest entry first.
+     */
+    Spliterator<Transaction> spliterator() {
+        Storage current = storage;
+        int size = current.size;
+        return new ChunkSpliterator(current, 0, size);
+    }
+
+    /**
+     * Spliterator over a fixed index range of one storage generation.
+     */
+    private final class ChunkSpliterator implements Spliterator<Transaction> {
+        private final Storage storage;
+        private final Cursor cursor;
+        private int index;
+        private final int end;
+
+        ChunkSpliterator(Storage storage, int index, int end) {
+            this.storage = storage;
+            this.cursor = new Cursor(storage);
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Transaction> action) {
+            if (index >= end) {
+                return false;
+            }
+            action.accept(cursor.get(index));
+            index++;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Transaction> action) {
+            for (; index < end; index++) {
+                action.accept(cursor.get(index));
+            }
+        }
+
+        @Override
+        public Spliterator<Transaction> trySplit() {
+            int middle = (index + end) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            Spliterator<Transaction> prefix = new ChunkSpliterator(storage, index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    private static Transaction materialize(Chunk chunk, int slot) {
+        return new Transaction(TYPES[chunk.types[slot]], chunk.amounts[slot], DescriptionTemplate.of(chunk.templates[slot]),
+                text(chunk, slot), number(chunk, slot), chunk.timestamps[slot], chunk.balances[slot]);
+    }
+
+    private static String text(Chunk chunk, int slot) {
+        String[] texts = chunk.texts;
+        return texts == null ? null : texts[slot];
+    }
+
+    private static int number(Chunk chunk, int slot) {
+        int[] numbers = chunk.numbers;
+        return numbers == null ? 0 : numbers[slot];
+    }
+}
@@ -0,0 +1,69 @@
+package bankingapp;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of an account's transaction history, plus the cursor needed to
+ * fetch the next page.
+ * 
+ * Cursors are absolute sequence numbers in the account's history, so a
+ * cursor stays valid while new transactions are appended: paging newest
+ * first never repeats or skips an entry because of later deposits.
+ * 
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public class TransactionPage {
+
+    /**
+     * Cursor value that requests the first page in the chosen order.
+     */
+    public static final long FIRST_PAGE = Long.MIN_VALUE;
+
+    /**
+     * The order in which pages walk the history.
+     */
+    public enum Order {
+        NEWEST_FIRST,
+        OLDEST_FIRST
+    }
+
+    private final List<Transaction> transactions;
+    private final long nextCursor;
+    private final boolean hasMore;
+
+    TransactionPage(List<Transaction> transactions, long nextCursor, boolean hasMore) {
+        this.transactions = Collections.unmodifiableList(transactions);
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Gets the transactions on this page, in the requested order.
+     * 
+     * @return The transactions on this page
+     */
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Gets the cursor to pass back to fetch the following page.
+     * 
+     * @return The resume token for the next page
+     */
+    public long getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Checks whether another page follows this one.
+     * 
+     * @return true if there are more transactions after this page
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
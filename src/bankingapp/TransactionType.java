@@ -11,7 +11,8 @@ public enum TransactionType {
     FAILED("Failed Transaction"),
     ADMIN("Administrative Action"),
     SCHEDULED("Scheduled"),
-    RECURRING_PAYMENT("Recurring Payment");
+    RECURRING_PAYMENT("Recurring Payment"),
+    INTEREST("Interest");
 
     private final String displayName;
 
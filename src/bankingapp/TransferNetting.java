@@ -0,0 +1,197 @@
+package bankingapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Multilateral netting of a batch of due scheduled transfers.
+ *
+ * Instead of running each transfer's reserve and credit on its own, the
+ * batch is reduced to one net position per account and each account's
+ * balance moves once. A payroll run of a thousand transfers out of one
+ * account therefore costs one CAS on that account, not a thousand. Every
+ * transfer is still written to both accounts' histories (withdrawal and
+ * transfer on the source, deposit on the destination) with one history
+ * append per account, and journaled as a normal TRANSFER record, so replay
+ * and statements look the same as for transfers run one by one. Within an
+ * account's share of the batch, deposits are recorded before withdrawals,
+ * so no recorded balance is lower than the account actually held.
+ *
+ * Limits are checked per transfer, exactly as transferCents would. Transfers
+ * that fail a check are handed back to run individually, where they fail
+ * with the usual records. If an account cannot cover its net outflow, every
+ * transfer it sends is handed back and the positions are recomputed.
+ */
+final class TransferNetting {
+
+    // One account's share of the batch
+    private static final class Position {
+        final BankAccount account;
+        long net;
+        long balanceAfter;
+        int entries;
+        TransactionType[] types = new TransactionType[4];
+        long[] amounts = new long[4];
+        DescriptionTemplate[] templates = new DescriptionTemplate[4];
+        int[] numbers = new int[4];
+        long[] deltas = new long[4];
+
+        Position(BankAccount account) {
+            this.account = account;
+        }
+
+        void add(TransactionType type, long amount, DescriptionTemplate template, int number, long delta) {
+            if (entries == types.length) {
+                types = Arrays.copyOf(types, entries * 2);
+                amounts = Arrays.copyOf(amounts, entries * 2);
+                templates = Arrays.copyOf(templates, entries * 2);
+                numbers = Arrays.copyOf(numbers, entries * 2);
+                deltas = Arrays.copyOf(deltas, entries * 2);
+            }
+            types[entries] = type;
+            amounts[entries] = amount;
+            templates[entries] = template;
+            numbers[entries] = number;
+            deltas[entries] = delta;
+            entries++;
+        }
+
+        void record() {
+            // Inflows are recorded before outflows, each in batch order, so the
+            // balances stepped through never dip below the start or end balance.
+            // In batch order an outflow funded by a later inflow would show a
+            // negative balance that the account never had.
+            TransactionType[] orderedTypes = new TransactionType[entries];
+            long[] orderedAmounts = new long[entries];
+            DescriptionTemplate[] orderedTemplates = new DescriptionTemplate[entries];
+            int[] orderedNumbers = new int[entries];
+            long[] balances = new long[entries];
+            long balance = balanceAfter - net;
+            int next = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < entries; i++) {
+                    if ((deltas[i] > 0) == (pass == 0)) {
+                        balance += deltas[i];
+                        orderedTypes[next] = types[i];
+                        orderedAmounts[next] = amounts[i];
+                        orderedTemplates[next] = templates[i];
+                        orderedNumbers[next] = numbers[i];
+                        balances[next] = balance;
+                        next++;
+                    }
+                }
+            }
+            account.recordNettedTransactions(orderedTypes, orderedAmounts, orderedTemplates, orderedNumbers, balances, entries);
+        }
+    }
+
+    private TransferNetting() {
+        // Static utility
+    }
+
+    /**
+     * Settles as many of the due transfers as possible by netting.
+     *
+     * @param due The due transfers
+     * @param settled Receives the transfers that were executed
+     * @return The transfers that were not netted and should run individually
+     */
+    static List<ScheduledTransfer> settle(List<ScheduledTransfer> due, List<ScheduledTransfer> settled) {
+        List<ScheduledTransfer> individual = new ArrayList<>();
+        List<ScheduledTransfer> batch = new ArrayList<>(due.size());
+        for (ScheduledTransfer transfer : due) {
+            if (!eligible(transfer)) {
+                individual.add(transfer);
+            } else if (transfer.claim()) {
+                batch.add(transfer);
+            } // Otherwise it is already running elsewhere
+        }
+
+        Map<BankAccount, Position> positions = apply(batch, individual);
+
+        for (Position position : positions.values()) {
+            position.record();
+        }
+        for (ScheduledTransfer transfer : batch) {
+            BankAccount source = transfer.getSourceAccount();
+            source.journalTransfer(transfer.getDestinationAccount(), transfer.getAmountCents());
+            transfer.finish(true);
+            settled.add(transfer);
+        }
+        return individual;
+    }
+
+    // Checks the rules transferCents and acceptDeposit would apply to this transfer on its own
+    private static boolean eligible(ScheduledTransfer transfer) {
+        BankAccount source = transfer.getSourceAccount();
+        BankAccount destination = transfer.getDestinationAccount();
+        long amount = transfer.getAmountCents();
+        return destination != null && source != destination && amount >= 0
+            && source.getAccountType() != AccountType.SAVINGS
+            && amount <= source.getMaxWithdrawalLimitCents()
+            && amount <= destination.getMaxDepositLimitCents();
+    }
+
+    /**
+     * Moves every account in the batch by its net position. Transfers from an
+     * account that cannot cover its outflow are released to 'individual' and
+     * removed from the batch, and the remaining positions are applied again.
+     */
+    private static Map<BankAccount, Position> apply(List<ScheduledTransfer> batch, List<ScheduledTransfer> individual) {
+        while (true) {
+            Map<BankAccount, Position> positions = new IdentityHashMap<>(Math.min(batch.size() * 2, 1 << 20));
+            for (ScheduledTransfer transfer : batch) {
+                long amount = transfer.getAmountCents();
+                BankAccount destination = transfer.getDestinationAccount();
+                Position source = positions.computeIfAbsent(transfer.getSourceAccount(), Position::new);
+                Position target = positions.computeIfAbsent(destination, Position::new);
+                source.net -= amount;
+                target.net += amount;
+                source.add(TransactionType.WITHDRAWAL, amount, DescriptionTemplate.WITHDRAWAL_FOR_TRANSFER, 0, -amount);
+                target.add(TransactionType.DEPOSIT, amount, destination.depositTemplate(), 0, amount);
+                source.add(TransactionType.TRANSFER, amount, DescriptionTemplate.TRANSFER_TO, destination.getAccountNumber(), 0);
+            }
+
+            // Take the outflows first so a failure leaves nothing credited
+            List<Position> applied = new ArrayList<>();
+            BankAccount shortOfFunds = null;
+            for (Position position : positions.values()) {
+                if (position.net < 0) {
+                    long balance = position.account.applyNetPosition(position.net);
+                    if (balance == BankAccount.INSUFFICIENT_FUNDS) {
+                        shortOfFunds = position.account;
+                        break;
+                    }
+                    position.balanceAfter = balance;
+                    applied.add(position);
+                }
+            }
+            if (shortOfFunds == null) {
+                for (Position position : positions.values()) {
+                    if (position.net >= 0) {
+                        position.balanceAfter = position.account.applyNetPosition(position.net);
+                    }
+                }
+                return positions;
+            }
+
+            for (Position position : applied) {
+                position.account.revertNetPosition(position.net);
+            }
+            List<ScheduledTransfer> remaining = new ArrayList<>(batch.size());
+            for (ScheduledTransfer transfer : batch) {
+                if (transfer.getSourceAccount() == shortOfFunds) {
+                    transfer.finish(false);
+                    individual.add(transfer);
+                } else {
+                    remaining.add(transfer);
+                }
+            }
+            batch.clear();
+            batch.addAll(remaining);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package bankingapp;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Bank-wide index of pending scheduled transfers, ordered by due time.
+ *
+ * Every transfer scheduled on an account in a BankAccountDatabase is also
+ * queued here. processDue() pops only the transfers that are due, so a
+ * tick costs O(due * log pending) no matter how many transfers are
+ * waiting. Cancelled transfers are dropped lazily when they reach the head
+ * of the queue, and the queue is compacted once they make up half of it.
+ *
+ * @author Martin Rivera
+ * @author Wandile Hannah
+ * @author Jerome Hsing
+ */
+public class TransferScheduler {
+
+    private static final Comparator<ScheduledTransfer> DUE_ORDER =
+        Comparator.<ScheduledTransfer>comparingLong(transfer -> transfer.getScheduledDate().getTime())
+            .thenComparingLong(transfer -> transfer.queueOrder);
+
+    // Guarded by this
+    private PriorityQueue<ScheduledTransfer> queue = new PriorityQueue<>(DUE_ORDER);
+    private long nextOrder;
+    private int cancelled; // Cancelled transfers still in the queue
+
+    private volatile boolean netting;
+
+    /**
+     * Queues a pending transfer.
+     *
+     * @param transfer The transfer to queue
+     */
+    public synchronized void schedule(ScheduledTransfer transfer) {
+        transfer.queueOrder = nextOrder++;
+        queue.add(transfer);
+    }
+
+    /**
+     * Cancels a pending transfer and removes it from its source account.
+     *
+     * @param transfer The transfer to cancel
+     * @return true if the transfer was pending and is now cancelled
+     */
+    public boolean cancel(ScheduledTransfer transfer) {
+        return transfer.getSourceAccount().cancelScheduledTransfer(transfer);
+    }
+
+    /**
+     * Records that a queued transfer was cancelled or executed elsewhere, so
+     * the queue knows how much of it is dead.
+     */
+    synchronized void discarded() {
+        cancelled++;
+        if (cancelled > 64 && cancelled * 2 > queue.size()) {
+            PriorityQueue<ScheduledTransfer> live = new PriorityQueue<>(Math.max(1, queue.size() - cancelled), DUE_ORDER);
+            for (ScheduledTransfer transfer : queue) {
+                if (!transfer.isCancelled() && !transfer.isExecuted()) {
+                    live.add(transfer);
+                }
+            }
+            queue = live;
+            cancelled = 0;
+        }
+    }
+
+    /**
+     * Turns netting of due batches on or off. With netting on, the transfers
+     * due in one processDue call move each account's balance once by its
+     * net position instead of once per transfer (see TransferNetting). Every
+     * transfer is still recorded in the accounts' histories.
+     *
+     * @param netting true to net due batches
+     */
+    public void setNetting(boolean netting) {
+        this.netting = netting;
+    }
+
+    /**
+     * Checks whether due batches are netted.
+     *
+     * @return true if netting is on
+     */
+    public boolean isNetting() {
+        return netting;
+    }
+
+    /**
+     * Executes every transfer due at or before the given time. Transfers
+     * that fail (for example for insufficient funds) stay queued and are
+     * retried on the next call. Transfers whose source account has been
+     * removed from its database are dropped.
+     *
+     * @param now The current time
+     * @return The number of transfers executed
+     */
+    public int processDue(Date now) {
+        List<ScheduledTransfer> due = pollDue(now.getTime());
+        int processed = 0;
+        if (netting && due.size() > 1) {
+            List<ScheduledTransfer> settled = new ArrayList<>(due.size());
+            due = TransferNetting.settle(due, settled);
+            for (ScheduledTransfer transfer : settled) {
+                transfer.getSourceAccount().scheduledTransferCompleted(transfer);
+                processed++;
+            }
+        }
+        List<ScheduledTransfer> retry = null;
+        for (ScheduledTransfer transfer : due) {
+            boolean success;
+            try {
+                success = transfer.execute();
+            } catch (IllegalArgumentException e) {
+                System.err.println("Scheduled transfer '" + transfer.getDescription() + "' failed: " + e.getMessage());
+                success = false;
+            }
+            if (success) {
+                transfer.getSourceAccount().scheduledTransferCompleted(transfer);
+                processed++;
+            } else if (!transfer.isExecuted() && !transfer.isCancelled()) {
+                if (retry == null) {
+                    retry = new ArrayList<>();
+                }
+                retry.add(transfer);
+            }
+        }
+        if (retry != null) {
+            synchronized (this) {
+                queue.addAll(retry);
+            }
+        }
+        return processed;
+    }
+
+    private synchronized List<ScheduledTransfer> pollDue(long nowMillis) {
+        List<ScheduledTransfer> due = new ArrayList<>();
+        ScheduledTransfer head;
+        while ((head = queue.peek()) != null && head.getScheduledDate().getTime() <= nowMillis) {
+            queue.poll();
+            if (head.isCancelled() || head.isExecuted()) {
+                cancelled--;
+            } else if (head.getSourceAccount().isAttached()) {
+                due.add(head);
+            } // Else its source was removed; attach() queues it again if the account is added back
+        }
+        return due;
+    }
+
+    /**
+     * Gets the number of transfers waiting to run.
+     *
+     * @return The number of pending transfers
+     */
+    public synchronized int getPendingCount() {
+        return queue.size() - cancelled;
+    }
+
+    /**
+     * Gets when the next pending transfer is due.
+     *
+     * @return The earliest due date, or null if nothing is pending
+     */
+    public synchronized Date getNextDueDate() {
+        ScheduledTransfer head;
+        while ((head = queue.peek()) != null && (head.isCancelled() || head.isExecuted())) {
+            queue.poll();
+            cancelled--;
+        }
+        return head == null ? null : head.getScheduledDate();
+    }
+
+    /**
+     * Gets every pending transfer, earliest first.
+     *
+     * @return A new list of the pending transfers
+     */
+    public synchronized List<ScheduledTransfer> getPendingTransfers() {
+        List<ScheduledTransfer> pending = new ArrayList<>(queue.size());
+        for (ScheduledTransfer transfer : queue) {
+            if (!transfer.isCancelled() && !transfer.isExecuted()) {
+                pending.add(transfer);
+            }
+        }
+        pending.sort(DUE_ORDER);
+        return pending;
+    }
+
+    /**
+     * Gets the pending transfers due at or before the given time, earliest
+     * first, without running them.
+     *
+     * @param time The cut-off time
+     * @return A new list of the transfers due by then
+     */
+    public List<ScheduledTransfer> getTransfersDueBy(Date time) {
+        List<ScheduledTransfer> due = new ArrayList<>();
+        for (ScheduledTransfer transfer : getPendingTransfers()) {
+            if (transfer.getScheduledDate().after(time)) {
+                break;
+            }
+            due.add(transfer);
+        }
+        return due;
+    }
+}
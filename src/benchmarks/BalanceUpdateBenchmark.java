@@ -0,0 +1,106 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import bankingapp.BankAccount;
+
+/**
+ * Compares the lock-free CAS balance path in BankAccount with the
+ * monitor-based path it replaced, at 1, 4 and 16 threads.
+ * 
+ * Every thread hammers the same account with withdrawCents(1, false), which
+ * runs the full rule set (SAVINGS check, withdrawal limit, insufficient funds)
+ * but skips history recording, so the numbers show the cost of the balance
+ * update itself. The monitor baseline is a copy of the old synchronized logic.
+ * 
+ * Usage: java -cp bin benchmarks.BalanceUpdateBenchmark [seconds]
+ */
+public class BalanceUpdateBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 4, 16};
+    private static final long START_BALANCE = Long.MAX_VALUE / 2;
+
+    /**
+     * The old synchronized withdrawal path, kept here as the comparison baseline.
+     */
+    private static class MonitorBalance {
+        private long balance = START_BALANCE;
+        private final long maxWithdrawalLimit = 1000_00;
+        private final boolean savings = false;
+
+        synchronized boolean withdrawCents(long amount) {
+            if (amount < 0) {
+                throw new IllegalArgumentException("Withdrawal amount cannot be negative");
+            }
+            if (savings) {
+                throw new IllegalArgumentException("Can not withdraw from Savings Account");
+            }
+            if (amount > maxWithdrawalLimit) {
+                throw new IllegalArgumentException("Withdrawal amount exceeds maximum limit");
+            }
+            if (amount > balance) {
+                return false;
+            }
+            balance -= amount;
+            return true;
+        }
+    }
+
+    private interface Operation {
+        void run();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        System.out.printf("Cores: %d, %ds per run%n", Runtime.getRuntime().availableProcessors(), seconds);
+        System.out.printf("%-8s %18s %18s %8s%n", "Threads", "monitor ops/sec", "CAS ops/sec", "Ratio");
+
+        for (int threads : THREAD_COUNTS) {
+            MonitorBalance monitor = new MonitorBalance();
+            BankAccount account = new BankAccount();
+            for (int i = 0; i < 10_000; i++) { // Fund $100M so the run never hits insufficient funds
+                account.depositCents(account.getMaxDepositLimitCents());
+            }
+
+            double monitorOps = run(threads, seconds, () -> monitor.withdrawCents(1));
+            double casOps = run(threads, seconds, () -> account.withdrawCents(1, false));
+            System.out.printf("%-8d %18.0f %18.0f %7.2fx%n", threads, monitorOps, casOps, casOps / monitorOps);
+        }
+    }
+
+    private static double run(int threads, int seconds, Operation operation) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                long done = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 1000; i++) {
+                        operation.run();
+                    }
+                    done += 1000;
+                }
+                operations.add(done);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() / (double) seconds;
+    }
+}
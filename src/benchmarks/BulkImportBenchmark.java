@@ -0,0 +1,109 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import bankingapp.AccountType;
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.BulkImporter;
+import bankingapp.BusinessAccount;
+
+/**
+ * Compares BulkImporter with the straightforward way of loading the same
+ * CSV files: BufferedReader.readLine, String.split, Double.parseDouble and
+ * one addBankAccount per row, on one thread. The baseline only loads the
+ * accounts file (the public API has no way to add a historical transaction),
+ * so compare its rows/s with the importer's accounts line.
+ *
+ * The importer is run at each parallelism from 1 up to the number of
+ * available processors, each time into a fresh database.
+ *
+ * Usage: java -cp bin benchmarks.BulkImportBenchmark [accounts] [transactionsPerAccount]
+ */
+public class BulkImportBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 40_000;
+        int perAccount = args.length > 1 ? Integer.parseInt(args[1]) : 25;
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        Path directory = Files.createTempDirectory("bulk-import");
+        Path accountsFile = directory.resolve("accounts.csv");
+        Path transactionsFile = directory.resolve("transactions.csv");
+        try {
+            writeFiles(accountsFile, transactionsFile, accounts, perAccount);
+            System.out.printf("%,d accounts (%,d bytes), %,d transactions (%,d bytes), %d processors%n",
+                accounts, Files.size(accountsFile), (long) accounts * perAccount, Files.size(transactionsFile), processors);
+
+            System.gc();
+            long start = System.nanoTime();
+            int loaded = loadWithReader(accountsFile);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-22s %,d accounts in %.1f ms (%,.0f rows/s)%n", "readLine + split", loaded, seconds * 1e3, loaded / seconds);
+
+            for (int threads = 1; threads <= processors; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                System.gc();
+                BulkImporter importer = new BulkImporter(new BankAccountDatabase(), pool);
+                System.out.printf("%-22s %s%n", "BulkImporter/" + threads, importer.importAccounts(accountsFile));
+                System.out.printf("%-22s %s%n", "BulkImporter/" + threads, importer.importTransactions(transactionsFile));
+                pool.shutdown();
+            }
+        } finally {
+            Files.deleteIfExists(accountsFile);
+            Files.deleteIfExists(transactionsFile);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void writeFiles(Path accountsFile, Path transactionsFile, int accounts, int perAccount) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(accountsFile, StandardCharsets.UTF_8)) {
+            out.write(BulkImporter.ACCOUNTS_HEADER);
+            out.newLine();
+            for (int ref = 1; ref <= accounts; ref++) {
+                out.write(ref + (ref % 10 == 0 ? ",BUSINESS," : ",PERSONAL,") + (ref % 3 == 0 ? "SAVINGS," : "CHECKING,")
+                    + (ref % 5000) + "." + (ref % 100) + ",,,Holder" + (ref % 977) + ",1980-01-01," + (ref / 2 + 1) + ",42");
+                out.newLine();
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(transactionsFile, StandardCharsets.UTF_8)) {
+            out.write(BulkImporter.TRANSACTIONS_HEADER);
+            out.newLine();
+            long timestamp = 1_500_000_000_000L;
+            for (int round = 0; round < perAccount; round++) {
+                for (int ref = 1; ref <= accounts; ref++) {
+                    boolean deposit = round % 2 == 0;
+                    out.write(ref + "," + (timestamp++) + (deposit ? ",DEPOSIT," : ",WITHDRAWAL,") + (ref % 900 + 1) + ".50,"
+                        + (ref % 5000 + round) + ".00," + (deposit ? "Payroll ACME Corp" : "\"Card purchase, store #" + ref % 50 + "\""));
+                    out.newLine();
+                }
+            }
+        }
+    }
+
+    private static int loadWithReader(Path accountsFile) throws IOException {
+        BankAccountDatabase database = new BankAccountDatabase();
+        Map<Long, BankAccount> byRef = new HashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(accountsFile, StandardCharsets.UTF_8)) {
+            in.readLine(); // Header
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(",", -1);
+                AccountType type = AccountType.valueOf(fields[2]);
+                double balance = Double.parseDouble(fields[3]);
+                BankAccount account = fields[1].equals("BUSINESS") ? new BusinessAccount(balance, type) : new BankAccount(balance, type);
+                database.addBankAccount(account);
+                byRef.put(Long.parseLong(fields[0]), account);
+            }
+        }
+        return byRef.size();
+    }
+}
@@ -0,0 +1,101 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+
+/**
+ * Measures BankAccountDatabase throughput under contention.
+ * 
+ * Each worker runs a mix of 90% lookups (getBankAccount, hasBankAccount,
+ * isAccountActive) and 10% freeze/unfreeze calls against a shared database.
+ * The run is repeated with 1, 2, 4, ... threads up to the number of cores,
+ * so the printed table shows how throughput scales.
+ * 
+ * Usage: java -cp bin benchmarks.DatabaseContentionBenchmark [accounts] [seconds]
+ */
+public class DatabaseContentionBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        BankAccountDatabase database = new BankAccountDatabase();
+        int[] accountNumbers = new int[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            BankAccount account = new BankAccount();
+            accountNumbers[i] = database.generateBankAccountNumber(account);
+            database.addBankAccount(account);
+        }
+
+        System.out.printf("Accounts: %d, cores: %d, %ds per run%n", accountCount, cores, seconds);
+        System.out.printf("%-8s %16s %10s%n", "Threads", "ops/sec", "Speedup");
+
+        double baseline = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            double opsPerSecond = run(database, accountNumbers, threads, seconds);
+            if (threads == 1) {
+                baseline = opsPerSecond;
+            }
+            System.out.printf("%-8d %16.0f %9.2fx%n", threads, opsPerSecond, opsPerSecond / baseline);
+            if (threads < cores && threads * 2 > cores) {
+                threads = cores / 2; // Make sure the last run uses every core
+            }
+        }
+    }
+
+    private static double run(BankAccountDatabase database, int[] accountNumbers, int threads, int seconds)
+            throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < 1000; i++) {
+                        int accountNumber = accountNumbers[random.nextInt(accountNumbers.length)];
+                        int op = random.nextInt(10);
+                        if (op == 0) {
+                            if (random.nextBoolean()) {
+                                database.freezeAccount(accountNumber);
+                            } else {
+                                database.unfreezeAccount(accountNumber);
+                            }
+                        } else if (op < 4) {
+                            database.getBankAccount(accountNumber);
+                        } else if (op < 7) {
+                            database.hasBankAccount(accountNumber);
+                        } else {
+                            database.isAccountActive(accountNumber);
+                        }
+                    }
+                    done += 1000;
+                }
+                operations.add(done);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() / (double) seconds;
+    }
+}
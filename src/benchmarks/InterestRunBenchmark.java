@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import bankingapp.AccountType;
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.BankClock;
+import bankingapp.CompoundInterest;
+import bankingapp.Money;
+
+/**
+ * Compares an interest run over every savings account done the old way
+ * (copy the account map, credit each account on one thread, printf a line
+ * per account) with CompoundInterest's fork-join run over the account pages.
+ *
+ * The per-account lines of the baseline go to a discarding stream, so only
+ * their formatting is measured, not the console. The parallel run is timed
+ * at each parallelism from 1 up to the number of available processors.
+ *
+ * Usage: java -cp bin benchmarks.InterestRunBenchmark [accounts] [rounds]
+ */
+public class InterestRunBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        BankAccountDatabase database = new BankAccountDatabase();
+        for (int i = 0; i < count; i++) {
+            database.addBankAccount(new BankAccount(10.0, i % 4 == 0 ? AccountType.CHECKING : AccountType.SAVINGS));
+        }
+        System.out.printf("%,d accounts, %d rounds, %d processors%n", count, rounds, processors);
+        System.out.printf("%-10s %14s", "Round", "serial ms");
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            System.out.printf(" %14s", "fork-join/" + threads);
+        }
+        System.out.println();
+
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        for (int round = 1; round <= rounds; round++) {
+            System.gc();
+            long start = System.nanoTime();
+            int serial = applySerially(database, discard);
+            System.out.printf("%-10d %14.1f", round, (System.nanoTime() - start) / 1e6);
+
+            for (int threads = 1; threads <= processors; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                System.gc();
+                CompoundInterest.RunSummary summary =
+                    new CompoundInterest(database, Long.MAX_VALUE, BankClock.system(), pool).applyInterestToSavingsAccounts();
+                pool.shutdown();
+                if (summary.getAccountsTouched() != serial) {
+                    throw new IllegalStateException("Runs touched " + serial + " and " + summary.getAccountsTouched() + " accounts");
+                }
+                System.out.printf(" %14.1f", summary.getElapsedMillis());
+            }
+            System.out.println();
+        }
+    }
+
+    // The loop CompoundInterest ran before fork-join runs
+    private static int applySerially(BankAccountDatabase database, PrintStream out) {
+        int touched = 0;
+        Map<Integer, BankAccount> accounts = database.getBankAccounts();
+        for (Map.Entry<Integer, BankAccount> entry : accounts.entrySet()) {
+            Integer accountNumber = entry.getKey();
+            BankAccount account = entry.getValue();
+            if (account != null && account.getAccountType() == AccountType.SAVINGS
+                && database.isAccountActive(accountNumber)) {
+                long interest = Money.multiply(account.getCurrentBalanceCents(), 0.20, RoundingMode.HALF_EVEN);
+                account.depositCents(interest);
+                out.printf("Applied %.2f%% interest ($%.2f) to account %d. New balance: $%.2f%n",
+                    20.0, Money.toDollars(interest), accountNumber, account.getCurrentBalance());
+                touched++;
+            }
+        }
+        return touched;
+    }
+}
@@ -0,0 +1,90 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.LedgerExporter;
+import bankingapp.Transaction;
+
+/**
+ * Compares LedgerExporter with the straightforward way of dumping the same
+ * history: getTransactionHistory() for each account, String.format for each
+ * row and a BufferedWriter, on one thread.
+ *
+ * The exporter is run in both formats at each parallelism from 1 up to the
+ * number of available processors, with as many shards as threads.
+ *
+ * Usage: java -cp bin benchmarks.LedgerExportBenchmark [accounts] [transactionsPerAccount]
+ */
+public class LedgerExportBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int perAccount = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        BankAccountDatabase database = new BankAccountDatabase();
+        for (int i = 0; i < accounts; i++) {
+            BankAccount account = new BankAccount();
+            database.addBankAccount(account);
+            for (int t = 0; t < perAccount; t++) {
+                if (t % 4 == 3) {
+                    account.withdraw(1.25);
+                } else {
+                    account.depositCents(100 + t);
+                }
+            }
+        }
+        System.out.printf("%,d accounts, %,d transactions, %d processors%n", accounts, (long) accounts * perAccount, processors);
+
+        Path directory = Files.createTempDirectory("ledger-export");
+        try {
+            System.gc();
+            long start = System.nanoTime();
+            long rows = exportWithWriter(database, directory.resolve("baseline.csv"));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-26s %,d rows in %.1f ms (%,.0f rows/s)%n", "history list + format", rows, seconds * 1e3, rows / seconds);
+
+            for (int threads = 1; threads <= processors; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                for (LedgerExporter.Format format : LedgerExporter.Format.values()) {
+                    System.gc();
+                    LedgerExporter exporter = new LedgerExporter(database, format, threads, pool);
+                    System.out.printf("%-26s %s%n", "LedgerExporter/" + format + "/" + threads,
+                        exporter.export(directory.resolve(format + "-" + threads)));
+                }
+                pool.shutdown();
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static long exportWithWriter(BankAccountDatabase database, Path file) throws IOException {
+        long rows = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(LedgerExporter.TRANSACTIONS_HEADER);
+            out.newLine();
+            for (BankAccount account : database.getBankAccounts().values()) {
+                for (Transaction transaction : account.getTransactionHistory()) {
+                    out.write(String.format("%d,%d,%s,%.2f,%.2f,%s", account.getAccountNumber(), transaction.getTimestamp(),
+                        transaction.getType(), transaction.getAmount(), transaction.getBalanceAfterTransaction(),
+                        transaction.getDescription()));
+                    out.newLine();
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import bankingapp.RecurringPayment;
+
+/**
+ * Measures the cost of checking whether every recurring payment in the bank
+ * is due, comparing the epoch-day comparison RecurringPayment now uses with
+ * the Calendar-based check it replaced.
+ *
+ * The baseline is a copy of the old isPaymentDue and getCurrentCalendar
+ * logic: one GMT-5 Calendar with four fields zeroed for "now" per run, and
+ * another per payment checked. Start dates are spread over two years around
+ * today so roughly half of the payments are due.
+ *
+ * Usage: java -cp bin benchmarks.RecurringPaymentDueBenchmark [payments] [rounds]
+ */
+public class RecurringPaymentDueBenchmark {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        long now = System.currentTimeMillis();
+        RecurringPayment[] payments = new RecurringPayment[count];
+        for (int i = 0; i < count; i++) {
+            Date start = new Date(now + (i % 730 - 365) * DAY);
+            payments[i] = new RecurringPayment(1.0, "Payment", start,
+                RecurringPayment.PaymentFrequency.MONTHLY, "ACC-1", null);
+        }
+        System.out.printf("%,d payments, %d rounds%n", count, rounds);
+        System.out.printf("%-10s %14s %14s %10s%n", "Round", "Calendar ms", "epoch-day ms", "Ratio");
+
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            int calendarDue = countDueWithCalendar(payments, now);
+            double calendarMillis = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            int epochDayDue = countDueWithEpochDay(payments, now);
+            double epochDayMillis = (System.nanoTime() - start) / 1e6;
+
+            if (calendarDue != epochDayDue) {
+                throw new IllegalStateException("Due counts differ: " + calendarDue + " vs " + epochDayDue);
+            }
+            System.out.printf("%-10d %14.1f %14.1f %9.1fx%n", round, calendarMillis, epochDayMillis,
+                calendarMillis / epochDayMillis);
+        }
+    }
+
+    private static int countDueWithEpochDay(RecurringPayment[] payments, long now) {
+        long today = RecurringPayment.toEpochDay(now);
+        int due = 0;
+        for (RecurringPayment payment : payments) {
+            if (payment.isPaymentDue(today)) {
+                due++;
+            }
+        }
+        return due;
+    }
+
+    /**
+     * The old Calendar-based due check, kept here as the comparison baseline.
+     */
+    private static int countDueWithCalendar(RecurringPayment[] payments, long now) {
+        Calendar today = Calendar.getInstance(TimeZone.getTimeZone("GMT-5"));
+        today.setTimeInMillis(now);
+        today.set(Calendar.HOUR_OF_DAY, 0);
+        today.set(Calendar.MINUTE, 0);
+        today.set(Calendar.SECOND, 0);
+        today.set(Calendar.MILLISECOND, 0);
+
+        int due = 0;
+        for (RecurringPayment payment : payments) {
+            if (!payment.isActive()) {
+                continue;
+            }
+            Calendar next = Calendar.getInstance(TimeZone.getTimeZone("GMT-5"));
+            next.setTime(payment.getNextPaymentDate());
+            next.set(Calendar.HOUR_OF_DAY, 0);
+            next.set(Calendar.MINUTE, 0);
+            next.set(Calendar.SECOND, 0);
+            next.set(Calendar.MILLISECOND, 0);
+            if (today.getTimeInMillis() >= next.getTimeInMillis()) {
+                due++;
+            }
+        }
+        return due;
+    }
+}
@@ -0,0 +1,87 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.Journal;
+import bankingapp.Snapshot;
+
+/**
+ * Reports startup time from the journal alone and from the latest snapshot
+ * plus the journal tail written after it.
+ *
+ * Before the snapshot the journal gets one create per account plus
+ * historyRecords deposits; after it, tailRecords more deposits. Deposits
+ * go to the first thousand accounts.
+ *
+ * Usage: java -cp bin benchmarks.StartupBenchmark [accounts] [historyRecords] [tailRecords] [shards]
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int history = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int tail = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        int shards = args.length > 3 ? Integer.parseInt(args[3]) : Snapshot.DEFAULT_SHARDS;
+
+        Path root = Files.createTempDirectory("startup-benchmark");
+        Path journalDirectory = root.resolve("journal");
+        Path snapshotDirectory = root.resolve("snapshots");
+        Path emptyDirectory = root.resolve("no-snapshots");
+        try {
+            populate(accounts, history, tail, shards, journalDirectory, snapshotDirectory);
+
+            long start = System.nanoTime();
+            BankAccountDatabase replayed = Snapshot.recover(emptyDirectory, journalDirectory, Journal.FsyncPolicy.INTERVAL);
+            long replayNanos = System.nanoTime() - start;
+            int replayedCount = replayed.getBankAccounts().size();
+            replayed.getJournal().close();
+            replayed = null;
+            System.gc();
+
+            start = System.nanoTime();
+            BankAccountDatabase recovered = Snapshot.recover(snapshotDirectory, journalDirectory, Journal.FsyncPolicy.INTERVAL);
+            long snapshotNanos = System.nanoTime() - start;
+            int recoveredCount = recovered.getBankAccounts().size();
+            recovered.getJournal().close();
+
+            System.out.printf("Accounts: %,d, journal: %,d records before the snapshot and %,d after, shards: %d%n",
+                accounts, accounts + history, tail, shards);
+            System.out.printf("Full journal replay:      %,8d ms (%,d accounts)%n", replayNanos / 1_000_000, replayedCount);
+            System.out.printf("Snapshot + journal tail:  %,8d ms (%,d accounts)%n", snapshotNanos / 1_000_000, recoveredCount);
+        } finally {
+            try (Stream<Path> walk = Files.walk(root)) {
+                walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void populate(int accounts, int history, int tail, int shards, Path journalDirectory, Path snapshotDirectory) throws IOException {
+        try (Journal journal = new Journal(journalDirectory, Journal.FsyncPolicy.INTERVAL)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount[] hot = new BankAccount[Math.min(accounts, 1000)];
+            for (int i = 0; i < accounts; i++) {
+                BankAccount account = new BankAccount();
+                database.addBankAccount(account);
+                if (i < hot.length) {
+                    hot[i] = account;
+                }
+            }
+            for (int i = 0; i < history; i++) {
+                hot[i % hot.length].depositCents(100);
+            }
+            long start = System.nanoTime();
+            Snapshot.write(database, snapshotDirectory, shards);
+            System.out.printf("Snapshot written in %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+            for (int i = 0; i < tail; i++) {
+                hot[i % hot.length].depositCents(100);
+            }
+            journal.sync();
+        }
+    }
+}
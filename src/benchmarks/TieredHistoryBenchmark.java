@@ -0,0 +1,109 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.TransactionArchive;
+import bankingapp.TransactionPage;
+import bankingapp.TransactionType;
+
+/**
+ * Compares the retained heap and read times of the same histories kept
+ * entirely on the heap and tiered into a TransactionArchive.
+ *
+ * Reads are the first page (hot entries only), a page deep in the history
+ * (archived entries) and a withdrawal filter over the whole history.
+ *
+ * Usage: java -cp bin benchmarks.TieredHistoryBenchmark [accounts] [transactionsPerAccount]
+ */
+public class TieredHistoryBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int perAccount = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        System.out.printf("%,d accounts, %,d transactions%n", accounts, (long) accounts * perAccount);
+
+        BankAccountDatabase heap = fill(null, accounts, perAccount);
+        report("heap", heap, perAccount);
+        heap = null;
+
+        Path directory = Files.createTempDirectory("transaction-archive");
+        try (TransactionArchive archive = new TransactionArchive(directory)) {
+            BankAccountDatabase tiered = fill(archive, accounts, perAccount);
+            report("tiered", tiered, perAccount);
+            System.out.printf("%-8s %,d segments, %,.1f MB archived%n", "", archive.getSegmentCount(),
+                archive.getArchivedBytes() / 1e6);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static BankAccountDatabase fill(TransactionArchive archive, int accounts, int perAccount) {
+        BankAccountDatabase database = new BankAccountDatabase();
+        database.setTransactionArchive(archive);
+        for (int i = 0; i < accounts; i++) {
+            BankAccount account = new BankAccount();
+            database.addBankAccount(account);
+            for (int t = 0; t < perAccount; t++) {
+                if (t % 4 == 3) {
+                    account.withdraw(1.25);
+                } else {
+                    account.depositCents(100 + t);
+                }
+            }
+        }
+        return database;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, BankAccountDatabase database, int perAccount) {
+        System.out.printf("%-8s %,.1f MB retained heap%n", name, usedHeap() / 1e6);
+        long recent = Long.MAX_VALUE;
+        long deep = Long.MAX_VALUE;
+        long filter = Long.MAX_VALUE;
+        BankAccount[] all = database.getBankAccounts().values().toArray(new BankAccount[0]);
+        long[] middles = new long[all.length]; // Cursors halfway through each history
+        for (int i = 0; i < all.length; i++) {
+            middles[i] = all[i].getTransactionPage(TransactionPage.FIRST_PAGE, Math.max(1, perAccount / 2),
+                TransactionPage.Order.OLDEST_FIRST).getNextCursor();
+        }
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (BankAccount account : all) {
+                sink += account.getTransactionPage(TransactionPage.FIRST_PAGE, 20, TransactionPage.Order.NEWEST_FIRST)
+                    .getTransactions().size();
+            }
+            long middle = System.nanoTime();
+            for (int i = 0; i < all.length; i++) {
+                sink += all[i].getTransactionPage(middles[i], 20, TransactionPage.Order.OLDEST_FIRST).getTransactions().size();
+            }
+            long end = System.nanoTime();
+            for (BankAccount account : all) {
+                sink += account.getTransactionHistoryByType(TransactionType.WITHDRAWAL).size();
+            }
+            long filtered = System.nanoTime();
+            recent = Math.min(recent, middle - start);
+            deep = Math.min(deep, end - middle);
+            filter = Math.min(filter, filtered - end);
+        }
+        System.out.printf("%-8s recent page %.1f ms, deep page %.1f ms, withdrawal filter %.1f ms (%d)%n", "",
+            recent / 1e6, deep / 1e6, filter / 1e6, sink);
+    }
+}
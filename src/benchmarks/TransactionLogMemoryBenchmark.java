@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import bankingapp.BankAccount;
+import bankingapp.TransactionType;
+
+/**
+ * Reports retained heap per transaction for the old ArrayList of
+ * Transaction objects and for the chunked columnar log in BankAccount.
+ * 
+ * Usage: java -cp bin benchmarks.TransactionLogMemoryBenchmark [transactions]
+ */
+public class TransactionLogMemoryBenchmark {
+
+    /**
+     * Same fields as Transaction had before the columnar log (one Date per entry).
+     */
+    private static class LegacyTransaction {
+        final TransactionType type;
+        final double amount;
+        final String description;
+        final Date date;
+        final double balanceAfterTransaction;
+
+        LegacyTransaction(TransactionType type, double amount, String description, Date date, double balanceAfterTransaction) {
+            this.type = type;
+            this.amount = amount;
+            this.description = description;
+            this.date = date;
+            this.balanceAfterTransaction = balanceAfterTransaction;
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long before = usedHeap();
+        List<LegacyTransaction> legacy = new ArrayList<>();
+        double balance = 0;
+        for (int i = 0; i < count; i++) {
+            balance += 0.01;
+            legacy.add(new LegacyTransaction(TransactionType.DEPOSIT, 0.01, "Deposit Checking", new Date(), balance));
+        }
+        long legacyBytes = usedHeap() - before;
+        System.out.printf("ArrayList<Transaction>: %,d bytes, %.1f bytes/transaction%n",
+            legacyBytes, legacyBytes / (double) count);
+        legacy = null;
+
+        before = usedHeap();
+        BankAccount account = new BankAccount();
+        for (int i = 0; i < count; i++) {
+            account.depositCents(1);
+        }
+        long logBytes = usedHeap() - before;
+        System.out.printf("Chunked columnar log:   %,d bytes, %.1f bytes/transaction%n",
+            logBytes, logBytes / (double) count);
+        System.out.println("Balance check: " + account.getCurrentBalanceCents() + " cents");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
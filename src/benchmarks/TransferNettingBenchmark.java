@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.util.Date;
+
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+
+/**
+ * Compares running a due batch of scheduled transfers one by one with
+ * running it netted (TransferScheduler.setNetting).
+ *
+ * The batch is a payroll run from a few employer accounts to many employee
+ * accounts, plus sweeps back from every employee, so the same accounts
+ * appear in many transfers of the batch.
+ *
+ * Besides the time, the benchmark prints the number of balance CASes and
+ * history lock acquisitions each mode needs: two CASes and three appends
+ * per transfer run individually, one of each per account when netted.
+ * Those are the operations that serialize with other threads using the
+ * same accounts, so the difference grows with contention on hot accounts
+ * such as the employers here.
+ *
+ * Usage: java -cp bin benchmarks.TransferNettingBenchmark [employees] [rounds]
+ */
+public class TransferNettingBenchmark {
+
+    private static final int EMPLOYERS = 4;
+
+    public static void main(String[] args) {
+        int employees = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int transfers = employees * 2;
+        System.out.printf("%,d transfers per batch, %d rounds%n", transfers, rounds);
+        System.out.printf("Locked operations: individual %,d, netted %,d%n",
+            transfers * 5L, (employees + EMPLOYERS) * 2L);
+        System.out.printf("%-10s %16s %16s %8s%n", "Round", "individual ms", "netted ms", "Ratio");
+
+        for (int round = 1; round <= rounds; round++) {
+            double individual = run(employees, false);
+            double netted = run(employees, true);
+            System.out.printf("%-10d %16.1f %16.1f %7.2fx%n", round, individual, netted, individual / netted);
+        }
+    }
+
+    private static double run(int employees, boolean netting) {
+        BankAccountDatabase database = new BankAccountDatabase();
+        database.getTransferScheduler().setNetting(netting);
+        BankAccount[] employers = new BankAccount[EMPLOYERS];
+        for (int i = 0; i < EMPLOYERS; i++) {
+            employers[i] = new BankAccount();
+            database.addBankAccount(employers[i]);
+            for (int j = 0; j < 5_000; j++) { // $50M each
+                employers[i].depositCents(employers[i].getMaxDepositLimitCents());
+            }
+        }
+        Date due = new Date(System.currentTimeMillis() + 60_000);
+        for (int i = 0; i < employees; i++) {
+            BankAccount employee = new BankAccount();
+            database.addBankAccount(employee);
+            BankAccount employer = employers[i % EMPLOYERS];
+            employer.scheduleTransfer(employee, 900.0, due, "Salary");
+            employee.scheduleTransfer(employers[(i + 1) % EMPLOYERS], 50.0, due, "Sweep"); // Funded by the salary
+        }
+
+        System.gc(); // Keep the previous run's garbage out of the timing
+        long start = System.nanoTime();
+        int processed = database.getTransferScheduler().processDue(due);
+        double millis = (System.nanoTime() - start) / 1e6;
+        if (processed != employees * 2) {
+            throw new IllegalStateException("Only " + processed + " transfers ran");
+        }
+        return millis;
+    }
+}
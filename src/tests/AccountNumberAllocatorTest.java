@@ -0,0 +1,107 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bankingapp.AccountNumberAllocator;
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+
+public class AccountNumberAllocatorTest {
+
+    @Test
+    public void testSequentialNumbersWithCheckDigits() {
+        AccountNumberAllocator allocator = new AccountNumberAllocator(true);
+        assertEquals(18, allocator.next());
+        assertEquals(26, allocator.next());
+        assertEquals(34, allocator.next());
+        assertTrue(allocator.isValid(18));
+        assertFalse(allocator.isValid(19)); // Wrong check digit
+        assertFalse(allocator.isValid(81)); // Transposed digits
+        assertFalse(allocator.isValid(0));
+        assertFalse(allocator.isValid(-18));
+    }
+
+    @Test
+    public void testSequentialNumbersWithoutCheckDigits() {
+        AccountNumberAllocator allocator = new AccountNumberAllocator(false);
+        assertEquals(1, allocator.next());
+        assertEquals(2, allocator.next());
+        assertTrue(allocator.isValid(12345));
+    }
+
+    @Test
+    public void testGenerateBeforeAddIsTheStoredNumber() {
+        BankAccountDatabase database = new BankAccountDatabase(null, new AccountNumberAllocator(true));
+        BankAccount account = new BankAccount(10.0);
+        int number = database.generateBankAccountNumber(account);
+        assertEquals(number, database.generateBankAccountNumber(account)); // Idempotent
+        database.addBankAccount(account);
+        assertEquals(number, account.getAccountNumber());
+        assertSame(account, database.getBankAccount(number));
+    }
+
+    @Test
+    public void testMistypedNumberIsNotFound() {
+        BankAccountDatabase database = new BankAccountDatabase(null, new AccountNumberAllocator(true));
+        BankAccount account = new BankAccount(10.0);
+        database.addBankAccount(account);
+        int number = account.getAccountNumber();
+        assertNull(database.getBankAccount(number + 1));
+        assertFalse(database.hasBankAccount(number * 10));
+    }
+
+    @Test
+    public void testNoAccountIsDropped() {
+        BankAccountDatabase database = new BankAccountDatabase(null, new AccountNumberAllocator(true));
+        int count = 100_000; // Spans many index pages
+        BankAccount[] accounts = new BankAccount[count];
+        for (int i = 0; i < count; i++) {
+            accounts[i] = new BankAccount();
+            database.addBankAccount(accounts[i]);
+        }
+        assertEquals(count, database.getBankAccounts().size());
+        for (BankAccount account : accounts) {
+            assertSame(account, database.getBankAccount(account.getAccountNumber()));
+        }
+    }
+
+    @Test
+    public void testRemoveAndStatus() {
+        BankAccountDatabase database = new BankAccountDatabase(null, new AccountNumberAllocator(false));
+        BankAccount account = new BankAccount(10.0);
+        database.addBankAccount(account);
+        int number = account.getAccountNumber();
+        assertTrue(database.freezeAccount(number));
+        assertFalse(database.isAccountActive(number));
+        assertEquals(1, database.getFrozenAccountCount());
+        database.removeBankAccount(number);
+        assertNull(database.getBankAccount(number));
+        assertFalse(database.freezeAccount(number));
+    }
+
+    @Test
+    public void testDatabasesNumberIndependently() {
+        BankAccountDatabase first = new BankAccountDatabase();
+        BankAccountDatabase second = new BankAccountDatabase();
+        BankAccount a = new BankAccount();
+        BankAccount b = new BankAccount();
+        first.addBankAccount(a);
+        second.addBankAccount(b);
+        assertEquals(18, a.getAccountNumber()); // Both start at sequence 1
+        assertEquals(18, b.getAccountNumber());
+
+        BankAccount moved = new BankAccount();
+        first.addBankAccount(moved); // 26
+        BankAccount fresh = new BankAccount();
+        second.addBankAccount(moved);
+        second.addBankAccount(fresh);
+        assertSame(moved, second.getBankAccount(26));
+        assertEquals(34, fresh.getAccountNumber()); // Not 26 again
+    }
+}
@@ -164,6 +164,19 @@ public class BankAccountTests {
         assertEquals(50.0, destinationAccount.getCurrentBalance(), 0.005);
     }
 
+    @Test
+    public void testRefundIgnoresTheSourceDepositLimit() {
+        BankAccount sourceAccount = new BankAccount(500.0);
+        BankAccount destinationAccount = new BankAccount(50.0);
+        sourceAccount.setMaxDepositLimit(100.0);
+        destinationAccount.setMaxDepositLimit(100.0);
+        assertThrows(IllegalArgumentException.class, () ->
+            sourceAccount.transfer(destinationAccount, 200.0));
+        assertEquals(500.0, sourceAccount.getCurrentBalance(), 0.005); // Refunded in full
+        assertEquals(50.0, destinationAccount.getCurrentBalance(), 0.005);
+        assertEquals(1, sourceAccount.getTransactionCountByType(TransactionType.FAILED));
+    }
+
     @Test
     public void testNegativeTransfer() {
         BankAccount sourceAccount = new BankAccount(100.0);
@@ -0,0 +1,144 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bankingapp.AccountType;
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.BankClock;
+import bankingapp.CompoundInterest;
+import bankingapp.RecurringPayment;
+import bankingapp.ScheduledTransfer;
+
+public class BankClockTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long JAN_1_2020 = RecurringPayment.toMillis(18262); // Midnight GMT-5
+
+    private BankClock.VirtualClock clock;
+
+    @Before
+    public void setUp() {
+        clock = BankClock.virtual(JAN_1_2020);
+        BankClock.setCurrent(clock);
+    }
+
+    @After
+    public void tearDown() {
+        BankClock.setCurrent(BankClock.system());
+    }
+
+    @Test
+    public void testVirtualClockOnlyMovesWhenTold() {
+        assertEquals(JAN_1_2020, clock.millis());
+        assertEquals(18262, clock.epochDay());
+        clock.advance(DAY + 1);
+        assertEquals(new Date(JAN_1_2020 + DAY + 1), clock.now());
+        assertEquals(18263, clock.epochDay());
+        clock.set(JAN_1_2020);
+        assertEquals(JAN_1_2020, clock.millis());
+
+        try {
+            clock.advance(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            BankClock.setCurrent(null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testCoarseClockFollowsSystemTime() throws InterruptedException {
+        try (BankClock.CoarseClock coarse = BankClock.coarse(1)) {
+            long before = System.currentTimeMillis();
+            Thread.sleep(20);
+            long read = coarse.millis();
+            assertTrue(read >= before && read <= System.currentTimeMillis());
+        }
+    }
+
+    @Test
+    public void testClosingACoarseClockStopsItsThread() throws InterruptedException {
+        long running = tickers();
+        BankClock.CoarseClock coarse = BankClock.coarse(1000);
+        assertEquals(running + 1, tickers());
+        coarse.close();
+        assertEquals(running, tickers());
+        long before = System.currentTimeMillis();
+        Thread.sleep(5);
+        assertTrue(coarse.millis() > before); // Still tells the time once closed
+    }
+
+    private static long tickers() {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("bank-clock") && thread.isAlive()).count();
+    }
+
+    @Test
+    public void testAccountsReadTheCurrentClock() {
+        BankAccount account = new BankAccount(100.0, AccountType.CHECKING);
+        account.withdraw(10.0);
+        assertEquals(new Date(JAN_1_2020), account.getTransactionHistory().get(0).getDate());
+        assertEquals(18262, account.getCurrentEpochDay());
+
+        RecurringPayment payment = account.scheduleRecurringPayment(5.0, "Weekly", new Date(JAN_1_2020 + 7 * DAY),
+            RecurringPayment.PaymentFrequency.WEEKLY, "weekly");
+        assertFalse(payment.isPaymentDue());
+        ScheduledTransfer transfer = account.scheduleTransfer(new BankAccount(0.0), 1.0,
+            new Date(JAN_1_2020 + 7 * DAY), "Later");
+        assertFalse(transfer.isReadyToExecute());
+
+        clock.advance(7 * DAY);
+        assertTrue(payment.isPaymentDue());
+        assertTrue(transfer.isReadyToExecute());
+        assertEquals(1, account.processRecurringPayments());
+
+        try {
+            account.scheduleTransfer(new BankAccount(0.0), 1.0, new Date(JAN_1_2020 + DAY), "Past");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected: a day in the past on the virtual clock
+        }
+    }
+
+    @Test
+    public void testInterestWaitsOnVirtualClock() throws InterruptedException {
+        BankAccountDatabase database = new BankAccountDatabase();
+        BankAccount savings = new BankAccount(1000.0, AccountType.SAVINGS);
+        database.addBankAccount(savings);
+        Thread thread = new Thread(new CompoundInterest(database, DAY, clock));
+        thread.start();
+        try {
+            awaitBalance(savings, 1200.0);
+            Thread.sleep(50);
+            assertEquals(1200.0, savings.getCurrentBalance(), 0.0); // Still waiting for the next day
+            clock.advance(DAY);
+            awaitBalance(savings, 1440.0);
+        } finally {
+            thread.interrupt();
+            thread.join(1000);
+        }
+    }
+
+    private static void awaitBalance(BankAccount account, double balance) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (account.getCurrentBalance() != balance && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(balance, account.getCurrentBalance(), 0.0);
+    }
+}
@@ -0,0 +1,236 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bankingapp.AccountHolder;
+import bankingapp.AccountType;
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.BulkImporter;
+import bankingapp.BusinessAccount;
+import bankingapp.Journal;
+import bankingapp.Snapshot;
+import bankingapp.Transaction;
+import bankingapp.TransactionType;
+
+public class BulkImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(String name, String content) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testImportsAccountsHoldersAndHistory() throws IOException {
+        Path accounts = write("accounts.csv", BulkImporter.ACCOUNTS_HEADER + "\n"
+            + "101,PERSONAL,CHECKING,1250.75,,,Smith,1990-01-01,123456789,7\n"
+            + "102,PERSONAL,SAVINGS,20,500,2000,Smith,1990-01-01,123456789,7\r\n"
+            + "\n"
+            + "103,BUSINESS,CHECKING,0.5,,,,,,"); // No holder, no final newline
+        Path transactions = write("transactions.csv", BulkImporter.TRANSACTIONS_HEADER + "\n"
+            + "101,1600000000000,DEPOSIT,1000,1000,Opening deposit\n"
+            + "101,1600000001000,WITHDRAWAL,49.25,950.75,\"ATM, Main St \"\"North\"\"\"\n"
+            + "101,1600000002000,DEPOSIT,300,1250.75,Opening deposit\n"
+            + "103,1600000000000,DEPOSIT,0.5,0.5,\n");
+
+        BankAccountDatabase database = new BankAccountDatabase();
+        BulkImporter importer = new BulkImporter(database);
+        BulkImporter.ImportReport accountReport = importer.importAccounts(accounts);
+        assertEquals(3, accountReport.getRows());
+        assertEquals(0, accountReport.getRejected());
+        BulkImporter.ImportReport transactionReport = importer.importTransactions(transactions);
+        assertEquals(4, transactionReport.getAccepted());
+        assertTrue(transactionReport.toString().startsWith("Imported 4 of 4 rows from transactions.csv"));
+
+        BankAccount checking = importer.getAccount(101);
+        BankAccount savings = importer.getAccount(102);
+        BankAccount business = importer.getAccount(103);
+        assertSame(checking, database.getBankAccount(checking.getAccountNumber()));
+        assertEquals(125075, checking.getCurrentBalanceCents());
+        assertEquals(100000, checking.getMaxWithdrawalLimitCents()); // Defaults of the kind
+        assertEquals(AccountType.SAVINGS, savings.getAccountType());
+        assertEquals(50000, savings.getMaxWithdrawalLimitCents());
+        assertEquals(200000, savings.getMaxDepositLimitCents());
+        assertTrue(business instanceof BusinessAccount);
+        assertEquals(new BusinessAccount().getMaxDepositLimitCents(), business.getMaxDepositLimitCents());
+        assertNull(importer.getAccount(104));
+
+        assertEquals(1, database.getAccountHolders().size()); // Both Smith rows share one holder
+        AccountHolder holder = database.getAccountHolders().iterator().next();
+        assertEquals("Smith", holder.getLastname());
+        assertTrue(holder.findBankAccount(holder, checking.getAccountNumber()));
+        assertTrue(holder.findBankAccount(holder, savings.getAccountNumber()));
+
+        List<Transaction> history = checking.getTransactionHistory();
+        assertEquals(3, history.size());
+        assertEquals("Opening deposit", history.get(0).getDescription());
+        assertEquals("ATM, Main St \"North\"", history.get(1).getDescription());
+        assertEquals(TransactionType.WITHDRAWAL, history.get(1).getType());
+        assertEquals(4925, history.get(1).getAmountCents());
+        assertEquals(95075, history.get(1).getBalanceAfterTransactionCents());
+        assertEquals(1600000001000L, history.get(1).getTimestamp());
+        assertSame(history.get(0).getDescription(), history.get(2).getDescription()); // Decoded once
+        assertNull(business.getTransactionHistory().get(0).getDescription());
+    }
+
+    @Test
+    public void testRejectedRowsAreReportedWithLineNumbers() throws IOException {
+        Path accounts = write("accounts.csv", BulkImporter.ACCOUNTS_HEADER + "\n"
+            + "1,PERSONAL,CHECKING,10,,,,,,\n"
+            + "2,PERSONAL,CHECKING,10.005,,,,,,\n"   // Line 3: three decimals
+            + "3,PERSONAL,CHECKING,10,-5,,,,,\n"     // Line 4: negative limit
+            + "4,PERSONAL,BROKERAGE,10,,,,,,\n"      // Line 5: unknown type
+            + "1,BUSINESS,SAVINGS,10,,,,,,\n"        // Line 6: duplicate ref
+            + "5,PERSONAL,CHECKING,10,,,,,,,extra\n" // Line 7: too many columns
+            + "6,PERSONAL,CHECKING\n"                // Line 8: missing columns
+            + "7,PERSONAL,SAVINGS,10,,,,,,\n");
+        Path transactions = write("transactions.csv", BulkImporter.TRANSACTIONS_HEADER + "\n"
+            + "9,1600000000000,DEPOSIT,1,1,Nobody\n"       // Line 2: unknown ref
+            + "1,1600000000000,DEPOSIT,10000.01,1,Big\n"   // Line 3: over the deposit limit
+            + "1,1600000000000,WITHDRAWAL,1000.01,1,Big\n" // Line 4: over the withdrawal limit
+            + "1,1600000000000,DEPOSIT,10,10,\"Unterminated\n" // Line 5
+            + "1,1600000000000,DEPOSIT,10,10,Fine\n");
+
+        BankAccountDatabase database = new BankAccountDatabase();
+        BulkImporter importer = new BulkImporter(database);
+        BulkImporter.ImportReport report = importer.importAccounts(accounts);
+        assertEquals(8, report.getRows());
+        assertEquals(2, report.getAccepted());
+        List<BulkImporter.Rejection> rejections = report.getRejections();
+        assertEquals(6, rejections.size());
+        long[] lines = { 3, 4, 5, 6, 7, 8 };
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(lines[i], rejections.get(i).getLine());
+        }
+        assertEquals("More than two decimals in column balance", rejections.get(0).getReason());
+        assertEquals("Duplicate ref 1", rejections.get(3).getReason());
+        assertEquals(AccountType.CHECKING, importer.getAccount(1).getAccountType()); // The first row with the ref wins
+
+        report = importer.importTransactions(transactions);
+        assertEquals(1, report.getAccepted());
+        assertEquals(4, report.getRejected());
+        assertEquals("line 2: Unknown account ref 9", report.getRejections().get(0).toString());
+        assertEquals(5, report.getRejections().get(3).getLine());
+        assertEquals(1, importer.getAccount(1).getTransactionCount());
+    }
+
+    @Test
+    public void testAmountsThatWouldOverflowAreRejected() throws IOException {
+        Path accounts = write("accounts.csv", BulkImporter.ACCOUNTS_HEADER + "\n"
+            + "1,PERSONAL,CHECKING,12345678901234567,,,,,,\n"   // 17 whole digits
+            + "2,PERSONAL,CHECKING,9999999999999999.99,,,,,,\n" // The largest accepted amount
+            + "3,PERSONAL,CHECKING,.5,,,,,,\n");
+        BankAccountDatabase database = new BankAccountDatabase();
+        BulkImporter importer = new BulkImporter(database);
+        BulkImporter.ImportReport report = importer.importAccounts(accounts);
+        assertEquals(2, report.getAccepted());
+        assertEquals(1, report.getRejected());
+        assertEquals("Amount too large in column balance", report.getRejections().get(0).getReason());
+        assertNull(importer.getAccount(1));
+        assertEquals(999_999_999_999_999_999L, importer.getAccount(2).getCurrentBalanceCents());
+        assertEquals(50, importer.getAccount(3).getCurrentBalanceCents());
+    }
+
+    @Test
+    public void testLargeFilesKeepEachAccountsOrder() throws IOException {
+        int accounts = 20_000;
+        StringBuilder accountRows = new StringBuilder(BulkImporter.ACCOUNTS_HEADER).append('\n');
+        for (int ref = 0; ref < accounts; ref++) {
+            accountRows.append(ref).append(",PERSONAL,CHECKING,").append(ref).append(".25,,,Holder,2000-01-01,").append(ref % 1000 + 1).append(",1\n");
+        }
+        StringBuilder transactionRows = new StringBuilder(BulkImporter.TRANSACTIONS_HEADER).append('\n');
+        for (int round = 0; round < 5; round++) {
+            for (int ref = 0; ref < accounts; ref++) {
+                transactionRows.append(ref).append(',').append(1_600_000_000_000L + round).append(",DEPOSIT,")
+                    .append(round + 1).append(',').append(round + 1).append(",Deposit ").append(round).append('\n');
+            }
+        }
+
+        BankAccountDatabase database = new BankAccountDatabase();
+        BulkImporter importer = new BulkImporter(database);
+        assertEquals(accounts, importer.importAccounts(write("accounts.csv", accountRows.toString())).getAccepted());
+        BulkImporter.ImportReport report = importer.importTransactions(write("transactions.csv", transactionRows.toString()));
+        assertEquals(5L * accounts, report.getAccepted());
+        assertEquals(1000, database.getAccountHolders().size());
+
+        for (int ref = 0; ref < accounts; ref += 997) {
+            BankAccount account = importer.getAccount(ref);
+            assertEquals(ref * 100L + 25, account.getCurrentBalanceCents());
+            List<Transaction> history = account.getTransactionHistory();
+            assertEquals(5, history.size());
+            for (int round = 0; round < 5; round++) {
+                assertEquals("Deposit " + round, history.get(round).getDescription());
+            }
+        }
+    }
+
+    @Test
+    public void testImportedHistorySurvivesSnapshotsAndRecovery() throws IOException {
+        Path snapshots = folder.getRoot().toPath().resolve("snapshots");
+        Path journalDirectory = folder.getRoot().toPath().resolve("journal");
+        Path accounts = write("accounts.csv", BulkImporter.ACCOUNTS_HEADER + "\n"
+            + "7,PERSONAL,CHECKING,100,,,,,,\n");
+        Path transactions = write("transactions.csv", BulkImporter.TRANSACTIONS_HEADER + "\n"
+            + "7,1000,DEPOSIT,100.00,100.00,old deposit\n"
+            + "7,2000,WITHDRAWAL,1.50,98.50,\n");
+        int number;
+        List<Transaction> imported;
+        try (Journal journal = new Journal(journalDirectory, Journal.FsyncPolicy.GROUP_COMMIT)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BulkImporter importer = new BulkImporter(database);
+            importer.importAccounts(accounts);
+            importer.importTransactions(transactions);
+            number = importer.getAccount(7).getAccountNumber();
+            imported = importer.getAccount(7).getTransactionHistory();
+
+            List<Transaction> loaded = Snapshot.load(Snapshot.write(database, snapshots)).getBankAccount(number)
+                .getTransactionHistory();
+            assertEquals(imported.toString(), loaded.toString());
+        }
+
+        BankAccountDatabase recovered = Snapshot.recover(snapshots, journalDirectory, Journal.FsyncPolicy.GROUP_COMMIT);
+        try {
+            List<Transaction> history = recovered.getBankAccount(number).getTransactionHistory();
+            assertEquals(2, history.size());
+            assertEquals("old deposit", history.get(0).getDescription());
+            assertEquals(1000L, history.get(0).getTimestamp());
+            assertNull(history.get(1).getDescription());
+            assertEquals(9850, history.get(1).getBalanceAfterTransactionCents());
+            assertEquals(imported.toString(), history.toString());
+        } finally {
+            recovered.getJournal().close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongHeaderIsRejected() throws IOException {
+        new BulkImporter(new BankAccountDatabase()).importTransactions(
+            write("accounts.csv", BulkImporter.ACCOUNTS_HEADER + "\n1,PERSONAL,CHECKING,10,,,,,,\n"));
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        BulkImporter.ImportReport report = new BulkImporter(new BankAccountDatabase())
+            .importAccounts(write("empty.csv", ""));
+        assertEquals(0, report.getRows());
+        assertFalse(report.getRejections().iterator().hasNext());
+    }
+}
@@ -1,4 +1,6 @@
 package tests;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import static org.junit.jupiter.api.Assertions.*;
@@ -55,6 +57,30 @@ public class CompoundInterestTest  {
         }
     }
     
+    @Test
+    public void testRunSummary() {
+        // Enough accounts to span two pages of the account index
+        for (int i = 0; i < 5000; i++) {
+            BankAccount account = new BankAccount(10.0, AccountType.SAVINGS);
+            db.addBankAccount(account);
+            if (i == 0) {
+                db.deactivateAccount(account.getAccountNumber());
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            CompoundInterest.RunSummary summary =
+                new CompoundInterest(db, 2000, BankClock.system(), pool).applyInterestToSavingsAccounts();
+            assertEquals(5000, summary.getAccountsTouched());
+            assertEquals(20000 + 4999 * 200, summary.getTotalInterestCents());
+            assertEquals(1200.0, savingsAccount.getCurrentBalance(), 0.001);
+            assertEquals(1000.0, checkingAccount.getCurrentBalance(), 0.001);
+            assertTrue(summary.getElapsedNanos() > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     @Test
     public void testInterestRate() {
         assertEquals(20.0, CompoundInterest.getInterestRate(), 0.001,
@@ -0,0 +1,133 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bankingapp.AccountType;
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.BankClock;
+import bankingapp.CompoundInterest;
+import bankingapp.InterestAccrual;
+import bankingapp.Journal;
+import bankingapp.Snapshot;
+import bankingapp.Transaction;
+import bankingapp.TransactionType;
+
+public class InterestAccrualTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BankClock.VirtualClock clock;
+    private BankAccountDatabase database;
+    private BankAccount savings;
+
+    @Before
+    public void setUp() {
+        clock = BankClock.virtual(1_600_000_000_000L);
+        BankClock.setCurrent(clock);
+        database = new BankAccountDatabase();
+        database.setInterestAccrual(new InterestAccrual(0.10, DAY));
+        savings = new BankAccount(1000.0, AccountType.SAVINGS);
+        database.addBankAccount(savings);
+    }
+
+    @After
+    public void tearDown() {
+        BankClock.setCurrent(BankClock.system());
+    }
+
+    @Test
+    public void testInterestIsPostedWhenTheBalanceIsRead() {
+        clock.advance(3 * DAY);
+        assertEquals(1331.0, savings.getCurrentBalance(), 0.0); // 1000 * 1.1^3
+        assertEquals(1331.0, savings.getCurrentBalance(), 0.0);
+        List<Transaction> interest = savings.getTransactionHistoryByType(TransactionType.INTEREST);
+        assertEquals(1, interest.size());
+        assertEquals(331.0, interest.get(0).getAmount(), 0.0);
+
+        clock.advance(DAY / 2);
+        assertEquals(1331.0, savings.getCurrentBalance(), 0.0); // Partial periods earn nothing yet
+        clock.advance(DAY / 2);
+        assertEquals(1464.10, savings.getCurrentBalance(), 0.0);
+    }
+
+    @Test
+    public void testDepositAccruesFirst() {
+        clock.advance(DAY);
+        savings.deposit(100.0);
+        List<Transaction> history = savings.getTransactionHistory();
+        assertEquals(TransactionType.INTEREST, history.get(1).getType());
+        assertEquals(1100.0, history.get(1).getBalanceAfterTransaction(), 0.0);
+        assertEquals(1200.0, savings.getCurrentBalance(), 0.0);
+
+        BankAccount checking = new BankAccount(1000.0, AccountType.CHECKING);
+        database.addBankAccount(checking);
+        clock.advance(DAY);
+        assertEquals(1000.0, checking.getCurrentBalance(), 0.0);
+    }
+
+    @Test
+    public void testFrozenAccountsEarnNothing() {
+        clock.advance(DAY);
+        database.freezeAccount(savings.getAccountNumber()); // Pays the day before the freeze
+        clock.advance(5 * DAY);
+        database.unfreezeAccount(savings.getAccountNumber());
+        assertEquals(1100.0, savings.getCurrentBalance(), 0.0);
+        clock.advance(DAY);
+        assertEquals(1210.0, savings.getCurrentBalance(), 0.0);
+    }
+
+    @Test
+    public void testCompoundInterestFlushesAccruedInterest() {
+        BankAccount other = new BankAccount(500.0, AccountType.SAVINGS);
+        database.addBankAccount(other);
+        clock.advance(2 * DAY);
+        CompoundInterest.RunSummary summary = new CompoundInterest(database, DAY).applyInterestToSavingsAccounts();
+        assertEquals(2, summary.getAccountsTouched());
+        assertEquals(21000 + 10500, summary.getTotalInterestCents());
+        assertEquals(0, new CompoundInterest(database, DAY).applyInterestToSavingsAccounts().getAccountsTouched());
+    }
+
+    @Test
+    public void testAccrualSurvivesRecovery() throws IOException {
+        Path snapshots = folder.getRoot().toPath().resolve("snapshots");
+        Path journalDirectory = folder.getRoot().toPath().resolve("journal");
+        int number;
+        try (Journal journal = new Journal(journalDirectory, Journal.FsyncPolicy.PER_OP)) {
+            BankAccountDatabase journaled = new BankAccountDatabase(journal);
+            journaled.setInterestAccrual(new InterestAccrual(0.10, DAY));
+            BankAccount account = new BankAccount(1000.0, AccountType.SAVINGS);
+            journaled.addBankAccount(account);
+            number = account.getAccountNumber();
+            clock.advance(DAY);
+            assertEquals(1100.0, account.getCurrentBalance(), 0.0);
+            Snapshot.write(journaled, snapshots);
+            clock.advance(DAY);
+            assertEquals(1210.0, account.getCurrentBalance(), 0.0);
+        }
+
+        clock.advance(DAY / 2);
+        BankAccountDatabase recovered = Snapshot.recover(snapshots, journalDirectory, Journal.FsyncPolicy.PER_OP);
+        try {
+            assertEquals(1210.0, recovered.getAccountBalance(number), 0.0);
+            recovered.setInterestAccrual(new InterestAccrual(0.10, DAY));
+            clock.advance(DAY / 2);
+            assertEquals(1331.0, recovered.getAccountBalance(number), 0.0); // Counted from the last accrual, not the restart
+        } finally {
+            recovered.getJournal().close();
+        }
+    }
+}
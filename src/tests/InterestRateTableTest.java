@@ -0,0 +1,126 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Test;
+
+import bankingapp.AccountType;
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.BankClock;
+import bankingapp.BusinessAccount;
+import bankingapp.CompoundInterest;
+import bankingapp.InterestRateTable;
+import bankingapp.InterestRateTable.AccountClass;
+import bankingapp.InterestRateTable.DayCount;
+import bankingapp.RecurringPayment;
+
+public class InterestRateTableTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @After
+    public void tearDown() {
+        BankClock.setCurrent(BankClock.system());
+    }
+
+    @Test
+    public void testTiersAndAccountClasses() {
+        InterestRateTable table = new InterestRateTable(DayCount.PER_PERIOD)
+            .withRate(AccountType.SAVINGS, AccountClass.PERSONAL, 100_000, 0.02)
+            .withRate(AccountType.SAVINGS, AccountClass.PERSONAL, 0, 0.01)
+            .withRate(AccountType.SAVINGS, AccountClass.BUSINESS, 0, 0.03);
+
+        assertEquals(0.01, table.getRate(AccountType.SAVINGS, AccountClass.PERSONAL, 99_999), 0.0);
+        assertEquals(0.02, table.getRate(AccountType.SAVINGS, AccountClass.PERSONAL, 100_000), 0.0);
+        assertEquals(0.03, table.getRate(AccountType.SAVINGS, AccountClass.BUSINESS, 100_000), 0.0);
+        assertEquals(0.0, table.getRate(AccountType.CHECKING, AccountClass.PERSONAL, 100_000), 0.0);
+
+        InterestRateTable raised = table.withRate(AccountType.SAVINGS, AccountClass.PERSONAL, 0, 0.015);
+        assertEquals(0.015, raised.getRate(AccountType.SAVINGS, AccountClass.PERSONAL, 50), 0.0);
+        assertEquals(0.01, table.getRate(AccountType.SAVINGS, AccountClass.PERSONAL, 50), 0.0); // Tables are immutable
+        assertNotEquals(table.getVersion(), raised.getVersion());
+    }
+
+    @Test
+    public void testDayCounts() {
+        long jan1 = RecurringPayment.toMillis(18262); // 2020-01-01
+        long mar1 = RecurringPayment.toMillis(18322); // 2020-03-01, 60 days later
+        assertEquals(1.0, DayCount.PER_PERIOD.yearFraction(jan1, mar1), 0.0);
+        assertEquals(60 / 365.0, DayCount.ACTUAL_365.yearFraction(jan1, mar1), 1e-12);
+        assertEquals(60 / 360.0, DayCount.ACTUAL_360.yearFraction(jan1, mar1), 1e-12);
+        assertEquals(2 * 30 / 360.0, DayCount.THIRTY_360.yearFraction(jan1, mar1), 1e-12);
+        assertEquals(60 / 360.0, DayCount.THIRTY_360.yearFraction(jan1 + 30 * DAY, mar1 + 30 * DAY), 1e-12); // Jan 31 to Mar 31, both day 30
+    }
+
+    @Test
+    public void testFactorsAreComputedOncePerPeriodLength() {
+        InterestRateTable table = new InterestRateTable(DayCount.ACTUAL_365)
+            .withRate(AccountType.SAVINGS, AccountClass.PERSONAL, 0, 0.0365);
+        InterestRateTable.Factors daily = table.factorsFor(1 / 365.0);
+        assertSame(daily, table.factorsFor(1 / 365.0));
+        assertEquals(0.0001, daily.factorFor(new BankAccount(1.0, AccountType.SAVINGS), 100), 1e-12);
+        assertEquals(0.0, daily.factorFor(new BankAccount(1.0, AccountType.CHECKING), 100), 0.0);
+    }
+
+    @Test
+    public void testSweepsOfTheSameLengthReuseFactors() {
+        BankClock.VirtualClock clock = BankClock.virtual(RecurringPayment.toMillis(18262) + 9 * 60 * 60 * 1000);
+        BankClock.setCurrent(clock);
+        BankAccountDatabase database = new BankAccountDatabase();
+        database.addBankAccount(new BankAccount(100.0, AccountType.SAVINGS));
+        InterestRateTable table = new InterestRateTable(DayCount.ACTUAL_365)
+            .withRate(AccountType.SAVINGS, AccountClass.PERSONAL, 0, 0.0365);
+        CompoundInterest interest = new CompoundInterest(database, DAY, clock);
+        interest.setRateTable(table);
+
+        interest.applyInterestToSavingsAccounts();
+        InterestRateTable.Factors daily = table.factorsFor(1 / 365.0);
+        long[] jitter = { 123, 4_567, 61_000 }; // Real sweeps never start at the same millisecond of the day
+        for (long late : jitter) {
+            clock.advance(DAY + late);
+            interest.applyInterestToSavingsAccounts();
+            assertSame(daily, table.factorsFor(1 / 365.0));
+        }
+        long jan1 = RecurringPayment.toMillis(18262);
+        assertEquals(1 / 360.0, DayCount.ACTUAL_360.yearFraction(jan1 + 1, jan1 + 2 * DAY - 1), 0.0); // Just short of two days
+        assertEquals(1 / 360.0, DayCount.ACTUAL_360.yearFraction(jan1 + DAY - 1, jan1 + DAY + 1), 0.0); // Across midnight
+    }
+
+    @Test
+    public void testSweepUsesTheCurrentTable() {
+        BankClock.VirtualClock clock = BankClock.virtual(RecurringPayment.toMillis(18262));
+        BankClock.setCurrent(clock);
+        BankAccountDatabase database = new BankAccountDatabase();
+        BankAccount small = new BankAccount(500.0, AccountType.SAVINGS);
+        BankAccount large = new BankAccount(5000.0, AccountType.SAVINGS);
+        BusinessAccount business = new BusinessAccount(5000.0, AccountType.SAVINGS);
+        BankAccount checking = new BankAccount(5000.0, AccountType.CHECKING);
+        database.addBankAccount(small);
+        database.addBankAccount(large);
+        database.addBankAccount(business);
+        database.addBankAccount(checking);
+
+        CompoundInterest interest = new CompoundInterest(database, 30 * DAY, clock);
+        interest.setRateTable(new InterestRateTable(DayCount.ACTUAL_360)
+            .withRate(AccountType.SAVINGS, AccountClass.PERSONAL, 0, 0.12)
+            .withRate(AccountType.SAVINGS, AccountClass.PERSONAL, 1000_00, 0.24)
+            .withRate(AccountType.SAVINGS, AccountClass.BUSINESS, 0, 0.06));
+
+        CompoundInterest.RunSummary summary = interest.applyInterestToSavingsAccounts(); // First run covers one interval
+        assertEquals(3, summary.getAccountsTouched());
+        assertEquals(505.0, small.getCurrentBalance(), 0.0); // 12% * 30/360
+        assertEquals(5100.0, large.getCurrentBalance(), 0.0); // 24% * 30/360
+        assertEquals(5025.0, business.getCurrentBalance(), 0.0); // 6% * 30/360
+        assertEquals(5000.0, checking.getCurrentBalance(), 0.0);
+
+        // Rates change without restarting; the next run covers the time since the last
+        interest.setRateTable(interest.getRateTable().withRate(AccountType.CHECKING, AccountClass.PERSONAL, 0, 0.36));
+        clock.advance(10 * DAY);
+        interest.applyInterestToSavingsAccounts();
+        assertEquals(5050.0, checking.getCurrentBalance(), 0.0); // 36% * 10/360
+    }
+}
@@ -0,0 +1,251 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.BankClock;
+import bankingapp.Journal;
+
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Journal.RecordType> readTypes(Path directory) throws IOException {
+        List<Journal.RecordType> types = new ArrayList<>();
+        Journal.replay(directory, 0, (type, sequence, timestamp, payload) -> types.add(type));
+        return types;
+    }
+
+    @Test
+    public void testMutationsAreJournaledInOrder() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.PER_OP)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount source = new BankAccount(100.0);
+            BankAccount destination = new BankAccount(0.0);
+            database.addBankAccount(source);
+            database.addBankAccount(destination);
+
+            source.deposit(10.0);
+            source.withdraw(5.0);
+            source.transfer(destination, 20.0);
+            source.setMaxWithdrawalLimit(50.0);
+            database.freezeAccount(destination.getAccountNumber());
+            assertEquals(7, journal.getLastSequence());
+        }
+
+        List<Journal.RecordType> expected = List.of(
+            Journal.RecordType.CREATE_ACCOUNT, Journal.RecordType.CREATE_ACCOUNT,
+            Journal.RecordType.DEPOSIT, Journal.RecordType.WITHDRAW, Journal.RecordType.TRANSFER,
+            Journal.RecordType.WITHDRAWAL_LIMIT, Journal.RecordType.FREEZE);
+        assertEquals(expected, readTypes(directory));
+    }
+
+    @Test
+    public void testRecordsAreStampedByTheBankClock() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        BankClock.setCurrent(BankClock.virtual(1_600_000_000_000L));
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.GROUP_COMMIT)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            database.addBankAccount(new BankAccount(100.0));
+        } finally {
+            BankClock.setCurrent(BankClock.system());
+        }
+        List<Long> timestamps = new ArrayList<>();
+        Journal.replay(directory, 0, (type, sequence, timestamp, payload) -> timestamps.add(timestamp));
+        assertEquals(List.of(1_600_000_000_000L), timestamps);
+    }
+
+    @Test
+    public void testRecordPayloads() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        BankAccount source = new BankAccount(100.0);
+        BankAccount destination = new BankAccount(0.0);
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.GROUP_COMMIT)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            database.addBankAccount(source);
+            database.addBankAccount(destination);
+            source.transferCents(destination, 1234);
+        }
+
+        long[] transfer = new long[3];
+        Journal.replay(directory, 2, (type, sequence, timestamp, payload) -> {
+            assertEquals(Journal.RecordType.TRANSFER, type);
+            assertEquals(3, sequence);
+            transfer[0] = payload.getInt();
+            transfer[1] = payload.getInt();
+            transfer[2] = payload.getLong();
+        });
+        assertEquals(source.getAccountNumber(), transfer[0]);
+        assertEquals(destination.getAccountNumber(), transfer[1]);
+        assertEquals(1234, transfer[2]);
+    }
+
+    @Test
+    public void testFailedOperationsAreNotJournaled() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.INTERVAL)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount account = new BankAccount(10.0);
+            database.addBankAccount(account);
+            account.withdraw(50.0); // Insufficient funds
+            assertEquals(1, journal.getLastSequence());
+        }
+        assertEquals(List.of(Journal.RecordType.CREATE_ACCOUNT), readTypes(directory));
+    }
+
+    @Test
+    public void testReopenContinuesAfterLastRecord() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        BankAccount account = new BankAccount(10.0);
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.PER_OP)) {
+            new BankAccountDatabase(journal).addBankAccount(account);
+            account.depositCents(100);
+        }
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.PER_OP)) {
+            assertEquals(2, journal.getLastSequence());
+            new BankAccountDatabase(journal).addBankAccount(new BankAccount(5.0));
+            assertEquals(3, journal.getLastSequence());
+        }
+        assertEquals(3, readTypes(directory).size());
+    }
+
+    @Test
+    public void testSegmentsRollOver() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.INTERVAL, 1024, 10)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount account = new BankAccount(0.0);
+            database.addBankAccount(account);
+            for (int i = 0; i < 200; i++) {
+                account.depositCents(1);
+            }
+            journal.sync();
+        }
+        assertTrue(directory.toFile().list().length > 1);
+        List<Long> sequences = new ArrayList<>();
+        Journal.replay(directory, 0, (type, sequence, timestamp, payload) -> sequences.add(sequence));
+        assertEquals(201, sequences.size());
+        for (int i = 0; i < sequences.size(); i++) {
+            assertEquals(i + 1, (long) sequences.get(i));
+        }
+    }
+
+    @Test
+    public void testConcurrentGroupCommit() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.GROUP_COMMIT)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount account = new BankAccount(0.0);
+            database.addBankAccount(account);
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        account.depositCents(1);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(200, account.getCurrentBalanceCents());
+        }
+        assertEquals(201, readTypes(directory).size());
+    }
+
+    // Blocks the first force until released, and counts forces
+    private static final class SlowJournal extends Journal {
+        final CountDownLatch forcing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger forces = new AtomicInteger();
+
+        SlowJournal(Path directory) throws IOException {
+            super(directory, Journal.FsyncPolicy.GROUP_COMMIT);
+        }
+
+        @Override
+        protected void forceSegment(MappedByteBuffer segment) {
+            if (forces.incrementAndGet() == 1) {
+                forcing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.forceSegment(segment);
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void testAppendsContinueDuringASlowForce() throws Exception {
+        int writers = 4;
+        try (SlowJournal journal = new SlowJournal(folder.getRoot().toPath())) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount[] accounts = new BankAccount[writers + 1];
+            for (int i = 0; i < accounts.length; i++) {
+                accounts[i] = new BankAccount(0.0); // Journaled without a force: the creations run first
+            }
+            Thread leader = new Thread(() -> database.addBankAccount(accounts[0]));
+            leader.start();
+            assertTrue(journal.forcing.await(10, TimeUnit.SECONDS));
+
+            Thread[] threads = new Thread[writers];
+            long[] durableOnReturn = new long[writers];
+            boolean[] interruptedOnReturn = new boolean[writers];
+            for (int i = 0; i < writers; i++) {
+                BankAccount account = accounts[i + 1];
+                int writer = i;
+                threads[i] = new Thread(() -> {
+                    database.addBankAccount(account);
+                    durableOnReturn[writer] = journal.getDurableSequence();
+                    interruptedOnReturn[writer] = Thread.currentThread().isInterrupted();
+                });
+                threads[i].start();
+            }
+            // Every writer appends while the first force is still running
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (journal.getLastSequence() < writers + 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(writers + 1, journal.getLastSequence());
+            assertEquals(0, journal.getDurableSequence());
+            for (Thread thread : threads) {
+                assertTrue(thread.isAlive()); // Still waiting for a force that covers it
+            }
+
+            threads[0].interrupt(); // An interrupt does not end the wait early
+            journal.release.countDown();
+            leader.join();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(writers + 1, journal.getDurableSequence());
+            assertTrue(journal.forces.get() <= 2); // One force covered all the writers
+            for (int i = 0; i < writers; i++) {
+                assertEquals(writers + 1, durableOnReturn[i]);
+            }
+            assertTrue(interruptedOnReturn[0]);
+            assertFalse(leader.isAlive());
+        }
+    }
+}
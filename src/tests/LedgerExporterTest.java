@@ -0,0 +1,213 @@
+package tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bankingapp.AccountType;
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.BulkImporter;
+import bankingapp.LedgerExporter;
+
+public class LedgerExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(String name, String content) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<String> lines(LedgerExporter exporter, Path directory, int shards, boolean accounts) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            Path file = accounts ? exporter.accountsFile(directory, shard) : exporter.transactionsFile(directory, shard);
+            lines.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+
+    private BulkImporter importSample(BankAccountDatabase database) throws IOException {
+        BulkImporter importer = new BulkImporter(database);
+        importer.importAccounts(write("accounts.csv", BulkImporter.ACCOUNTS_HEADER + "\n"
+            + "1,PERSONAL,CHECKING,1250.75,,,,,,\n"
+            + "2,BUSINESS,SAVINGS,20.05,500,2000,,,,\n"));
+        importer.importTransactions(write("transactions.csv", BulkImporter.TRANSACTIONS_HEADER + "\n"
+            + "1,1600000000000,DEPOSIT,1000,1000,Opening deposit\n"
+            + "1,1600000001000,WITHDRAWAL,49.25,950.75,\"ATM, Main St \"\"North\"\"\"\n"
+            + "1,1600000002000,DEPOSIT,300,1250.75,Caf\u00e9 \\ refund\n"
+            + "2,1600000000000,DEPOSIT,20.05,20.05,\n"));
+        return importer;
+    }
+
+    @Test
+    public void testCsvExportOfAccountsAndHistory() throws IOException {
+        BankAccountDatabase database = new BankAccountDatabase();
+        BulkImporter importer = importSample(database);
+        int checking = importer.getAccount(1).getAccountNumber();
+        int savings = importer.getAccount(2).getAccountNumber();
+
+        Path directory = folder.getRoot().toPath().resolve("csv");
+        LedgerExporter exporter = new LedgerExporter(database, LedgerExporter.Format.CSV, 1, ForkJoinPool.commonPool());
+        LedgerExporter.ExportReport report = exporter.export(directory);
+        assertEquals(2, report.getAccounts());
+        assertEquals(4, report.getTransactions());
+        assertTrue(report.isComplete());
+        assertFalse(report.isResumed());
+
+        List<String> accounts = lines(exporter, directory, 1, true);
+        assertEquals(LedgerExporter.ACCOUNTS_HEADER, accounts.get(0));
+        assertEquals(3, accounts.size());
+        assertTrue(accounts.contains(checking + ",PERSONAL,CHECKING,1250.75,1000.00,10000.00,false"));
+        assertTrue(accounts.contains(savings + ",BUSINESS,SAVINGS,20.05,500.00,2000.00,false"));
+
+        List<String> transactions = lines(exporter, directory, 1, false);
+        assertEquals(5, transactions.size());
+        assertEquals(LedgerExporter.TRANSACTIONS_HEADER, transactions.get(0));
+        int first = checking < savings ? 1 : 2; // Accounts come in account number order
+        assertEquals(checking + ",1600000000000,DEPOSIT,1000.00,1000.00,Opening deposit", transactions.get(first));
+        assertEquals(checking + ",1600000001000,WITHDRAWAL,49.25,950.75,\"ATM, Main St \"\"North\"\"\"", transactions.get(first + 1));
+        assertEquals(checking + ",1600000002000,DEPOSIT,300.00,1250.75,Caf\u00e9 \\ refund", transactions.get(first + 2));
+        assertTrue(transactions.contains(savings + ",1600000000000,DEPOSIT,20.05,20.05,"));
+        assertEquals(report.getBytes(), Files.size(exporter.accountsFile(directory, 0)) + Files.size(exporter.transactionsFile(directory, 0)));
+    }
+
+    @Test
+    public void testJsonLinesEscapesDescriptions() throws IOException {
+        BankAccountDatabase database = new BankAccountDatabase();
+        BulkImporter importer = importSample(database);
+        int checking = importer.getAccount(1).getAccountNumber();
+
+        Path directory = folder.getRoot().toPath().resolve("jsonl");
+        LedgerExporter exporter = new LedgerExporter(database, LedgerExporter.Format.JSON_LINES, 3, ForkJoinPool.commonPool());
+        exporter.export(directory);
+        assertTrue(exporter.accountsFile(directory, 2).toString().endsWith("accounts-2.jsonl"));
+
+        List<String> accounts = lines(exporter, directory, 3, true);
+        assertEquals(2, accounts.size()); // No header
+        assertTrue(accounts.contains("{\"account\":" + checking
+            + ",\"kind\":\"PERSONAL\",\"type\":\"CHECKING\",\"balance\":1250.75,\"max_withdrawal\":1000.00,\"max_deposit\":10000.00,\"frozen\":false}"));
+
+        List<String> transactions = lines(exporter, directory, 3, false);
+        assertEquals(4, transactions.size());
+        assertTrue(transactions.contains("{\"account\":" + checking
+            + ",\"timestamp\":1600000001000,\"type\":\"WITHDRAWAL\",\"amount\":49.25,\"balance_after\":950.75,\"description\":\"ATM, Main St \\\"North\\\"\"}"));
+        assertTrue(transactions.contains("{\"account\":" + checking
+            + ",\"timestamp\":1600000002000,\"type\":\"DEPOSIT\",\"amount\":300.00,\"balance_after\":1250.75,\"description\":\"Caf\u00e9 \\\\ refund\"}"));
+        assertTrue(transactions.stream().anyMatch(line -> line.endsWith("\"description\":null}")));
+    }
+
+    @Test
+    public void testAccountsWithoutATypeAreExported() throws IOException {
+        BankAccountDatabase database = new BankAccountDatabase();
+        BankAccount account = new BankAccount((AccountType) null);
+        database.addBankAccount(account);
+        int number = account.getAccountNumber();
+
+        Path csv = folder.getRoot().toPath().resolve("csv");
+        LedgerExporter exporter = new LedgerExporter(database, LedgerExporter.Format.CSV, 1, ForkJoinPool.commonPool());
+        assertEquals(1, exporter.export(csv).getAccounts());
+        assertEquals(number + ",PERSONAL,,0.00,1000.00,10000.00,false", lines(exporter, csv, 1, true).get(1));
+
+        Path jsonl = folder.getRoot().toPath().resolve("jsonl");
+        exporter = new LedgerExporter(database, LedgerExporter.Format.JSON_LINES, 1, ForkJoinPool.commonPool());
+        exporter.export(jsonl);
+        assertEquals("{\"account\":" + number + ",\"kind\":\"PERSONAL\",\"type\":null,\"balance\":0.00,"
+            + "\"max_withdrawal\":1000.00,\"max_deposit\":10000.00,\"frozen\":false}", lines(exporter, jsonl, 1, true).get(0));
+    }
+
+    @Test
+    public void testInterruptedExportResumesFromCheckpoint() throws IOException {
+        int accounts = 9000; // More than two AccountIndex pages
+        StringBuilder accountRows = new StringBuilder(BulkImporter.ACCOUNTS_HEADER).append('\n');
+        StringBuilder transactionRows = new StringBuilder(BulkImporter.TRANSACTIONS_HEADER).append('\n');
+        for (int ref = 0; ref < accounts; ref++) {
+            accountRows.append(ref).append(",PERSONAL,CHECKING,").append(ref).append(".10,,,,,,\n");
+            if (ref % 20 == 0) {
+                for (int i = 0; i < 10; i++) {
+                    transactionRows.append(ref).append(',').append(1_600_000_000_000L + i).append(",DEPOSIT,1,")
+                        .append(i + 1).append(",\"Deposit, number ").append(i).append("\"\n");
+                }
+            }
+        }
+        BankAccountDatabase database = new BankAccountDatabase();
+        BulkImporter importer = new BulkImporter(database);
+        importer.importAccounts(write("accounts.csv", accountRows.toString()));
+        importer.importTransactions(write("transactions.csv", transactionRows.toString()));
+
+        Path clean = folder.getRoot().toPath().resolve("clean");
+        LedgerExporter exporter = new LedgerExporter(database, LedgerExporter.Format.CSV, 4, new ForkJoinPool(2));
+        LedgerExporter.ExportReport expected = exporter.export(clean);
+        assertEquals(accounts, expected.getAccounts());
+        assertEquals(accounts / 20 * 10, expected.getTransactions());
+
+        Path interrupted = folder.getRoot().toPath().resolve("interrupted");
+        exporter.setCheckpointInterval(4096);
+        int[] checkpoints = { 0 };
+        exporter.setCheckpointListener(progress -> {
+            if (++checkpoints[0] == 10) {
+                throw new IllegalStateException("Simulated crash");
+            }
+        });
+        try {
+            exporter.export(interrupted);
+            fail("The listener should have aborted the export");
+        } catch (IllegalStateException e) {
+            assertEquals("Simulated crash", e.getMessage());
+        }
+        // Rows written after the last checkpoint are cut off on resume
+        Files.write(exporter.transactionsFile(interrupted, 1), "partial row,".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+
+        exporter.setCheckpointListener(null);
+        LedgerExporter.ExportReport resumed = exporter.export(interrupted);
+        assertTrue(resumed.isResumed());
+        assertTrue(resumed.isComplete());
+        assertEquals(expected.getAccounts(), resumed.getAccounts());
+        assertEquals(expected.getTransactions(), resumed.getTransactions());
+        assertEquals(expected.getBytes(), resumed.getBytes());
+        for (int shard = 0; shard < 4; shard++) {
+            assertArrayEquals(Files.readAllBytes(exporter.accountsFile(clean, shard)), Files.readAllBytes(exporter.accountsFile(interrupted, shard)));
+            assertArrayEquals(Files.readAllBytes(exporter.transactionsFile(clean, shard)), Files.readAllBytes(exporter.transactionsFile(interrupted, shard)));
+        }
+
+        // A completed export is not resumed
+        assertFalse(exporter.export(interrupted).isResumed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testResumeWithAnotherShardCountIsRejected() throws IOException {
+        BankAccountDatabase database = new BankAccountDatabase();
+        BankAccount account = new BankAccount(10, AccountType.CHECKING);
+        database.addBankAccount(account);
+        Path directory = folder.getRoot().toPath().resolve("export");
+        LedgerExporter exporter = new LedgerExporter(database, LedgerExporter.Format.CSV, 2, ForkJoinPool.commonPool());
+        exporter.setCheckpointListener(progress -> {
+            throw new IllegalStateException("Simulated crash");
+        });
+        try {
+            exporter.export(directory);
+            fail("The listener should have aborted the export");
+        } catch (IllegalStateException expected) {
+            // Leaves an unfinished checkpoint
+        }
+        new LedgerExporter(database, LedgerExporter.Format.CSV, 3, ForkJoinPool.commonPool()).export(directory);
+    }
+}
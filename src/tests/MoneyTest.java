@@ -0,0 +1,79 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.math.RoundingMode;
+
+import org.junit.Test;
+
+import bankingapp.BankAccount;
+import bankingapp.Money;
+
+public class MoneyTest {
+
+    @Test
+    public void testToCentsRoundsToNearestCent() {
+        assertEquals(29, Money.toCents(0.29));
+        assertEquals(1001, Money.toCents(10.005));
+        assertEquals(-150, Money.toCents(-1.5));
+    }
+
+    @Test
+    public void testAddAndSubtractAreExact() {
+        long total = 0;
+        for (int i = 0; i < 1000; i++) {
+            total = Money.add(total, Money.toCents(0.10));
+        }
+        assertEquals(10000, total);
+        assertEquals(9990, Money.subtract(total, 10));
+    }
+
+    @Test
+    public void testAddOverflowThrows() {
+        assertThrows(ArithmeticException.class, () -> Money.add(Long.MAX_VALUE, 1));
+    }
+
+    @Test
+    public void testMultiplyRoundingModes() {
+        // 125 cents * 10% = 12.5 cents
+        assertEquals(12, Money.multiply(125, 0.10, RoundingMode.HALF_EVEN));
+        assertEquals(13, Money.multiply(125, 0.10, RoundingMode.HALF_UP));
+        assertEquals(12, Money.multiply(125, 0.10, RoundingMode.HALF_DOWN));
+        assertEquals(12, Money.multiply(125, 0.10, RoundingMode.FLOOR));
+        assertEquals(13, Money.multiply(125, 0.10, RoundingMode.CEILING));
+        assertThrows(ArithmeticException.class, () -> Money.multiply(125, 0.10, RoundingMode.UNNECESSARY));
+    }
+
+    @Test
+    public void testMultiplyRoundsDecimalTiesExactly() {
+        // 150 * 0.07 is 10.500000000000002 in double arithmetic
+        assertEquals(10, Money.multiply(150, 0.07, RoundingMode.HALF_EVEN));
+        assertEquals(11, Money.multiply(150, 0.07, RoundingMode.HALF_UP));
+        assertEquals(10, Money.multiply(150, 0.07, RoundingMode.HALF_DOWN));
+        assertEquals(-10, Money.multiply(-150, 0.07, RoundingMode.HALF_EVEN));
+        assertEquals(-11, Money.multiply(-150, 0.07, RoundingMode.HALF_UP));
+        // Exact products that double arithmetic puts just off a whole cent
+        assertEquals(110, Money.multiply(100, 1.1, RoundingMode.CEILING)); // 110.00000000000001
+        assertEquals(29, Money.multiply(100, 0.29, RoundingMode.FLOOR)); // 28.999999999999996
+        assertEquals(29, Money.multiply(100, 0.29, RoundingMode.UNNECESSARY));
+    }
+
+    @Test
+    public void testMultiplyKeepsCentsAbove2To53() {
+        long cents = (1L << 53) + 1;
+        assertEquals(cents * 3, Money.multiply(cents, 3.0, RoundingMode.UNNECESSARY));
+        assertEquals(cents / 2 + 1, Money.multiply(cents, 0.5, RoundingMode.HALF_UP));
+        assertThrows(ArithmeticException.class, () -> Money.multiply(Long.MAX_VALUE, 2.0, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    public void testRepeatedSmallDepositsDoNotDrift() {
+        BankAccount account = new BankAccount();
+        for (int i = 0; i < 10; i++) {
+            account.deposit(0.10);
+        }
+        assertEquals(100, account.getCurrentBalanceCents());
+        assertEquals(1.00, account.getCurrentBalance(), 0.0);
+    }
+}
@@ -0,0 +1,150 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.RecurringPayment;
+import bankingapp.RecurringPaymentScheduler;
+
+public class RecurringPaymentSchedulerTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+    private static final long DAY = 24 * HOUR;
+
+    private BankAccountDatabase database;
+    private RecurringPaymentScheduler scheduler;
+    private BankAccount account;
+    private Date today; // Midnight GMT-5
+
+    @Before
+    public void setUp() {
+        database = new BankAccountDatabase();
+        scheduler = database.getRecurringPaymentScheduler();
+        account = new BankAccount(1000.0);
+        database.addBankAccount(account);
+
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT-5"));
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        today = cal.getTime();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    public void testOnlyDuePaymentsRun() {
+        account.scheduleRecurringPayment(30.0, "Later", new Date(today.getTime() + 3 * DAY),
+            RecurringPayment.PaymentFrequency.MONTHLY, "ACC-3");
+        RecurringPayment first = account.scheduleRecurringPayment(10.0, "First", new Date(today.getTime() + DAY),
+            RecurringPayment.PaymentFrequency.DAILY, "ACC-1");
+        assertEquals(2, scheduler.getPendingCount());
+        assertEquals(first.getNextPaymentDate(), scheduler.getNextDueDate());
+
+        assertEquals(0, scheduler.processDue(today));
+        assertEquals(1, scheduler.processDue(new Date(today.getTime() + DAY + 2 * HOUR)));
+        assertEquals(990.0, account.getCurrentBalance(), 0.0);
+        assertEquals(new Date(today.getTime() + 2 * DAY), first.getNextPaymentDate());
+        assertEquals(2, scheduler.getPendingCount()); // Re-indexed by its next date
+
+        assertEquals(1, scheduler.getPaymentsRun());
+        assertEquals(2 * HOUR, first.getLastLagMillis());
+        assertEquals(2 * HOUR, scheduler.getMaxLagMillis());
+    }
+
+    @Test
+    public void testRemovedAccountStopsPaying() {
+        BankAccount recipient = new BankAccount();
+        database.addBankAccount(recipient);
+        account.scheduleRecurringPayment(10.0, "Rent", new Date(today.getTime() + DAY),
+            RecurringPayment.PaymentFrequency.DAILY, String.valueOf(recipient.getAccountNumber()));
+        database.removeBankAccount(account.getAccountNumber());
+
+        assertEquals(0, scheduler.processDue(new Date(today.getTime() + 3 * DAY)));
+        assertEquals(1000.0, account.getCurrentBalance(), 0.0);
+        assertEquals(0.0, recipient.getCurrentBalance(), 0.0);
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testCancelledPaymentIsDropped() {
+        RecurringPayment payment = account.scheduleRecurringPayment(10.0, "Gym", new Date(today.getTime() + DAY),
+            RecurringPayment.PaymentFrequency.WEEKLY, "ACC-1");
+        account.cancelRecurringPayment(payment);
+        assertEquals(0, scheduler.getPendingCount());
+        assertNull(scheduler.getNextDueDate());
+        assertEquals(0, scheduler.processDue(new Date(today.getTime() + 2 * DAY)));
+        assertEquals(1000.0, account.getCurrentBalance(), 0.0);
+    }
+
+    @Test
+    public void testPaymentRunsOnce() {
+        RecurringPayment payment = account.scheduleRecurringPayment(10.0, "Rent", today,
+            RecurringPayment.PaymentFrequency.MONTHLY, "ACC-1");
+        assertEquals(1, account.processRecurringPayments()); // Paid from the menu first
+        assertEquals(0, scheduler.processDue(new Date(today.getTime() + HOUR)));
+        assertEquals(990.0, account.getCurrentBalance(), 0.0);
+        assertEquals(payment.getNextPaymentDate(), scheduler.getNextDueDate());
+    }
+
+    @Test
+    public void testFailedPaymentIsRetried() {
+        BankAccount poor = new BankAccount(5.0);
+        database.addBankAccount(poor);
+        poor.scheduleRecurringPayment(10.0, "Too much", today, RecurringPayment.PaymentFrequency.MONTHLY, "ACC-1");
+        scheduler.setRetryDelayMillis(HOUR);
+
+        assertEquals(0, scheduler.processDue(today));
+        assertEquals(new Date(today.getTime() + HOUR), scheduler.getNextDueDate());
+        poor.deposit(10.0);
+        assertEquals(0, scheduler.processDue(today)); // Not retried before the delay
+        assertEquals(1, scheduler.processDue(new Date(today.getTime() + HOUR)));
+        assertEquals(5.0, poor.getCurrentBalance(), 0.0);
+    }
+
+    @Test
+    public void testPaymentsSetUpBeforeAddAreIndexed() {
+        BankAccount late = new BankAccount(100.0);
+        late.scheduleRecurringPayment(1.0, "Before add", new Date(today.getTime() + DAY),
+            RecurringPayment.PaymentFrequency.DAILY, "ACC-1");
+        database.addBankAccount(late);
+        assertEquals(1, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testBackgroundServiceRunsDuePayments() throws InterruptedException {
+        RecurringPayment payment = account.scheduleRecurringPayment(10.0, "Due now", today,
+            RecurringPayment.PaymentFrequency.MONTHLY, "ACC-1");
+        assertFalse(scheduler.isRunning());
+        scheduler.start();
+        assertTrue(scheduler.isRunning());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getPaymentsRun() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        scheduler.stop();
+        assertFalse(scheduler.isRunning());
+
+        assertEquals(1, scheduler.getPaymentsRun());
+        assertEquals(990.0, account.getCurrentBalance(), 0.0);
+        assertTrue(payment.getLastLagMillis() >= 0);
+        assertTrue(payment.getNextPaymentDate().after(today));
+    }
+}
@@ -0,0 +1,169 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.Journal;
+import bankingapp.RecurringPayment;
+import bankingapp.Snapshot;
+import bankingapp.SuspenseQueue;
+import bankingapp.Transaction;
+import bankingapp.TransactionType;
+
+public class RecurringPaymentSettlementTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Date today;
+
+    @Before
+    public void setUp() {
+        today = new Date(RecurringPayment.toMillis(RecurringPayment.toEpochDay(System.currentTimeMillis())));
+    }
+
+    @Test
+    public void testRecipientsAreCreditedOncePerRun() {
+        BankAccountDatabase database = new BankAccountDatabase();
+        BankAccount landlord = new BankAccount(0.0);
+        database.addBankAccount(landlord);
+        String recipient = String.valueOf(landlord.getAccountNumber());
+        BankAccount[] tenants = new BankAccount[3];
+        for (int i = 0; i < 3; i++) {
+            BankAccount tenant = new BankAccount(100.0);
+            database.addBankAccount(tenant);
+            tenants[i] = tenant;
+            tenant.scheduleRecurringPayment(10.0 + i, "Rent " + i, today, RecurringPayment.PaymentFrequency.MONTHLY, recipient);
+        }
+
+        assertEquals(3, database.getRecurringPaymentScheduler().processDue(new Date(today.getTime() + 1000)));
+        assertEquals(33.0, landlord.getCurrentBalance(), 0.0);
+        assertEquals(3, landlord.getTransactionCountByType(TransactionType.DEPOSIT)); // One history entry per payment
+        assertEquals(33.0, landlord.getTransactionHistoryByType(TransactionType.DEPOSIT).get(2).getBalanceAfterTransaction(), 0.0);
+        assertEquals("Recurring payment from account " + tenants[1].getAccountNumber() + ": Rent 1",
+            landlord.getTransactionHistoryByType(TransactionType.DEPOSIT).get(1).getDescription());
+        assertEquals("Recurring payment: Rent 1",
+            tenants[1].getTransactionHistoryByType(TransactionType.RECURRING_PAYMENT).get(0).getDescription());
+        assertEquals(0, database.getSuspenseQueue().size());
+    }
+
+    @Test
+    public void testUnresolvableRecipientGoesToSuspense() {
+        BankAccountDatabase database = new BankAccountDatabase();
+        BankAccount payer = new BankAccount(100.0);
+        database.addBankAccount(payer);
+        payer.scheduleRecurringPayment(25.0, "Utilities", today, RecurringPayment.PaymentFrequency.MONTHLY, "ACC-UNKNOWN");
+
+        assertEquals(1, payer.processRecurringPayments());
+        assertEquals(75.0, payer.getCurrentBalance(), 0.0);
+        SuspenseQueue suspense = database.getSuspenseQueue();
+        assertEquals(1, suspense.size());
+        assertEquals(2500, suspense.getTotalCents());
+        SuspenseQueue.Entry entry = suspense.getEntries().get(0);
+        assertEquals(payer.getAccountNumber(), entry.getPayerAccountNumber());
+        assertEquals("ACC-UNKNOWN", entry.getRecipientAccountId());
+        assertEquals("Utilities", entry.getDescription());
+    }
+
+    @Test
+    public void testCreditAboveDepositLimitGoesToSuspense() {
+        BankAccountDatabase database = new BankAccountDatabase();
+        BankAccount payer = new BankAccount(1000.0);
+        BankAccount recipient = new BankAccount(0.0);
+        database.addBankAccount(payer);
+        database.addBankAccount(recipient);
+        recipient.setMaxDepositLimit(50.0);
+        payer.scheduleRecurringPayment(80.0, "Too large", today, RecurringPayment.PaymentFrequency.MONTHLY,
+            String.valueOf(recipient.getAccountNumber()));
+
+        assertEquals(1, payer.processRecurringPayments());
+        assertEquals(0.0, recipient.getCurrentBalance(), 0.0);
+        assertEquals(8000, database.getSuspenseQueue().getTotalCents());
+    }
+
+    @Test
+    public void testSettledHistorySurvivesRecovery() throws IOException {
+        Path snapshots = folder.getRoot().toPath().resolve("snapshots");
+        Path journalDirectory = folder.getRoot().toPath().resolve("journal");
+        int landlordNumber;
+        List<String> settled = new ArrayList<>();
+        try (Journal journal = new Journal(journalDirectory, Journal.FsyncPolicy.GROUP_COMMIT)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount landlord = new BankAccount(0.0);
+            database.addBankAccount(landlord);
+            landlordNumber = landlord.getAccountNumber();
+            String recipient = String.valueOf(landlordNumber);
+            for (int i = 0; i < 3; i++) {
+                BankAccount tenant = new BankAccount(100.0);
+                database.addBankAccount(tenant);
+                tenant.scheduleRecurringPayment(1.0, "Parking " + i, new Date(today.getTime() + DAY),
+                    RecurringPayment.PaymentFrequency.MONTHLY, recipient);
+                tenant.scheduleRecurringPayment(10.0 + i, "Rent " + i, today, RecurringPayment.PaymentFrequency.MONTHLY, recipient);
+            }
+            assertEquals(3, database.getRecurringPaymentScheduler().processDue(new Date(today.getTime() + 1000)));
+            for (Transaction transaction : landlord.getTransactionHistory()) {
+                settled.add(transaction.getDescription() + " " + transaction.getBalanceAfterTransactionCents());
+            }
+        }
+
+        BankAccountDatabase recovered = Snapshot.recover(snapshots, journalDirectory, Journal.FsyncPolicy.GROUP_COMMIT);
+        try {
+            List<String> history = new ArrayList<>();
+            for (Transaction transaction : recovered.getBankAccount(landlordNumber).getTransactionHistory()) {
+                history.add(transaction.getDescription() + " " + transaction.getBalanceAfterTransactionCents());
+            }
+            assertEquals(3, history.size());
+            assertEquals(settled, history);
+            assertTrue(history.get(2).contains("Rent 2"));
+        } finally {
+            recovered.getJournal().close();
+        }
+    }
+
+    @Test
+    public void testSettlementSurvivesRecovery() throws IOException {
+        Path snapshots = folder.getRoot().toPath().resolve("snapshots");
+        Path journalDirectory = folder.getRoot().toPath().resolve("journal");
+        int recipientNumber;
+        try (Journal journal = new Journal(journalDirectory, Journal.FsyncPolicy.PER_OP)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount payer = new BankAccount(100.0);
+            BankAccount recipient = new BankAccount(0.0);
+            database.addBankAccount(payer);
+            database.addBankAccount(recipient);
+            recipientNumber = recipient.getAccountNumber();
+            payer.scheduleRecurringPayment(10.0, "Known", today, RecurringPayment.PaymentFrequency.MONTHLY,
+                String.valueOf(recipientNumber));
+            payer.scheduleRecurringPayment(5.0, "Unknown", new Date(today.getTime() - DAY),
+                RecurringPayment.PaymentFrequency.MONTHLY, "nobody");
+            assertEquals(2, payer.processRecurringPayments());
+            Snapshot.write(database, snapshots);
+            payer.scheduleRecurringPayment(1.0, "After snapshot", today, RecurringPayment.PaymentFrequency.MONTHLY, "nobody");
+            assertEquals(1, payer.processRecurringPayments());
+        }
+
+        BankAccountDatabase recovered = Snapshot.recover(snapshots, journalDirectory, Journal.FsyncPolicy.PER_OP);
+        try {
+            assertEquals(10.0, recovered.getAccountBalance(recipientNumber), 0.0);
+            assertEquals(2, recovered.getSuspenseQueue().size());
+            assertEquals(600, recovered.getSuspenseQueue().getTotalCents());
+        } finally {
+            recovered.getJournal().close();
+        }
+    }
+}
@@ -11,11 +11,13 @@ import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import bankingapp.AccountType;
 import bankingapp.BankAccount;
+import bankingapp.BankClock;
 import bankingapp.RecurringPayment;
 import bankingapp.Transaction;
 import bankingapp.TransactionType;
@@ -28,11 +30,17 @@ import bankingapp.TransactionType;
  * @author Jerome Hsing
  */
 public class RecurringPaymentTest {
+    private static final long TEN_HOURS = 10L * 60 * 60 * 1000;
+
     private BankAccount account;
     private Date startDate;
+    private BankClock.VirtualClock clock;
 
     @Before
     public void setUp() {
+        clock = BankClock.virtual(System.currentTimeMillis());
+        BankClock.setCurrent(clock);
+
         // Explicitly create a CHECKING account to ensure withdrawals work
         account = new BankAccount(1000.0, AccountType.CHECKING);
         
@@ -40,6 +48,11 @@ public class RecurringPaymentTest {
         startDate = getDate(2025, Calendar.APRIL, 22);
     }
 
+    @After
+    public void tearDown() {
+        BankClock.setCurrent(BankClock.system());
+    }
+
     @Test
     public void testScheduleRecurringPayment() {
         account.scheduleRecurringPayment(
@@ -118,7 +131,7 @@ public class RecurringPaymentTest {
     
     @Test
     public void testInsufficientFundsForRecurringPayment() {
-        System.setProperty("test.current.time", "2020-01-01T10:00:00"); // Set current time for test
+        clock.set(getDate(2020, Calendar.JANUARY, 1).getTime() + TEN_HOURS); // Set current time for test
         BankAccount account = new BankAccount(100.0, AccountType.CHECKING); // Start with 100
         Date startDate = getDate(2020, Calendar.JANUARY, 1);
         account.scheduleRecurringPayment(
@@ -131,19 +144,17 @@ public class RecurringPaymentTest {
         assertEquals("Balance after first payment", 25.0, account.getCurrentBalance(), 0.01);
 
         // Set time forward to make next payment due
-        System.setProperty("test.current.time", "2020-02-01T10:00:00"); 
+        clock.set(getDate(2020, Calendar.FEBRUARY, 1).getTime() + TEN_HOURS);
         
         // Process second payment - should fail (insufficient funds)
         int processed2 = account.processRecurringPayments();
         assertEquals("Second payment should not process due to insufficient funds", 0, processed2);
         assertEquals("Balance should remain unchanged after failed payment", 25.0, account.getCurrentBalance(), 0.01);
-
-        System.clearProperty("test.current.time");
     }
     
     @Test
     public void testPaymentCancellation() {
-        System.setProperty("test.current.time", "2020-01-01T10:00:00");
+        clock.set(getDate(2020, Calendar.JANUARY, 1).getTime() + TEN_HOURS);
         BankAccount account = new BankAccount(200.0, AccountType.CHECKING);
         Date startDate = getDate(2020, Calendar.JANUARY, 1);
         account.scheduleRecurringPayment(
@@ -158,21 +169,19 @@ public class RecurringPaymentTest {
         account.cancelRecurringPayment(account.getRecurringPayments().get(0));
 
         // Set time forward to make next payment due
-        System.setProperty("test.current.time", "2020-02-01T10:00:00"); 
+        clock.set(getDate(2020, Calendar.FEBRUARY, 1).getTime() + TEN_HOURS);
         
         // Process payments again - the cancelled one should not run
         int processedCount = account.processRecurringPayments();
         assertEquals("No payment should process after cancellation", 0, processedCount);
         assertEquals("Balance should remain unchanged after cancellation", 150.0, account.getCurrentBalance(), 0.01);
-
-        System.clearProperty("test.current.time");
     }
 
     @Test
     public void testNextPaymentDateCalculation() {
         // Set current time to Jan 1st, 2020
         long jan1_2020_millis = getDate(2020, Calendar.JANUARY, 1).getTime();
-        System.setProperty("test.current.time", String.valueOf(jan1_2020_millis));
+        clock.set(jan1_2020_millis);
         
         BankAccount account = new BankAccount(500.0, AccountType.CHECKING);
         Date startDate = getDate(2020, Calendar.JANUARY, 1); // Start Jan 1st
@@ -191,15 +200,13 @@ public class RecurringPaymentTest {
         assertEquals("Next payment year should be 2020", 2020, actualCal.get(Calendar.YEAR));
         assertEquals("Next payment month should be January", Calendar.JANUARY, actualCal.get(Calendar.MONTH)); 
         assertEquals("Next payment day should be 2nd", 2, actualCal.get(Calendar.DAY_OF_MONTH));
-
-        System.clearProperty("test.current.time");
     }
 
     @Test
     public void testIsPaymentDue() {
         // Set current time for test to Jan 15th, 2020
         long jan15_2020_millis = getDate(2020, Calendar.JANUARY, 15).getTime();
-        System.setProperty("test.current.time", String.valueOf(jan15_2020_millis));
+        clock.set(jan15_2020_millis);
         
         BankAccount account = new BankAccount(500.0, AccountType.CHECKING);
         Calendar testNow = account.getCurrentCalendar();
@@ -228,9 +235,6 @@ public class RecurringPaymentTest {
         RecurringPayment inactivePayment = account.getRecurringPayments().get(3);
         inactivePayment.setActive(false);
         assertFalse("Inactive payment should not be due", inactivePayment.isPaymentDue(testNow));
-
-        // Clean up system property
-        System.clearProperty("test.current.time");
     }
 
     @Test
@@ -252,13 +256,11 @@ public class RecurringPaymentTest {
         
         // Set time forward to when payment *would* have been due
         long feb1_2020_millis = getDate(2020, Calendar.FEBRUARY, 1).getTime();
-        System.setProperty("test.current.time", String.valueOf(feb1_2020_millis)); 
+        clock.set(feb1_2020_millis);
         
         // Process payments - should not process any since payment is cancelled
         int processed = account.processRecurringPayments();
         assertEquals("Should not process any payments", 0, processed);
-        
-        System.clearProperty("test.current.time");
     }
 
     @Test
@@ -274,7 +276,7 @@ public class RecurringPaymentTest {
         
         // Set time to start date
         long jan1_2020_millis = getDate(2020, Calendar.JANUARY, 1).getTime();
-        System.setProperty("test.current.time", String.valueOf(jan1_2020_millis));
+        clock.set(jan1_2020_millis);
         
         // Process payments - should process one payment
         int processed = lowBalanceAccount.processRecurringPayments();
@@ -283,14 +285,102 @@ public class RecurringPaymentTest {
         
         // Set time forward to make next payment due
         long feb1_2020_millis = getDate(2020, Calendar.FEBRUARY, 1).getTime();
-        System.setProperty("test.current.time", String.valueOf(feb1_2020_millis)); 
+        clock.set(feb1_2020_millis);
         
         // Process payments - should not process any due to insufficient funds
         processed = lowBalanceAccount.processRecurringPayments();
         assertEquals("Should not process any payments", 0, processed);
         assertEquals("Balance should still be 0", 0.0, lowBalanceAccount.getCurrentBalance(), 0.001);
-        
-        System.clearProperty("test.current.time");
+    }
+
+    @Test
+    public void testEpochDayDates() {
+        Date jan31 = getDate(2020, Calendar.JANUARY, 31);
+        long day = RecurringPayment.toEpochDay(jan31.getTime());
+        assertEquals(jan31.getTime(), RecurringPayment.toMillis(day));
+        assertEquals(day, RecurringPayment.toEpochDay(jan31.getTime() + 23L * 60 * 60 * 1000)); // Same day at 11pm
+
+        // Month-end dates clamp like Calendar.add and stay clamped
+        RecurringPayment monthly = new RecurringPayment(10.0, "Month end", jan31,
+            RecurringPayment.PaymentFrequency.MONTHLY, "monthEnd", account);
+        monthly.updateNextPaymentDate(day);
+        assertEquals(getDate(2020, Calendar.FEBRUARY, 29), monthly.getNextPaymentDate());
+        monthly.updateNextPaymentDate(day + 40);
+        assertEquals(getDate(2020, Calendar.MARCH, 29), monthly.getNextPaymentDate());
+
+        // Daily and weekly schedules catch up past 'today' in one step
+        RecurringPayment weekly = new RecurringPayment(10.0, "Weekly", jan31,
+            RecurringPayment.PaymentFrequency.WEEKLY, "weekly", account);
+        weekly.updateNextPaymentDate(day + 15);
+        assertEquals(day + 21, weekly.getNextPaymentDay());
+        RecurringPayment daily = new RecurringPayment(10.0, "Daily", jan31,
+            RecurringPayment.PaymentFrequency.DAILY, "daily", account);
+        daily.updateNextPaymentDate(day + 15);
+        assertEquals(day + 16, daily.getNextPaymentDay());
+        assertFalse(daily.isPaymentDue(day + 15));
+        assertTrue(daily.isPaymentDue(day + 16));
+    }
+
+    @Test
+    public void testDueOccurrencesWithoutIterating() {
+        long start = RecurringPayment.toEpochDay(getDate(2015, Calendar.JANUARY, 31).getTime());
+        long today = RecurringPayment.toEpochDay(getDate(2025, Calendar.JANUARY, 30).getTime());
+
+        RecurringPayment daily = new RecurringPayment(1.0, "Daily", getDate(2015, Calendar.JANUARY, 31),
+            RecurringPayment.PaymentFrequency.DAILY, "daily", account);
+        assertEquals(today - start + 1, daily.getDueOccurrences(today));
+        assertEquals(0, daily.getDueOccurrences(start - 1));
+        daily.updateNextPaymentDate(today);
+        assertEquals(today + 1, daily.getNextPaymentDay());
+
+        // Jan 31 clamps to Feb 28 in 2015 and stays on the 28th, so Jan 28 2025 is
+        // the 121st occurrence and the next one is Feb 28
+        RecurringPayment monthly = new RecurringPayment(1.0, "Monthly", getDate(2015, Calendar.JANUARY, 31),
+            RecurringPayment.PaymentFrequency.MONTHLY, "monthly", account);
+        assertEquals(121, monthly.getDueOccurrences(today));
+        monthly.updateNextPaymentDate(today);
+        assertEquals(getDate(2025, Calendar.FEBRUARY, 28), monthly.getNextPaymentDate());
+
+        RecurringPayment yearly = new RecurringPayment(1.0, "Leap day", getDate(2016, Calendar.FEBRUARY, 29),
+            RecurringPayment.PaymentFrequency.YEARLY, "yearly", account);
+        assertEquals(9, yearly.getDueOccurrences(today)); // 2016 to 2024
+        yearly.updateNextPaymentDate(today);
+        assertEquals(getDate(2025, Calendar.FEBRUARY, 28), yearly.getNextPaymentDate());
+    }
+
+    @Test
+    public void testCatchUpPolicies() {
+        long feb3_2020_millis = getDate(2020, Calendar.FEBRUARY, 3).getTime();
+        clock.set(feb3_2020_millis);
+
+        BankAccount skipping = new BankAccount(500.0, AccountType.CHECKING);
+        skipping.scheduleRecurringPayment(10.0, "Skip", getDate(2020, Calendar.JANUARY, 1),
+            RecurringPayment.PaymentFrequency.WEEKLY, "weekly1");
+        assertEquals(1, skipping.processRecurringPayments());
+        assertEquals(490.0, skipping.getCurrentBalance(), 0.01);
+
+        // Jan 1, 8, 15, 22, 29 were all missed
+        BankAccount posting = new BankAccount(500.0, AccountType.CHECKING);
+        RecurringPayment payment = posting.scheduleRecurringPayment(10.0, "Post", getDate(2020, Calendar.JANUARY, 1),
+            RecurringPayment.PaymentFrequency.WEEKLY, "weekly2");
+        payment.setCatchUpPolicy(RecurringPayment.CatchUpPolicy.POST_MISSED);
+        assertEquals(1, posting.processRecurringPayments());
+        assertEquals(450.0, posting.getCurrentBalance(), 0.01);
+        assertEquals(getDate(2020, Calendar.FEBRUARY, 5), payment.getNextPaymentDate());
+
+        List<Transaction> payments = posting.getTransactionHistoryByType(TransactionType.RECURRING_PAYMENT);
+        assertEquals(5, payments.size());
+        assertEquals(490.0, payments.get(0).getBalanceAfterTransaction(), 0.01);
+        assertEquals(450.0, payments.get(4).getBalanceAfterTransaction(), 0.01);
+
+        // Not enough for every missed payment: nothing is taken
+        BankAccount poor = new BankAccount(30.0, AccountType.CHECKING);
+        RecurringPayment unaffordable = poor.scheduleRecurringPayment(10.0, "Post", getDate(2020, Calendar.JANUARY, 1),
+            RecurringPayment.PaymentFrequency.WEEKLY, "weekly3");
+        unaffordable.setCatchUpPolicy(RecurringPayment.CatchUpPolicy.POST_MISSED);
+        assertEquals(0, poor.processRecurringPayments());
+        assertEquals(30.0, poor.getCurrentBalance(), 0.01);
+        assertEquals(getDate(2020, Calendar.JANUARY, 1), unaffordable.getNextPaymentDate());
     }
 
     // Helper to create Date objects easily
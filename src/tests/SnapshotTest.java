@@ -0,0 +1,297 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bankingapp.AccountHolder;
+import bankingapp.AccountType;
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.BusinessAccount;
+import bankingapp.Journal;
+import bankingapp.RecurringPayment;
+import bankingapp.Snapshot;
+import bankingapp.Transaction;
+import bankingapp.TransactionType;
+
+public class SnapshotTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecoverFromJournalOnly() throws IOException {
+        Path snapshots = folder.getRoot().toPath().resolve("snapshots");
+        Path journalDirectory = folder.getRoot().toPath().resolve("journal");
+        int sourceNumber;
+        int destinationNumber;
+        try (Journal journal = new Journal(journalDirectory, Journal.FsyncPolicy.PER_OP)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount source = new BankAccount(100.0);
+            BankAccount destination = new BankAccount(0.0, AccountType.SAVINGS);
+            database.addBankAccount(source);
+            database.addBankAccount(destination);
+            sourceNumber = source.getAccountNumber();
+            destinationNumber = destination.getAccountNumber();
+            source.deposit(50.0);
+            source.transfer(destination, 25.0);
+            source.setMaxDepositLimit(500.0);
+            database.freezeAccount(destinationNumber);
+        }
+
+        BankAccountDatabase recovered = Snapshot.recover(snapshots, journalDirectory, Journal.FsyncPolicy.PER_OP);
+        try {
+            assertEquals(125.0, recovered.getAccountBalance(sourceNumber), 0.0);
+            assertEquals(25.0, recovered.getAccountBalance(destinationNumber), 0.0);
+            assertEquals(500.0, recovered.getBankAccount(sourceNumber).getMaxDepositLimit(), 0.0);
+            assertEquals(AccountType.SAVINGS, recovered.getBankAccount(destinationNumber).getAccountType());
+            assertFalse(recovered.isAccountActive(destinationNumber));
+            assertTrue(recovered.isAccountActive(sourceNumber));
+        } finally {
+            recovered.getJournal().close();
+        }
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws IOException {
+        Path snapshots = folder.getRoot().toPath();
+        BankAccountDatabase database = new BankAccountDatabase();
+        BankAccount personal = new BankAccount(40.0);
+        BusinessAccount business = new BusinessAccount(2000.0);
+        database.addBankAccount(personal);
+        database.addBankAccount(business);
+        Date future = new Date(System.currentTimeMillis() + 10 * DAY);
+        personal.scheduleTransfer(business, 5.0, future, "Rent");
+        RecurringPayment payment = business.scheduleRecurringPayment(12.5, "Utilities", future,
+            RecurringPayment.PaymentFrequency.MONTHLY, "ACC-1");
+
+        AccountHolder holder = new AccountHolder("Smith", "01/01/1990", 123456789, 42);
+        holder.setPassword("secret");
+        holder.addBankAccount(holder, personal.getAccountNumber());
+        database.addAccountHolder(holder);
+
+        Path written = Snapshot.write(database, snapshots, 4);
+        assertEquals(written, Snapshot.latest(snapshots));
+        BankAccountDatabase loaded = Snapshot.load(written);
+
+        BankAccount loadedPersonal = loaded.getBankAccount(personal.getAccountNumber());
+        BankAccount loadedBusiness = loaded.getBankAccount(business.getAccountNumber());
+        assertEquals(4000, loadedPersonal.getCurrentBalanceCents());
+        assertTrue(loadedBusiness instanceof BusinessAccount);
+        assertEquals(5000.0, loadedBusiness.getMaxWithdrawalLimit(), 0.0);
+
+        assertEquals(1, loadedPersonal.getScheduledTransfers().size());
+        assertEquals(500, loadedPersonal.getScheduledTransfers().get(0).getAmountCents());
+        assertEquals(future, loadedPersonal.getScheduledTransfers().get(0).getScheduledDate());
+
+        RecurringPayment loadedPayment = loadedBusiness.getRecurringPayments().get(0);
+        assertEquals(1250, loadedPayment.getAmountCents());
+        assertEquals(payment.getNextPaymentDate(), loadedPayment.getNextPaymentDate());
+        assertEquals("ACC-1", loadedPayment.getRecipientAccountId());
+
+        AccountHolder loadedHolder = loaded.getAccountHolder(holder.hashCode());
+        assertNotNull(loadedHolder);
+        assertEquals("Smith", loadedHolder.getLastname());
+        assertTrue(loadedHolder.isPasswordValid("secret"));
+        assertTrue(loadedHolder.findBankAccount(loadedHolder, personal.getAccountNumber()));
+    }
+
+    @Test
+    public void testTextRoundTripsInAnyScript() throws IOException {
+        Path snapshots = folder.getRoot().toPath();
+        BankAccountDatabase database = new BankAccountDatabase();
+        BankAccount account = new BankAccount(40.0);
+        BankAccount other = new BankAccount();
+        database.addBankAccount(account);
+        database.addBankAccount(other);
+        Date today = new Date(RecurringPayment.toMillis(RecurringPayment.toEpochDay(System.currentTimeMillis())));
+        account.scheduleRecurringPayment(1.0, "Loyer \u00e9t\u00e9 \u20ac", today, RecurringPayment.PaymentFrequency.MONTHLY,
+            "nobody");
+        assertEquals(1, account.processRecurringPayments());
+        account.scheduleTransfer(other, 5.0, new Date(System.currentTimeMillis() + DAY), "Caf\u00e9 \ud83d\ude00");
+        AccountHolder holder = new AccountHolder("M\u00fcller", "01/01/1990", 123456789, 42);
+        database.addAccountHolder(holder);
+
+        BankAccountDatabase loaded = Snapshot.load(Snapshot.write(database, snapshots, 2));
+        BankAccount loadedAccount = loaded.getBankAccount(account.getAccountNumber());
+        assertEquals(account.getTransactionHistory().toString(), loadedAccount.getTransactionHistory().toString());
+        assertEquals("Caf\u00e9 \ud83d\ude00", loadedAccount.getScheduledTransfers().get(0).getDescription());
+        assertEquals("M\u00fcller", loaded.getAccountHolder(holder.hashCode()).getLastname());
+    }
+
+    @Test
+    public void testRecoverReplaysOnlyTheTail() throws IOException {
+        Path snapshots = folder.getRoot().toPath().resolve("snapshots");
+        Path journalDirectory = folder.getRoot().toPath().resolve("journal");
+        int number;
+        try (Journal journal = new Journal(journalDirectory, Journal.FsyncPolicy.GROUP_COMMIT)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount account = new BankAccount(10.0);
+            database.addBankAccount(account);
+            number = account.getAccountNumber();
+            account.depositCents(500);
+            Snapshot.write(database, snapshots);
+            account.depositCents(250); // Only this record is replayed
+            account.withdrawCents(100, true);
+        }
+
+        BankAccountDatabase recovered = Snapshot.recover(snapshots, journalDirectory, Journal.FsyncPolicy.GROUP_COMMIT);
+        try {
+            BankAccount account = recovered.getBankAccount(number);
+            assertEquals(1000 + 500 + 250 - 100, account.getCurrentBalanceCents());
+            assertEquals(4, account.getTransactionCount()); // Two entries from the snapshot, two replayed
+
+            // New mutations continue the journal
+            account.depositCents(1);
+            assertEquals(5, recovered.getJournal().getLastSequence());
+        } finally {
+            recovered.getJournal().close();
+        }
+    }
+
+    @Test
+    public void testRecoverKeepsHistoryFromBeforeTheSnapshot() throws IOException {
+        Path snapshots = folder.getRoot().toPath().resolve("snapshots");
+        Path journalDirectory = folder.getRoot().toPath().resolve("journal");
+        int sourceNumber;
+        int destinationNumber;
+        try (Journal journal = new Journal(journalDirectory, Journal.FsyncPolicy.GROUP_COMMIT)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount source = new BankAccount(100.0);
+            BankAccount destination = new BankAccount();
+            database.addBankAccount(source);
+            database.addBankAccount(destination);
+            sourceNumber = source.getAccountNumber();
+            destinationNumber = destination.getAccountNumber();
+            source.transfer(destination, 30.0);
+            Snapshot.write(database, snapshots);
+            source.withdraw(20.0);
+            Snapshot.write(database, snapshots); // Built on the first snapshot
+            source.deposit(5.0);
+        }
+
+        BankAccountDatabase recovered = Snapshot.recover(snapshots, journalDirectory, Journal.FsyncPolicy.GROUP_COMMIT);
+        try {
+            List<Transaction> history = recovered.getBankAccount(sourceNumber).getTransactionHistory();
+            assertEquals(5, history.size());
+            assertEquals("Initial deposit", history.get(0).getDescription());
+            assertEquals(TransactionType.WITHDRAWAL, history.get(1).getType());
+            assertEquals(TransactionType.TRANSFER, history.get(2).getType());
+            assertEquals(3000, history.get(2).getAmountCents());
+            assertEquals(5000, history.get(3).getBalanceAfterTransactionCents());
+            assertEquals(5500, history.get(4).getBalanceAfterTransactionCents());
+
+            List<Transaction> received = recovered.getBankAccount(destinationNumber).getTransactionHistory();
+            assertEquals(1, received.size());
+            assertEquals(3000, received.get(0).getBalanceAfterTransactionCents());
+        } finally {
+            recovered.getJournal().close();
+        }
+    }
+
+    @Test
+    public void testSnapshotWhileMutating() throws Exception {
+        Path snapshots = folder.getRoot().toPath().resolve("snapshots");
+        Path journalDirectory = folder.getRoot().toPath().resolve("journal");
+        int accounts = 8;
+        int deposits = 20_000;
+        int[] numbers = new int[accounts];
+        try (Journal journal = new Journal(journalDirectory, Journal.FsyncPolicy.INTERVAL)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount[] all = new BankAccount[accounts];
+            for (int i = 0; i < accounts; i++) {
+                all[i] = new BankAccount();
+                database.addBankAccount(all[i]);
+                numbers[i] = all[i].getAccountNumber();
+            }
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < deposits; i++) {
+                    all[i % accounts].depositCents(1);
+                }
+            });
+            writer.start();
+            while (writer.isAlive()) {
+                Snapshot.write(database, snapshots, 2);
+            }
+            writer.join();
+        }
+
+        BankAccountDatabase recovered = Snapshot.recover(snapshots, journalDirectory, Journal.FsyncPolicy.INTERVAL);
+        try {
+            for (int number : numbers) {
+                BankAccount account = recovered.getBankAccount(number);
+                assertEquals(deposits / accounts, account.getCurrentBalanceCents());
+                assertEquals(deposits / accounts, account.getTransactionCount());
+            }
+        } finally {
+            recovered.getJournal().close();
+        }
+    }
+
+    @Test
+    public void testCatchUpPoliciesAreReplayed() throws IOException {
+        Path snapshots = folder.getRoot().toPath().resolve("snapshots");
+        Path journalDirectory = folder.getRoot().toPath().resolve("journal");
+        Date start = new Date(System.currentTimeMillis() + 10 * DAY);
+        int number;
+        try (Journal journal = new Journal(journalDirectory, Journal.FsyncPolicy.GROUP_COMMIT)) {
+            BankAccountDatabase database = new BankAccountDatabase(journal);
+            BankAccount account = new BankAccount(100.0);
+            database.addBankAccount(account);
+            number = account.getAccountNumber();
+            account.scheduleRecurringPayment(1.0, "Before", start, RecurringPayment.PaymentFrequency.DAILY, "ACC-1")
+                .setCatchUpPolicy(RecurringPayment.CatchUpPolicy.POST_MISSED);
+            account.scheduleRecurringPayment(2.0, "Reverted", start, RecurringPayment.PaymentFrequency.DAILY, "ACC-2")
+                .setCatchUpPolicy(RecurringPayment.CatchUpPolicy.POST_MISSED);
+        }
+
+        // From the journal alone
+        BankAccountDatabase recovered = Snapshot.recover(snapshots, journalDirectory, Journal.FsyncPolicy.GROUP_COMMIT);
+        try {
+            BankAccount account = recovered.getBankAccount(number);
+            assertEquals(RecurringPayment.CatchUpPolicy.POST_MISSED, account.getRecurringPayments().get(0).getCatchUpPolicy());
+            assertEquals(RecurringPayment.CatchUpPolicy.POST_MISSED, account.getRecurringPayments().get(1).getCatchUpPolicy());
+
+            // Changes after a snapshot, to a payment in it and to one created later
+            Snapshot.write(recovered, snapshots);
+            account.getRecurringPayments().get(1).setCatchUpPolicy(RecurringPayment.CatchUpPolicy.SKIP_MISSED);
+            account.scheduleRecurringPayment(3.0, "After", start, RecurringPayment.PaymentFrequency.DAILY, "ACC-3")
+                .setCatchUpPolicy(RecurringPayment.CatchUpPolicy.POST_MISSED);
+        } finally {
+            recovered.getJournal().close();
+        }
+
+        recovered = Snapshot.recover(snapshots, journalDirectory, Journal.FsyncPolicy.GROUP_COMMIT);
+        try {
+            BankAccount account = recovered.getBankAccount(number);
+            assertEquals(3, account.getRecurringPayments().size());
+            assertEquals(RecurringPayment.CatchUpPolicy.POST_MISSED, account.getRecurringPayments().get(0).getCatchUpPolicy());
+            assertEquals(RecurringPayment.CatchUpPolicy.SKIP_MISSED, account.getRecurringPayments().get(1).getCatchUpPolicy());
+            assertEquals(RecurringPayment.CatchUpPolicy.POST_MISSED, account.getRecurringPayments().get(2).getCatchUpPolicy());
+        } finally {
+            recovered.getJournal().close();
+        }
+    }
+
+    @Test
+    public void testIncompleteSnapshotIsIgnored() throws IOException {
+        Path snapshots = folder.getRoot().toPath();
+        folder.newFolder("snapshot-0000000000000007.tmp");
+        folder.newFolder("snapshot-0000000000000009"); // No manifest
+        assertNull(Snapshot.latest(snapshots));
+    }
+}
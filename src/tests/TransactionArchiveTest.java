@@ -0,0 +1,205 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.StreamSupport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.BankClock;
+import bankingapp.DescriptionDictionary;
+import bankingapp.Transaction;
+import bankingapp.TransactionArchive;
+import bankingapp.TransactionPage;
+import bankingapp.TransactionType;
+
+public class TransactionArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BankClock.VirtualClock clock;
+    private TransactionArchive archive;
+
+    @Before
+    public void setUp() throws IOException {
+        clock = BankClock.virtual(1_600_000_000_000L);
+        BankClock.setCurrent(clock);
+        Path directory = folder.getRoot().toPath().resolve("archive");
+        archive = new TransactionArchive(directory, 20, 64 << 10); // Small segments, so blocks span several
+    }
+
+    @After
+    public void tearDown() {
+        archive.close();
+        BankClock.setCurrent(BankClock.system());
+    }
+
+    // Runs the same mix of operations on any account, at the same times
+    private void run(BankAccount account, BankAccount destination, int operations) {
+        clock.set(1_600_000_000_000L);
+        for (int i = 0; i < operations; i++) {
+            clock.advance(1000);
+            switch (i % 5) {
+                case 0:
+                    account.depositCents(100 + i);
+                    break;
+                case 1:
+                    account.withdraw(0.5);
+                    break;
+                case 2:
+                    account.transferCents(destination, 50);
+                    break;
+                case 3:
+                    account.deposit(12.34);
+                    break;
+                default:
+                    account.withdraw(900.0); // Fails until enough has been deposited
+                    break;
+            }
+        }
+    }
+
+    private static List<String> strings(List<Transaction> transactions) {
+        List<String> strings = new ArrayList<>();
+        for (Transaction transaction : transactions) {
+            strings.add(transaction.toString());
+        }
+        return strings;
+    }
+
+    private static List<String> pages(BankAccount account, int pageSize, TransactionPage.Order order) {
+        List<Transaction> transactions = new ArrayList<>();
+        long cursor = TransactionPage.FIRST_PAGE;
+        TransactionPage page;
+        do {
+            page = account.getTransactionPage(cursor, pageSize, order);
+            transactions.addAll(page.getTransactions());
+            cursor = page.getNextCursor();
+        } while (page.hasMore());
+        return strings(transactions);
+    }
+
+    @Test
+    public void testTieredHistoryReadsLikeTheHeapHistory() {
+        BankAccountDatabase database = new BankAccountDatabase();
+        database.setTransactionArchive(archive);
+        BankAccount destination = new BankAccount();
+        BankAccount tiered = new BankAccount(100);
+        database.addBankAccount(destination);
+        database.addBankAccount(tiered);
+        BankAccount heap = new BankAccount(100);
+
+        run(tiered, destination, 3000);
+        run(heap, destination, 3000);
+        assertTrue(archive.getArchivedBytes() > 0);
+        assertTrue(archive.getSegmentCount() > 1);
+
+        assertEquals(heap.getTransactionCount(), tiered.getTransactionCount());
+        assertEquals(strings(heap.getTransactionHistory()), strings(tiered.getTransactionHistory()));
+        for (TransactionType type : TransactionType.values()) {
+            assertEquals(heap.getTransactionCountByType(type), tiered.getTransactionCountByType(type));
+            assertEquals(strings(heap.getTransactionHistoryByType(type)), strings(tiered.getTransactionHistoryByType(type)));
+        }
+        assertEquals(pages(heap, 7, TransactionPage.Order.NEWEST_FIRST), pages(tiered, 7, TransactionPage.Order.NEWEST_FIRST));
+        assertEquals(pages(heap, 50, TransactionPage.Order.OLDEST_FIRST), pages(tiered, 50, TransactionPage.Order.OLDEST_FIRST));
+        assertEquals(heap.getTransactionCount(), StreamSupport.stream(tiered.transactionSpliterator(), true).count());
+
+        ByteBuffer heapBytes = ByteBuffer.allocate(1 << 20);
+        ByteBuffer tieredBytes = ByteBuffer.allocate(1 << 20);
+        assertEquals(heap.getTransactionCount(), heap.encodeTransactionHistory(heapBytes, 0, new DescriptionDictionary()));
+        tiered.encodeTransactionHistory(tieredBytes, 0, new DescriptionDictionary());
+        heapBytes.flip();
+        tieredBytes.flip();
+        assertEquals(heapBytes, tieredBytes);
+    }
+
+    @Test
+    public void testCursorsStayValidWhileEntriesMoveToTheArchive() {
+        BankAccountDatabase database = new BankAccountDatabase();
+        database.setTransactionArchive(archive);
+        BankAccount account = new BankAccount();
+        database.addBankAccount(account);
+        for (int i = 1; i <= 30; i++) {
+            account.depositCents(i);
+        }
+        TransactionPage first = account.getTransactionPage(TransactionPage.FIRST_PAGE, 10, TransactionPage.Order.NEWEST_FIRST);
+        assertEquals(30, first.getTransactions().get(0).getAmountCents());
+
+        for (int i = 31; i <= 500; i++) {
+            account.depositCents(i); // Moves the first page's older neighbours to the archive
+        }
+        TransactionPage second = account.getTransactionPage(first.getNextCursor(), 10, TransactionPage.Order.NEWEST_FIRST);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(20 - i, second.getTransactions().get(i).getAmountCents());
+        }
+
+        account.clearTransactionHistory();
+        account.depositCents(7);
+        List<Transaction> history = account.getTransactionHistory();
+        assertEquals(2, history.size()); // The clear marker and the deposit
+        assertEquals(7, history.get(1).getAmountCents());
+    }
+
+    @Test
+    public void testSettingTheArchiveMovesExistingHistory() {
+        BankAccountDatabase database = new BankAccountDatabase();
+        BankAccount destination = new BankAccount();
+        BankAccount account = new BankAccount(100);
+        database.addBankAccount(destination);
+        database.addBankAccount(account);
+        run(account, destination, 1000);
+        List<String> history = strings(account.getTransactionHistory());
+        assertEquals(0, archive.getArchivedBytes());
+
+        database.setTransactionArchive(archive);
+        assertSame(archive, database.getTransactionArchive());
+        assertTrue(archive.getArchivedBytes() > 0);
+        assertEquals(history, strings(account.getTransactionHistory()));
+
+        database.setTransactionArchive(null);
+        assertNull(database.getTransactionArchive());
+        assertEquals(history, strings(account.getTransactionHistory()));
+        assertFalse(history.isEmpty());
+    }
+
+    @Test
+    public void testFailedAppendsAreCountedAndKeptOnTheHeap() {
+        BankAccountDatabase database = new BankAccountDatabase();
+        database.setTransactionArchive(archive);
+        BankAccount destination = new BankAccount();
+        BankAccount account = new BankAccount(100);
+        database.addBankAccount(destination);
+        database.addBankAccount(account);
+        BankAccount heap = new BankAccount(100);
+        run(account, destination, 200);
+        run(heap, destination, 200);
+        assertEquals(0, archive.getFailedBlocks());
+
+        archive.close();
+        run(account, destination, 200);
+        run(heap, destination, 200);
+        assertTrue(archive.getFailedBlocks() > 0);
+        assertEquals(strings(heap.getTransactionHistory()), strings(account.getTransactionHistory()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHotEntriesMustBePositive() throws IOException {
+        new TransactionArchive(folder.getRoot().toPath().resolve("invalid"), 0, TransactionArchive.DEFAULT_SEGMENT_SIZE);
+    }
+}
@@ -0,0 +1,178 @@
+package tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import bankingapp.AccountType;
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.DescriptionDictionary;
+import bankingapp.RecurringPayment;
+import bankingapp.ScheduledTransfer;
+import bankingapp.Transaction;
+import bankingapp.TransactionCodec;
+import bankingapp.TransactionType;
+
+public class TransactionCodecTest {
+
+    @Test
+    public void testVarints() {
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        long[] values = { 0, 1, -1, 63, -64, 64, 12345, -12345, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (long value : values) {
+            TransactionCodec.writeSignedVarLong(buffer, value);
+        }
+        TransactionCodec.writeVarLong(buffer, 127);
+        int smallEnd = buffer.position();
+        TransactionCodec.writeVarLong(buffer, 128);
+        assertEquals(2, buffer.position() - smallEnd);
+
+        buffer.flip();
+        for (long value : values) {
+            assertEquals(value, TransactionCodec.readSignedVarLong(buffer));
+        }
+        assertEquals(127, TransactionCodec.readVarLong(buffer));
+        assertEquals(128, TransactionCodec.readVarLong(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testTransactionRoundTrip() {
+        DescriptionDictionary dictionary = new DescriptionDictionary();
+        Transaction first = new Transaction(TransactionType.DEPOSIT, 125.50, "Paycheck", new Date(1_600_000_000_000L), 1125.50);
+        Transaction second = new Transaction(TransactionType.WITHDRAWAL, 20.0, "Paycheck", new Date(1_600_000_000_250L), 1105.50);
+        Transaction third = new Transaction(TransactionType.INTEREST, 1.0, null, new Date(1_599_999_999_000L), 1104.50);
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        long previous = TransactionCodec.encode(buffer, first, dictionary, 0);
+        int afterFirst = buffer.position();
+        previous = TransactionCodec.encode(buffer, second, dictionary, previous);
+        assertEquals(10, buffer.position() - afterFirst); // 1 type + 1 template + 2 delta + 2 amount + 3 balance + 1 text
+        TransactionCodec.encode(buffer, third, dictionary, previous);
+        assertEquals(2, dictionary.size()); // null and "Paycheck"
+
+        buffer.flip();
+        previous = 0;
+        for (Transaction expected : Arrays.asList(first, second, third)) {
+            Transaction decoded = TransactionCodec.decodeTransaction(buffer, dictionary, previous);
+            assertEquals(expected.toString(), decoded.toString());
+            assertEquals(expected.getTimestamp(), decoded.getTimestamp());
+            assertEquals(expected.getBalanceAfterTransactionCents(), decoded.getBalanceAfterTransactionCents());
+            previous = decoded.getTimestamp();
+        }
+        assertNull(dictionary.get(0));
+    }
+
+    @Test
+    public void testHistoryContinuesAcrossBuffers() {
+        BankAccount account = new BankAccount(100.0, AccountType.CHECKING);
+        for (int i = 0; i < 50; i++) {
+            account.deposit(1.0 + i);
+            account.withdraw(0.5);
+        }
+        List<Transaction> history = account.getTransactionHistory();
+        DescriptionDictionary dictionary = new DescriptionDictionary();
+
+        // Encode through a buffer that only holds a few transactions at a time
+        ByteBuffer all = ByteBuffer.allocate(history.size() * TransactionCodec.MAX_TRANSACTION_BYTES);
+        ByteBuffer small = ByteBuffer.allocate(3 * TransactionCodec.MAX_TRANSACTION_BYTES);
+        int next = 0;
+        int rounds = 0;
+        while (next < account.getTransactionCount()) {
+            small.clear();
+            next = account.encodeTransactionHistory(small, next, dictionary);
+            small.flip();
+            all.put(small);
+            rounds++;
+        }
+        assertTrue(rounds > 1);
+
+        all.flip();
+        long previous = 0;
+        for (Transaction expected : history) {
+            Transaction decoded = TransactionCodec.decodeTransaction(all, dictionary, previous);
+            assertEquals(expected.toString(), decoded.toString());
+            previous = decoded.getTimestamp();
+        }
+        assertFalse(all.hasRemaining());
+    }
+
+    @Test
+    public void testScheduledTransferAndRecurringPaymentRoundTrip() {
+        BankAccountDatabase database = new BankAccountDatabase();
+        BankAccount source = new BankAccount(500.0, AccountType.CHECKING);
+        BankAccount destination = new BankAccount(0.0, AccountType.SAVINGS);
+        database.addBankAccount(source);
+        database.addBankAccount(destination);
+        DescriptionDictionary dictionary = new DescriptionDictionary();
+
+        ScheduledTransfer transfer = new ScheduledTransfer(source, destination, 42.17, new Date(1_900_000_000_000L), "Rent");
+        RecurringPayment payment = new RecurringPayment(15.99, "Streaming", new Date(1_600_000_000_000L),
+            RecurringPayment.PaymentFrequency.MONTHLY, "ACME-1", source);
+        payment.setNextPaymentDate(new Date(1_610_000_000_000L));
+        payment.setActive(false);
+        payment.setCatchUpPolicy(RecurringPayment.CatchUpPolicy.POST_MISSED);
+
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        TransactionCodec.encode(buffer, transfer, dictionary);
+        TransactionCodec.encode(buffer, payment, dictionary);
+        buffer.flip();
+
+        ScheduledTransfer decodedTransfer = TransactionCodec.decodeScheduledTransfer(buffer, dictionary, database::getBankAccount);
+        assertEquals(transfer.getAmountCents(), decodedTransfer.getAmountCents());
+        assertEquals(transfer.getScheduledDate(), decodedTransfer.getScheduledDate());
+        assertEquals("Rent", decodedTransfer.getDescription());
+        assertFalse(decodedTransfer.isExecuted());
+
+        RecurringPayment decodedPayment = TransactionCodec.decodeRecurringPayment(buffer, dictionary, source);
+        assertEquals(payment.getAmountCents(), decodedPayment.getAmountCents());
+        assertEquals("Streaming", decodedPayment.getDescription());
+        assertEquals(payment.getStartDay(), decodedPayment.getStartDay());
+        assertEquals(payment.getNextPaymentDay(), decodedPayment.getNextPaymentDay());
+        assertEquals(RecurringPayment.PaymentFrequency.MONTHLY, decodedPayment.getFrequency());
+        assertEquals("ACME-1", decodedPayment.getRecipientAccountId());
+        assertFalse(decodedPayment.isActive());
+        assertEquals(RecurringPayment.CatchUpPolicy.POST_MISSED, decodedPayment.getCatchUpPolicy());
+        assertFalse(buffer.hasRemaining());
+
+        // Records re-encode to the same bytes
+        ByteBuffer original = ByteBuffer.allocate(128);
+        ByteBuffer again = ByteBuffer.allocate(128);
+        TransactionCodec.encode(original, transfer, dictionary);
+        TransactionCodec.encode(again, decodedTransfer, dictionary);
+        assertArrayEquals(Arrays.copyOf(original.array(), original.position()), Arrays.copyOf(again.array(), again.position()));
+    }
+
+    @Test
+    public void testDictionaryIsWrittenIncrementally() {
+        DescriptionDictionary dictionary = new DescriptionDictionary();
+        assertEquals(1, dictionary.idOf("Deposit"));
+        assertEquals(2, dictionary.idOf("Withdrawal"));
+        assertEquals(1, dictionary.idOf("Deposit"));
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int written = dictionary.writeTo(buffer, 1);
+        assertEquals(3, written);
+        dictionary.idOf("Caf\u00e9 \u2615");
+        written = dictionary.writeTo(buffer, written);
+        assertEquals(4, written);
+
+        buffer.flip();
+        DescriptionDictionary copy = new DescriptionDictionary();
+        copy.readFrom(buffer);
+        assertEquals(4, copy.size());
+        assertEquals("Withdrawal", copy.get(2));
+        assertEquals("Caf\u00e9 \u2615", copy.get(3));
+        assertEquals(3, copy.idOf("Caf\u00e9 \u2615"));
+    }
+}
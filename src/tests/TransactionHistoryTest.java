@@ -1,10 +1,13 @@
 package tests;
 
 import org.junit.Test;
+import java.util.Date;
 import java.util.List;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import bankingapp.AccountType;
 import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
 import bankingapp.Transaction;
 import bankingapp.TransactionType;
 
@@ -35,4 +38,93 @@ public class TransactionHistoryTest {
         assertEquals(TransactionType.WITHDRAWAL, withdrawal.getType());
         assertEquals(25, withdrawal.getAmount(), 0.001);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testHistorySpanningManyChunks() {
+        BankAccount account = new BankAccount();
+        for (int i = 1; i <= 5000; i++) {
+            account.depositCents(i);
+        }
+
+        List<Transaction> history = account.getTransactionHistory();
+        assertEquals(5000, history.size());
+        long expectedBalance = 0;
+        for (int i = 0; i < history.size(); i++) {
+            expectedBalance += i + 1;
+            assertEquals(i + 1, history.get(i).getAmountCents());
+            assertEquals(expectedBalance, history.get(i).getBalanceAfterTransactionCents());
+        }
+    }
+
+    @Test
+    public void testClearTransactionHistory() {
+        BankAccount account = new BankAccount(100);
+        for (int i = 0; i < 2000; i++) {
+            account.deposit(1);
+        }
+        account.clearTransactionHistory();
+
+        List<Transaction> history = account.getTransactionHistory();
+        assertEquals(1, history.size());
+        assertEquals(TransactionType.ADMIN, history.get(0).getType());
+        assertEquals(2100, history.get(0).getFinalBalance(), 0.001);
+    }
+
+    @Test
+    public void testHistoryByTypeUsesOnlyMatchingEntries() {
+        BankAccount account = new BankAccount(1000);
+        for (int i = 0; i < 3000; i++) {
+            account.deposit(1);
+            if (i % 3 == 0) {
+                account.withdraw(2);
+            }
+        }
+
+        List<Transaction> withdrawals = account.getTransactionHistoryByType(TransactionType.WITHDRAWAL);
+        assertEquals(1000, withdrawals.size());
+        assertEquals(1000, account.getTransactionCountByType(TransactionType.WITHDRAWAL));
+        assertEquals(3001, account.getTransactionCountByType(TransactionType.DEPOSIT));
+        for (Transaction withdrawal : withdrawals) {
+            assertEquals(TransactionType.WITHDRAWAL, withdrawal.getType());
+        }
+    }
+
+    @Test
+    public void testHistoryByTypeAfterClear() {
+        BankAccount account = new BankAccount(100);
+        account.deposit(10);
+        account.withdraw(5);
+        account.clearTransactionHistory();
+        account.deposit(20);
+
+        assertEquals(0, account.getTransactionHistoryByType(TransactionType.WITHDRAWAL).size());
+        assertEquals(1, account.getTransactionCountByType(TransactionType.ADMIN));
+        List<Transaction> deposits = account.getTransactionHistoryByType(TransactionType.DEPOSIT);
+        assertEquals(1, deposits.size());
+        assertEquals(20, deposits.get(0).getAmount(), 0.001);
+    }
+
+    @Test
+    public void testDescriptionsAreRenderedFromTemplates() {
+        BankAccount checking = new BankAccount(100, AccountType.CHECKING);
+        BankAccount savings = new BankAccount(1, AccountType.SAVINGS);
+        BankAccountDatabase database = new BankAccountDatabase();
+        database.addBankAccount(checking);
+        database.addBankAccount(savings);
+        String transferTo = "Transfer to account " + savings.getAccountNumber();
+        checking.deposit(10);
+        checking.transfer(savings, 30);
+        checking.withdraw(500);
+        checking.scheduleTransfer(savings, 5, new Date(System.currentTimeMillis() + 60_000), "Rent");
+
+        List<Transaction> history = checking.getTransactionHistory();
+        assertEquals("Initial deposit", history.get(0).getDescription());
+        assertEquals("Deposit Checking", history.get(1).getDescription());
+        assertEquals("Withdrawal for transfer", history.get(2).getDescription());
+        assertEquals(transferTo, history.get(3).getDescription());
+        assertEquals("Failed withdrawal - Insufficient funds", history.get(4).getDescription());
+        assertEquals("Scheduled transfer: Rent", history.get(5).getDescription());
+        assertTrue(history.get(3).toString().contains(" - " + transferTo + " (Balance $80.00)"));
+        assertEquals("Deposit Savings", savings.getTransactionHistory().get(1).getDescription());
+    }
+}
@@ -0,0 +1,95 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.StreamSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bankingapp.BankAccount;
+import bankingapp.Transaction;
+import bankingapp.TransactionPage;
+
+public class TransactionPageTest {
+    private BankAccount account;
+
+    @Before
+    public void setUp() {
+        account = new BankAccount();
+        for (int i = 1; i <= 25; i++) {
+            account.depositCents(i);
+        }
+    }
+
+    @Test
+    public void testNewestFirstPaging() {
+        List<Long> amounts = new ArrayList<>();
+        long cursor = TransactionPage.FIRST_PAGE;
+        int pages = 0;
+        TransactionPage page;
+        do {
+            page = account.getTransactionPage(cursor, 10, TransactionPage.Order.NEWEST_FIRST);
+            for (Transaction transaction : page.getTransactions()) {
+                amounts.add(transaction.getAmountCents());
+            }
+            cursor = page.getNextCursor();
+            pages++;
+        } while (page.hasMore());
+
+        assertEquals(3, pages);
+        assertEquals(25, amounts.size());
+        assertEquals(Long.valueOf(25), amounts.get(0));
+        assertEquals(Long.valueOf(1), amounts.get(24));
+    }
+
+    @Test
+    public void testOldestFirstPaging() {
+        TransactionPage first = account.getTransactionPage(TransactionPage.FIRST_PAGE, 20, TransactionPage.Order.OLDEST_FIRST);
+        assertEquals(20, first.getTransactions().size());
+        assertEquals(1, first.getTransactions().get(0).getAmountCents());
+        assertTrue(first.hasMore());
+
+        TransactionPage second = account.getTransactionPage(first.getNextCursor(), 20, TransactionPage.Order.OLDEST_FIRST);
+        assertEquals(5, second.getTransactions().size());
+        assertEquals(21, second.getTransactions().get(0).getAmountCents());
+        assertFalse(second.hasMore());
+    }
+
+    @Test
+    public void testCursorIsStableWhenTransactionsAreAppended() {
+        TransactionPage first = account.getTransactionPage(TransactionPage.FIRST_PAGE, 10, TransactionPage.Order.NEWEST_FIRST);
+        account.depositCents(1000);
+        account.depositCents(2000);
+
+        TransactionPage second = account.getTransactionPage(first.getNextCursor(), 10, TransactionPage.Order.NEWEST_FIRST);
+        assertEquals(15, second.getTransactions().get(0).getAmountCents());
+    }
+
+    @Test
+    public void testCursorAfterClearStartsAtRemainingHistory() {
+        TransactionPage first = account.getTransactionPage(TransactionPage.FIRST_PAGE, 10, TransactionPage.Order.OLDEST_FIRST);
+        account.clearTransactionHistory();
+
+        TransactionPage next = account.getTransactionPage(first.getNextCursor(), 10, TransactionPage.Order.OLDEST_FIRST);
+        assertEquals(1, next.getTransactions().size());
+        assertFalse(next.hasMore());
+    }
+
+    @Test
+    public void testForEachAndSpliteratorVisitEveryTransaction() {
+        long[] total = new long[1];
+        account.forEachTransaction(transaction -> total[0] += transaction.getAmountCents());
+        assertEquals(325, total[0]);
+
+        long parallelTotal = StreamSupport.stream(account.transactionSpliterator(), true)
+            .mapToLong(Transaction::getAmountCents)
+            .sum();
+        assertEquals(325, parallelTotal);
+        assertEquals(25, account.getTransactionCount());
+    }
+}
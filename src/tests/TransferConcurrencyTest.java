@@ -0,0 +1,84 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+import bankingapp.BankAccount;
+
+/**
+ * Stress tests for concurrent transfers between a small set of hot accounts.
+ */
+public class TransferConcurrencyTest {
+
+    private static final int ACCOUNT_COUNT = 8;
+    private static final int THREAD_COUNT = 8;
+    private static final int TRANSFERS_PER_THREAD = 125_000;
+    private static final double INITIAL_BALANCE = 5000.0;
+
+    @Test(timeout = 120_000)
+    public void testRandomTransfersConserveTotalBalance() throws InterruptedException {
+        BankAccount[] accounts = new BankAccount[ACCOUNT_COUNT];
+        for (int i = 0; i < ACCOUNT_COUNT; i++) {
+            accounts[i] = new BankAccount(INITIAL_BALANCE, 1000.0, 1_000_000.0);
+        }
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    int from = random.nextInt(ACCOUNT_COUNT);
+                    int to = random.nextInt(ACCOUNT_COUNT - 1);
+                    if (to >= from) {
+                        to++; // Never pick the source as the destination
+                    }
+                    accounts[from].transfer(accounts[to], random.nextInt(1, 100));
+                    if (i % 10_000 == 0) {
+                        accounts[from].clearTransactionHistory(); // Keep the heap small
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        double total = 0;
+        for (BankAccount account : accounts) {
+            total += account.getCurrentBalance();
+        }
+        assertEquals(ACCOUNT_COUNT * INITIAL_BALANCE, total, 0.001);
+    }
+
+    @Test(timeout = 30_000)
+    public void testOpposingTransfersDoNotDeadlock() throws InterruptedException {
+        BankAccount a = new BankAccount(10_000.0, 1000.0, 1_000_000.0);
+        BankAccount b = new BankAccount(10_000.0, 1000.0, 1_000_000.0);
+
+        Thread forward = new Thread(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                a.transfer(b, 1.0);
+            }
+        });
+        Thread backward = new Thread(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                b.transfer(a, 1.0);
+            }
+        });
+        forward.start();
+        backward.start();
+        forward.join();
+        backward.join();
+
+        assertFalse(forward.isAlive() || backward.isAlive());
+        assertEquals(20_000.0, a.getCurrentBalance() + b.getCurrentBalance(), 0.001);
+    }
+}
@@ -0,0 +1,218 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bankingapp.AccountType;
+import bankingapp.BankAccount;
+import bankingapp.BankAccountDatabase;
+import bankingapp.ScheduledTransfer;
+import bankingapp.Transaction;
+import bankingapp.TransactionType;
+import bankingapp.TransferScheduler;
+
+public class TransferSchedulerTest {
+
+    private static final long HOUR = 60L * 60 * 1000;
+
+    private BankAccountDatabase database;
+    private TransferScheduler scheduler;
+    private BankAccount source;
+    private BankAccount destination;
+    private long now;
+
+    @Before
+    public void setUp() {
+        database = new BankAccountDatabase();
+        scheduler = database.getTransferScheduler();
+        source = new BankAccount(1000.0);
+        destination = new BankAccount(0.0);
+        database.addBankAccount(source);
+        database.addBankAccount(destination);
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    public void testOnlyDueTransfersRun() {
+        source.scheduleTransfer(destination, 30.0, new Date(now + 3 * HOUR), "Third");
+        source.scheduleTransfer(destination, 10.0, new Date(now + HOUR), "First");
+        source.scheduleTransfer(destination, 20.0, new Date(now + 2 * HOUR), "Second");
+        assertEquals(3, scheduler.getPendingCount());
+        assertEquals(new Date(now + HOUR), scheduler.getNextDueDate());
+
+        assertEquals(0, scheduler.processDue(new Date(now)));
+        assertEquals(2, scheduler.processDue(new Date(now + 2 * HOUR)));
+        assertEquals(30.0, destination.getCurrentBalance(), 0.0);
+        assertEquals(1, scheduler.getPendingCount());
+        assertEquals(1, source.getScheduledTransfers().size());
+        assertEquals("Third", scheduler.getPendingTransfers().get(0).getDescription());
+    }
+
+    @Test
+    public void testRemovedSourceStopsTransferring() {
+        source.scheduleTransfer(destination, 10.0, new Date(now + HOUR), "Rent");
+        database.removeBankAccount(source.getAccountNumber());
+
+        assertEquals(0, scheduler.processDue(new Date(now + 3 * 24 * HOUR)));
+        assertEquals(1000.0, source.getCurrentBalance(), 0.0);
+        assertEquals(0.0, destination.getCurrentBalance(), 0.0);
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testCancel() {
+        ScheduledTransfer first = source.scheduleTransfer(destination, 10.0, new Date(now + HOUR), "First");
+        source.scheduleTransfer(destination, 20.0, new Date(now + 2 * HOUR), "Second");
+
+        assertTrue(scheduler.cancel(first));
+        assertFalse(scheduler.cancel(first));
+        assertTrue(first.isCancelled());
+        assertEquals(1, scheduler.getPendingCount());
+        assertEquals(new Date(now + 2 * HOUR), scheduler.getNextDueDate());
+        assertEquals(1, source.getScheduledTransfers().size());
+
+        assertEquals(1, scheduler.processDue(new Date(now + 2 * HOUR)));
+        assertEquals(20.0, destination.getCurrentBalance(), 0.0);
+        assertNull(scheduler.getNextDueDate());
+    }
+
+    @Test
+    public void testTransferRunsOnce() {
+        source.scheduleTransfer(destination, 10.0, new Date(now + HOUR), "Rent");
+        assertEquals(1, source.processScheduledTransfers(new Date(now + HOUR)));
+        assertEquals(0, scheduler.processDue(new Date(now + HOUR)));
+        assertEquals(10.0, destination.getCurrentBalance(), 0.0);
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testFailedTransferIsRetried() {
+        BankAccount poor = new BankAccount(5.0);
+        database.addBankAccount(poor);
+        poor.scheduleTransfer(destination, 10.0, new Date(now + HOUR), "Too much");
+
+        assertEquals(0, scheduler.processDue(new Date(now + HOUR)));
+        assertEquals(1, scheduler.getPendingCount());
+        poor.deposit(10.0);
+        assertEquals(1, scheduler.processDue(new Date(now + HOUR)));
+        assertEquals(10.0, destination.getCurrentBalance(), 0.0);
+    }
+
+    @Test
+    public void testTransfersScheduledBeforeAddAreQueued() {
+        BankAccount late = new BankAccount(100.0);
+        late.scheduleTransfer(destination, 1.0, new Date(now + HOUR), "Before add");
+        database.addBankAccount(late);
+        assertEquals(1, scheduler.getPendingCount());
+        assertEquals(1, scheduler.getTransfersDueBy(new Date(now + HOUR)).size());
+    }
+
+    @Test
+    public void testManyPendingFewDue() {
+        for (int i = 0; i < 10_000; i++) {
+            source.scheduleTransfer(destination, 0.01, new Date(now + HOUR + i * 1000L), "Transfer " + i);
+        }
+        assertEquals(5, scheduler.processDue(new Date(now + HOUR + 4000)));
+        assertEquals(9_995, scheduler.getPendingCount());
+        assertEquals(5, destination.getCurrentBalanceCents());
+    }
+
+    @Test
+    public void testNettedPayroll() {
+        scheduler.setNetting(true);
+        BankAccount[] staff = new BankAccount[5];
+        for (int i = 0; i < staff.length; i++) {
+            staff[i] = new BankAccount(0.0);
+            database.addBankAccount(staff[i]);
+            source.scheduleTransfer(staff[i], 100.0, new Date(now + HOUR), "Salary " + i);
+        }
+        staff[0].scheduleTransfer(source, 40.0, new Date(now + HOUR), "Refund"); // Funded by the same batch
+
+        assertEquals(6, scheduler.processDue(new Date(now + HOUR)));
+        assertEquals(540.0, source.getCurrentBalance(), 0.0);
+        assertEquals(60.0, staff[0].getCurrentBalance(), 0.0);
+        assertEquals(100.0, staff[4].getCurrentBalance(), 0.0);
+
+        // Every transfer is still in the histories
+        assertEquals(5, source.getTransactionCountByType(TransactionType.TRANSFER));
+        assertEquals(5, source.getTransactionCountByType(TransactionType.WITHDRAWAL));
+        assertEquals(1, staff[0].getTransactionCountByType(TransactionType.TRANSFER));
+        List<Transaction> deposits = staff[4].getTransactionHistoryByType(TransactionType.DEPOSIT);
+        assertEquals(100.0, deposits.get(deposits.size() - 1).getBalanceAfterTransaction(), 0.0);
+        assertEquals(0, source.getScheduledTransfers().size());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void testNettingHandsBackUnfundedTransfers() {
+        scheduler.setNetting(true);
+        BankAccount poor = new BankAccount(5.0);
+        database.addBankAccount(poor);
+        poor.scheduleTransfer(destination, 10.0, new Date(now + HOUR), "Too much");
+        source.scheduleTransfer(destination, 20.0, new Date(now + HOUR), "Fine");
+
+        assertEquals(1, scheduler.processDue(new Date(now + HOUR)));
+        assertEquals(20.0, destination.getCurrentBalance(), 0.0);
+        assertEquals(5.0, poor.getCurrentBalance(), 0.0);
+        assertEquals(1, scheduler.getPendingCount()); // Retried next time
+        assertEquals(1, poor.getTransactionCountByType(TransactionType.FAILED));
+    }
+
+    @Test
+    public void testNettingAndIndividualRunsAgree() {
+        BankAccountDatabase individual = new BankAccountDatabase();
+        BankAccountDatabase netted = new BankAccountDatabase();
+        netted.getTransferScheduler().setNetting(true);
+        BankAccount[][] accounts = new BankAccount[2][4];
+        BankAccountDatabase[] databases = {individual, netted};
+        for (int d = 0; d < 2; d++) {
+            for (int i = 0; i < 4; i++) {
+                accounts[d][i] = new BankAccount(i == 3 ? 0.0 : 50.0, i == 3 ? AccountType.SAVINGS : AccountType.CHECKING);
+                databases[d].addBankAccount(accounts[d][i]);
+            }
+            for (int i = 0; i < 12; i++) {
+                BankAccount from = accounts[d][i % 3];
+                BankAccount to = accounts[d][(i * 7 + 1) % 4];
+                if (from != to) {
+                    from.scheduleTransfer(to, 1.0 + i, new Date(now + HOUR), "Sweep " + i);
+                }
+            }
+        }
+        assertEquals(individual.getTransferScheduler().processDue(new Date(now + HOUR)),
+            netted.getTransferScheduler().processDue(new Date(now + HOUR)));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(accounts[0][i].getCurrentBalanceCents(), accounts[1][i].getCurrentBalanceCents());
+            assertEquals(accounts[0][i].getTransactionCount(), accounts[1][i].getTransactionCount());
+        }
+    }
+
+    @Test
+    public void testNettedHistoryNeverShowsANegativeBalance() {
+        scheduler.setNetting(true);
+        BankAccount middle = new BankAccount(0.0);
+        database.addBankAccount(middle);
+        // The outflow is due first, and only the later inflow funds it
+        middle.scheduleTransfer(destination, 100.0, new Date(now + HOUR - 1000), "Pass on");
+        source.scheduleTransfer(middle, 100.0, new Date(now + HOUR), "Fund");
+
+        assertEquals(2, scheduler.processDue(new Date(now + HOUR)));
+        assertEquals(0.0, middle.getCurrentBalance(), 0.0);
+        assertEquals(100.0, destination.getCurrentBalance(), 0.0);
+        for (BankAccount account : new BankAccount[] { source, middle, destination }) {
+            for (Transaction transaction : account.getTransactionHistory()) {
+                assertTrue(transaction.toString(), transaction.getBalanceAfterTransaction() >= 0);
+            }
+        }
+        List<Transaction> history = middle.getTransactionHistory();
+        assertEquals(TransactionType.DEPOSIT, history.get(history.size() - 3).getType());
+        assertEquals(100.0, history.get(history.size() - 3).getBalanceAfterTransaction(), 0.0);
+    }
+}